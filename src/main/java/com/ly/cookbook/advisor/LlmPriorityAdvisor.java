@@ -0,0 +1,103 @@
+package com.ly.cookbook.advisor;
+
+import com.ly.cookbook.common.constant.UserConstant;
+import com.ly.cookbook.common.units.AssertUtil;
+import com.ly.cookbook.exception.emun.AgentErrorEnum;
+import com.ly.cookbook.limiter.LlmPriorityScheduler;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.client.ChatClientRequest;
+import org.springframework.ai.chat.client.ChatClientResponse;
+import org.springframework.ai.chat.client.advisor.api.CallAdvisor;
+import org.springframework.ai.chat.client.advisor.api.CallAdvisorChain;
+import org.springframework.ai.chat.client.advisor.api.StreamAdvisor;
+import org.springframework.ai.chat.client.advisor.api.StreamAdvisorChain;
+import org.springframework.core.Ordered;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * @author 刘燚
+ * @version v1.0.0
+ * @Description 模型调用优先级 Advisor：紧挨着模型调用执行，按请求携带的用户角色向 LlmPriorityScheduler 申请调用槽位，
+ * 同步调用在返回后释放，流式调用在流结束、出错或取消时释放。
+ * 用户角色通过 advisor 参数 USER_ROLE 传入（需在请求线程或 Agent 上下文中预先解析），未传入时按免费用户处理
+ * @createDate：2026/10/18 20:50
+ * @email liuyia2022@163.com
+ */
+@Component
+@Slf4j
+public class LlmPriorityAdvisor implements CallAdvisor, StreamAdvisor {
+
+    /**
+     * advisor 参数：用户角色编码
+     */
+    public static final String USER_ROLE = "cookbook_user_role";
+
+    @Resource
+    private LlmPriorityScheduler llmPriorityScheduler;
+
+    @Override
+    public ChatClientResponse adviseCall(ChatClientRequest chatClientRequest, CallAdvisorChain callAdvisorChain) {
+        LlmPriorityScheduler.Slot slot = awaitSlot(llmPriorityScheduler.acquire(roleOf(chatClientRequest)));
+        try {
+            return callAdvisorChain.nextCall(chatClientRequest);
+        } finally {
+            slot.release();
+        }
+    }
+
+    @Override
+    public Flux<ChatClientResponse> adviseStream(ChatClientRequest chatClientRequest, StreamAdvisorChain streamAdvisorChain) {
+        // 异步等待槽位，不阻塞订阅线程；订阅在获得槽位前取消时移出队列
+        return Flux.defer(() -> {
+            CompletableFuture<LlmPriorityScheduler.Slot> future = llmPriorityScheduler.acquire(roleOf(chatClientRequest));
+            return Mono.fromFuture(future, true)
+                    .doOnCancel(() -> cancelOrRelease(future))
+                    .flatMapMany(slot -> streamAdvisorChain.nextStream(chatClientRequest).doFinally(signal -> slot.release()));
+        });
+    }
+
+    private LlmPriorityScheduler.Slot awaitSlot(CompletableFuture<LlmPriorityScheduler.Slot> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            cancelOrRelease(future);
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("等待模型调用槽位被中断", e);
+        } catch (ExecutionException e) {
+            log.warn("等待模型调用槽位超时: {}", e.getCause().getMessage());
+            AssertUtil.putMeg(AgentErrorEnum.SYSTEM_BUSY);
+            return null;
+        }
+    }
+
+    /**
+     * 放弃等待：尚未获得槽位时取消排队，已经获得时归还槽位
+     */
+    private void cancelOrRelease(CompletableFuture<LlmPriorityScheduler.Slot> future) {
+        if (!future.cancel(true) && !future.isCompletedExceptionally()) {
+            future.join().release();
+        }
+    }
+
+    private String roleOf(ChatClientRequest chatClientRequest) {
+        Object role = chatClientRequest.context().get(USER_ROLE);
+        return role != null ? role.toString() : UserConstant.USER_FREE;
+    }
+
+    @Override
+    public String getName() {
+        return "llmPriorityAdvisor";
+    }
+
+    @Override
+    public int getOrder() {
+        // 在记忆、RAG、日志等 Advisor 之后执行，只包住真正的模型调用
+        return Ordered.LOWEST_PRECEDENCE - 1000;
+    }
+}
@@ -0,0 +1,56 @@
+package com.ly.cookbook.agent;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @author 刘燚
+ * @version v1.0.0
+ * @Description 运行树预算：协调 Agent 与其所有子 Agent 共享的步骤与 token 上限，
+ * 任一上限耗尽后各子 Agent 在下一步开始前结束
+ * @createDate：2026/10/18 19:10
+ * @email liuyia2022@163.com
+ */
+public class AgentBudget {
+
+    private final int maxSteps;
+
+    private final long maxTokens;
+
+    private final AtomicInteger usedSteps = new AtomicInteger();
+
+    private final AtomicLong usedTokens = new AtomicLong();
+
+    public AgentBudget(int maxSteps, long maxTokens) {
+        this.maxSteps = maxSteps;
+        this.maxTokens = maxTokens;
+    }
+
+    /**
+     * 申请执行一步
+     *
+     * @return 预算未耗尽时返回 true
+     */
+    public boolean tryAcquireStep() {
+        if (isExhausted()) {
+            return false;
+        }
+        return usedSteps.incrementAndGet() <= maxSteps;
+    }
+
+    public void addTokens(long tokens) {
+        usedTokens.addAndGet(tokens);
+    }
+
+    public boolean isExhausted() {
+        return usedSteps.get() >= maxSteps || usedTokens.get() >= maxTokens;
+    }
+
+    public int getUsedSteps() {
+        return Math.min(usedSteps.get(), maxSteps);
+    }
+
+    public long getUsedTokens() {
+        return usedTokens.get();
+    }
+}
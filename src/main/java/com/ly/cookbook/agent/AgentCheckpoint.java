@@ -0,0 +1,58 @@
+package com.ly.cookbook.agent;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @author 刘燚
+ * @version v1.0.0
+ * @Description Agent 运行检查点：每完成一步后保存，运行中断后可在任意节点从最后完成的步骤继续
+ * @createDate：2026/10/18 20:05
+ * @email liuyia2022@163.com
+ */
+@Data
+public class AgentCheckpoint {
+    /**
+     * 会话ID
+     */
+    private String conversationId;
+    /**
+     * 执行运行的 Agent 名称，恢复时据此选择 Agent
+     */
+    private String agentName;
+    /**
+     * 发起运行的用户ID，只允许本人恢复
+     */
+    private Long userId;
+    private String userPrompt;
+    /**
+     * 总结模式编码
+     */
+    private String summaryMode;
+    /**
+     * 运行状态：RUNNING 表示仍有步骤待执行，FINISHED 表示只差最终总结
+     */
+    private String state;
+    /**
+     * 已完成的步骤数
+     */
+    private Integer currentStep;
+    private Long usedToken;
+    /**
+     * usedToken 中已经结算过的部分，恢复后只结算新增的 token
+     */
+    private Long chargedToken;
+    private String finalAnswer;
+    private Integer stalledSteps;
+    private List<String> toolCallSignatures = new ArrayList<>();
+    /**
+     * 压缩后的消息历史（JSON）
+     */
+    private String messages;
+    /**
+     * 保存时间（毫秒时间戳）
+     */
+    private Long savedAt;
+}
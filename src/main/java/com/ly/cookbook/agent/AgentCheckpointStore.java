@@ -0,0 +1,321 @@
+package com.ly.cookbook.agent;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ly.cookbook.common.constant.RedisConstant;
+import com.ly.cookbook.common.units.MessageSerializeUtil;
+import com.ly.cookbook.enums.AgentStateEnum;
+import com.ly.cookbook.enums.SummaryModeEnum;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author 刘燚
+ * @version v1.0.0
+ * @Description Agent 检查点存储：每步完成后把压缩后的消息历史、步骤、token 与状态写入 Redis（带过期时间），
+ * 运行因重启、断线或模型服务异常中断后，可在任意节点从最后完成的步骤继续，已完成的工具调用与 token 不再重复消耗。
+ * 正在执行的运行持有会话的租约（短过期时间，由本节点定时续期），租约存活期间拒绝恢复；
+ * 节点崩溃后租约不再续期，过期后即可恢复，恢复请求以 SET NX 原子地抢占租约，同一运行不会被并发执行两次
+ * @createDate：2026/10/18 20:05
+ * @email liuyia2022@163.com
+ */
+@Slf4j
+@Component
+public class AgentCheckpointStore {
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    /**
+     * 续期租约：仍由本次运行持有时延长过期时间
+     * KEYS: 租约；ARGV: 租约令牌, 过期毫秒数
+     */
+    private static final RedisScript<Long> RENEW_LEASE_SCRIPT = new DefaultRedisScript<>("""
+            if redis.call('GET', KEYS[1]) == ARGV[1] then
+                return redis.call('PEXPIRE', KEYS[1], ARGV[2])
+            end
+            return 0
+            """, Long.class);
+
+    /**
+     * 释放租约：仍由本次运行持有时删除，不会误删其他运行抢占的租约
+     * KEYS: 租约；ARGV: 租约令牌
+     */
+    private static final RedisScript<Long> RELEASE_LEASE_SCRIPT = new DefaultRedisScript<>("""
+            if redis.call('GET', KEYS[1]) == ARGV[1] then
+                return redis.call('DEL', KEYS[1])
+            end
+            return 0
+            """, Long.class);
+
+    private final boolean enabled;
+
+    private final Duration ttl;
+
+    private final Duration leaseTtl;
+
+    private final AgentContextManager agentContextManager;
+
+    private final RedisTemplate<String, Object> redisTemplate;
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    /**
+     * 本节点运行持有的租约：会话ID -> 租约令牌，由 leaseRenewer 定时续期
+     */
+    private final Map<String, String> heldLeases = new ConcurrentHashMap<>();
+
+    private final ScheduledExecutorService leaseRenewer = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofVirtual().name("agent-lease-renewer").factory());
+
+    private final MeterRegistry meterRegistry;
+
+    public AgentCheckpointStore(@Value("${cookbook.agent.checkpoint.enabled:true}") boolean enabled,
+                                @Value("${cookbook.agent.checkpoint.ttl:30m}") Duration ttl,
+                                @Value("${cookbook.agent.checkpoint.lease-ttl:30s}") Duration leaseTtl,
+                                AgentContextManager agentContextManager,
+                                RedisTemplate<String, Object> redisTemplate,
+                                StringRedisTemplate stringRedisTemplate,
+                                MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        this.ttl = ttl;
+        this.leaseTtl = leaseTtl;
+        this.agentContextManager = agentContextManager;
+        this.redisTemplate = redisTemplate;
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.meterRegistry = meterRegistry;
+        long renewInterval = Math.max(1, leaseTtl.toMillis() / 3);
+        leaseRenewer.scheduleWithFixedDelay(this::renewLeases, renewInterval, renewInterval, TimeUnit.MILLISECONDS);
+        log.info("Agent 检查点存储初始化完成，启用: {}, 过期时间: {}, 租约过期时间: {}", enabled, ttl, leaseTtl);
+    }
+
+    /**
+     * 保存当前运行的检查点，Redis 不可用时只记录日志，不影响运行
+     */
+    public void save(String agentName, AgentRunContext context) {
+        if (!enabled) {
+            return;
+        }
+        try {
+            AgentCheckpoint checkpoint = new AgentCheckpoint();
+            checkpoint.setConversationId(context.getConversationId());
+            checkpoint.setAgentName(agentName);
+            checkpoint.setUserId(context.getUserId());
+            checkpoint.setUserPrompt(context.getUserPrompt());
+            checkpoint.setSummaryMode(context.getSummaryMode() != null ? context.getSummaryMode().getCode() : null);
+            checkpoint.setState(context.getState().name());
+            checkpoint.setCurrentStep(context.getCurrentStep());
+            checkpoint.setUsedToken(context.getUsedToken());
+            checkpoint.setChargedToken(context.getChargedToken());
+            checkpoint.setFinalAnswer(context.getFinalAnswer());
+            checkpoint.setStalledSteps(context.getStalledSteps());
+            checkpoint.setToolCallSignatures(new ArrayList<>(context.getToolCallSignatures()));
+            checkpoint.setMessages(MessageSerializeUtil.toJson(agentContextManager.compactHistory(context.getChatMessage())));
+            checkpoint.setSavedAt(System.currentTimeMillis());
+            write(checkpoint);
+            record("save");
+        } catch (Exception e) {
+            log.warn("保存 Agent 检查点失败: {}, {}", context.getConversationId(), e.getMessage());
+            record("save_failed");
+        }
+    }
+
+    /**
+     * 原运行被取消或异常中断并已结算 token 后调用：检查点中的 token 全部标记为已结算，恢复后不再重复结算
+     */
+    public void markSettled(String conversationId) {
+        if (!enabled) {
+            return;
+        }
+        try {
+            AgentCheckpoint checkpoint = load(conversationId);
+            if (checkpoint == null) {
+                return;
+            }
+            checkpoint.setChargedToken(checkpoint.getUsedToken());
+            write(checkpoint);
+            record("settle");
+        } catch (Exception e) {
+            log.warn("标记 Agent 检查点失败: {}, {}", conversationId, e.getMessage());
+        }
+    }
+
+    /**
+     * 新运行开始时获取会话的租约，覆盖同一会话上更早运行的租约（新运行的检查点同样会覆盖旧检查点）
+     *
+     * @return 租约令牌，未启用或 Redis 不可用时返回 null（运行照常执行，只是不受租约保护）
+     */
+    public String acquireLease(String conversationId) {
+        if (!enabled) {
+            return null;
+        }
+        String token = UUID.randomUUID().toString();
+        try {
+            stringRedisTemplate.opsForValue().set(buildLeaseKey(conversationId), token, leaseTtl);
+        } catch (Exception e) {
+            log.warn("获取 Agent 运行租约失败: {}, {}", conversationId, e.getMessage());
+            return null;
+        }
+        heldLeases.put(conversationId, token);
+        return token;
+    }
+
+    /**
+     * 恢复运行前抢占会话的租约（SET NX PX），原运行仍持有租约或已被其他恢复请求抢占时失败
+     *
+     * @return 租约令牌，抢占失败返回 null
+     */
+    public String claimLease(String conversationId) {
+        if (!enabled) {
+            return null;
+        }
+        String token = UUID.randomUUID().toString();
+        try {
+            if (!Boolean.TRUE.equals(stringRedisTemplate.opsForValue().setIfAbsent(buildLeaseKey(conversationId), token, leaseTtl))) {
+                return null;
+            }
+        } catch (Exception e) {
+            log.warn("抢占 Agent 运行租约失败: {}, {}", conversationId, e.getMessage());
+            return null;
+        }
+        heldLeases.put(conversationId, token);
+        record("claim");
+        return token;
+    }
+
+    /**
+     * 运行结束（完成、取消或异常）后释放租约，之后即可恢复
+     */
+    public void releaseLease(String conversationId, String token) {
+        heldLeases.remove(conversationId, token);
+        try {
+            stringRedisTemplate.execute(RELEASE_LEASE_SCRIPT, List.of(buildLeaseKey(conversationId)), token);
+        } catch (Exception e) {
+            // 释放失败时租约不再续期，最迟 lease-ttl 后过期
+            log.warn("释放 Agent 运行租约失败: {}, {}", conversationId, e.getMessage());
+        }
+    }
+
+    /**
+     * 续期本节点持有的租约；租约已被其他运行覆盖时不再续期
+     */
+    private void renewLeases() {
+        heldLeases.forEach((conversationId, token) -> {
+            try {
+                Long renewed = stringRedisTemplate.execute(RENEW_LEASE_SCRIPT, List.of(buildLeaseKey(conversationId)),
+                        token, String.valueOf(leaseTtl.toMillis()));
+                if (renewed == null || renewed == 0) {
+                    log.warn("Agent 运行租约已被其他运行持有，停止续期: {}", conversationId);
+                    heldLeases.remove(conversationId, token);
+                }
+            } catch (Exception e) {
+                log.warn("续期 Agent 运行租约失败: {}, {}", conversationId, e.getMessage());
+            }
+        });
+    }
+
+    private void write(AgentCheckpoint checkpoint) throws Exception {
+        redisTemplate.opsForValue().set(buildKey(checkpoint.getConversationId()),
+                OBJECT_MAPPER.writeValueAsString(checkpoint), ttl.toSeconds(), TimeUnit.SECONDS);
+    }
+
+    /**
+     * 读取检查点
+     *
+     * @return 检查点，不存在或已过期返回 null
+     */
+    public AgentCheckpoint load(String conversationId) {
+        if (!enabled) {
+            return null;
+        }
+        Object value = redisTemplate.opsForValue().get(buildKey(conversationId));
+        if (!(value instanceof String json)) {
+            return null;
+        }
+        try {
+            return OBJECT_MAPPER.readValue(json, AgentCheckpoint.class);
+        } catch (Exception e) {
+            log.warn("解析 Agent 检查点失败: {}, {}", conversationId, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 运行完成（总结已输出并写入记忆）后删除检查点
+     */
+    public void delete(String conversationId) {
+        if (!enabled) {
+            return;
+        }
+        try {
+            redisTemplate.delete(buildKey(conversationId));
+        } catch (Exception e) {
+            log.warn("删除 Agent 检查点失败: {}, {}", conversationId, e.getMessage());
+        }
+    }
+
+    /**
+     * 基于检查点创建恢复运行的上下文，步骤、token、历史与循环检测状态从最后完成的步骤继续，
+     * 原运行已结算的 token 不再重复结算；租约已由 claimLease 抢占，随运行结束释放
+     */
+    public AgentRunContext restore(AgentCheckpoint checkpoint, String leaseToken, SseEmitter sseEmitter) {
+        AgentRunContext context = new AgentRunContext(checkpoint.getConversationId(), checkpoint.getUserPrompt(), sseEmitter);
+        context.setResumed(true);
+        context.setLeaseToken(leaseToken);
+        context.setUserId(checkpoint.getUserId());
+        context.setState(AgentStateEnum.valueOf(checkpoint.getState()));
+        context.setCurrentStep(checkpoint.getCurrentStep());
+        context.setUsedToken(checkpoint.getUsedToken());
+        context.setChargedToken(checkpoint.getChargedToken() != null ? checkpoint.getChargedToken() : 0L);
+        context.setFinalAnswer(checkpoint.getFinalAnswer());
+        context.setStalledSteps(checkpoint.getStalledSteps());
+        context.getToolCallSignatures().addAll(checkpoint.getToolCallSignatures());
+        context.getChatMessage().addAll(MessageSerializeUtil.fromJson(checkpoint.getMessages()));
+        SummaryModeEnum summaryMode = SummaryModeEnum.getByCode(checkpoint.getSummaryMode());
+        if (summaryMode != null) {
+            context.setSummaryMode(summaryMode);
+        }
+        record("restore");
+        return context;
+    }
+
+    private String buildKey(String conversationId) {
+        return RedisConstant.AGENT_CHECKPOINT + conversationId;
+    }
+
+    private static String buildLeaseKey(String conversationId) {
+        return RedisConstant.AGENT_RUN_LEASE + conversationId;
+    }
+
+    private void record(String event) {
+        Counter.builder("cookbook.agent.checkpoint")
+                .description("Agent 检查点保存与恢复次数")
+                .tag("event", event)
+                .register(meterRegistry)
+                .increment();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        leaseRenewer.shutdownNow();
+    }
+}
@@ -0,0 +1,288 @@
+package com.ly.cookbook.agent;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Metrics;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.util.CollectionUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @author 刘燚
+ * @version v1.0.0
+ * @Description Agent 工作上下文管理器：每次调用 LLM 前基于完整历史构建有界的提示词视图。
+ * 1、下一步提示词只在视图末尾出现一次，不写入历史
+ * 2、只保留最近 N 次工具响应的完整内容，更早的响应抽取开头部分压缩
+ * 3、超出 token 预算时从最早的执行步骤开始丢弃，直到满足预算；只剩最近一步仍超出时截断其工具结果
+ * 完整历史仍保存在 AgentRunContext 中，供最终总结使用
+ * @createDate：2026/10/18 16:05
+ * @email liuyia2022@163.com
+ */
+@Slf4j
+public class AgentContextManager {
+
+    public static final int DEFAULT_TOKEN_BUDGET = 12_000;
+
+    public static final int DEFAULT_KEEP_FULL_TOOL_RESPONSES = 2;
+
+    public static final int DEFAULT_COMPACTED_CHARS = 300;
+
+    /**
+     * 每条消息的固定开销（角色、分隔符等）
+     */
+    private static final int MESSAGE_OVERHEAD_TOKENS = 4;
+
+    private static final String TRUNCATED_MARKER = "\n...(工具结果超出上下文预算已截断，原始长度 %d 字符)";
+
+    private final int tokenBudget;
+
+    private final int keepFullToolResponses;
+
+    private final int compactedChars;
+
+    private final DistributionSummary rawPromptTokens = DistributionSummary.builder("cookbook.agent.prompt.tokens")
+            .description("Agent 每步调用 LLM 的提示词估算 token 数")
+            .tag("phase", "raw")
+            .register(Metrics.globalRegistry);
+
+    private final DistributionSummary compactedPromptTokens = DistributionSummary.builder("cookbook.agent.prompt.tokens")
+            .description("Agent 每步调用 LLM 的提示词估算 token 数")
+            .tag("phase", "compacted")
+            .register(Metrics.globalRegistry);
+
+    public AgentContextManager() {
+        this(DEFAULT_TOKEN_BUDGET, DEFAULT_KEEP_FULL_TOOL_RESPONSES, DEFAULT_COMPACTED_CHARS);
+    }
+
+    public AgentContextManager(int tokenBudget, int keepFullToolResponses, int compactedChars) {
+        this.tokenBudget = tokenBudget;
+        this.keepFullToolResponses = keepFullToolResponses;
+        this.compactedChars = compactedChars;
+    }
+
+    /**
+     * 构建本次 LLM 调用使用的消息列表
+     *
+     * @param context        运行上下文，其中的历史不会被修改
+     * @param nextStepPrompt 下一步提示词，可为空
+     * @return 有界的消息视图
+     */
+    public List<Message> buildPromptMessages(AgentRunContext context, String nextStepPrompt) {
+        List<Message> history = context.getChatMessage();
+        int rawTokens = estimateTokens(history);
+
+        // 初始对话（记忆 + 用户问题）与后续执行步骤分开处理
+        int firstStep = indexOfFirstStep(history);
+        List<Message> prefix = new ArrayList<>(history.subList(0, firstStep));
+        List<List<Message>> steps = splitSteps(history.subList(firstStep, history.size()));
+        compactOldToolResponses(steps);
+
+        Message nextStepMessage = StringUtils.isNotBlank(nextStepPrompt) ? new UserMessage(nextStepPrompt) : null;
+        int tokens = estimateTokens(prefix) + steps.stream().mapToInt(this::estimateTokens).sum()
+                + (nextStepMessage == null ? 0 : estimateTokens(List.of(nextStepMessage)));
+        // 超出预算时从最早的步骤开始丢弃，至少保留最近一步
+        while (tokens > tokenBudget && steps.size() > 1) {
+            tokens -= estimateTokens(steps.remove(0));
+        }
+        // 仍然超出时丢弃最早的记忆消息，至少保留用户本次的问题
+        while (tokens > tokenBudget && prefix.size() > 1) {
+            tokens -= estimateTokens(List.of(prefix.remove(0)));
+        }
+        // 最近一步单独就超出预算时截断其工具结果，保留开头部分
+        if (tokens > tokenBudget && !steps.isEmpty()) {
+            tokens -= truncateToolResponses(steps.get(steps.size() - 1), tokens - tokenBudget);
+        }
+
+        List<Message> messages = new ArrayList<>(prefix);
+        steps.forEach(messages::addAll);
+        if (nextStepMessage != null) {
+            messages.add(nextStepMessage);
+        }
+        rawPromptTokens.record(rawTokens);
+        compactedPromptTokens.record(tokens);
+        log.info("第 {} 步提示词估算 token: 原始 {}, 压缩后 {}, 预算 {}",
+                context.getCurrentStep(), rawTokens, tokens, tokenBudget);
+        return messages;
+    }
+
+    /**
+     * 压缩完整历史：较早的工具响应只保留摘录，不丢弃任何消息，用于保存检查点
+     *
+     * @param history 完整历史，不会被修改
+     * @return 压缩后的历史
+     */
+    public List<Message> compactHistory(List<Message> history) {
+        int firstStep = indexOfFirstStep(history);
+        List<List<Message>> steps = splitSteps(history.subList(firstStep, history.size()));
+        compactOldToolResponses(steps);
+        List<Message> messages = new ArrayList<>(history.subList(0, firstStep));
+        steps.forEach(messages::addAll);
+        return messages;
+    }
+
+    /**
+     * 第一个带工具调用的助手消息的位置，之前为初始对话
+     */
+    private int indexOfFirstStep(List<Message> history) {
+        for (int i = 0; i < history.size(); i++) {
+            if (history.get(i) instanceof AssistantMessage assistantMessage
+                    && !CollectionUtils.isEmpty(assistantMessage.getToolCalls())) {
+                return i;
+            }
+        }
+        return history.size();
+    }
+
+    /**
+     * 按执行步骤分组：每组以助手消息开始，工具调用与工具响应始终在同一组内，丢弃时不会拆开
+     */
+    private List<List<Message>> splitSteps(List<Message> messages) {
+        List<List<Message>> steps = new ArrayList<>();
+        for (Message message : messages) {
+            if (message instanceof AssistantMessage || steps.isEmpty()) {
+                steps.add(new ArrayList<>());
+            }
+            steps.get(steps.size() - 1).add(message);
+        }
+        return steps;
+    }
+
+    private void compactOldToolResponses(List<List<Message>> steps) {
+        int keptFull = 0;
+        for (int i = steps.size() - 1; i >= 0; i--) {
+            List<Message> step = steps.get(i);
+            for (int j = step.size() - 1; j >= 0; j--) {
+                if (step.get(j) instanceof ToolResponseMessage toolResponseMessage) {
+                    if (keptFull < keepFullToolResponses) {
+                        keptFull++;
+                    } else {
+                        step.set(j, compact(toolResponseMessage));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * 从最后一个工具结果开始截断，直到节省 overflow 个 token
+     *
+     * @return 实际节省的 token 数
+     */
+    private int truncateToolResponses(List<Message> step, int overflow) {
+        int saved = 0;
+        for (int i = step.size() - 1; i >= 0 && saved < overflow; i--) {
+            if (!(step.get(i) instanceof ToolResponseMessage toolResponseMessage)) {
+                continue;
+            }
+            List<ToolResponseMessage.ToolResponse> responses = new ArrayList<>(toolResponseMessage.getResponses());
+            for (int j = responses.size() - 1; j >= 0 && saved < overflow; j--) {
+                ToolResponseMessage.ToolResponse response = responses.get(j);
+                String responseData = response.responseData();
+                int responseTokens = estimateTokens(responseData);
+                String marker = String.format(TRUNCATED_MARKER, responseData == null ? 0 : responseData.length());
+                int markerTokens = estimateTokens(marker);
+                if (responseTokens <= markerTokens) {
+                    continue;
+                }
+                // 分段估算存在取整误差，多预留 1 个 token
+                int keepTokens = Math.max(0, responseTokens - (overflow - saved) - markerTokens - 1);
+                String truncated = truncateToTokens(responseData, keepTokens) + marker;
+                saved += responseTokens - estimateTokens(truncated);
+                responses.set(j, new ToolResponseMessage.ToolResponse(response.id(), response.name(), truncated));
+            }
+            step.set(i, new ToolResponseMessage(responses, toolResponseMessage.getMetadata()));
+        }
+        return saved;
+    }
+
+    private ToolResponseMessage compact(ToolResponseMessage toolResponseMessage) {
+        List<ToolResponseMessage.ToolResponse> responses = toolResponseMessage.getResponses().stream()
+                .map(response -> new ToolResponseMessage.ToolResponse(response.id(), response.name(),
+                        extract(response.responseData())))
+                .toList();
+        return new ToolResponseMessage(responses, toolResponseMessage.getMetadata());
+    }
+
+    /**
+     * 抽取式压缩：保留开头的非空行，直到达到字符上限
+     */
+    private String extract(String responseData) {
+        if (responseData == null || responseData.length() <= compactedChars) {
+            return responseData;
+        }
+        StringBuilder extracted = new StringBuilder();
+        for (String line : responseData.lines().filter(StringUtils::isNotBlank).toList()) {
+            if (extracted.length() + line.length() > compactedChars) {
+                int remaining = compactedChars - extracted.length();
+                if (remaining > 0) {
+                    extracted.append(line, 0, remaining);
+                }
+                break;
+            }
+            extracted.append(line.strip()).append('\n');
+        }
+        return extracted.toString().trim() + String.format("\n...(较早的工具结果已压缩，原始长度 %d 字符)", responseData.length());
+    }
+
+    public int estimateTokens(List<Message> messages) {
+        int tokens = 0;
+        for (Message message : messages) {
+            tokens += MESSAGE_OVERHEAD_TOKENS + estimateTokens(message.getText());
+            if (message instanceof AssistantMessage assistantMessage && assistantMessage.getToolCalls() != null) {
+                for (AssistantMessage.ToolCall toolCall : assistantMessage.getToolCalls()) {
+                    tokens += estimateTokens(toolCall.name()) + estimateTokens(toolCall.arguments());
+                }
+            }
+            if (message instanceof ToolResponseMessage toolResponseMessage) {
+                for (ToolResponseMessage.ToolResponse response : toolResponseMessage.getResponses()) {
+                    tokens += estimateTokens(response.responseData());
+                }
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * 截取开头部分，估算 token 数不超过 maxTokens
+     */
+    private static String truncateToTokens(String text, int maxTokens) {
+        int cjk = 0;
+        int others = 0;
+        for (int i = 0; i < text.length(); i++) {
+            if (Character.isIdeographic(text.charAt(i))) {
+                cjk++;
+            } else {
+                others++;
+            }
+            if (cjk + (others + 3) / 4 > maxTokens) {
+                return text.substring(0, i);
+            }
+        }
+        return text;
+    }
+
+    /**
+     * 粗略估算 token 数：中日韩字符按 1 个 token，其余字符按 4 个字符 1 个 token
+     */
+    public static int estimateTokens(String text) {
+        if (text == null || text.isEmpty()) {
+            return 0;
+        }
+        int cjk = 0;
+        int others = 0;
+        for (int i = 0; i < text.length(); i++) {
+            if (Character.isIdeographic(text.charAt(i))) {
+                cjk++;
+            } else {
+                others++;
+            }
+        }
+        return cjk + (others + 3) / 4;
+    }
+}
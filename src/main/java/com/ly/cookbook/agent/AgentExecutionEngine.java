@@ -0,0 +1,190 @@
+package com.ly.cookbook.agent;
+
+import cn.dev33.satoken.stp.StpUtil;
+import com.ly.cookbook.auth.UserRoleResolver;
+import com.ly.cookbook.common.units.AssertUtil;
+import com.ly.cookbook.common.units.CancellationMetrics;
+import com.ly.cookbook.enums.AgentStateEnum;
+import com.ly.cookbook.exception.emun.AgentErrorEnum;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * @author 刘燚
+ * @version v1.0.0
+ * @Description Agent 执行引擎：立即返回 SseEmitter，在专用虚拟线程上执行 run() 与最终总结，
+ * 避免 Agent 运行期间长时间占用 Tomcat 请求线程。客户端断开、超时或连接异常时取消运行，
+ * 中断阻塞中的模型流、工具调用与子进程，不再继续消耗 token
+ * @createDate：2026/10/18 10:12
+ * @email liuyia2022@163.com
+ */
+@Slf4j
+@Component
+public class AgentExecutionEngine {
+
+    /**
+     * Agent 运行专用的虚拟线程执行器，每次运行一个线程
+     */
+    private final ExecutorService agentExecutor = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("agent-run-", 0).factory());
+
+    /**
+     * 同时运行的 Agent 数量上限
+     */
+    private final Semaphore runPermits;
+
+    private final int maxConcurrentRuns;
+
+    private final UserRoleResolver userRoleResolver;
+
+    public AgentExecutionEngine(@Value("${cookbook.agent.max-concurrent-runs:64}") int maxConcurrentRuns,
+                                UserRoleResolver userRoleResolver) {
+        this.maxConcurrentRuns = maxConcurrentRuns;
+        this.userRoleResolver = userRoleResolver;
+        this.runPermits = new Semaphore(maxConcurrentRuns);
+        log.info("Agent 执行引擎初始化完成，最大并发运行数: {}", maxConcurrentRuns);
+    }
+
+    /**
+     * 提交一次流式 Agent 运行，立即返回 SseEmitter
+     *
+     * @param agent   共享的 Agent 运行时
+     * @param context 本次运行的上下文（运行状态互不干扰）
+     * @return SSE 发射器，思考过程与总结内容在运行期间实时推送
+     */
+    public SseEmitter submit(BaseAgent agent, AgentRunContext context) {
+        AssertUtil.isNotBlank(context.getConversationId(), AgentErrorEnum.CONVERSATION_ID_EMPTY);
+        AssertUtil.isNotBlank(context.getUserPrompt(), AgentErrorEnum.INPUT_EMPTY);
+        // 在请求线程上捕获登录用户，切换到虚拟线程后 Sa-Token 上下文不可用
+        context.setUserId(StpUtil.getLoginIdAsLong());
+        context.setUserRole(userRoleResolver.resolve(context.getUserId()));
+        // 容量已满直接拒绝，不在请求线程上排队等待
+        AssertUtil.isTrue(runPermits.tryAcquire(), AgentErrorEnum.SYSTEM_BUSY);
+        SseEmitter sseEmitter = context.getSseEmitter();
+        AtomicReference<String> cancelReason = new AtomicReference<>();
+        sseEmitter.onTimeout(() -> cancel(context, cancelReason, "timeout"));
+        sseEmitter.onError(e -> cancel(context, cancelReason, "error"));
+        sseEmitter.onCompletion(() -> cancel(context, cancelReason, "disconnect"));
+        try {
+            agentExecutor.execute(() -> {
+                try {
+                    agent.runByStream(context);
+                } finally {
+                    context.markDone();
+                    runPermits.release();
+                    if (context.isCancelled()) {
+                        CancellationMetrics.record(CancellationMetrics.TYPE_AGENT,
+                                // SSE 发送失败触发的取消没有经过回调，同样视为客户端断开
+                                Objects.requireNonNullElse(cancelReason.get(), "disconnect"),
+                                estimateTokensSaved(agent, context));
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            runPermits.release();
+            log.error("Agent 执行任务提交失败", e);
+            AssertUtil.putMeg(AgentErrorEnum.SYSTEM_BUSY);
+        }
+        return sseEmitter;
+    }
+
+    /**
+     * 同步执行一次 Agent 运行：与流式运行共用并发上限与执行线程，调用线程阻塞等待最终答案，
+     * 调用线程被中断时取消运行。消耗的 token 由调用方按 context.getUsedToken() 结算
+     *
+     * @param agent   共享的 Agent 运行时
+     * @param context 本次运行的上下文（运行状态互不干扰）
+     * @return 最终答案
+     */
+    public String runBySync(BaseAgent agent, AgentRunContext context) {
+        AssertUtil.isNotBlank(context.getConversationId(), AgentErrorEnum.CONVERSATION_ID_EMPTY);
+        AssertUtil.isNotBlank(context.getUserPrompt(), AgentErrorEnum.INPUT_EMPTY);
+        context.setUserId(StpUtil.getLoginIdAsLong());
+        context.setUserRole(userRoleResolver.resolve(context.getUserId()));
+        AssertUtil.isTrue(runPermits.tryAcquire(), AgentErrorEnum.SYSTEM_BUSY);
+        Future<String> future;
+        try {
+            future = agentExecutor.submit(() -> {
+                try {
+                    return agent.runBySync(context);
+                } finally {
+                    context.markDone();
+                    runPermits.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            runPermits.release();
+            log.error("Agent 执行任务提交失败", e);
+            AssertUtil.putMeg(AgentErrorEnum.SYSTEM_BUSY);
+            return null;
+        }
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            // 请求线程被中断（如服务关闭），取消运行，不再继续消耗 token
+            context.cancel();
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Agent 运行被中断", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IllegalStateException("Agent 执行异常", e.getCause());
+        }
+    }
+
+    /**
+     * SseEmitter 回调中取消运行，运行已正常结束时忽略
+     */
+    private void cancel(AgentRunContext context, AtomicReference<String> cancelReason, String reason) {
+        if (context.cancel()) {
+            cancelReason.set(reason);
+            log.info("客户端已断开（{}），取消 Agent 运行，会话: {}, 已执行步骤: {}, 已消耗 token: {}",
+                    reason, context.getConversationId(), context.getCurrentStep(), context.getUsedToken());
+        }
+    }
+
+    /**
+     * 估算取消节省的 token：按已执行步骤的平均 token 消耗，乘以剩余步骤数，
+     * 总结阶段尚未开始时再计入一次总结调用
+     */
+    static long estimateTokensSaved(BaseAgent agent, AgentRunContext context) {
+        int executedSteps = context.getCurrentStep();
+        if (executedSteps <= 0 || context.getUsedToken() <= 0) {
+            return 0;
+        }
+        long tokensPerStep = context.getUsedToken() / executedSteps;
+        int remainingSteps = context.getState() == AgentStateEnum.FINISHED ? 0 : agent.getMaxSteps() - executedSteps;
+        return tokensPerStep * (Math.max(remainingSteps, 0) + (context.isSummaryStarted() ? 0 : 1));
+    }
+
+    /**
+     * 当前正在运行的 Agent 数量
+     */
+    public int getActiveRuns() {
+        return maxConcurrentRuns - runPermits.availablePermits();
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        agentExecutor.shutdown();
+        if (!agentExecutor.awaitTermination(30, TimeUnit.SECONDS)) {
+            log.warn("Agent 执行引擎关闭超时，仍有 {} 个运行未结束", getActiveRuns());
+            agentExecutor.shutdownNow();
+        }
+    }
+}
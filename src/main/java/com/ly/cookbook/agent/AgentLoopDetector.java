@@ -0,0 +1,129 @@
+package com.ly.cookbook.agent;
+
+import com.ly.cookbook.cache.ToolResultCache;
+import io.micrometer.core.instrument.Metrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.tool.ToolCallback;
+
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * @author 刘燚
+ * @version v1.0.0
+ * @Description Agent 循环检测：识别连续重复或交替往复的工具调用模式，
+ * 重复调用由运行内备忘直接应答，连续多步没有获得新信息时提前结束运行并强制进入总结
+ * @createDate：2026/10/18 17:10
+ * @email liuyia2022@163.com
+ */
+@Slf4j
+public class AgentLoopDetector {
+
+    public static final int DEFAULT_MAX_STALLED_STEPS = 2;
+
+    /**
+     * 有副作用的工具：不备忘，执行后清空本次运行的备忘
+     */
+    private static final Set<String> SIDE_EFFECT_TOOLS = Set.of(
+            "executeCommand", "executeCommandWithTimeout", "writeText", "downloadFile", "downloadFileAuto"
+    );
+
+    /**
+     * 不参与备忘的工具
+     */
+    private static final Set<String> NON_MEMOIZABLE_TOOLS = Set.of("doTerminate");
+
+    /**
+     * 连续多少步没有进展后提前结束
+     */
+    private final int maxStalledSteps;
+
+    public AgentLoopDetector() {
+        this(DEFAULT_MAX_STALLED_STEPS);
+    }
+
+    public AgentLoopDetector(int maxStalledSteps) {
+        this.maxStalledSteps = maxStalledSteps;
+    }
+
+    /**
+     * 为本次运行包装备忘层
+     */
+    public ToolCallback[] memoize(ToolCallback[] toolCallbacks, AgentRunContext context) {
+        ToolCallback[] memoized = new ToolCallback[toolCallbacks.length];
+        for (int i = 0; i < toolCallbacks.length; i++) {
+            memoized[i] = new MemoizingToolCallback(toolCallbacks[i], context, this);
+        }
+        return memoized;
+    }
+
+    public boolean isMemoizable(String toolName) {
+        return !SIDE_EFFECT_TOOLS.contains(toolName) && !NON_MEMOIZABLE_TOOLS.contains(toolName);
+    }
+
+    public boolean hasSideEffect(String toolName) {
+        return SIDE_EFFECT_TOOLS.contains(toolName);
+    }
+
+    public String memoKey(String toolName, String toolInput) {
+        return toolName + ":" + ToolResultCache.canonicalize(toolInput);
+    }
+
+    /**
+     * 执行前统计能由备忘应答的工具调用数量
+     */
+    public int countMemoHits(AgentRunContext context, List<AssistantMessage.ToolCall> toolCalls) {
+        int hits = 0;
+        for (AssistantMessage.ToolCall toolCall : toolCalls) {
+            if (isMemoizable(toolCall.name())
+                    && context.getToolCallMemo().containsKey(memoKey(toolCall.name(), toolCall.arguments()))) {
+                hits++;
+            }
+        }
+        if (hits > 0) {
+            Metrics.counter("cookbook.agent.loop", "event", "memo_hit").increment(hits);
+        }
+        return hits;
+    }
+
+    /**
+     * 记录一步的工具调用并判断是否应提前结束：
+     * 与上一步完全相同、与前两步构成 A-B-A-B 往复、或全部由备忘应答，均视为没有进展
+     *
+     * @param memoHits 本步由备忘应答的调用数量
+     * @return 连续没有进展的步数达到上限时返回 true
+     */
+    public boolean recordStep(AgentRunContext context, List<AssistantMessage.ToolCall> toolCalls, int memoHits) {
+        List<String> signatures = context.getToolCallSignatures();
+        signatures.add(signature(toolCalls));
+        int n = signatures.size();
+        boolean repeated = n >= 2 && signatures.get(n - 1).equals(signatures.get(n - 2));
+        boolean cyclic = n >= 4 && signatures.get(n - 1).equals(signatures.get(n - 3))
+                && signatures.get(n - 2).equals(signatures.get(n - 4));
+        boolean noNewInformation = memoHits == toolCalls.size();
+        if (repeated || cyclic || noNewInformation) {
+            context.setStalledSteps(context.getStalledSteps() + 1);
+            log.warn("检测到重复的工具调用（重复: {}, 往复: {}, 全部命中备忘: {}），连续无进展步数: {}/{}",
+                    repeated, cyclic, noNewInformation, context.getStalledSteps(), maxStalledSteps);
+        } else {
+            context.setStalledSteps(0);
+        }
+        if (context.getStalledSteps() >= maxStalledSteps) {
+            Metrics.counter("cookbook.agent.loop", "event", "early_stop").increment();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * 一步的调用签名：各工具调用的 名称 + 规范化参数，排序后拼接，与调用顺序无关
+     */
+    private String signature(List<AssistantMessage.ToolCall> toolCalls) {
+        return toolCalls.stream()
+                .map(toolCall -> memoKey(toolCall.name(), toolCall.arguments()))
+                .sorted()
+                .collect(Collectors.joining("|"));
+    }
+}
@@ -0,0 +1,52 @@
+package com.ly.cookbook.agent;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @author 刘燚
+ * @version v1.0.0
+ * @Description 计划执行模式下规划调用返回的执行计划：一组带依赖关系的工具调用（DAG），
+ * 不需要工具时直接给出答案
+ * @createDate：2026/10/18 18:02
+ * @email liuyia2022@163.com
+ */
+@Data
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class AgentPlan {
+
+    /**
+     * 待执行的工具调用
+     */
+    private List<Task> tasks = new ArrayList<>();
+
+    /**
+     * 不需要调用工具时模型直接给出的答案
+     */
+    private String answer;
+
+    @Data
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class Task {
+        /**
+         * 任务ID，计划内唯一
+         */
+        private String id;
+        /**
+         * 工具名称
+         */
+        private String tool;
+        /**
+         * 工具参数，字符串参数中的 {{任务ID}} 会被替换为该依赖任务的结果
+         */
+        private Map<String, Object> arguments;
+        /**
+         * 依赖的任务ID，依赖全部完成后才会执行
+         */
+        private List<String> dependsOn = new ArrayList<>();
+    }
+}
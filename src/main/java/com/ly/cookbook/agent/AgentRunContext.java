@@ -0,0 +1,189 @@
+package com.ly.cookbook.agent;
+
+import com.ly.cookbook.enums.AgentStateEnum;
+import com.ly.cookbook.enums.SummaryModeEnum;
+import com.ly.cookbook.sse.SseChunkStream;
+import com.ly.cookbook.sse.SseChunkWriter;
+import lombok.AccessLevel;
+import lombok.Data;
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * @author 刘燚
+ * @version v1.0.0
+ * @Description Agent 单次运行的上下文，保存一次运行期间的全部可变状态。
+ * Agent 本身只持有不可变的运行时配置（ChatClient、工具、提示词等），可被多个运行并发共享
+ * @createDate：2026/10/18 11:05
+ * @email liuyia2022@163.com
+ */
+@Data
+public class AgentRunContext {
+    /**
+     * 会话ID
+     */
+    private final String conversationId;
+    /**
+     * 用户原始提问
+     */
+    private final String userPrompt;
+    /**
+     * SSE 发射器，同步运行时为 null
+     */
+    private final SseEmitter sseEmitter;
+    /**
+     * 发起本次运行的用户ID，需在请求线程上捕获（虚拟线程中无法访问 Sa-Token 上下文）
+     */
+    private Long userId;
+    /**
+     * 发起本次运行的用户角色，决定模型调用的排队优先级，与 userId 一同在请求线程上解析
+     */
+    private String userRole;
+    private AgentStateEnum state = AgentStateEnum.IDLE;
+    private Integer currentStep = 0;
+    private List<Message> chatMessage = new ArrayList<>();
+    private Long usedToken = 0L;
+    /**
+     * usedToken 中已经结算过的部分：恢复的运行从检查点继承，被中断的原运行已结算，只结算之后新增的部分
+     */
+    private Long chargedToken = 0L;
+    /**
+     * 本次运行持有的会话租约令牌，运行结束时释放；子 Agent 运行与未启用检查点时为 null
+     */
+    private volatile String leaseToken;
+    /**
+     * 最近一次思考的 LLM 响应（包含待执行的工具调用）
+     */
+    private ChatResponse toolCallChatResponse;
+    /**
+     * 最终总结模式
+     */
+    private SummaryModeEnum summaryMode = SummaryModeEnum.DIGEST;
+    /**
+     * 最后一次思考未调用工具时模型给出的回答，直出模式下直接作为最终答案
+     */
+    private String finalAnswer;
+    /**
+     * 运行内工具调用备忘：工具名称 + 规范化参数 -> 工具结果（工具并行执行，需线程安全）
+     */
+    private Map<String, String> toolCallMemo = new ConcurrentHashMap<>();
+    /**
+     * 每一步的工具调用签名，用于识别重复与往复调用
+     */
+    private List<String> toolCallSignatures = new ArrayList<>();
+    /**
+     * 连续没有进展的步数
+     */
+    private Integer stalledSteps = 0;
+    /**
+     * 整棵运行树共享的步骤与 token 预算，独立运行时为 null
+     */
+    private AgentBudget budget;
+    /**
+     * 每一步完成后的回调，用于向上层推送子 Agent 进度
+     */
+    private Consumer<String> stepListener;
+    /**
+     * 是否从检查点恢复的运行，恢复的运行不再重新加载记忆与用户问题
+     */
+    private boolean resumed;
+    /**
+     * 是否可以写入语义缓存（会话的第一个问题且不是子 Agent 运行）
+     */
+    private boolean semanticCacheable;
+    /**
+     * 是否命中语义缓存，命中时最终答案即缓存的回答
+     */
+    private boolean semanticCacheHit;
+    /**
+     * 是否执行过非只读工具（写文件、执行命令、下载等），执行过的运行不写入语义缓存
+     */
+    private volatile boolean nonReadOnlyToolExecuted;
+    /**
+     * 是否已进入最终总结阶段
+     */
+    private volatile boolean summaryStarted;
+    /**
+     * 取消标记：客户端断开、超时或上层运行被取消时置位，运行循环与各阶段据此协作退出
+     */
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private final AtomicBoolean cancelled = new AtomicBoolean(false);
+    /**
+     * 执行本次运行的线程，取消时中断该线程以打断阻塞中的模型流与工具调用
+     */
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private volatile Thread runThread;
+    /**
+     * 运行是否已正常结束，结束后不再响应取消
+     */
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private volatile boolean done;
+    /**
+     * SSE 合并写出流，首次推送时创建
+     */
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private SseChunkStream sseStream;
+
+    /**
+     * 获取本次运行的 SSE 写出流，协调 Agent 的子任务会并发推送进度，创建过程需加锁
+     *
+     * @param onFailure 写出失败时的回调
+     */
+    public synchronized SseChunkStream sseStream(SseChunkWriter writer, Consumer<Exception> onFailure) {
+        if (sseStream == null) {
+            sseStream = writer.open(sseEmitter, onFailure);
+        }
+        return sseStream;
+    }
+
+    /**
+     * 绑定执行本次运行的线程，绑定前已被取消时立即中断
+     */
+    public void bindRunThread(Thread thread) {
+        this.runThread = thread;
+        if (cancelled.get()) {
+            thread.interrupt();
+        }
+    }
+
+    /**
+     * 取消本次运行：置位取消标记并中断执行线程
+     *
+     * @return 本次调用是否真正触发了取消（已结束或已取消时返回 false）
+     */
+    public boolean cancel() {
+        if (done || !cancelled.compareAndSet(false, true)) {
+            return false;
+        }
+        Thread thread = runThread;
+        if (thread != null) {
+            thread.interrupt();
+        }
+        return true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled.get();
+    }
+
+    /**
+     * 标记运行正常结束，需在 SseEmitter.complete() 之前调用，避免完成回调误判为取消
+     */
+    public void markDone() {
+        this.done = true;
+    }
+}
@@ -1,11 +1,20 @@
 package com.ly.cookbook.agent;
 
 import cn.dev33.satoken.stp.StpUtil;
+import com.ly.cookbook.advisor.LlmPriorityAdvisor;
+import com.ly.cookbook.cache.SemanticAnswerCache;
+import com.ly.cookbook.sse.SseChunkStream;
+import com.ly.cookbook.sse.SseChunkWriter;
+import com.ly.cookbook.common.constant.UserConstant;
 import com.ly.cookbook.common.units.AssertUtil;
 import com.ly.cookbook.common.units.SpringContextUtil;
 import com.ly.cookbook.enums.AgentStateEnum;
+import com.ly.cookbook.enums.SummaryModeEnum;
 import com.ly.cookbook.exception.emun.AgentErrorEnum;
 import com.ly.cookbook.service.TokenStatisticsService;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
 import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
@@ -17,13 +26,15 @@ import org.springframework.ai.chat.messages.ToolResponseMessage;
 import org.springframework.ai.chat.messages.UserMessage;
 import org.springframework.ai.chat.metadata.Usage;
 import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
 import org.springframework.ai.chat.prompt.Prompt;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 import reactor.core.publisher.Flux;
 
-import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
 
 /**
@@ -36,169 +47,437 @@ import java.util.concurrent.atomic.AtomicReference;
 @Data
 @Slf4j
 public abstract class BaseAgent {
-    private AgentStateEnum state = AgentStateEnum.IDLE;
+    /**
+     * 流式运行的 SSE 超时时间（毫秒）
+     */
+    private static final long SSE_TIMEOUT = 1000000L;
+    /**
+     * 摘要模式下单个工具结果保留的最大字符数
+     */
+    private static final int DIGEST_TOOL_RESULT_CHARS = 500;
+    /**
+     * 只读工具，只调用过这些工具的运行才写入语义缓存
+     */
+    private static final Set<String> READ_ONLY_TOOLS = Set.of(
+            "webSearch", "searchSimple", "fetchWebPageText", "fetchWebPageHtml", "fetchWebPageElements",
+            "fetchWebPageTitle", "readText", "listDirectory", "getCurrentDirectory", "doTerminate"
+    );
+    // ========== 以下为不可变的运行时配置，构造完成后在所有运行间共享 ==========
     private String name;
     private String systemPrompt;
     private String nextStepPrompt;
     private String finalSummaryPrompt;
     private final Integer maxSteps = 10;
-    private Integer currentStep = 0;
     private ChatClient chatClient;
-    private List<Message> chatMessage = new ArrayList<>();
-    private String currentConversationId;
     private ChatMemory pgChatMemory;
-    private SseEmitter sseEmitter;
-    private Long usedToken = 0L;
+    /**
+     * 检查点存储，为 null 时不保存检查点
+     */
+    private AgentCheckpointStore checkpointStore;
+    /**
+     * 语义回答缓存，为 null 时不缓存 Agent 的最终回答
+     */
+    private SemanticAnswerCache semanticAnswerCache;
+    /**
+     * SSE 分片写出器，为 null 时每个分片立即写出
+     */
+    private SseChunkWriter sseWriter;
 
+    /**
+     * 创建一次流式运行的上下文
+     */
+    public AgentRunContext createStreamContext(String conversationId, String userPrompt) {
+        return new AgentRunContext(conversationId, userPrompt, createSseEmitter());
+    }
+
+    public SseEmitter createSseEmitter() {
+        return new SseEmitter(SSE_TIMEOUT);
+    }
 
     public String run(String conversationId, String userPrompt) {
+        return run(new AgentRunContext(conversationId, userPrompt, null));
+    }
+
+    public String run(AgentRunContext context) {
+        String conversationId = context.getConversationId();
+        String userPrompt = context.getUserPrompt();
         AssertUtil.isNotBlank(conversationId, AgentErrorEnum.CONVERSATION_ID_EMPTY);
-        AssertUtil.isEquals(AgentStateEnum.IDLE, state, AgentErrorEnum.SYSTEM_BUSY);
         AssertUtil.isNotBlank(userPrompt, AgentErrorEnum.INPUT_EMPTY);
-        // 开始执行,变更状态
-        state = AgentStateEnum.RUNNING;
-        //设置当前会话ID
-        currentConversationId = conversationId;
-
-        log.info("Agent 开始执行");
-
         List<String> result = new ArrayList<>();
-        //加载聊天记录
-        chatMessage.addAll(pgChatMemory.get(conversationId));
-        //加载用户提问
-        chatMessage.add(new UserMessage(userPrompt));
+        if (context.isResumed()) {
+            // 从检查点恢复：历史、步骤与 token 已还原，只差总结的运行直接进入总结
+            log.info("Agent 从第 {} 步恢复执行，会话: {}", context.getCurrentStep(), conversationId);
+            if (context.getState() != AgentStateEnum.FINISHED) {
+                context.setState(AgentStateEnum.RUNNING);
+            }
+        } else {
+            AssertUtil.isEquals(AgentStateEnum.IDLE, context.getState(), AgentErrorEnum.SYSTEM_BUSY);
+            // 开始执行,变更状态
+            context.setState(AgentStateEnum.RUNNING);
+            log.info("Agent 开始执行");
+            //加载聊天记录
+            context.getChatMessage().addAll(pgChatMemory.get(conversationId));
+            lookupSemanticCache(context);
+            //加载用户提问
+            context.getChatMessage().add(new UserMessage(userPrompt));
+        }
+        holdLease(context);
+        context.bindRunThread(Thread.currentThread());
         try {
-            while (currentStep < maxSteps && state != AgentStateEnum.FINISHED) {
-                currentStep++;
-                log.info("当前步骤：{}/{}", currentStep, maxSteps);
-                String stepResult = step();
-                String formatResult = String.format("当前步骤：%s/%s,当前步骤结果：%s", currentStep, maxSteps, stepResult);
+            AgentBudget budget = context.getBudget();
+            while (context.getCurrentStep() < maxSteps && context.getState() != AgentStateEnum.FINISHED
+                    && !context.isCancelled()) {
+                // 子 Agent 共享整棵运行树的步骤与 token 预算
+                if (budget != null && !budget.tryAcquireStep()) {
+                    context.setState(AgentStateEnum.FINISHED);
+                    result.add("已达到整体预算，提前结束");
+                    break;
+                }
+                context.setCurrentStep(context.getCurrentStep() + 1);
+                log.info("当前步骤：{}/{}", context.getCurrentStep(), maxSteps);
+                long usedTokenBefore = context.getUsedToken();
+                String stepResult = step(context);
+                String formatResult = String.format("当前步骤：%s/%s,当前步骤结果：%s", context.getCurrentStep(), maxSteps, stepResult);
                 result.add(formatResult);
+                if (budget != null) {
+                    budget.addTokens(context.getUsedToken() - usedTokenBefore);
+                }
+                if (context.getStepListener() != null) {
+                    context.getStepListener().accept(formatResult);
+                }
+                // 被取消的步骤结果不完整，不覆盖上一步的检查点
+                if (!context.isCancelled()) {
+                    saveCheckpoint(context);
+                }
             }
-            if (currentStep >= maxSteps) {
-                state = AgentStateEnum.FINISHED;
+            if (context.isCancelled()) {
+                result.add("客户端已断开，运行已取消");
+                log.info("Agent 运行已取消，会话: {}, 已执行步骤: {}", conversationId, context.getCurrentStep());
+            } else if (context.getCurrentStep() >= maxSteps) {
+                context.setState(AgentStateEnum.FINISHED);
                 result.add(String.format("当前步骤已超过最大步骤数，请重新提问 maxStep (%s)", maxSteps));
             }
         } catch (Exception e) {
-            state = AgentStateEnum.ERROR;
+            context.setState(AgentStateEnum.ERROR);
             log.error("Agent 执行异常", e);
             return String.format("Agent 执行异常：%s", e.getMessage());
         }
         return String.join("\n", result);
     }
 
-    public SseEmitter runByStream(String conversationId, String userPrompt) {
+    public SseEmitter runByStream(AgentRunContext context) {
+        SseEmitter sseEmitter = context.getSseEmitter();
         try {
-            run(conversationId, userPrompt);
-            finalSummaryByStream(userPrompt);
+            run(context);
+            if (context.isCancelled()) {
+                // 客户端已断开：不再生成总结，只结算已经消耗的 token
+                chargeCancelledRun(context);
+                return sseEmitter;
+            }
+            finalSummaryByStream(context);
         } catch (Exception e) {
             log.error("Agent 执行异常", e);
+            context.markDone();
+            settleCheckpoint(context);
+            sseStream(context).completeWithError(e);
         } finally {
-            clear();
+            releaseLease(context);
         }
         return sseEmitter;
     }
 
     public String runBySync(String conversationId, String userPrompt){
-        run(conversationId, userPrompt);
-        return finalSummaryBySync(userPrompt);
+        return runBySync(conversationId, userPrompt, SummaryModeEnum.DIGEST);
     }
 
-    public void finalSummaryByStream(String userRawInput) {
-        Long userId = StpUtil.getLoginIdAsLong();
-        // 发送思考过程完成的提示
+    public String runBySync(String conversationId, String userPrompt, SummaryModeEnum summaryMode){
+        AgentRunContext context = new AgentRunContext(conversationId, userPrompt, null);
+        context.setSummaryMode(summaryMode);
+        return runBySync(context);
+    }
+
+    public String runBySync(AgentRunContext context) {
         try {
-            sseEmitter.send(SseEmitter.event()
-                    .name("thinking")
-                    .data("思考完成，正在生成总结..."));
-        } catch (IOException e) {
-            throw new RuntimeException(e);
+            run(context);
+            return finalSummaryBySync(context);
+        } finally {
+            releaseLease(context);
         }
+    }
 
-        // 构建总结上下文：包含完整的思考和执行过程
-        StringBuilder summaryContext = new StringBuilder();
-        summaryContext.append("【用户原始问题】\n").append(userRawInput).append("\n\n");
-        summaryContext.append("【Agent执行过程】\n");
-        
-        // 提取并格式化 agent 的思考内容
-        for (int i = 0; i < getChatMessage().size(); i++) {
-            Message msg = getChatMessage().get(i);
-            if (msg instanceof AssistantMessage assistantMsg) {
-                // 记录 AI 的思考和决策
-                if (assistantMsg.getToolCalls() != null && !assistantMsg.getToolCalls().isEmpty()) {
-                    summaryContext.append("- 决策：调用工具 ");
-                    assistantMsg.getToolCalls().forEach(toolCall -> 
-                        summaryContext.append(String.format("[%s]", toolCall.name()))
-                    );
-                    summaryContext.append("\n");
-                }
-                if (StringUtils.isNotBlank(assistantMsg.getText())) {
-                    summaryContext.append("- 思考：").append(assistantMsg.getText()).append("\n");
-                }
-            } else if (msg instanceof ToolResponseMessage toolResponseMsg) {
-                // 记录工具执行结果
-                toolResponseMsg.getResponses().forEach(response -> {
-                    summaryContext.append(String.format("- 工具 [%s] 执行结果：%s\n", 
-                        response.name(), 
-                        response.responseData()));
-                });
-            }
+    public void finalSummaryByStream(AgentRunContext context) {
+        Long userId = context.getUserId() != null ? context.getUserId() : StpUtil.getLoginIdAsLong();
+        SseEmitter sseEmitter = context.getSseEmitter();
+        SseChunkStream sseStream = sseStream(context);
+        String userRawInput = context.getUserPrompt();
+        SummaryModeEnum summaryMode = resolveSummaryMode(context);
+        context.setSummaryStarted(true);
+        // 发送思考过程完成的提示
+        if (!sseStream.send("thinking", summaryMode == SummaryModeEnum.DIRECT ? "思考完成，正在输出答案..." : "思考完成，正在生成总结...")) {
+            throw new IllegalStateException("客户端已断开，运行已取消");
         }
-        
-        // 添加总结提示词，并附带格式化的执行过程
-        String finalPrompt = getFinalSummaryPrompt() + "\n\n" + summaryContext.toString();
-        getChatMessage().add(new UserMessage(finalPrompt));
-        
-        Prompt prompt = new Prompt(getChatMessage());
-        Flux<ChatResponse> content = chatClient.prompt(prompt)
-                .stream()
-                .chatResponse();
+
+        long start = System.nanoTime();
+        Flux<ChatResponse> content = summaryMode == SummaryModeEnum.DIRECT
+                ? Flux.just(new ChatResponse(List.of(new Generation(new AssistantMessage(context.getFinalAnswer())))))
+                : chatClient.prompt(buildSummaryPrompt(context, summaryMode))
+                        .advisors(a -> a.param(LlmPriorityAdvisor.USER_ROLE, userRoleOf(context)))
+                        .stream()
+                        .chatResponse();
         // 使用带 ChatResponse 的方法，以便获取 Token 统计信息
         AtomicReference<Usage> usageRef = new AtomicReference<>();
         StringBuilder text = new StringBuilder();
-        content.subscribe(
-                        chatResponse -> {
-                            try {
-                                String chunk = chatResponse.getResult().getOutput().getText();
-                                // ✅ 使用自定义事件类型 "content" 发送总结内容
-                                sseEmitter.send(SseEmitter.event()
-                                        .name("content")
-                                        .data(chunk));
-                                text.append(chunk);
-                                if (chatResponse.getMetadata() != null && chatResponse.getMetadata().getUsage() != null){
-                                    usageRef.set(chatResponse.getMetadata().getUsage());
-                                }
-                            } catch (IOException e) {
-                                sseEmitter.completeWithError(e);
-                            }
-                        },
-                        sseEmitter::completeWithError,
-                        sseEmitter::complete
-                );
         sseEmitter.onCompletion(() -> {
             // 保存到聊天记录（只保存原始问题和最终答案，不保存中间过程）
-            Long token = getUsedToken() + usageRef.get().getTotalTokens();
+            // 恢复的运行只结算原运行结算之后新增的 token
+            Usage usage = usageRef.get();
+            Long token = context.getUsedToken() - context.getChargedToken() + (usage != null ? usage.getTotalTokens() : 0);
+            context.setChargedToken(context.getUsedToken());
             TokenStatisticsService tokenStatisticsService = (TokenStatisticsService) SpringContextUtil.getBean("tokenStatisticsService");
             tokenStatisticsService.updateUserToken(userId, token);
-            pgChatMemory.add(getCurrentConversationId(), new UserMessage(userRawInput));
-            pgChatMemory.add(getCurrentConversationId(), new AssistantMessage(text.toString()));
+            // 总结被取消时答案不完整，不写入聊天记录
+            if (!context.isCancelled()) {
+                pgChatMemory.add(context.getConversationId(), new UserMessage(userRawInput));
+                pgChatMemory.add(context.getConversationId(), new AssistantMessage(text.toString()));
+            }
         });
+        // 运行在 Agent 执行线程上，阻塞等待总结流结束，保证执行容量在整个运行期间被占用
+        try {
+            content.doOnNext(chatResponse -> {
+                        String chunk = chatResponse.getResult().getOutput().getText();
+                        // ✅ 使用自定义事件类型 "content" 发送总结内容，连续分片合并后写出
+                        if (!sseStream.append("content", chunk)) {
+                            // 客户端已断开，运行已取消，停止消费模型输出
+                            throw new IllegalStateException("客户端已断开，运行已取消");
+                        }
+                        text.append(chunk);
+                        if (chatResponse.getMetadata() != null && chatResponse.getMetadata().getUsage() != null){
+                            usageRef.set(chatResponse.getMetadata().getUsage());
+                        }
+                    })
+                    .blockLast();
+            recordSummary(summaryMode, start, usageRef.get());
+            putSemanticCache(context, text.toString());
+            deleteCheckpoint(context);
+            context.markDone();
+            sseStream.complete();
+        } catch (Exception e) {
+            log.error("Agent 总结输出异常", e);
+            context.markDone();
+            settleCheckpoint(context);
+            sseStream.completeWithError(e);
+        }
     }
 
-    public String finalSummaryBySync(String userRawInput) {
-        // 构建总结上下文：包含完整的思考和执行过程
+    public String finalSummaryBySync(AgentRunContext context) {
+        SummaryModeEnum summaryMode = resolveSummaryMode(context);
+        long start = System.nanoTime();
+        String text;
+        if (summaryMode == SummaryModeEnum.DIRECT) {
+            text = context.getFinalAnswer();
+            recordSummary(summaryMode, start, null);
+        } else {
+            // 调用 LLM 生成最终总结
+            ChatResponse chatResponse = chatClient.prompt(buildSummaryPrompt(context, summaryMode))
+                    .advisors(a -> a.param(LlmPriorityAdvisor.USER_ROLE, userRoleOf(context)))
+                    .call()
+                    .chatResponse();
+            text = chatResponse.getResult().getOutput().getText();
+            Usage usage = chatResponse.getMetadata().getUsage();
+            recordSummary(summaryMode, start, usage);
+            // 同步运行由调用方按 usedToken 结算，总结消耗一并计入
+            if (usage != null && usage.getTotalTokens() != null) {
+                context.setUsedToken(context.getUsedToken() + usage.getTotalTokens());
+            }
+        }
+
+        // 保存到聊天记录（只保存原始问题和最终答案，不保存中间过程）
+        pgChatMemory.add(context.getConversationId(), new UserMessage(context.getUserPrompt()));
+        pgChatMemory.add(context.getConversationId(), new AssistantMessage(text));
+        putSemanticCache(context, text);
+        deleteCheckpoint(context);
+
+        return text;
+    }
+
+    /**
+     * 每步完成后保存检查点；子 Agent 运行由协调 Agent 整体管理，不单独保存
+     */
+    private void saveCheckpoint(AgentRunContext context) {
+        if (checkpointStore != null && context.getBudget() == null) {
+            checkpointStore.save(name, context);
+        }
+    }
+
+    private void deleteCheckpoint(AgentRunContext context) {
+        if (checkpointStore != null && context.getBudget() == null) {
+            checkpointStore.delete(context.getConversationId());
+        }
+    }
+
+    /**
+     * 运行被取消或异常中断，已消耗的 token 已结算：检查点中的 token 标记为已结算
+     */
+    private void settleCheckpoint(AgentRunContext context) {
+        if (checkpointStore != null && context.getBudget() == null) {
+            checkpointStore.markSettled(context.getConversationId());
+        }
+    }
+
+    /**
+     * 运行开始时持有会话租约，租约存活期间不允许恢复；恢复的运行已在恢复请求中抢占租约
+     */
+    private void holdLease(AgentRunContext context) {
+        if (checkpointStore != null && context.getBudget() == null && context.getLeaseToken() == null) {
+            context.setLeaseToken(checkpointStore.acquireLease(context.getConversationId()));
+        }
+    }
+
+    /**
+     * 运行结束（完成、取消或异常）后释放租约
+     */
+    private void releaseLease(AgentRunContext context) {
+        String leaseToken = context.getLeaseToken();
+        if (checkpointStore != null && leaseToken != null) {
+            context.setLeaseToken(null);
+            checkpointStore.releaseLease(context.getConversationId(), leaseToken);
+        }
+    }
+
+    /**
+     * 会话的第一个问题才查询语义缓存：已有历史时回答依赖上下文，子 Agent 的问题由协调 Agent 生成，
+     * 未登录的运行无法按用户隔离，均不缓存。命中时直接以缓存的回答作为最终答案，跳过推理循环与总结调用
+     */
+    private void lookupSemanticCache(AgentRunContext context) {
+        if (semanticAnswerCache == null || context.getBudget() != null || context.getUserId() == null
+                || !context.getChatMessage().isEmpty()) {
+            return;
+        }
+        context.setSemanticCacheable(true);
+        String answer = semanticAnswerCache.get(semanticCacheScope(context), context.getUserPrompt());
+        if (answer != null) {
+            log.info("Agent 命中语义缓存，会话: {}", context.getConversationId());
+            context.setSemanticCacheHit(true);
+            context.setFinalAnswer(answer);
+            context.setSummaryMode(SummaryModeEnum.DIRECT);
+            context.setState(AgentStateEnum.FINISHED);
+        }
+    }
+
+    /**
+     * 执行过非只读工具的运行不写入语义缓存，重放其回答不会重新产生写文件、执行命令等副作用
+     */
+    private void putSemanticCache(AgentRunContext context, String answer) {
+        if (semanticAnswerCache != null && context.isSemanticCacheable() && !context.isSemanticCacheHit()
+                && !context.isNonReadOnlyToolExecuted()
+                && !context.isCancelled() && context.getState() == AgentStateEnum.FINISHED) {
+            semanticAnswerCache.put(semanticCacheScope(context), context.getUserPrompt(), answer);
+        }
+    }
+
+    /**
+     * 语义缓存按 Agent 与用户隔离，回答可能包含工具读取到的该用户运行环境中的内容
+     */
+    private String semanticCacheScope(AgentRunContext context) {
+        return "agent:" + name + ":" + context.getUserId();
+    }
+
+    /**
+     * 记录本步将要执行的工具调用，包含非只读工具时标记本次运行
+     */
+    protected void recordToolCalls(AgentRunContext context, List<AssistantMessage.ToolCall> toolCalls) {
+        if (toolCalls.stream().anyMatch(toolCall -> !READ_ONLY_TOOLS.contains(toolCall.name()))) {
+            context.setNonReadOnlyToolExecuted(true);
+        }
+    }
+
+    /**
+     * 结算被取消运行尚未结算的 token，总结阶段开始前取消时调用（总结开始后由完成回调结算），
+     * 结算后标记检查点允许恢复
+     */
+    private void chargeCancelledRun(AgentRunContext context) {
+        // 清除取消留下的中断标记，否则获取数据库连接会失败
+        Thread.interrupted();
+        long token = context.getUsedToken() - context.getChargedToken();
+        if (context.getUserId() != null && token > 0) {
+            TokenStatisticsService tokenStatisticsService = (TokenStatisticsService) SpringContextUtil.getBean("tokenStatisticsService");
+            tokenStatisticsService.updateUserToken(context.getUserId(), token);
+        }
+        context.setChargedToken(context.getUsedToken());
+        settleCheckpoint(context);
+        sseStream(context).completeWithError(new IllegalStateException("客户端已断开，运行已取消"));
+    }
+
+    /**
+     * 确定本次运行实际使用的总结模式：直出模式要求模型已经给出最终答案，否则退化为摘要模式
+     */
+    private SummaryModeEnum resolveSummaryMode(AgentRunContext context) {
+        SummaryModeEnum summaryMode = context.getSummaryMode() != null ? context.getSummaryMode() : SummaryModeEnum.DIGEST;
+        if (summaryMode == SummaryModeEnum.DIRECT && StringUtils.isBlank(context.getFinalAnswer())) {
+            log.info("模型未给出最终答案（{}），直出模式退化为摘要模式", context.getState());
+            return SummaryModeEnum.DIGEST;
+        }
+        return summaryMode;
+    }
+
+    /**
+     * 构建总结请求：
+     * FULL 发送全部运行消息 + 完整执行过程；DIGEST 只发送用户原始问题 + 压缩后的执行过程摘要
+     */
+    private Prompt buildSummaryPrompt(AgentRunContext context, SummaryModeEnum summaryMode) {
+        if (summaryMode == SummaryModeEnum.FULL) {
+            // 添加总结提示词，并附带格式化的执行过程
+            context.getChatMessage().add(new UserMessage(buildFinalPrompt(context, Integer.MAX_VALUE)));
+            return new Prompt(context.getChatMessage());
+        }
+        return new Prompt(new UserMessage(buildFinalPrompt(context, DIGEST_TOOL_RESULT_CHARS)));
+    }
+
+    /**
+     * 记录总结阶段的耗时与 token 消耗
+     */
+    private void recordSummary(SummaryModeEnum summaryMode, long start, Usage usage) {
+        long elapsed = System.nanoTime() - start;
+        Timer.builder("cookbook.agent.summary.latency")
+                .description("Agent 最终总结阶段耗时")
+                .tag("mode", summaryMode.getCode())
+                .register(Metrics.globalRegistry)
+                .record(elapsed, TimeUnit.NANOSECONDS);
+        int tokens = usage != null && usage.getTotalTokens() != null ? usage.getTotalTokens() : 0;
+        DistributionSummary.builder("cookbook.agent.summary.tokens")
+                .description("Agent 最终总结阶段消耗的 token 数")
+                .tag("mode", summaryMode.getCode())
+                .register(Metrics.globalRegistry)
+                .record(tokens);
+        log.info("Agent 总结完成，模式: {}, 耗时: {} ms, token: {}", summaryMode.getCode(),
+                TimeUnit.NANOSECONDS.toMillis(elapsed), tokens);
+    }
+
+    /**
+     * 构建总结提示词：总结提示 + 包含思考和执行过程的总结上下文
+     *
+     * @param maxToolResultChars 单个工具结果保留的最大字符数
+     */
+    private String buildFinalPrompt(AgentRunContext context, int maxToolResultChars) {
+        String summaryContext = "【用户原始问题】\n" + context.getUserPrompt() + "\n\n"
+                + "【Agent执行过程】\n" + buildExecutionDigest(context, maxToolResultChars);
+        return getFinalSummaryPrompt() + "\n\n" + summaryContext;
+    }
+
+    /**
+     * 执行过程摘要：思考、工具调用决策与工具结果
+     *
+     * @param maxToolResultChars 单个工具结果保留的最大字符数
+     */
+    protected String buildExecutionDigest(AgentRunContext context, int maxToolResultChars) {
         StringBuilder summaryContext = new StringBuilder();
-        summaryContext.append("【用户原始问题】\n").append(userRawInput).append("\n\n");
-        summaryContext.append("【Agent执行过程】\n");
-        
         // 提取并格式化 agent 的思考内容
-        for (int i = 0; i < getChatMessage().size(); i++) {
-            Message msg = getChatMessage().get(i);
+        for (Message msg : context.getChatMessage()) {
             if (msg instanceof AssistantMessage assistantMsg) {
                 // 记录 AI 的思考和决策
                 if (assistantMsg.getToolCalls() != null && !assistantMsg.getToolCalls().isEmpty()) {
                     summaryContext.append("- 决策：调用工具 ");
-                    assistantMsg.getToolCalls().forEach(toolCall -> 
+                    assistantMsg.getToolCalls().forEach(toolCall ->
                         summaryContext.append(String.format("[%s]", toolCall.name()))
                     );
                     summaryContext.append("\n");
@@ -209,35 +488,67 @@ public abstract class BaseAgent {
             } else if (msg instanceof ToolResponseMessage toolResponseMsg) {
                 // 记录工具执行结果
                 toolResponseMsg.getResponses().forEach(response -> {
-                    summaryContext.append(String.format("- 工具 [%s] 执行结果：%s\n", 
-                        response.name(), 
-                        response.responseData()));
+                    summaryContext.append(String.format("- 工具 [%s] 执行结果：%s\n",
+                        response.name(),
+                        StringUtils.abbreviate(response.responseData(), maxToolResultChars)));
                 });
             }
         }
-        
-        // 添加总结提示词，并附带格式化的执行过程
-        String finalPrompt = getFinalSummaryPrompt() + "\n\n" + summaryContext.toString();
-        getChatMessage().add(new UserMessage(finalPrompt));
-        
-        // 调用 LLM 生成最终总结
-        Prompt prompt = new Prompt(getChatMessage());
-        String text = chatClient.prompt(prompt)
-                .call()
+        if (StringUtils.isNotBlank(context.getFinalAnswer())) {
+            summaryContext.append("- 最终回答：").append(context.getFinalAnswer()).append("\n");
+        }
+        return summaryContext.toString();
+    }
+
+    /**
+     * 以流式方式调用模型并收集完整文本，同时把 token 消耗计入本次运行。
+     * 运行在 Agent 执行线程上，不依赖请求线程上下文
+     */
+    protected String streamText(AgentRunContext context, Prompt prompt) {
+        StringBuilder text = new StringBuilder();
+        ChatResponse chatResponse = chatClient.prompt(prompt)
+                .system(getSystemPrompt())
+                .advisors(a -> a.param(LlmPriorityAdvisor.USER_ROLE, userRoleOf(context)))
+                .stream()
                 .chatResponse()
-                .getResult()
-                .getOutput()
-                .getText();
-        
-        // 保存到聊天记录（只保存原始问题和最终答案，不保存中间过程）
-        pgChatMemory.add(getCurrentConversationId(), new UserMessage(userRawInput));
-        pgChatMemory.add(getCurrentConversationId(), new AssistantMessage(text));
-        
-        return text;
+                .doOnNext(response -> {
+                    String chunk = response.getResult().getOutput().getText();
+                    if (chunk != null) {
+                        text.append(chunk);
+                    }
+                })
+                .blockLast();
+        if (chatResponse != null && chatResponse.getMetadata() != null && chatResponse.getMetadata().getUsage() != null) {
+            context.setUsedToken(context.getUsedToken() + chatResponse.getMetadata().getUsage().getTotalTokens());
+        }
+        return text.toString();
     }
 
+    /**
+     * 本次运行的用户角色，决定模型调用的排队优先级，未解析时按免费用户处理
+     */
+    protected String userRoleOf(AgentRunContext context) {
+        return context.getUserRole() != null ? context.getUserRole() : UserConstant.USER_FREE;
+    }
+
+    /**
+     * 通过 SSE 推送 thinking 事件，同步运行时忽略
+     */
+    protected void sendThinking(AgentRunContext context, String text) {
+        if (context.getSseEmitter() != null) {
+            sseStream(context).send("thinking", text);
+        }
+    }
 
-    public abstract String step();
+    /**
+     * 本次运行的 SSE 写出流，首次推送时创建；发送失败说明客户端已断开，取消本次运行
+     */
+    protected SseChunkStream sseStream(AgentRunContext context) {
+        return context.sseStream(sseWriter != null ? sseWriter : SseChunkWriter.DIRECT, e -> {
+            log.warn("SSE信息发送失败，取消运行: {}", context.getConversationId());
+            context.cancel();
+        });
+    }
 
-    public abstract void clear();
+    public abstract String step(AgentRunContext context);
 }
@@ -0,0 +1,210 @@
+package com.ly.cookbook.agent;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ly.cookbook.enums.AgentStateEnum;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.exception.ExceptionUtils;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.client.advisor.api.Advisor;
+import org.springframework.ai.chat.memory.ChatMemory;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.prompt.Prompt;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+
+/**
+ * @author 刘燚
+ * @version v1.0.0
+ * @Description 协调智能体：把“五道菜的晚宴菜单”这类请求拆分为相互独立的子任务，
+ * 每个子任务由一个子 Agent 在虚拟线程上并发执行（各自独立的有界上下文），最后合并为一次总结。
+ * 整棵运行树共享步骤与 token 预算，子 Agent 的进度通过 thinking 事件推送
+ * @createDate：2026/10/18 19:10
+ * @email liuyia2022@163.com
+ */
+@Slf4j
+public class CoordinatorAgent extends BaseAgent {
+
+    /**
+     * 单个请求最多拆分的子任务数量
+     */
+    private static final int MAX_SUB_TASKS = 5;
+
+    /**
+     * 子任务执行过程摘要中单个工具结果保留的最大字符数
+     */
+    private static final int SUB_TASK_TOOL_RESULT_CHARS = 800;
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private static final String DECOMPOSE_PROMPT = """
+            你是 CoordinatorAgent 的任务拆分器。请把用户的请求拆分为可以相互独立完成的子任务，
+            例如“五道菜的晚宴菜单及做法”应拆分为每道菜一个子任务。
+            只输出一个 JSON 对象，不要输出任何其他内容，格式如下：
+            {"subTasks": [{"title": "子任务标题", "prompt": "交给子 Agent 的完整问题，需包含必要的上下文"}]}
+            规则：
+            1、子任务之间不能相互依赖，子任务数量不超过 %d 个
+            2、请求无需拆分时只返回一个子任务，其 prompt 为用户的原始问题
+            """;
+
+    /**
+     * 执行子任务的 Agent 运行时（共享单例，每个子任务使用独立的 AgentRunContext）
+     */
+    private final BaseAgent subAgent;
+
+    /**
+     * 整棵运行树的步骤上限
+     */
+    private final int maxTreeSteps;
+
+    /**
+     * 整棵运行树的 token 上限
+     */
+    private final long maxTreeTokens;
+
+    private final ExecutorService subAgentExecutor = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("agent-sub-", 0).factory());
+
+    public CoordinatorAgent(BaseAgent subAgent, int maxTreeSteps, long maxTreeTokens, ChatModel chatModel,
+                            ChatMemory chatMemory, Advisor... advisors) {
+        this.subAgent = subAgent;
+        this.maxTreeSteps = maxTreeSteps;
+        this.maxTreeTokens = maxTreeTokens;
+        ChatClient chatClient = ChatClient.builder(chatModel)
+                .defaultAdvisors(advisors)
+                .build();
+        setChatClient(chatClient);
+        setPgChatMemory(chatMemory);
+        setName("CoordinatorAgent");
+        setSystemPrompt(String.format(DECOMPOSE_PROMPT, MAX_SUB_TASKS));
+        setFinalSummaryPrompt(YiCookAgent.FINAL_SUMMARY_PROMPT
+                + "\n如果执行过程包含多个子任务，请把各子任务的结果合并为一份完整、统一格式的回答。");
+    }
+
+    /**
+     * 协调模式只有一步：拆分 -> 并发执行子 Agent，完成后进入合并总结
+     */
+    @Override
+    public String step(AgentRunContext context) {
+        context.setState(AgentStateEnum.FINISHED);
+        List<SubTask> subTasks = decompose(context);
+        if (context.isCancelled() || Thread.currentThread().isInterrupted()) {
+            return "任务拆分被取消";
+        }
+        AgentBudget budget = new AgentBudget(maxTreeSteps, maxTreeTokens);
+        // 拆分调用同样计入整棵树的 token 预算
+        budget.addTokens(context.getUsedToken());
+        sendThinking(context, String.format("已拆分为 %d 个子任务：%s", subTasks.size(),
+                subTasks.stream().map(SubTask::title).collect(Collectors.joining("、"))));
+
+        List<AgentRunContext> subContexts = new ArrayList<>(subTasks.size());
+        List<Future<String>> futures = new ArrayList<>(subTasks.size());
+        for (int i = 0; i < subTasks.size(); i++) {
+            if (context.isCancelled()) {
+                // 提交过程中被取消，已提交的子运行一并取消，剩余子任务不再提交
+                cancelSubRuns(subContexts, futures);
+                return "子任务执行已取消";
+            }
+            String progressPrefix = String.format("[子任务 %d/%d %s] ", i + 1, subTasks.size(), subTasks.get(i).title());
+            AgentRunContext subContext = new AgentRunContext(context.getConversationId() + ":sub-" + (i + 1),
+                    subTasks.get(i).prompt(), null);
+            subContext.setUserId(context.getUserId());
+            subContext.setUserRole(context.getUserRole());
+            subContext.setBudget(budget);
+            subContext.setStepListener(stepResult -> sendThinking(context, progressPrefix + stepResult));
+            subContexts.add(subContext);
+            futures.add(subAgentExecutor.submit(() -> subAgent.run(subContext)));
+        }
+
+        int failed = 0;
+        for (int i = 0; i < subContexts.size(); i++) {
+            AgentRunContext subContext = subContexts.get(i);
+            try {
+                futures.get(i).get();
+            } catch (InterruptedException e) {
+                // 协调运行被取消时一并取消全部子运行
+                cancelSubRuns(subContexts, futures);
+                Thread.currentThread().interrupt();
+                return "子任务执行被中断";
+            } catch (ExecutionException e) {
+                failed++;
+                log.error("子任务执行失败: {}", subTasks.get(i).title(), e.getCause());
+                subContext.getChatMessage().add(new AssistantMessage("子任务执行失败: " + e.getCause().getMessage()));
+            }
+            context.setUsedToken(context.getUsedToken() + subContext.getUsedToken());
+            if (subContext.isNonReadOnlyToolExecuted()) {
+                context.setNonReadOnlyToolExecuted(true);
+            }
+            // 子任务结果以助手消息的形式写入协调 Agent 的历史，总结阶段的执行过程摘要会完整保留
+            context.getChatMessage().add(new AssistantMessage(String.format("【子任务 %d：%s】\n%s", i + 1,
+                    subTasks.get(i).title(), subAgent.buildExecutionDigest(subContext, SUB_TASK_TOOL_RESULT_CHARS))));
+        }
+        log.info("子任务执行完成，数量: {}, 失败: {}, 整体步骤: {}/{}, 整体 token: {}/{}", subContexts.size(), failed,
+                budget.getUsedSteps(), maxTreeSteps, budget.getUsedTokens(), maxTreeTokens);
+        return String.format("子任务执行完成：%d 个，失败 %d 个", subContexts.size(), failed);
+    }
+
+    /**
+     * 取消全部子运行：置位子上下文的取消标记并中断尚未结束的子任务
+     */
+    private void cancelSubRuns(List<AgentRunContext> subContexts, List<Future<String>> futures) {
+        subContexts.forEach(AgentRunContext::cancel);
+        futures.forEach(future -> future.cancel(true));
+    }
+
+    /**
+     * 拆分调用：解析失败或无需拆分时只包含原始问题；运行被取消或中断时返回空列表并保留中断标记
+     */
+    private List<SubTask> decompose(AgentRunContext context) {
+        sendThinking(context, "正在拆分任务...");
+        List<SubTask> subTasks = new ArrayList<>();
+        String decomposeText = null;
+        try {
+            decomposeText = streamText(context, new Prompt(new UserMessage(context.getUserPrompt())));
+            int start = decomposeText.indexOf('{');
+            int end = decomposeText.lastIndexOf('}');
+            if (start >= 0 && end > start) {
+                JsonNode subTaskNodes = OBJECT_MAPPER.readTree(decomposeText.substring(start, end + 1)).path("subTasks");
+                for (JsonNode subTaskNode : subTaskNodes) {
+                    String prompt = subTaskNode.path("prompt").asText();
+                    if (StringUtils.isNotBlank(prompt) && subTasks.size() < MAX_SUB_TASKS) {
+                        subTasks.add(new SubTask(subTaskNode.path("title").asText(prompt), prompt));
+                    }
+                }
+            }
+        } catch (Exception e) {
+            if (context.isCancelled() || Thread.currentThread().isInterrupted()
+                    || ExceptionUtils.indexOfThrowable(e, InterruptedException.class) >= 0) {
+                // 取消不是拆分失败，不能退化为单个子任务继续执行
+                Thread.currentThread().interrupt();
+                return List.of();
+            }
+            log.error("任务拆分失败: {}", decomposeText, e);
+        }
+        if (subTasks.isEmpty()) {
+            subTasks.add(new SubTask(StringUtils.abbreviate(context.getUserPrompt(), 20), context.getUserPrompt()));
+        }
+        return subTasks;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        subAgentExecutor.shutdownNow();
+    }
+
+    /**
+     * 子任务：标题用于进度展示，问题交给子 Agent
+     */
+    private record SubTask(String title, String prompt) {
+    }
+}
@@ -0,0 +1,70 @@
+package com.ly.cookbook.agent;
+
+import org.springframework.ai.chat.model.ToolContext;
+import org.springframework.ai.tool.ToolCallback;
+import org.springframework.ai.tool.definition.ToolDefinition;
+import org.springframework.ai.tool.metadata.ToolMetadata;
+
+/**
+ * @author 刘燚
+ * @version v1.0.0
+ * @Description 单次运行内的工具调用备忘：相同工具 + 相同参数的重复调用直接返回本次运行中已获得的结果，
+ * 有副作用的工具不备忘，执行后清空备忘（之前的结果可能已失效）
+ * @createDate：2026/10/18 17:10
+ * @email liuyia2022@163.com
+ */
+public class MemoizingToolCallback implements ToolCallback {
+
+    /**
+     * 备忘命中时附加在结果前的提示，提醒模型不要重复调用
+     */
+    static final String MEMO_HIT_NOTICE = "【重复调用：本次运行中已执行过相同的工具调用，以下为之前的结果，请勿再次调用】\n";
+
+    private final ToolCallback delegate;
+
+    private final AgentRunContext context;
+
+    private final AgentLoopDetector loopDetector;
+
+    public MemoizingToolCallback(ToolCallback delegate, AgentRunContext context, AgentLoopDetector loopDetector) {
+        this.delegate = delegate;
+        this.context = context;
+        this.loopDetector = loopDetector;
+    }
+
+    @Override
+    public ToolDefinition getToolDefinition() {
+        return delegate.getToolDefinition();
+    }
+
+    @Override
+    public ToolMetadata getToolMetadata() {
+        return delegate.getToolMetadata();
+    }
+
+    @Override
+    public String call(String toolInput) {
+        return call(toolInput, null);
+    }
+
+    @Override
+    public String call(String toolInput, ToolContext toolContext) {
+        String toolName = getToolDefinition().name();
+        String memoKey = loopDetector.memoKey(toolName, toolInput);
+        if (loopDetector.isMemoizable(toolName)) {
+            String memo = context.getToolCallMemo().get(memoKey);
+            if (memo != null) {
+                return MEMO_HIT_NOTICE + memo;
+            }
+        }
+        String result = toolContext == null ? delegate.call(toolInput) : delegate.call(toolInput, toolContext);
+        if (loopDetector.isMemoizable(toolName)) {
+            if (result != null) {
+                context.getToolCallMemo().put(memoKey, result);
+            }
+        } else if (loopDetector.hasSideEffect(toolName)) {
+            context.getToolCallMemo().clear();
+        }
+        return result;
+    }
+}
@@ -0,0 +1,103 @@
+package com.ly.cookbook.agent;
+
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.model.tool.ToolCallingChatOptions;
+import org.springframework.ai.model.tool.ToolCallingManager;
+import org.springframework.ai.model.tool.ToolExecutionResult;
+import org.springframework.ai.tool.ToolCallback;
+import org.springframework.ai.tool.definition.ToolDefinition;
+import org.springframework.util.CollectionUtils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @author 刘燚
+ * @version v1.0.0
+ * @Description 并行工具调用管理器：同一步中 LLM 返回的多个工具调用交由 {@link ParallelToolExecutor} 并行执行，
+ * ToolResponseMessage 中的响应顺序与工具调用顺序保持一致，对话历史与串行执行时相同
+ * @createDate：2026/10/18 14:02
+ * @email liuyia2022@163.com
+ */
+public class ParallelToolCallingManager implements ToolCallingManager {
+
+    /**
+     * 仅用于解析工具定义
+     */
+    private final ToolCallingManager definitionResolver = ToolCallingManager.builder().build();
+
+    private final Map<String, ToolCallback> toolCallbackMap = new HashMap<>();
+
+    private final ParallelToolExecutor toolExecutor;
+
+    public ParallelToolCallingManager(ToolCallback[] availableTools) {
+        this(availableTools, new ParallelToolExecutor());
+    }
+
+    public ParallelToolCallingManager(ToolCallback[] availableTools, ParallelToolExecutor toolExecutor) {
+        for (ToolCallback toolCallback : availableTools) {
+            toolCallbackMap.put(toolCallback.getToolDefinition().name(), toolCallback);
+        }
+        this.toolExecutor = toolExecutor;
+    }
+
+    @Override
+    public List<ToolDefinition> resolveToolDefinitions(ToolCallingChatOptions chatOptions) {
+        return definitionResolver.resolveToolDefinitions(chatOptions);
+    }
+
+    @Override
+    public ToolExecutionResult executeToolCalls(Prompt prompt, ChatResponse chatResponse) {
+        AssistantMessage assistantMessage = chatResponse.getResults().stream()
+                .map(Generation::getOutput)
+                .filter(output -> !CollectionUtils.isEmpty(output.getToolCalls()))
+                .findFirst()
+                .orElseThrow(() -> new IllegalStateException("No tool call requested by the chat model"));
+
+        List<AssistantMessage.ToolCall> toolCalls = assistantMessage.getToolCalls();
+        List<ToolCallback> toolCallbacks = new ArrayList<>(toolCalls.size());
+        boolean returnDirect = true;
+        for (AssistantMessage.ToolCall toolCall : toolCalls) {
+            ToolCallback toolCallback = resolveToolCallback(prompt, toolCall.name());
+            toolCallbacks.add(toolCallback);
+            returnDirect = returnDirect && toolCallback.getToolMetadata().returnDirect();
+        }
+
+        List<ToolResponseMessage.ToolResponse> toolResponses = toolExecutor.execute(toolCalls, toolCallbacks);
+
+        List<Message> conversationHistory = new ArrayList<>(prompt.getInstructions());
+        conversationHistory.add(assistantMessage);
+        conversationHistory.add(new ToolResponseMessage(toolResponses, Map.of()));
+        return ToolExecutionResult.builder()
+                .conversationHistory(conversationHistory)
+                .returnDirect(returnDirect)
+                .build();
+    }
+
+    /**
+     * 优先使用本次请求选项中携带的工具回调（可能带有运行级包装），其次使用注册的工具
+     */
+    private ToolCallback resolveToolCallback(Prompt prompt, String toolName) {
+        ToolCallback toolCallback = null;
+        if (prompt.getOptions() instanceof ToolCallingChatOptions toolCallingChatOptions) {
+            toolCallback = toolCallingChatOptions.getToolCallbacks().stream()
+                    .filter(tool -> toolName.equals(tool.getToolDefinition().name()))
+                    .findFirst()
+                    .orElse(null);
+        }
+        if (toolCallback == null) {
+            toolCallback = toolCallbackMap.get(toolName);
+        }
+        if (toolCallback == null) {
+            throw new IllegalStateException("No ToolCallback found for tool name: " + toolName);
+        }
+        return toolCallback;
+    }
+}
@@ -0,0 +1,160 @@
+package com.ly.cookbook.agent;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+import org.springframework.ai.tool.ToolCallback;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * @author 刘燚
+ * @version v1.0.0
+ * @Description 工具并行执行器：在虚拟线程上并行执行一批相互独立的工具调用，
+ * 支持按工具设置超时与全局并发上限（同一个实例在所有 Agent 运行之间共享）
+ * @createDate：2026/10/18 14:02
+ * @email liuyia2022@163.com
+ */
+@Slf4j
+public class ParallelToolExecutor {
+
+    /**
+     * 默认的全局工具并发上限
+     */
+    public static final int DEFAULT_MAX_CONCURRENCY = 16;
+
+    /**
+     * 默认的单个工具超时时间
+     */
+    public static final Duration DEFAULT_TIMEOUT = Duration.ofSeconds(30);
+
+    /**
+     * 按工具名称定制的超时时间，未配置的工具使用默认超时
+     */
+    private static final Map<String, Duration> TOOL_TIMEOUTS = Map.of(
+            "webSearch", Duration.ofSeconds(20),
+            "searchSimple", Duration.ofSeconds(20),
+            "fetchWebPageText", Duration.ofSeconds(15),
+            "fetchWebPageHtml", Duration.ofSeconds(15),
+            "fetchWebPageElements", Duration.ofSeconds(15),
+            "fetchWebPageTitle", Duration.ofSeconds(15),
+            "downloadFile", Duration.ofSeconds(60),
+            "downloadFileAuto", Duration.ofSeconds(60),
+            "executeCommand", Duration.ofSeconds(65),
+            "executeCommandWithTimeout", Duration.ofSeconds(125)
+    );
+
+    private final ExecutorService toolExecutor = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("agent-tool-", 0).factory());
+
+    /**
+     * 全局并发上限
+     */
+    private final Semaphore concurrencyLimit;
+
+    private final Duration defaultTimeout;
+
+    public ParallelToolExecutor() {
+        this(DEFAULT_MAX_CONCURRENCY, DEFAULT_TIMEOUT);
+    }
+
+    public ParallelToolExecutor(int maxConcurrency, Duration defaultTimeout) {
+        this.concurrencyLimit = new Semaphore(maxConcurrency);
+        this.defaultTimeout = defaultTimeout;
+    }
+
+    /**
+     * 并行执行一批工具调用
+     *
+     * @param toolCalls     工具调用
+     * @param toolCallbacks 与工具调用一一对应的工具回调
+     * @return 工具响应，顺序与 toolCalls 一致
+     */
+    public List<ToolResponseMessage.ToolResponse> execute(List<AssistantMessage.ToolCall> toolCalls,
+                                                          List<ToolCallback> toolCallbacks) {
+        // 先全部提交，再按原始顺序收集结果，保证响应顺序确定
+        long start = System.nanoTime();
+        List<Future<String>> futures = new ArrayList<>(toolCalls.size());
+        for (int i = 0; i < toolCalls.size(); i++) {
+            AssistantMessage.ToolCall toolCall = toolCalls.get(i);
+            ToolCallback toolCallback = toolCallbacks.get(i);
+            futures.add(toolExecutor.submit(() -> callTool(toolCallback, toolCall)));
+        }
+        List<ToolResponseMessage.ToolResponse> toolResponses = new ArrayList<>(toolCalls.size());
+        for (int i = 0; i < toolCalls.size(); i++) {
+            AssistantMessage.ToolCall toolCall = toolCalls.get(i);
+            String responseData = awaitResult(futures.get(i), toolCall, start);
+            toolResponses.add(new ToolResponseMessage.ToolResponse(toolCall.id(), toolCall.name(), responseData));
+        }
+        log.info("并行执行 {} 个工具调用，耗时 {} ms", toolCalls.size(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        return toolResponses;
+    }
+
+    /**
+     * 提交单个工具调用，立即返回；超时从提交时开始计算，取消返回的 future 会中断执行中的工具
+     *
+     * @param toolCall     工具调用
+     * @param toolCallback 工具回调
+     * @return 工具响应，超时或失败时响应内容为错误说明，不会异常完成
+     */
+    public CompletableFuture<ToolResponseMessage.ToolResponse> submit(AssistantMessage.ToolCall toolCall,
+                                                                      ToolCallback toolCallback) {
+        long start = System.nanoTime();
+        Future<String> future = toolExecutor.submit(() -> callTool(toolCallback, toolCall));
+        CompletableFuture<ToolResponseMessage.ToolResponse> response = new CompletableFuture<>();
+        toolExecutor.execute(() -> response.complete(new ToolResponseMessage.ToolResponse(toolCall.id(),
+                toolCall.name(), awaitResult(future, toolCall, start))));
+        response.whenComplete((toolResponse, e) -> {
+            if (response.isCancelled()) {
+                future.cancel(true);
+            }
+        });
+        return response;
+    }
+
+    private String callTool(ToolCallback toolCallback, AssistantMessage.ToolCall toolCall) throws InterruptedException {
+        concurrencyLimit.acquire();
+        try {
+            String arguments = StringUtils.isBlank(toolCall.arguments()) ? "{}" : toolCall.arguments();
+            return toolCallback.call(arguments);
+        } finally {
+            concurrencyLimit.release();
+        }
+    }
+
+    /**
+     * 等待单个工具的结果，超时从提交时开始计算（包含等待并发许可的时间）
+     */
+    private String awaitResult(Future<String> future, AssistantMessage.ToolCall toolCall, long start) {
+        Duration timeout = TOOL_TIMEOUTS.getOrDefault(toolCall.name(), defaultTimeout);
+        long remaining = timeout.toNanos() - (System.nanoTime() - start);
+        try {
+            return future.get(Math.max(remaining, 0), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            log.warn("工具执行超时: {}, 超时时间: {} s", toolCall.name(), timeout.toSeconds());
+            return String.format("工具执行超时（%d秒），请尝试其他方式", timeout.toSeconds());
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            log.error("工具执行失败: {}", toolCall.name(), cause);
+            return "工具执行失败: " + cause.getMessage();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            return "工具执行被中断";
+        }
+    }
+}
@@ -0,0 +1,345 @@
+package com.ly.cookbook.agent;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ly.cookbook.enums.AgentStateEnum;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.client.advisor.api.Advisor;
+import org.springframework.ai.chat.memory.ChatMemory;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.tool.ToolCallback;
+import org.springframework.ai.tool.definition.ToolDefinition;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Supplier;
+
+/**
+ * @author 刘燚
+ * @version v1.0.0
+ * @Description 计划执行智能体：一次规划调用生成工具调用依赖图（DAG），每个工具调用在依赖完成后立即执行，
+ * 再由一次总结调用生成答案。大多数烹饪问题只需两次模型调用，与 YiCookAgent 共享工具与执行器
+ * @createDate：2026/10/18 18:02
+ * @email liuyia2022@163.com
+ */
+@Slf4j
+public class PlanExecuteAgent extends BaseAgent {
+
+    /**
+     * 单个计划允许的最大工具调用数量
+     */
+    private static final int MAX_TASKS = 12;
+
+    /**
+     * 依赖结果替换进参数时保留的最大字符数
+     */
+    private static final int DEPENDENCY_RESULT_CHARS = 2000;
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private static final String PLANNING_PROMPT = """
+            你是 PlanExecuteAgent 的规划器。请根据用户的问题，一次性制定完成任务所需的全部工具调用计划。
+            只输出一个 JSON 对象，不要输出任何其他内容，格式如下：
+            {
+              "tasks": [
+                {"id": "t1", "tool": "工具名称", "arguments": {"参数名": "参数值"}, "dependsOn": []},
+                {"id": "t2", "tool": "工具名称", "arguments": {"参数名": "{{t1}}"}, "dependsOn": ["t1"]}
+              ],
+              "answer": null
+            }
+            规则：
+            1、相互独立的调用不要设置依赖，它们会并行执行；只有需要使用其他任务结果时才设置 dependsOn
+            2、字符串参数中的 {{任务ID}} 会在执行前替换为该任务的结果文本
+            3、工具调用总数不超过 %d 个，优先选择最少的调用完成任务
+            4、如果不需要任何工具即可回答，tasks 为空数组，并在 answer 中直接给出答案
+            
+            可用工具：
+            %s
+            """;
+
+    private final Map<String, ToolCallback> toolCallbackMap = new LinkedHashMap<>();
+
+    private final ParallelToolExecutor toolExecutor;
+
+    public PlanExecuteAgent(ToolCallback[] availableTools, ParallelToolExecutor toolExecutor, ChatModel chatModel,
+                            ChatMemory chatMemory, Advisor... advisors) {
+        for (ToolCallback toolCallback : availableTools) {
+            toolCallbackMap.put(toolCallback.getToolDefinition().name(), toolCallback);
+        }
+        // 计划一次性执行完毕，不需要终止工具
+        toolCallbackMap.remove("doTerminate");
+        this.toolExecutor = toolExecutor;
+        ChatClient chatClient = ChatClient.builder(chatModel)
+                .defaultAdvisors(advisors)
+                .build();
+        setChatClient(chatClient);
+        setPgChatMemory(chatMemory);
+        setName("PlanExecuteAgent");
+        setSystemPrompt(String.format(PLANNING_PROMPT, MAX_TASKS, describeTools()));
+        setFinalSummaryPrompt(YiCookAgent.FINAL_SUMMARY_PROMPT);
+    }
+
+    /**
+     * 计划执行模式只有一步：规划 -> 执行，完成后直接进入总结
+     */
+    @Override
+    public String step(AgentRunContext context) {
+        context.setState(AgentStateEnum.FINISHED);
+        AgentPlan plan = plan(context);
+        if (plan == null) {
+            return "执行计划生成失败";
+        }
+        if (plan.getTasks().isEmpty()) {
+            context.setFinalAnswer(plan.getAnswer());
+            return "无需调用工具";
+        }
+        return execute(context, plan);
+    }
+
+    /**
+     * 规划调用：一次模型调用生成完整的执行计划
+     */
+    private AgentPlan plan(AgentRunContext context) {
+        sendThinking(context, "正在制定执行计划...");
+        String planText = null;
+        try {
+            planText = streamText(context, new Prompt(context.getChatMessage()));
+            AgentPlan plan = parsePlan(planText);
+            log.info("执行计划生成完成，工具调用数量: {}", plan.getTasks().size());
+            return plan;
+        } catch (Exception e) {
+            log.error("执行计划生成失败: {}", planText, e);
+            context.getChatMessage().add(new AssistantMessage("执行计划生成失败: " + e.getMessage()));
+            return null;
+        }
+    }
+
+    /**
+     * 解析并校验计划：去除 Markdown 代码块、补全任务ID、丢弃不存在的依赖、限制任务数量
+     */
+    AgentPlan parsePlan(String planText) throws IOException {
+        int start = planText.indexOf('{');
+        int end = planText.lastIndexOf('}');
+        if (start < 0 || end <= start) {
+            throw new IOException("规划结果不是 JSON 对象");
+        }
+        AgentPlan plan = OBJECT_MAPPER.readValue(planText.substring(start, end + 1), AgentPlan.class);
+        List<AgentPlan.Task> tasks = plan.getTasks() == null ? new ArrayList<>() : plan.getTasks();
+        if (tasks.size() > MAX_TASKS) {
+            log.warn("计划中的工具调用数量 {} 超过上限 {}，超出部分被丢弃", tasks.size(), MAX_TASKS);
+            tasks = new ArrayList<>(tasks.subList(0, MAX_TASKS));
+        }
+        Set<String> taskIds = new HashSet<>();
+        for (int i = 0; i < tasks.size(); i++) {
+            AgentPlan.Task task = tasks.get(i);
+            if (StringUtils.isBlank(task.getId()) || !taskIds.add(task.getId())) {
+                task.setId("task-" + (i + 1));
+                taskIds.add(task.getId());
+            }
+        }
+        for (AgentPlan.Task task : tasks) {
+            List<String> dependsOn = task.getDependsOn() == null ? List.of() : task.getDependsOn();
+            task.setDependsOn(dependsOn.stream()
+                    .filter(taskIds::contains)
+                    .filter(id -> !id.equals(task.getId()))
+                    .toList());
+        }
+        plan.setTasks(tasks);
+        return plan;
+    }
+
+    /**
+     * 按依赖关系调度执行：每个任务在自己的依赖全部完成后立即提交，不等待其他无关任务，
+     * 慢任务只拖慢依赖它的任务
+     */
+    private String execute(AgentRunContext context, AgentPlan plan) {
+        PlanRun run = new PlanRun();
+        Map<String, CompletableFuture<ToolResponseMessage.ToolResponse>> scheduled = new LinkedHashMap<>();
+        Map<String, Integer> depths = new HashMap<>();
+        List<AgentPlan.Task> pending = new ArrayList<>(plan.getTasks());
+        // 按拓扑顺序创建任务：依赖的任务都已创建后才能创建自身，剩下的任务之间存在循环依赖
+        boolean progressed = true;
+        while (!pending.isEmpty() && progressed) {
+            progressed = false;
+            for (Iterator<AgentPlan.Task> iterator = pending.iterator(); iterator.hasNext(); ) {
+                AgentPlan.Task task = iterator.next();
+                if (!scheduled.keySet().containsAll(task.getDependsOn())) {
+                    continue;
+                }
+                CompletableFuture<?>[] dependencies = task.getDependsOn().stream()
+                        .map(scheduled::get)
+                        .toArray(CompletableFuture[]::new);
+                scheduled.put(task.getId(), CompletableFuture.allOf(dependencies)
+                        .thenCompose(ignored -> executeTask(context, task, run)));
+                depths.put(task.getId(), 1 + task.getDependsOn().stream().mapToInt(depths::get).max().orElse(0));
+                iterator.remove();
+                progressed = true;
+            }
+        }
+        if (!pending.isEmpty()) {
+            log.warn("执行计划存在循环依赖，{} 个任务未执行", pending.size());
+        }
+        try {
+            CompletableFuture.allOf(scheduled.values().toArray(CompletableFuture[]::new)).get();
+        } catch (InterruptedException e) {
+            // 运行被取消：中断执行中的工具，尚未开始的任务不再提交
+            Thread.currentThread().interrupt();
+            run.stop();
+        } catch (ExecutionException e) {
+            log.error("执行计划调度异常", e);
+            run.stop();
+        }
+
+        List<AssistantMessage.ToolCall> toolCalls = new ArrayList<>(scheduled.size());
+        List<ToolResponseMessage.ToolResponse> toolResponses = new ArrayList<>(scheduled.size());
+        scheduled.forEach((taskId, future) -> {
+            AssistantMessage.ToolCall toolCall = run.toolCalls.get(taskId);
+            if (toolCall == null) {
+                return;
+            }
+            String responseData = future.isDone() && !future.isCompletedExceptionally()
+                    ? future.join().responseData() : "工具执行被中断";
+            toolCalls.add(toolCall);
+            toolResponses.add(new ToolResponseMessage.ToolResponse(toolCall.id(), toolCall.name(), responseData));
+        });
+        // 与 ReAct 模式保持相同的历史结构，总结阶段的执行过程摘要无需区分模式
+        if (!toolCalls.isEmpty()) {
+            context.getChatMessage().add(new AssistantMessage("", Map.of(), toolCalls));
+            context.getChatMessage().add(new ToolResponseMessage(toolResponses, Map.of()));
+        }
+        return String.format("执行计划完成：%d 个工具调用，依赖链最长 %d 层", toolCalls.size(),
+                depths.values().stream().mapToInt(Integer::intValue).max().orElse(0));
+    }
+
+    /**
+     * 依赖已全部完成，解析参数后提交单个任务；依赖任务没有结果时视为依赖失败，跳过本任务
+     */
+    private CompletableFuture<ToolResponseMessage.ToolResponse> executeTask(AgentRunContext context, AgentPlan.Task task,
+                                                                            PlanRun run) {
+        AssistantMessage.ToolCall toolCall = new AssistantMessage.ToolCall(task.getId(), "function",
+                task.getTool(), resolveArguments(task, run.results));
+        run.toolCalls.put(task.getId(), toolCall);
+        ToolCallback toolCallback = toolCallbackMap.get(task.getTool());
+        List<String> failedDependencies = task.getDependsOn().stream()
+                .filter(dependency -> !run.results.containsKey(dependency))
+                .toList();
+        CompletableFuture<ToolResponseMessage.ToolResponse> response;
+        if (!failedDependencies.isEmpty()) {
+            // 不记录本任务结果，依赖本任务的任务同样跳过
+            return CompletableFuture.completedFuture(new ToolResponseMessage.ToolResponse(toolCall.id(),
+                    toolCall.name(), "依赖任务 " + String.join("、", failedDependencies) + " 没有结果，未执行"));
+        } else if (toolCallback == null) {
+            response = CompletableFuture.completedFuture(new ToolResponseMessage.ToolResponse(toolCall.id(),
+                    toolCall.name(), "未知工具: " + toolCall.name()));
+        } else {
+            response = run.submit(() -> {
+                recordToolCalls(context, List.of(toolCall));
+                sendThinking(context, String.format("执行工具 %s（任务 %s）", toolCall.name(), task.getId()));
+                return toolExecutor.submit(toolCall, toolCallback);
+            }, toolCall);
+        }
+        return response.thenApply(toolResponse -> {
+            if (toolResponse.responseData() != null) {
+                run.results.put(task.getId(), toolResponse.responseData());
+            }
+            return toolResponse;
+        });
+    }
+
+    /**
+     * 序列化工具参数，字符串参数中的 {{任务ID}} 替换为依赖任务的结果，没有结果的依赖保留占位符
+     */
+    private String resolveArguments(AgentPlan.Task task, Map<String, String> results) {
+        Map<String, Object> arguments = new LinkedHashMap<>();
+        if (task.getArguments() != null) {
+            task.getArguments().forEach((name, value) -> {
+                if (value instanceof String text) {
+                    for (String dependency : task.getDependsOn()) {
+                        String result = results.get(dependency);
+                        if (result != null) {
+                            text = text.replace("{{" + dependency + "}}", StringUtils.abbreviate(result, DEPENDENCY_RESULT_CHARS));
+                        }
+                    }
+                    arguments.put(name, text);
+                } else {
+                    arguments.put(name, value);
+                }
+            });
+        }
+        try {
+            return OBJECT_MAPPER.writeValueAsString(arguments);
+        } catch (IOException e) {
+            log.warn("工具参数序列化失败: {}", task.getTool(), e);
+            return "{}";
+        }
+    }
+
+    /**
+     * 规划提示词中的工具清单：名称、描述与参数结构
+     */
+    private String describeTools() {
+        StringBuilder description = new StringBuilder();
+        for (ToolCallback toolCallback : toolCallbackMap.values()) {
+            ToolDefinition toolDefinition = toolCallback.getToolDefinition();
+            description.append(String.format("- %s：%s\n  参数：%s\n", toolDefinition.name(),
+                    toolDefinition.description(), toolDefinition.inputSchema()));
+        }
+        return description.toString();
+    }
+
+    /**
+     * 一次计划执行的共享状态，任务在各自依赖完成的线程上读写
+     */
+    private static class PlanRun {
+
+        /**
+         * 任务ID -> 工具结果，供依赖它的任务替换参数
+         */
+        private final Map<String, String> results = new ConcurrentHashMap<>();
+
+        /**
+         * 任务ID -> 参数解析后的工具调用，只包含已开始的任务
+         */
+        private final Map<String, AssistantMessage.ToolCall> toolCalls = new ConcurrentHashMap<>();
+
+        private final List<CompletableFuture<ToolResponseMessage.ToolResponse>> submitted = new ArrayList<>();
+
+        private boolean stopped;
+
+        /**
+         * 提交工具调用；运行已停止时不再提交，直接返回未执行的响应
+         */
+        private synchronized CompletableFuture<ToolResponseMessage.ToolResponse> submit(
+                Supplier<CompletableFuture<ToolResponseMessage.ToolResponse>> submitter, AssistantMessage.ToolCall toolCall) {
+            if (stopped) {
+                return CompletableFuture.completedFuture(new ToolResponseMessage.ToolResponse(toolCall.id(),
+                        toolCall.name(), "运行已取消，未执行"));
+            }
+            CompletableFuture<ToolResponseMessage.ToolResponse> response = submitter.get();
+            submitted.add(response);
+            return response;
+        }
+
+        /**
+         * 停止执行：取消已提交的工具调用，之后依赖完成的任务不再提交
+         */
+        private synchronized void stop() {
+            stopped = true;
+            submitted.forEach(response -> response.cancel(true));
+        }
+    }
+}
@@ -11,16 +11,16 @@ public abstract class ReActAgent extends BaseAgent{
 
 
     @Override
-    public String step() {
-        if (think()) {
-            return act();
+    public String step(AgentRunContext context) {
+        if (think(context)) {
+            return act(context);
         }
         return "思考完成 - 无需行动";
     }
 
-    public abstract boolean think();
+    public abstract boolean think(AgentRunContext context);
 
-    public abstract String act();
+    public abstract String act(AgentRunContext context);
 
 
 }
@@ -3,6 +3,7 @@ package com.ly.cookbook.agent;
 import cn.hutool.core.collection.CollUtil;
 import cn.hutool.core.collection.CollectionUtil;
 import com.alibaba.cloud.ai.dashscope.chat.DashScopeChatOptions;
+import com.ly.cookbook.advisor.LlmPriorityAdvisor;
 import com.ly.cookbook.enums.AgentStateEnum;
 import lombok.Data;
 import lombok.EqualsAndHashCode;
@@ -11,16 +12,14 @@ import org.apache.commons.lang3.StringUtils;
 import org.springframework.ai.chat.messages.AssistantMessage;
 import org.springframework.ai.chat.messages.Message;
 import org.springframework.ai.chat.messages.ToolResponseMessage;
-import org.springframework.ai.chat.messages.UserMessage;
 import org.springframework.ai.chat.model.ChatResponse;
 import org.springframework.ai.chat.prompt.ChatOptions;
 import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.model.tool.ToolCallingChatOptions;
 import org.springframework.ai.model.tool.ToolCallingManager;
 import org.springframework.ai.model.tool.ToolExecutionResult;
 import org.springframework.ai.tool.ToolCallback;
-import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
-import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.stream.Collectors;
@@ -39,27 +38,41 @@ public abstract class ToolCallAgent extends ReActAgent{
     private final ToolCallback[] availableTools;
     private final ToolCallingManager toolCallingManager;
     private final ChatOptions chatOptions;
-    private ChatResponse toolCallChatResponse;
+    /**
+     * 工作上下文管理器，控制每次调用 LLM 的提示词规模
+     */
+    private AgentContextManager contextManager = new AgentContextManager();
+    /**
+     * 循环检测器，重复调用由运行内备忘应答，连续无进展时提前结束
+     */
+    private AgentLoopDetector loopDetector = new AgentLoopDetector();
     public ToolCallAgent(ToolCallback[] availableTools) {
+        this(availableTools, new ParallelToolCallingManager(availableTools));
+    }
+
+    public ToolCallAgent(ToolCallback[] availableTools, ToolCallingManager toolCallingManager) {
         super();
         this.availableTools = availableTools;
-        this.toolCallingManager = ToolCallingManager.builder().build();
+        // 同一步中的多个工具调用并行执行
+        this.toolCallingManager = toolCallingManager;
         // 移除 toolChoice 限制，让 LLM 能返回 toolCalls（但在 think 中不自动执行）
         this.chatOptions = DashScopeChatOptions.builder()
                 .withInternalToolExecutionEnabled(false)
                 .build();
     }
     @Override
-    public boolean think() {
-        if (StringUtils.isNotBlank(getNextStepPrompt())){
-            getChatMessage().add(new UserMessage(getNextStepPrompt()));
-        }
+    public boolean think(AgentRunContext context) {
         List<AssistantMessage.ToolCall> toolCalls = null;
         try {
             // 关键修改：使用 Prompt 传递 chatOptions，这样 LLM 会返回 toolCalls
             // 但不会自动执行工具，工具的实际执行将在 act() 方法中通过 ToolCallingManager 手动进行
-            Prompt prompt = new Prompt(getChatMessage(), chatOptions);
+            // ChatClient 会把工具回调写入传入的选项对象，共享的 chatOptions 需复制后再使用
+            // 下一步提示词只附加在本次调用的视图末尾，不写入历史；较早的工具结果被压缩，整体受 token 预算约束
+            List<Message> promptMessages = contextManager.buildPromptMessages(context, getNextStepPrompt());
+            Prompt prompt = new Prompt(promptMessages, chatOptions.copy());
             
+            // 累积本次思考输出的全部文本，流式响应的最后一个分片只包含末尾内容
+            StringBuilder thinkText = new StringBuilder();
             //调用 LLM 思考
             // 注意：这里使用 .toolCallbacks() 是为了让 LLM 知道有哪些工具可用
             // 但由于我们不调用 .stream() 或其他自动执行的方法，工具不会被自动执行
@@ -67,28 +80,24 @@ public abstract class ToolCallAgent extends ReActAgent{
                     .prompt(prompt)
                     .system(getSystemPrompt())
                     .toolCallbacks(availableTools)  // 只是注册工具定义，让 LLM 知道可用的工具
-                    .advisors(a -> a.param("chat_memory_conversation_id", getCurrentConversationId()))
+                    .advisors(a -> a.param("chat_memory_conversation_id", context.getConversationId())
+                            .param(LlmPriorityAdvisor.USER_ROLE, userRoleOf(context)))
                     .stream()
                     .chatResponse()
                     .doOnNext(response -> {
                         String text = response.getResult().getOutput().getText();
                         if (!StringUtils.isBlank(text)){
-                            SseEmitter sseEmitter = getSseEmitter();
-                            if (sseEmitter != null){
-                                try {
-                                    // 使用自定义事件类型 "thinking" 发送思考过程
-                                    sseEmitter.send(SseEmitter.event()
-                                            .name("thinking")
-                                            .data(text));
-                                } catch (IOException e) {
-                                    log.warn("SSE信息发送失败");
-                                }
+                            thinkText.append(text);
+                            if (context.getSseEmitter() != null){
+                                // 使用自定义事件类型 "thinking" 发送思考过程，连续分片合并后写出；
+                                // 写出失败时取消运行，中断阻塞在 blockLast 上的执行线程并释放模型流
+                                sseStream(context).append("thinking", text);
                             }
                         }
                     })
                     .blockLast();
             //设置思考响应
-            setToolCallChatResponse(chatResponse);
+            context.setToolCallChatResponse(chatResponse);
             AssistantMessage assistantMessage = chatResponse.getResult().getOutput();
             //获取 LLM 决定调用的工具（此时还未执行）
             toolCalls = assistantMessage.getToolCalls();
@@ -96,34 +105,52 @@ public abstract class ToolCallAgent extends ReActAgent{
                 String toolsDesc = toolCalls.stream().map(toolCall -> String.format("工具名称：%s, 工具参数：%s", toolCall.name(), toolCall.arguments()))
                         .collect(Collectors.joining("\n"));
                 log.info("LLM 决定调用的工具（尚未执行）：{}", toolsDesc);
+                // 继续调用工具说明之前的输出不是最终答案，清除后直出模式不会输出过期的答案
+                context.setFinalAnswer(null);
             } else {
                 log.info("LLM 决定不调用任何工具");
+                // 不再调用工具时本次输出即为模型给出的最终答案，结束推理循环；act 不会执行，需要在这里累计 token
+                context.setFinalAnswer(thinkText.toString());
+                context.setState(AgentStateEnum.FINISHED);
+                if (chatResponse.getMetadata() != null && chatResponse.getMetadata().getUsage() != null) {
+                    context.setUsedToken(context.getUsedToken() + chatResponse.getMetadata().getUsage().getTotalTokens());
+                }
             }
             return !CollectionUtil.isEmpty(toolCalls);
         } catch (Exception e) {
+            if (context.isCancelled()) {
+                log.info("{} 的思考已取消", getName());
+                return false;
+            }
             log.error(getName() + "的思考过程遇到了问题: " + e.getMessage());
-            getChatMessage().add(new AssistantMessage("思考过程遇到了问题: " + e.getMessage()));
+            context.getChatMessage().add(new AssistantMessage("思考过程遇到了问题: " + e.getMessage()));
             return false;
         }
 
     }
 
     @Override
-    public String act() {
-        if (!this.toolCallChatResponse.hasToolCalls()){
+    public String act(AgentRunContext context) {
+        //获取思考响应
+        ChatResponse chatResponse = context.getToolCallChatResponse();
+        if (!chatResponse.hasToolCalls()){
             return "没有调用工具";
         }
-        //获取思考响应
-        ChatResponse chatResponse = getToolCallChatResponse();
         Integer totalTokens = chatResponse.getMetadata().getUsage().getTotalTokens();
-        setUsedToken(getUsedToken() + Long.valueOf(totalTokens));
-        String text = chatResponse.getResult().getOutput().getText();
-        //调用工具
-        Prompt prompt = new Prompt(getChatMessage(), chatOptions);
+        context.setUsedToken(context.getUsedToken() + Long.valueOf(totalTokens));
+        List<AssistantMessage.ToolCall> toolCalls = chatResponse.getResult().getOutput().getToolCalls();
+        int memoHits = loopDetector.countMemoHits(context, toolCalls);
+        recordToolCalls(context, toolCalls);
+        //调用工具，工具执行选项显式携带本次运行的备忘工具回调，供 ToolCallingManager 解析工具
+        ChatOptions toolExecutionOptions = ToolCallingChatOptions.builder()
+                .toolCallbacks(loopDetector.memoize(availableTools, context))
+                .internalToolExecutionEnabled(false)
+                .build();
+        Prompt prompt = new Prompt(context.getChatMessage(), toolExecutionOptions);
         ToolExecutionResult toolExecutionResult = toolCallingManager.executeToolCalls(prompt, chatResponse);
         // 处理工具执行结果
         List<Message> messages = toolExecutionResult.conversationHistory();
-        setChatMessage(messages);
+        context.setChatMessage(messages);
         ToolResponseMessage result = (ToolResponseMessage) CollUtil.getLast(messages);
         String content = result.getResponses().stream()
                 .map(toolResponse -> String.format("工具名称：%s", toolResponse.name()))
@@ -132,7 +159,11 @@ public abstract class ToolCallAgent extends ReActAgent{
         //查看是否调用终止工具
         boolean doTerminate = result.getResponses().stream().anyMatch(toolResponse -> toolResponse.name().equals("doTerminate"));
         if (doTerminate){
-            setState(AgentStateEnum.FINISHED);
+            context.setState(AgentStateEnum.FINISHED);
+        } else if (loopDetector.recordStep(context, toolCalls, memoHits)) {
+            // 连续多步没有获得新信息，提前结束并直接进入总结
+            log.warn("Agent 连续 {} 步没有进展，提前结束运行", context.getStalledSteps());
+            context.setState(AgentStateEnum.FINISHED);
         }
         return content;
     }
@@ -24,6 +24,7 @@ public class TerminalOperationTools {
     private static final int DEFAULT_TIMEOUT = 60; // 默认超时时间（秒）
     private static final String OS_NAME = System.getProperty("os.name").toLowerCase();
     private static final boolean IS_WINDOWS = OS_NAME.contains("windows");
+    private static final long OUTPUT_DRAIN_MILLIS = 1000; // 进程结束后等待输出读取完毕的最长时间（毫秒）
 
     /**
      * 执行终端命令并返回输出结果。
@@ -65,32 +66,30 @@ public class TerminalOperationTools {
         
         processBuilder.redirectErrorStream(true);
         
+        Process process = null;
         try {
             log.info("执行命令: {}", command);
-            Process process = processBuilder.start();
-            
-            // 读取命令输出
-            StringBuilder output = new StringBuilder();
-            try (BufferedReader reader = new BufferedReader(
-                    new InputStreamReader(process.getInputStream(), Charset.defaultCharset()))) {
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    output.append(line).append("\n");
-                }
-            }
-            
+            process = processBuilder.start();
+            Process started = process;
+
+            // 在独立的虚拟线程上读取命令输出，调用线程只等待进程结束，超时与中断都能及时生效
+            StringBuffer output = new StringBuffer();
+            Thread reader = Thread.ofVirtual().name("terminal-output-reader").start(() -> readOutput(started, output));
+
             // 等待命令执行完成
             boolean finished = process.waitFor(timeoutSeconds, TimeUnit.SECONDS);
-            
+
             if (!finished) {
-                process.destroyForcibly();
+                destroy(process);
                 log.warn("命令执行超时: {}", command);
                 return String.format("命令执行超时（%d秒）！命令: %s", timeoutSeconds, command);
             }
-            
+            // 进程已结束，等待剩余输出读取完毕
+            reader.join(OUTPUT_DRAIN_MILLIS);
+
             int exitCode = process.exitValue();
             String result = output.toString();
-            
+
             if (exitCode == 0) {
                 log.info("命令执行成功: {}", command);
                 return String.format("命令执行成功！\n输出:\n%s", result);
@@ -98,17 +97,43 @@ public class TerminalOperationTools {
                 log.error("命令执行失败，退出码: {}", exitCode);
                 return String.format("命令执行失败！退出码: %d\n输出:\n%s", exitCode, result);
             }
-            
+
         } catch (IOException e) {
             log.error("执行命令时发生 IO 错误: {}", command, e);
             return String.format("命令执行失败！IO 错误: %s", e.getMessage());
         } catch (InterruptedException e) {
-            log.error("命令执行被中断: {}", command, e);
+            // 所属的 Agent 运行被取消（客户端断开），终止进程及其子进程
+            log.warn("命令执行被中断，终止进程: {}", command);
+            destroy(process);
             Thread.currentThread().interrupt();
             return String.format("命令执行被中断！命令: %s", command);
         }
     }
 
+    private void readOutput(Process process, StringBuffer output) {
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(process.getInputStream(), Charset.defaultCharset()))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                output.append(line).append("\n");
+            }
+        } catch (IOException e) {
+            // 进程被终止后输出流关闭，已读取的内容保留
+            log.debug("读取命令输出结束: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 强制终止进程，先终止其派生的子进程（sh -c 启动的命令运行在子进程中）
+     */
+    private void destroy(Process process) {
+        if (process == null) {
+            return;
+        }
+        process.descendants().forEach(ProcessHandle::destroyForcibly);
+        process.destroyForcibly();
+    }
+
     /**
      * 获取当前工作目录。
      *
@@ -1,13 +1,21 @@
 package com.ly.cookbook.app;
 
+import cn.hutool.crypto.digest.DigestUtil;
 import com.ly.cookbook.advisor.ChatLogAdvisor;
+import com.ly.cookbook.advisor.LlmPriorityAdvisor;
+import com.ly.cookbook.auth.UserRoleResolver;
+import com.ly.cookbook.cache.ChatResponseCache;
+import com.ly.cookbook.cache.SemanticAnswerCache;
+import com.ly.cookbook.cache.ToolExecutionTrackingCallback;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.ai.chat.client.ChatClient;
 import org.springframework.ai.chat.client.advisor.MessageChatMemoryAdvisor;
 import org.springframework.ai.chat.client.advisor.api.Advisor;
 import org.springframework.ai.chat.memory.ChatMemory;
 import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.prompt.ChatOptions;
 import org.springframework.ai.tool.ToolCallback;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.io.Resource;
@@ -16,6 +24,8 @@ import reactor.core.publisher.Flux;
 
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
 
 /**
  * @author 刘燚
@@ -30,34 +40,70 @@ public class CookBookApp {
 
     private final ChatClient chatClient;
     private final ChatClient chatClientWithMemory;
+    /**
+     * 路由使用的带记忆 ChatClient：直接对话不检索知识库，知识库问答只检索知识库，均不挂载工具
+     */
+    private final ChatClient directChatClient;
+    private final ChatClient ragChatClient;
     private final ChatMemory chatMemory;
+    private final UserRoleResolver userRoleResolver;
+    private final ChatResponseCache chatResponseCache;
+    /**
+     * 语义回答缓存，未开启时为 null
+     */
+    private final SemanticAnswerCache semanticAnswerCache;
+    /**
+     * 无记忆对话回答缓存的作用域：系统提示词与模型选项变化后旧回答不再命中
+     */
+    private final String responseCacheScope;
     private final String SYSTEM_PROMPT;
 
     @Autowired
-    public CookBookApp(ChatModel dashScopeChatModel, ChatMemory pgChatMemory, Advisor chatTokenHandlerAdvisor,
-                       ChatLogAdvisor chatLogAdvisor, Advisor ragCloudAdvisor, ToolCallback[] allTools,
+    public CookBookApp(ChatModel cookbookChatModel, ChatMemory pgChatMemory, Advisor chatTokenHandlerAdvisor,
+                       ChatLogAdvisor chatLogAdvisor, Advisor ragCloudAdvisor, Advisor llmPriorityAdvisor,
+                       UserRoleResolver userRoleResolver, ChatResponseCache chatResponseCache,
+                       ObjectProvider<SemanticAnswerCache> semanticAnswerCache, ToolCallback[] allTools,
                        @Value("classpath:prompt/cookbook.txt") Resource promptResource) throws IOException {
         // 读取提示词文件
         this.SYSTEM_PROMPT = promptResource.getContentAsString(StandardCharsets.UTF_8);
         log.info("System prompt loaded successfully, length: {} characters", SYSTEM_PROMPT.length());
-        // 普通ChatClient（无记忆）
-        this.chatClient = ChatClient.builder(dashScopeChatModel)
+        this.userRoleResolver = userRoleResolver;
+        this.chatResponseCache = chatResponseCache;
+        this.semanticAnswerCache = semanticAnswerCache.getIfAvailable();
+        this.responseCacheScope = DigestUtil.sha256Hex(SYSTEM_PROMPT) + ":" + optionsFingerprint(cookbookChatModel.getDefaultOptions());
+        // 普通ChatClient（无记忆），工具执行时标记本次请求，执行过工具的回答不写入缓存
+        this.chatClient = ChatClient.builder(cookbookChatModel)
                 .defaultAdvisors(chatLogAdvisor)
                 .defaultAdvisors(ragCloudAdvisor)
                 .defaultAdvisors(chatTokenHandlerAdvisor)
-                .defaultToolCallbacks(allTools)
+                .defaultAdvisors(llmPriorityAdvisor)
+                .defaultToolCallbacks(ToolExecutionTrackingCallback.wrap(allTools))
                 .build();
         // 带记忆功能的ChatClient
         this.chatMemory = pgChatMemory;
         // 带记忆功能的ChatClient
 
-        this.chatClientWithMemory = ChatClient.builder(dashScopeChatModel)
+        this.chatClientWithMemory = ChatClient.builder(cookbookChatModel)
                 .defaultAdvisors(chatLogAdvisor)
                 .defaultAdvisors(ragCloudAdvisor)
                 .defaultAdvisors(chatTokenHandlerAdvisor)
+                .defaultAdvisors(llmPriorityAdvisor)
                 .defaultAdvisors(MessageChatMemoryAdvisor.builder(chatMemory).build())
                 .defaultToolCallbacks(allTools)
                 .build();
+        this.directChatClient = ChatClient.builder(cookbookChatModel)
+                .defaultAdvisors(chatLogAdvisor)
+                .defaultAdvisors(chatTokenHandlerAdvisor)
+                .defaultAdvisors(llmPriorityAdvisor)
+                .defaultAdvisors(MessageChatMemoryAdvisor.builder(chatMemory).build())
+                .build();
+        this.ragChatClient = ChatClient.builder(cookbookChatModel)
+                .defaultAdvisors(chatLogAdvisor)
+                .defaultAdvisors(ragCloudAdvisor)
+                .defaultAdvisors(chatTokenHandlerAdvisor)
+                .defaultAdvisors(llmPriorityAdvisor)
+                .defaultAdvisors(MessageChatMemoryAdvisor.builder(chatMemory).build())
+                .build();
         log.info("ChatClient initialized successfully with DashScope");
         log.info("ChatClient with Memory initialized successfully");
     }
@@ -69,37 +115,55 @@ public class CookBookApp {
      */
     public Flux<String> chatByStream(String userMessage) {
         log.info("User message (no memory)");
-        Flux<String> response = chatClient.prompt()
-                .system(SYSTEM_PROMPT)
-                .user(userMessage)
-                .stream()
-                .content();
-        return response;
+        return chatByStreamWithResponse(userMessage)
+                .mapNotNull(chatResponse -> chatResponse.getResult() == null ? null : chatResponse.getResult().getOutput().getText());
     }
 
     /**
      * 简单的聊天方法（流式，带 ChatResponse）
-     * 用于需要获取 Token 统计信息的场景
+     * 用于需要获取 Token 统计信息的场景，相同或相似问题命中缓存时重放缓存的回答（不携带 token 用量），
+     * 执行过工具的回答不写入缓存
      * 
      * @param userMessage 用户消息
      * @return ChatResponse 流（包含内容和 metadata）
      */
     public Flux<org.springframework.ai.chat.model.ChatResponse> chatByStreamWithResponse(String userMessage) {
         log.info("User message (no memory, with response metadata)");
-        return chatClient.prompt()
+        // 在请求线程上解析角色，合并请求的兜底调用可能在其他线程上执行
+        String userRole = userRoleResolver.resolveCurrent();
+        AtomicBoolean toolExecuted = new AtomicBoolean();
+        Supplier<Flux<org.springframework.ai.chat.model.ChatResponse>> modelCall = () -> chatClient.prompt()
                 .system(SYSTEM_PROMPT)
                 .user(userMessage)
+                .advisors(a -> a.param(LlmPriorityAdvisor.USER_ROLE, userRole))
+                .toolContext(ToolExecutionTrackingCallback.toolContext(toolExecuted))
                 .stream()
                 .chatResponse();
+        // 精确匹配未命中时再查语义缓存（相似问法），都未命中才调用模型
+        return chatResponseCache.getOrStream(chatResponseCache.buildKey(responseCacheScope, userMessage),
+                semanticAnswerCache == null ? modelCall
+                        : () -> semanticAnswerCache.getOrStream(responseCacheScope, userMessage, modelCall, () -> !toolExecuted.get()),
+                () -> !toolExecuted.get());
     }
+
+    /**
+     * 简单的聊天方法（无记忆），相同或相似问题命中缓存、或合并到进行中的请求时不调用模型，执行过工具的回答不写入缓存
+     */
     public String chat(String userMessage) {
         log.info("User message (no memory)");
-        String response = chatClient.prompt()
+        String userRole = userRoleResolver.resolveCurrent();
+        AtomicBoolean toolExecuted = new AtomicBoolean();
+        Supplier<String> modelCall = () -> chatClient.prompt()
                 .system(SYSTEM_PROMPT)
                 .user(userMessage)
+                .advisors(a -> a.param(LlmPriorityAdvisor.USER_ROLE, userRole))
+                .toolContext(ToolExecutionTrackingCallback.toolContext(toolExecuted))
                 .call()
                 .content();
-        return response;
+        return chatResponseCache.getOrLoad(chatResponseCache.buildKey(responseCacheScope, userMessage),
+                semanticAnswerCache == null ? modelCall
+                        : () -> semanticAnswerCache.getOrLoad(responseCacheScope, userMessage, modelCall, () -> !toolExecuted.get()),
+                () -> !toolExecuted.get());
     }
 
     /**
@@ -113,7 +177,8 @@ public class CookBookApp {
         String response = chatClientWithMemory.prompt()
                 .system(SYSTEM_PROMPT)
                 .user(userMessage)
-                .advisors(a -> a.param("chat_memory_conversation_id", conversationId))
+                .advisors(a -> a.param("chat_memory_conversation_id", conversationId)
+                        .param(LlmPriorityAdvisor.USER_ROLE, userRoleResolver.resolveCurrent()))
                 .call()
                 .content();
         return response;
@@ -124,7 +189,8 @@ public class CookBookApp {
         return chatClientWithMemory.prompt()
                 .system(SYSTEM_PROMPT)
                 .user(userMessage)
-                .advisors(a -> a.param("chat_memory_conversation_id", conversationId))
+                .advisors(a -> a.param("chat_memory_conversation_id", conversationId)
+                        .param(LlmPriorityAdvisor.USER_ROLE, userRoleResolver.resolveCurrent()))
                 .stream()
                 .content();
     }
@@ -143,11 +209,55 @@ public class CookBookApp {
         return chatClientWithMemory.prompt()
                 .system(SYSTEM_PROMPT)
                 .user(userMessage)
-                .advisors(a -> a.param("chat_memory_conversation_id", conversationId))
+                .advisors(a -> a.param("chat_memory_conversation_id", conversationId)
+                        .param(LlmPriorityAdvisor.USER_ROLE, userRoleResolver.resolveCurrent()))
                 .stream()
                 .chatResponse();
     }
 
+    /**
+     * 直接对话（带记忆）：不检索知识库、不调用工具，用于路由判定为寒暄或通用常识的问题
+     *
+     * @return ChatResponse（包含内容和 token 用量）
+     */
+    public org.springframework.ai.chat.model.ChatResponse chatDirect(String conversationId, String userMessage) {
+        log.info("User message routed to direct chat");
+        return directChatClient.prompt()
+                .system(SYSTEM_PROMPT)
+                .user(userMessage)
+                .advisors(a -> a.param("chat_memory_conversation_id", conversationId)
+                        .param(LlmPriorityAdvisor.USER_ROLE, userRoleResolver.resolveCurrent()))
+                .call()
+                .chatResponse();
+    }
+
+    /**
+     * 知识库问答（带记忆）：经 RAG 检索菜谱知识库后回答，不调用工具，用于路由判定为具体菜品做法的问题
+     *
+     * @return ChatResponse（包含内容和 token 用量）
+     */
+    public org.springframework.ai.chat.model.ChatResponse chatWithRag(String conversationId, String userMessage) {
+        log.info("User message routed to RAG chat");
+        return ragChatClient.prompt()
+                .system(SYSTEM_PROMPT)
+                .user(userMessage)
+                .advisors(a -> a.param("chat_memory_conversation_id", conversationId)
+                        .param(LlmPriorityAdvisor.USER_ROLE, userRoleResolver.resolveCurrent()))
+                .call()
+                .chatResponse();
+    }
+
+    /**
+     * 模型选项摘要：模型名称与采样参数
+     */
+    private static String optionsFingerprint(ChatOptions options) {
+        if (options == null) {
+            return "default";
+        }
+        return String.join("|", String.valueOf(options.getModel()), String.valueOf(options.getTemperature()),
+                String.valueOf(options.getTopP()), String.valueOf(options.getTopK()), String.valueOf(options.getMaxTokens()));
+    }
+
     /**
      * 清除特定会话的记忆
      * @param conversationId 会话ID
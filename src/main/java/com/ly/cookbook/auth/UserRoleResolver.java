@@ -0,0 +1,66 @@
+package com.ly.cookbook.auth;
+
+import cn.dev33.satoken.stp.StpUtil;
+import cn.hutool.cache.CacheUtil;
+import cn.hutool.cache.impl.TimedCache;
+import com.ly.cookbook.common.constant.UserConstant;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * @author 刘燚
+ * @version v1.0.0
+ * @Description 用户角色解析：通过 StpInterfaceImpl.getRoleList 查询登录用户的角色并短时缓存，
+ * 供模型调用调度等高频场景使用，避免每次调用都查询数据库
+ * @createDate：2026/10/18 20:50
+ * @email liuyia2022@163.com
+ */
+@Slf4j
+@Component
+public class UserRoleResolver {
+
+    /**
+     * 角色缓存时间（毫秒），角色变更最多延迟这么久生效
+     */
+    private static final long ROLE_CACHE_TTL = 5 * 60 * 1000L;
+
+    private final TimedCache<Long, String> roleCache = CacheUtil.newTimedCache(ROLE_CACHE_TTL);
+
+    /**
+     * 获取用户角色编码，未登录或查询失败时按免费用户处理
+     */
+    public String resolve(Long userId) {
+        if (userId == null) {
+            return UserConstant.USER_FREE;
+        }
+        String role = roleCache.get(userId, false);
+        if (role != null) {
+            return role;
+        }
+        try {
+            List<String> roles = StpUtil.getRoleList(userId);
+            role = roles.isEmpty() ? UserConstant.USER_FREE : roles.get(0);
+        } catch (Exception e) {
+            log.warn("查询用户角色失败，按免费用户处理: {}, {}", userId, e.getMessage());
+            return UserConstant.USER_FREE;
+        }
+        roleCache.put(userId, role);
+        return role;
+    }
+
+    /**
+     * 当前请求登录用户的角色，需在请求线程上调用
+     */
+    public String resolveCurrent() {
+        Object loginId;
+        try {
+            loginId = StpUtil.getLoginIdDefaultNull();
+        } catch (Exception e) {
+            // 非请求线程没有 Sa-Token 上下文
+            return UserConstant.USER_FREE;
+        }
+        return resolve(loginId != null ? Long.valueOf(loginId.toString()) : null);
+    }
+}
@@ -0,0 +1,52 @@
+package com.ly.cookbook.cache;
+
+import org.springframework.ai.chat.model.ToolContext;
+import org.springframework.ai.tool.ToolCallback;
+import org.springframework.ai.tool.definition.ToolDefinition;
+import org.springframework.ai.tool.metadata.ToolMetadata;
+
+/**
+ * @author 刘燚
+ * @version v1.0.0
+ * @Description 带结果缓存的工具回调，工具定义与元数据保持与原始工具一致
+ * @createDate：2026/10/18 15:20
+ * @email liuyia2022@163.com
+ */
+public class CachingToolCallback implements ToolCallback {
+
+    private final ToolCallback delegate;
+
+    private final ToolResultCache toolResultCache;
+
+    public CachingToolCallback(ToolCallback delegate, ToolResultCache toolResultCache) {
+        this.delegate = delegate;
+        this.toolResultCache = toolResultCache;
+    }
+
+    @Override
+    public ToolDefinition getToolDefinition() {
+        return delegate.getToolDefinition();
+    }
+
+    @Override
+    public ToolMetadata getToolMetadata() {
+        return delegate.getToolMetadata();
+    }
+
+    @Override
+    public String call(String toolInput) {
+        return call(toolInput, null);
+    }
+
+    @Override
+    public String call(String toolInput, ToolContext toolContext) {
+        String toolName = getToolDefinition().name();
+        String cached = toolResultCache.get(toolName, toolInput);
+        if (cached != null) {
+            return cached;
+        }
+        String result = toolContext == null ? delegate.call(toolInput) : delegate.call(toolInput, toolContext);
+        toolResultCache.put(toolName, toolInput, result);
+        return result;
+    }
+}
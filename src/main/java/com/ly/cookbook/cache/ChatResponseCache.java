@@ -0,0 +1,303 @@
+package com.ly.cookbook.cache;
+
+import cn.hutool.cache.CacheUtil;
+import cn.hutool.cache.impl.LRUCache;
+import cn.hutool.crypto.digest.DigestUtil;
+import com.ly.cookbook.common.constant.RedisConstant;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.metadata.ChatResponseMetadata;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.text.Normalizer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
+
+/**
+ * @author 刘燚
+ * @version v1.0.0
+ * @Description 无记忆对话的精确匹配回答缓存：按 规范化的用户消息 + 系统提示词摘要 + 模型选项 缓存完整回答，
+ * 本地堆内 LRU 为一级缓存，Redis 为二级缓存。相同问题的并发请求只有一个真正调用模型，
+ * 其余请求等待其结果（single-flight）；流式接口命中时把缓存的回答切分为分片重放。
+ * 命中与合并的请求没有调用模型，重放的响应不携带 token 用量，不计入用户 token
+ * @createDate：2026/10/18 22:10
+ * @email liuyia2022@163.com
+ */
+@Slf4j
+@Component
+public class ChatResponseCache {
+
+    /**
+     * 重放响应元数据中的标记，值为命中来源
+     */
+    public static final String CACHE_METADATA_KEY = "cookbook_cache";
+
+    private final LRUCache<String, String> localCache;
+
+    private final ConcurrentHashMap<String, CompletableFuture<String>> inFlight = new ConcurrentHashMap<>();
+
+    private final boolean enabled;
+
+    private final Duration localTtl;
+
+    private final Duration ttl;
+
+    private final int maxAnswerChars;
+
+    private final int replayChunkChars;
+
+    private final RedisTemplate<String, Object> redisTemplate;
+
+    private final MeterRegistry meterRegistry;
+
+    public ChatResponseCache(@Value("${cookbook.chat-cache.enabled:true}") boolean enabled,
+                             @Value("${cookbook.chat-cache.local-max-size:1000}") int localMaxSize,
+                             @Value("${cookbook.chat-cache.local-ttl:10m}") Duration localTtl,
+                             @Value("${cookbook.chat-cache.ttl:6h}") Duration ttl,
+                             @Value("${cookbook.chat-cache.max-answer-chars:8000}") int maxAnswerChars,
+                             @Value("${cookbook.chat-cache.replay-chunk-chars:32}") int replayChunkChars,
+                             RedisTemplate<String, Object> redisTemplate,
+                             MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        this.localTtl = localTtl;
+        this.ttl = ttl;
+        this.maxAnswerChars = maxAnswerChars;
+        this.replayChunkChars = replayChunkChars;
+        this.localCache = CacheUtil.newLRUCache(localMaxSize, localTtl.toMillis());
+        this.redisTemplate = redisTemplate;
+        this.meterRegistry = meterRegistry;
+        log.info("对话回答缓存初始化完成，启用: {}, 本地容量: {}, 过期时间: {}", enabled, localMaxSize, ttl);
+    }
+
+    /**
+     * 缓存 Key：作用域（系统提示词摘要与模型选项）+ 规范化用户消息的摘要
+     *
+     * @param scope       调用方的作用域，提示词或模型选项变化后旧回答不再命中
+     * @param userMessage 用户消息
+     */
+    public String buildKey(String scope, String userMessage) {
+        return RedisConstant.CHAT_RESPONSE + DigestUtil.sha256Hex(scope + "\n" + normalize(userMessage));
+    }
+
+    /**
+     * 用户消息规范化：全角转半角、英文小写、连续空白合并、去除首尾空白与末尾标点
+     */
+    public static String normalize(String userMessage) {
+        if (userMessage == null) {
+            return "";
+        }
+        String normalized = Normalizer.normalize(userMessage, Normalizer.Form.NFKC)
+                .toLowerCase(Locale.ROOT)
+                .replaceAll("\\s+", " ")
+                .trim();
+        return normalized.replaceAll("[\\p{Punct}\\p{IsPunctuation}\\s]+$", "");
+    }
+
+    /**
+     * 同步调用：命中直接返回；未命中时相同 Key 只有一个请求调用 loader，其余请求等待其结果
+     */
+    public String getOrLoad(String key, Supplier<String> loader) {
+        return getOrLoad(key, loader, () -> true);
+    }
+
+    /**
+     * 同步调用，loader 返回后 cacheable 为 false 的回答（如执行过工具）不写入缓存，也不共享给等待的请求
+     */
+    public String getOrLoad(String key, Supplier<String> loader, BooleanSupplier cacheable) {
+        if (!enabled) {
+            return loader.get();
+        }
+        String cached = get(key);
+        if (cached != null) {
+            return cached;
+        }
+        CompletableFuture<String> leader = new CompletableFuture<>();
+        CompletableFuture<String> existing = inFlight.putIfAbsent(key, leader);
+        if (existing != null) {
+            record("coalesced");
+            try {
+                return existing.join();
+            } catch (Exception e) {
+                // 首个请求失败或回答不可共享时各自调用模型，不把错误扩散给等待的请求
+                log.warn("合并请求的首个调用未返回可共享的回答，单独调用模型: {}", e.getMessage());
+                return loader.get();
+            }
+        }
+        record("miss");
+        try {
+            String answer = loader.get();
+            if (!cacheable.getAsBoolean()) {
+                record("uncacheable");
+                leader.completeExceptionally(new IllegalStateException("回答依赖工具执行，不可共享"));
+                return answer;
+            }
+            putLocal(key, answer);
+            leader.complete(answer);
+            putRemote(key, answer);
+            return answer;
+        } catch (RuntimeException e) {
+            leader.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, leader);
+        }
+    }
+
+    /**
+     * 流式调用：命中时重放缓存的回答；未命中时相同 Key 只有一个请求调用模型，
+     * 其余请求等待完整回答后重放。首个请求出错或被取消时，等待的请求各自调用模型
+     */
+    public Flux<ChatResponse> getOrStream(String key, Supplier<Flux<ChatResponse>> loader) {
+        return getOrStream(key, loader, () -> true);
+    }
+
+    /**
+     * 流式调用，流结束时 cacheable 为 false 的回答（如执行过工具）不写入缓存，也不共享给等待的请求
+     */
+    public Flux<ChatResponse> getOrStream(String key, Supplier<Flux<ChatResponse>> loader, BooleanSupplier cacheable) {
+        if (!enabled) {
+            return loader.get();
+        }
+        return Flux.defer(() -> {
+            String cached = get(key);
+            if (cached != null) {
+                return replay(cached, "hit");
+            }
+            CompletableFuture<String> leader = new CompletableFuture<>();
+            CompletableFuture<String> existing = inFlight.putIfAbsent(key, leader);
+            if (existing != null) {
+                record("coalesced");
+                return Mono.fromFuture(existing, true)
+                        .flatMapMany(answer -> replay(answer, "coalesced"))
+                        .onErrorResume(e -> {
+                            log.warn("合并请求的首个调用未返回可共享的回答，单独调用模型: {}", e.getMessage());
+                            return loader.get();
+                        });
+            }
+            record("miss");
+            StringBuilder answer = new StringBuilder();
+            // loader 同步抛出的异常也转为错误信号，保证首个请求的占位被移除、等待的请求不会一直挂起
+            return Flux.defer(loader)
+                    .doOnNext(chatResponse -> {
+                        if (chatResponse.getResult() != null && chatResponse.getResult().getOutput().getText() != null) {
+                            answer.append(chatResponse.getResult().getOutput().getText());
+                        }
+                    })
+                    .doOnComplete(() -> {
+                        String text = answer.toString();
+                        if (StringUtils.isBlank(text)) {
+                            leader.completeExceptionally(new IllegalStateException("回答为空"));
+                            return;
+                        }
+                        if (!cacheable.getAsBoolean()) {
+                            record("uncacheable");
+                            leader.completeExceptionally(new IllegalStateException("回答依赖工具执行，不可共享"));
+                            return;
+                        }
+                        putLocal(key, text);
+                        leader.complete(text);
+                        // 流结束时位于模型响应线程上，Redis 写入放到弹性线程池
+                        Schedulers.boundedElastic().schedule(() -> putRemote(key, text));
+                    })
+                    .doOnError(leader::completeExceptionally)
+                    .doOnCancel(() -> leader.completeExceptionally(new CancellationException("首个请求已取消")))
+                    .doFinally(signal -> inFlight.remove(key, leader));
+        });
+    }
+
+    /**
+     * 查询缓存，先查本地再查 Redis，Redis 命中后回填本地。未命中由调用方在确定调用模型后记录
+     *
+     * @return 缓存的回答，未命中返回 null
+     */
+    public String get(String key) {
+        String answer = localCache.get(key);
+        if (answer != null) {
+            record("local_hit");
+            return answer;
+        }
+        try {
+            Object cached = redisTemplate.opsForValue().get(key);
+            if (cached instanceof String redisAnswer) {
+                localCache.put(key, redisAnswer, localTtl.toMillis());
+                record("redis_hit");
+                return redisAnswer;
+            }
+        } catch (Exception e) {
+            // Redis 不可用时退化为仅本地缓存
+            log.warn("读取对话回答缓存失败: {}", e.getMessage());
+        }
+        return null;
+    }
+
+    private void putLocal(String key, String answer) {
+        if (isCacheable(answer)) {
+            localCache.put(key, answer, Math.min(localTtl.toMillis(), ttl.toMillis()));
+        }
+    }
+
+    private void putRemote(String key, String answer) {
+        if (!isCacheable(answer)) {
+            return;
+        }
+        try {
+            redisTemplate.opsForValue().set(key, answer, ttl.toSeconds(), TimeUnit.SECONDS);
+        } catch (Exception e) {
+            log.warn("写入对话回答缓存失败: {}", e.getMessage());
+        }
+    }
+
+    private boolean isCacheable(String answer) {
+        return StringUtils.isNotBlank(answer) && answer.length() <= maxAnswerChars;
+    }
+
+    private Flux<ChatResponse> replay(String answer, String source) {
+        return replay(answer, source, replayChunkChars);
+    }
+
+    /**
+     * 把完整回答切分为分片重放，按码点切分避免拆开代理对；重放的响应不携带 token 用量
+     *
+     * @param source 命中来源，写入响应元数据 {@link #CACHE_METADATA_KEY}
+     */
+    public static Flux<ChatResponse> replay(String answer, String source, int chunkChars) {
+        List<String> chunks = new ArrayList<>();
+        int start = 0;
+        while (start < answer.length()) {
+            int end = answer.offsetByCodePoints(start, Math.min(chunkChars, answer.codePointCount(start, answer.length())));
+            chunks.add(answer.substring(start, end));
+            start = end;
+        }
+        ChatResponseMetadata metadata = ChatResponseMetadata.builder()
+                .keyValue(CACHE_METADATA_KEY, source)
+                .build();
+        return Flux.fromIterable(chunks)
+                .map(chunk -> new ChatResponse(List.of(new Generation(new AssistantMessage(chunk))), metadata));
+    }
+
+    private void record(String result) {
+        Counter.builder("cookbook.chat.cache")
+                .description("对话回答缓存访问次数")
+                .tag("result", result)
+                .register(meterRegistry)
+                .increment();
+    }
+}
@@ -0,0 +1,120 @@
+package com.ly.cookbook.cache;
+
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.Embedding;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * @author 刘燚
+ * @version v1.0.0
+ * @Description 本地确定性嵌入模型（特征哈希）：去除疑问词等虚词与通用词后，中文取单字与相邻双字、其余取单词作为特征，
+ * 哈希到固定维度并归一化。不调用外部服务、结果稳定，用于测试与无嵌入服务的环境，
+ * 只能识别字面相近的改写（如“红烧肉做法”与“怎么做红烧肉”），不理解同义词
+ * @createDate：2026/10/18 22:40
+ * @email liuyia2022@163.com
+ */
+public class HashingEmbeddingModel implements EmbeddingModel {
+
+    /**
+     * 不影响问题含义的虚词与菜谱问题中的通用词，计算特征前去除（较长的词在前）
+     */
+    private static final String[] FILLER_WORDS = {
+            "请问", "怎么样", "怎么", "怎样", "如何", "什么", "一下", "可以", "应该", "我想", "想要",
+            "做法", "方法", "教程", "做", "的", "了", "吗", "呢", "啊", "呀"
+    };
+
+    private final int dimensions;
+
+    public HashingEmbeddingModel(int dimensions) {
+        this.dimensions = dimensions;
+    }
+
+    @Override
+    public EmbeddingResponse call(EmbeddingRequest request) {
+        List<Embedding> embeddings = new ArrayList<>();
+        List<String> instructions = request.getInstructions();
+        for (int i = 0; i < instructions.size(); i++) {
+            embeddings.add(new Embedding(embed(instructions.get(i)), i));
+        }
+        return new EmbeddingResponse(embeddings);
+    }
+
+    @Override
+    public float[] embed(Document document) {
+        return embed(document.getText());
+    }
+
+    @Override
+    public float[] embed(String text) {
+        float[] vector = new float[dimensions];
+        for (String feature : features(text)) {
+            int hash = mix(feature.hashCode());
+            int index = Math.floorMod(hash, dimensions);
+            // 用另一部分哈希位决定符号，哈希冲突时相互抵消而不是累加
+            vector[index] += (hash & 0x40000000) == 0 ? 1 : -1;
+        }
+        return HnswIndex.normalize(vector);
+    }
+
+    @Override
+    public int dimensions() {
+        return dimensions;
+    }
+
+    static List<String> features(String text) {
+        String normalized = Normalizer.normalize(text == null ? "" : text, Normalizer.Form.NFKC).toLowerCase(Locale.ROOT);
+        for (String fillerWord : FILLER_WORDS) {
+            normalized = normalized.replace(fillerWord, " ");
+        }
+        List<String> features = new ArrayList<>();
+        StringBuilder word = new StringBuilder();
+        int previousIdeograph = -1;
+        for (int i = 0; i < normalized.length(); ) {
+            int codePoint = normalized.codePointAt(i);
+            i += Character.charCount(codePoint);
+            if (Character.isIdeographic(codePoint)) {
+                flushWord(word, features);
+                String unigram = new String(Character.toChars(codePoint));
+                features.add(unigram);
+                if (previousIdeograph >= 0) {
+                    features.add(new String(Character.toChars(previousIdeograph)) + unigram);
+                }
+                previousIdeograph = codePoint;
+            } else if (Character.isLetterOrDigit(codePoint)) {
+                word.appendCodePoint(codePoint);
+                previousIdeograph = -1;
+            } else {
+                flushWord(word, features);
+                previousIdeograph = -1;
+            }
+        }
+        flushWord(word, features);
+        return features;
+    }
+
+    private static void flushWord(StringBuilder word, List<String> features) {
+        if (!word.isEmpty()) {
+            features.add("w:" + word);
+            word.setLength(0);
+        }
+    }
+
+    /**
+     * MurmurHash3 的 32 位收尾混合，打散 String.hashCode 的低位
+     */
+    private static int mix(int hash) {
+        hash ^= hash >>> 16;
+        hash *= 0x85ebca6b;
+        hash ^= hash >>> 13;
+        hash *= 0xc2b2ae35;
+        hash ^= hash >>> 16;
+        return hash;
+    }
+}
@@ -0,0 +1,266 @@
+package com.ly.cookbook.cache;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * @author 刘燚
+ * @version v1.0.0
+ * @Description 进程内 HNSW（分层可导航小世界图）向量索引，相似度为余弦相似度（向量写入与查询前归一化后取点积）。
+ * 删除为标记删除：被删除的节点仍参与图的导航但不出现在结果中，删除过多时由调用方重建索引。
+ * 非线程安全，由调用方加锁
+ * @createDate：2026/10/18 22:40
+ * @email liuyia2022@163.com
+ */
+public class HnswIndex {
+
+    /**
+     * 每个节点在上层的最大邻居数，第 0 层为其两倍
+     */
+    private final int m;
+
+    private final int efConstruction;
+
+    private final double levelMultiplier;
+
+    private final List<Node> nodes = new ArrayList<>();
+
+    private int entryPoint = -1;
+
+    private int maxLevel = -1;
+
+    private int deletedCount;
+
+    public HnswIndex(int m, int efConstruction) {
+        this.m = m;
+        this.efConstruction = efConstruction;
+        this.levelMultiplier = 1 / Math.log(m);
+    }
+
+    /**
+     * 写入向量
+     *
+     * @return 节点 ID，按写入顺序从 0 开始递增
+     */
+    public int add(float[] vector) {
+        float[] normalized = normalize(vector);
+        int level = (int) Math.floor(-Math.log(1 - ThreadLocalRandom.current().nextDouble()) * levelMultiplier);
+        Node node = new Node(normalized, level);
+        int id = nodes.size();
+        nodes.add(node);
+        if (entryPoint < 0) {
+            entryPoint = id;
+            maxLevel = level;
+            return id;
+        }
+        int current = entryPoint;
+        for (int layer = maxLevel; layer > level; layer--) {
+            current = greedyClosest(normalized, current, layer);
+        }
+        for (int layer = Math.min(level, maxLevel); layer >= 0; layer--) {
+            List<Candidate> candidates = searchLayer(normalized, current, efConstruction, layer);
+            int maxNeighbors = layer == 0 ? m * 2 : m;
+            List<Integer> neighbors = node.neighbors.get(layer);
+            for (int i = 0; i < Math.min(m, candidates.size()); i++) {
+                int neighborId = candidates.get(i).id();
+                neighbors.add(neighborId);
+                List<Integer> reverse = nodes.get(neighborId).neighbors.get(layer);
+                reverse.add(id);
+                if (reverse.size() > maxNeighbors) {
+                    shrink(neighborId, reverse, maxNeighbors);
+                }
+            }
+            current = candidates.get(0).id();
+        }
+        if (level > maxLevel) {
+            entryPoint = id;
+            maxLevel = level;
+        }
+        return id;
+    }
+
+    /**
+     * 标记删除
+     */
+    public void remove(int id) {
+        Node node = nodes.get(id);
+        if (!node.deleted) {
+            node.deleted = true;
+            deletedCount++;
+        }
+    }
+
+    /**
+     * 查询最相似的 k 个未删除的向量
+     *
+     * @param ef 第 0 层搜索的候选集大小，越大召回越高、越慢
+     * @return 按相似度从高到低排列的结果
+     */
+    public List<Result> search(float[] vector, int k, int ef) {
+        if (entryPoint < 0) {
+            return List.of();
+        }
+        float[] normalized = normalize(vector);
+        int current = entryPoint;
+        for (int layer = maxLevel; layer > 0; layer--) {
+            current = greedyClosest(normalized, current, layer);
+        }
+        List<Result> results = new ArrayList<>(k);
+        for (Candidate candidate : searchLayer(normalized, current, Math.max(ef, k), 0)) {
+            if (!nodes.get(candidate.id()).deleted) {
+                results.add(new Result(candidate.id(), 1 - candidate.distance()));
+                if (results.size() == k) {
+                    break;
+                }
+            }
+        }
+        return results;
+    }
+
+    public float[] vector(int id) {
+        return nodes.get(id).vector;
+    }
+
+    public boolean isDeleted(int id) {
+        return nodes.get(id).deleted;
+    }
+
+    /**
+     * 节点总数（包含已删除的节点）
+     */
+    public int size() {
+        return nodes.size();
+    }
+
+    public int deletedCount() {
+        return deletedCount;
+    }
+
+    /**
+     * 上层导航：逐步移动到更近的邻居，直到无法更近
+     */
+    private int greedyClosest(float[] query, int start, int layer) {
+        int current = start;
+        double currentDistance = distance(query, nodes.get(current).vector);
+        boolean improved = true;
+        while (improved) {
+            improved = false;
+            for (int neighborId : nodes.get(current).neighborsAt(layer)) {
+                double neighborDistance = distance(query, nodes.get(neighborId).vector);
+                if (neighborDistance < currentDistance) {
+                    current = neighborId;
+                    currentDistance = neighborDistance;
+                    improved = true;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * 在指定层做束搜索，返回按距离从近到远排列的最多 ef 个候选
+     */
+    private List<Candidate> searchLayer(float[] query, int start, int ef, int layer) {
+        BitSet visited = new BitSet(nodes.size());
+        PriorityQueue<Candidate> candidates = new PriorityQueue<>(Comparator.comparingDouble(Candidate::distance));
+        PriorityQueue<Candidate> nearest = new PriorityQueue<>(Comparator.comparingDouble(Candidate::distance).reversed());
+        Candidate first = new Candidate(start, distance(query, nodes.get(start).vector));
+        visited.set(start);
+        candidates.add(first);
+        nearest.add(first);
+        while (!candidates.isEmpty()) {
+            Candidate closest = candidates.poll();
+            if (closest.distance() > nearest.peek().distance() && nearest.size() >= ef) {
+                break;
+            }
+            for (int neighborId : nodes.get(closest.id()).neighborsAt(layer)) {
+                if (visited.get(neighborId)) {
+                    continue;
+                }
+                visited.set(neighborId);
+                double neighborDistance = distance(query, nodes.get(neighborId).vector);
+                if (nearest.size() < ef || neighborDistance < nearest.peek().distance()) {
+                    Candidate candidate = new Candidate(neighborId, neighborDistance);
+                    candidates.add(candidate);
+                    nearest.add(candidate);
+                    if (nearest.size() > ef) {
+                        nearest.poll();
+                    }
+                }
+            }
+        }
+        List<Candidate> sorted = new ArrayList<>(nearest);
+        sorted.sort(Comparator.comparingDouble(Candidate::distance));
+        return sorted;
+    }
+
+    /**
+     * 邻居超出上限时只保留最近的邻居
+     */
+    private void shrink(int id, List<Integer> neighbors, int maxNeighbors) {
+        float[] vector = nodes.get(id).vector;
+        neighbors.sort(Comparator.comparingDouble(neighborId -> distance(vector, nodes.get(neighborId).vector)));
+        neighbors.subList(maxNeighbors, neighbors.size()).clear();
+    }
+
+    private static double distance(float[] a, float[] b) {
+        double dot = 0;
+        for (int i = 0; i < a.length; i++) {
+            dot += a[i] * b[i];
+        }
+        return 1 - dot;
+    }
+
+    public static float[] normalize(float[] vector) {
+        double norm = 0;
+        for (float value : vector) {
+            norm += value * value;
+        }
+        norm = Math.sqrt(norm);
+        float[] normalized = new float[vector.length];
+        if (norm == 0) {
+            return normalized;
+        }
+        for (int i = 0; i < vector.length; i++) {
+            normalized[i] = (float) (vector[i] / norm);
+        }
+        return normalized;
+    }
+
+    private static final class Node {
+
+        private final float[] vector;
+
+        private final List<List<Integer>> neighbors;
+
+        private boolean deleted;
+
+        private Node(float[] vector, int level) {
+            this.vector = vector;
+            this.neighbors = new ArrayList<>(level + 1);
+            for (int i = 0; i <= level; i++) {
+                neighbors.add(new ArrayList<>());
+            }
+        }
+
+        private List<Integer> neighborsAt(int layer) {
+            return layer < neighbors.size() ? neighbors.get(layer) : List.of();
+        }
+    }
+
+    private record Candidate(int id, double distance) {
+    }
+
+    /**
+     * 查询结果
+     *
+     * @param id         节点 ID
+     * @param similarity 余弦相似度
+     */
+    public record Result(int id, double similarity) {
+    }
+}
@@ -0,0 +1,493 @@
+package com.ly.cookbook.cache;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.scheduling.annotation.Scheduled;
+import reactor.core.publisher.Flux;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
+
+/**
+ * @author 刘燚
+ * @version v1.0.0
+ * @Description 语义回答缓存：问题经 EmbeddingModel 向量化后写入进程内 HNSW 索引，
+ * 同一作用域内相似度达到阈值的历史问题直接复用其回答，覆盖精确匹配缓存无法命中的改写问法。
+ * 每个作用域（如按用户隔离的 Agent 作用域）使用独立的索引，其他作用域的相似问题不会挤占候选。
+ * 条目按 TTL 过期、超出容量时按最近最少使用淘汰（容量在所有作用域之间共享）；索引定期快照到内存映射文件，重启后从快照重建，避免冷启动
+ * @createDate：2026/10/18 22:40
+ * @email liuyia2022@163.com
+ */
+@Slf4j
+public class SemanticAnswerCache {
+
+    /**
+     * 快照文件头：魔数 + 版本
+     */
+    private static final int SNAPSHOT_MAGIC = 0x53454D43;
+
+    private static final int SNAPSHOT_VERSION = 1;
+
+    /**
+     * 每次查询的候选数量，候选中可能包含已过期的条目
+     */
+    private static final int SEARCH_K = 5;
+
+    private static final int SEARCH_EF = 64;
+
+    private static final int HNSW_M = 16;
+
+    private static final int HNSW_EF_CONSTRUCTION = 64;
+
+    private final EmbeddingModel embeddingModel;
+
+    /**
+     * 嵌入模型标识，写入快照；模型变化后旧快照中的向量不再可用
+     */
+    private final String embedderId;
+
+    private final double threshold;
+
+    private final Duration ttl;
+
+    private final int maxEntries;
+
+    private final int replayChunkChars;
+
+    private final Path snapshotPath;
+
+    /**
+     * 作用域 -> 该作用域的索引，作用域内的条目全部删除后移除
+     */
+    private final Map<String, ScopeIndex> scopes = new HashMap<>();
+
+    /**
+     * 条目 Key -> 条目，按访问顺序排列，最早访问的条目最先淘汰
+     */
+    private final LinkedHashMap<Long, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private long nextKey;
+
+    private boolean dirty;
+
+    private final MeterRegistry meterRegistry;
+
+    private final DistributionSummary similarity;
+
+    public SemanticAnswerCache(EmbeddingModel embeddingModel, String embedderId, double threshold, Duration ttl,
+                               int maxEntries, int replayChunkChars, Path snapshotPath, MeterRegistry meterRegistry) {
+        this.embeddingModel = embeddingModel;
+        this.embedderId = embedderId;
+        this.threshold = threshold;
+        this.ttl = ttl;
+        this.maxEntries = maxEntries;
+        this.replayChunkChars = replayChunkChars;
+        this.snapshotPath = snapshotPath;
+        this.meterRegistry = meterRegistry;
+        this.similarity = DistributionSummary.builder("cookbook.semantic.cache.similarity")
+                .description("语义缓存每次查询的最高相似度")
+                .register(meterRegistry);
+        Gauge.builder("cookbook.semantic.cache.entries", this, SemanticAnswerCache::size)
+                .description("语义缓存条目数")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 查询相似问题的回答
+     *
+     * @param scope    作用域，只在相同作用域内匹配（如系统提示词与模型选项、Agent 名称）
+     * @param question 用户问题
+     * @return 相似问题的回答，未命中或向量化失败时返回 null
+     */
+    public String get(String scope, String question) {
+        float[] vector = embed(question);
+        return vector == null ? null : lookup(scope, vector);
+    }
+
+    private String lookup(String scope, float[] vector) {
+        long now = System.currentTimeMillis();
+        double best = 0;
+        synchronized (this) {
+            ScopeIndex scopeIndex = scopes.get(scope);
+            for (int attempt = 0; scopeIndex != null && attempt < 2; attempt++) {
+                boolean expired = false;
+                for (HnswIndex.Result result : scopeIndex.index.search(vector, SEARCH_K, SEARCH_EF)) {
+                    Long key = scopeIndex.keys.get(result.id());
+                    Entry entry = key == null ? null : entries.get(key);
+                    if (entry == null) {
+                        continue;
+                    }
+                    if (now - entry.createdAt() > ttl.toMillis()) {
+                        expired = true;
+                        continue;
+                    }
+                    best = Math.max(best, result.similarity());
+                    if (result.similarity() >= threshold) {
+                        similarity.record(result.similarity());
+                        record("hit");
+                        log.info("语义缓存命中，相似度: {}, 原问题: {}", String.format("%.3f", result.similarity()),
+                                StringUtils.abbreviate(entry.question(), 50));
+                        return entry.answer();
+                    }
+                }
+                if (!expired) {
+                    break;
+                }
+                // 候选中有过期条目：删除全部过期条目后重新查询，避免过期条目占满候选
+                removeExpired(now);
+                scopeIndex = scopes.get(scope);
+            }
+        }
+        similarity.record(best);
+        record("miss");
+        return null;
+    }
+
+    /**
+     * 写入问题与回答，空回答不缓存
+     */
+    public void put(String scope, String question, String answer) {
+        if (StringUtils.isBlank(answer)) {
+            return;
+        }
+        float[] vector = embed(question);
+        if (vector != null) {
+            store(scope, question, answer, vector);
+        }
+    }
+
+    private synchronized void store(String scope, String question, String answer, float[] vector) {
+        if (StringUtils.isNotBlank(answer)) {
+            addEntry(new Entry(scope, question, answer, System.currentTimeMillis()), vector);
+        }
+    }
+
+    /**
+     * 同步调用：命中时直接返回，未命中时调用 loader 并写入缓存（复用查询时的向量）
+     */
+    public String getOrLoad(String scope, String question, Supplier<String> loader) {
+        return getOrLoad(scope, question, loader, () -> true);
+    }
+
+    /**
+     * 同步调用，loader 返回后 cacheable 为 false 的回答（如执行过工具）不写入缓存
+     */
+    public String getOrLoad(String scope, String question, Supplier<String> loader, BooleanSupplier cacheable) {
+        float[] vector = embed(question);
+        String cached = vector == null ? null : lookup(scope, vector);
+        if (cached != null) {
+            return cached;
+        }
+        String answer = loader.get();
+        if (vector != null && cacheable.getAsBoolean()) {
+            store(scope, question, answer, vector);
+        }
+        return answer;
+    }
+
+    /**
+     * 流式调用：命中时把回答切分为分片重放（不携带 token 用量），未命中时调用 loader，流正常结束后写入缓存
+     */
+    public Flux<ChatResponse> getOrStream(String scope, String question, Supplier<Flux<ChatResponse>> loader) {
+        return getOrStream(scope, question, loader, () -> true);
+    }
+
+    /**
+     * 流式调用，流结束时 cacheable 为 false 的回答（如执行过工具）不写入缓存
+     */
+    public Flux<ChatResponse> getOrStream(String scope, String question, Supplier<Flux<ChatResponse>> loader,
+                                          BooleanSupplier cacheable) {
+        return Flux.defer(() -> {
+            float[] vector = embed(question);
+            String cached = vector == null ? null : lookup(scope, vector);
+            if (cached != null) {
+                return ChatResponseCache.replay(cached, "semantic", replayChunkChars);
+            }
+            StringBuilder answer = new StringBuilder();
+            Flux<ChatResponse> response = loader.get()
+                    .doOnNext(chatResponse -> {
+                        if (chatResponse.getResult() != null && chatResponse.getResult().getOutput().getText() != null) {
+                            answer.append(chatResponse.getResult().getOutput().getText());
+                        }
+                    });
+            return vector == null ? response : response.doOnComplete(() -> {
+                if (cacheable.getAsBoolean()) {
+                    store(scope, question, answer.toString(), vector);
+                }
+            });
+        });
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    private float[] embed(String question) {
+        try {
+            return embeddingModel.embed(question);
+        } catch (Exception e) {
+            // 嵌入服务不可用时按未命中处理，不影响对话
+            log.warn("语义缓存向量化失败: {}", e.getMessage());
+            record("error");
+            return null;
+        }
+    }
+
+    private void addEntry(Entry entry, float[] vector) {
+        ScopeIndex scopeIndex = scopes.computeIfAbsent(entry.scope(), scope -> new ScopeIndex());
+        int nodeId = scopeIndex.index.add(vector);
+        long key = nextKey++;
+        scopeIndex.keys.put(nodeId, key);
+        scopeIndex.nodes.put(key, nodeId);
+        entries.put(key, entry);
+        Set<ScopeIndex> touched = new HashSet<>();
+        while (entries.size() > maxEntries) {
+            ScopeIndex evicted = removeEntry(entries.keySet().iterator().next());
+            if (evicted != null) {
+                touched.add(evicted);
+            }
+            record("evicted");
+        }
+        dirty = true;
+        touched.forEach(this::rebuildIfNeeded);
+    }
+
+    /**
+     * 删除全部过期条目：先逐个在索引中标记删除，全部删除后每个索引最多重建一次（重建会重新分配节点 ID，
+     * 不能在删除过程中重建）
+     */
+    private void removeExpired(long now) {
+        List<Long> expiredKeys = new ArrayList<>();
+        for (Map.Entry<Long, Entry> entry : entries.entrySet()) {
+            if (now - entry.getValue().createdAt() > ttl.toMillis()) {
+                expiredKeys.add(entry.getKey());
+            }
+        }
+        Set<ScopeIndex> touched = new HashSet<>();
+        for (long key : expiredKeys) {
+            ScopeIndex scopeIndex = removeEntry(key);
+            if (scopeIndex != null) {
+                touched.add(scopeIndex);
+            }
+            record("expired");
+        }
+        touched.forEach(this::rebuildIfNeeded);
+    }
+
+    /**
+     * 删除条目并在索引中标记删除，不重建索引
+     *
+     * @return 条目所在作用域的索引，作用域已没有条目（索引已移除）时返回 null
+     */
+    private ScopeIndex removeEntry(long key) {
+        Entry entry = entries.remove(key);
+        if (entry == null) {
+            return null;
+        }
+        dirty = true;
+        ScopeIndex scopeIndex = scopes.get(entry.scope());
+        Integer nodeId = scopeIndex.nodes.remove(key);
+        scopeIndex.keys.remove(nodeId);
+        scopeIndex.index.remove(nodeId);
+        if (scopeIndex.nodes.isEmpty()) {
+            scopes.remove(entry.scope());
+            return null;
+        }
+        return scopeIndex;
+    }
+
+    /**
+     * 被删除的节点超过一半时重建索引，节点 ID 随之重新分配
+     */
+    private void rebuildIfNeeded(ScopeIndex scopeIndex) {
+        HnswIndex index = scopeIndex.index;
+        if (index.deletedCount() <= Math.max(index.size() / 2, 64)) {
+            return;
+        }
+        HnswIndex rebuilt = new HnswIndex(HNSW_M, HNSW_EF_CONSTRUCTION);
+        scopeIndex.keys.clear();
+        for (Map.Entry<Long, Integer> node : scopeIndex.nodes.entrySet()) {
+            int nodeId = rebuilt.add(index.vector(node.getValue()));
+            node.setValue(nodeId);
+            scopeIndex.keys.put(nodeId, node.getKey());
+        }
+        log.info("语义缓存索引重建完成，条目数: {}, 清理已删除节点: {}", scopeIndex.nodes.size(), index.deletedCount());
+        scopeIndex.index = rebuilt;
+    }
+
+    /**
+     * 启动时从快照恢复
+     */
+    @PostConstruct
+    public void loadSnapshot() {
+        if (snapshotPath == null || !Files.exists(snapshotPath)) {
+            return;
+        }
+        long start = System.nanoTime();
+        try (FileChannel channel = FileChannel.open(snapshotPath, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt() != SNAPSHOT_MAGIC || buffer.getInt() != SNAPSHOT_VERSION) {
+                log.warn("语义缓存快照格式不匹配，忽略: {}", snapshotPath);
+                return;
+            }
+            String snapshotEmbedderId = readString(buffer);
+            int dimensions = buffer.getInt();
+            int count = buffer.getInt();
+            if (!embedderId.equals(snapshotEmbedderId)) {
+                log.warn("语义缓存快照的嵌入模型 {} 与当前模型 {} 不一致，忽略", snapshotEmbedderId, embedderId);
+                return;
+            }
+            long now = System.currentTimeMillis();
+            int expired = 0;
+            synchronized (this) {
+                for (int i = 0; i < count; i++) {
+                    long createdAt = buffer.getLong();
+                    String scope = readString(buffer);
+                    String question = readString(buffer);
+                    String answer = readString(buffer);
+                    float[] vector = new float[dimensions];
+                    buffer.asFloatBuffer().get(vector);
+                    buffer.position(buffer.position() + dimensions * Float.BYTES);
+                    if (now - createdAt > ttl.toMillis()) {
+                        expired++;
+                        continue;
+                    }
+                    addEntry(new Entry(scope, question, answer, createdAt), vector);
+                }
+                dirty = false;
+            }
+            log.info("语义缓存从快照恢复完成，条目数: {}, 丢弃过期: {}, 耗时: {} ms", size(), expired,
+                    Duration.ofNanos(System.nanoTime() - start).toMillis());
+        } catch (Exception e) {
+            log.warn("语义缓存快照读取失败，从空缓存开始: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 定期快照：先写入临时文件再原子替换，写入过程中崩溃不会损坏上一次的快照
+     */
+    @Scheduled(initialDelayString = "${cookbook.semantic-cache.snapshot-interval:5m}",
+            fixedDelayString = "${cookbook.semantic-cache.snapshot-interval:5m}")
+    @PreDestroy
+    public void snapshot() {
+        if (snapshotPath == null) {
+            return;
+        }
+        List<Map.Entry<Entry, float[]>> snapshotEntries = new ArrayList<>();
+        synchronized (this) {
+            if (!dirty) {
+                return;
+            }
+            for (Map.Entry<Long, Entry> entry : entries.entrySet()) {
+                ScopeIndex scopeIndex = scopes.get(entry.getValue().scope());
+                snapshotEntries.add(Map.entry(entry.getValue(), scopeIndex.index.vector(scopeIndex.nodes.get(entry.getKey()))));
+            }
+            dirty = false;
+        }
+        int dimensions = snapshotEntries.isEmpty() ? 0 : snapshotEntries.get(0).getValue().length;
+        Map<String, byte[]> encoded = new HashMap<>();
+        long size = 4L * 4 + stringSize(embedderId, encoded);
+        for (Map.Entry<Entry, float[]> entry : snapshotEntries) {
+            size += Long.BYTES + stringSize(entry.getKey().scope(), encoded) + stringSize(entry.getKey().question(), encoded)
+                    + stringSize(entry.getKey().answer(), encoded) + (long) dimensions * Float.BYTES;
+        }
+        try {
+            Files.createDirectories(snapshotPath.toAbsolutePath().getParent());
+            Path temp = snapshotPath.resolveSibling(snapshotPath.getFileName() + ".tmp");
+            Files.deleteIfExists(temp);
+            try (RandomAccessFile file = new RandomAccessFile(temp.toFile(), "rw");
+                 FileChannel channel = file.getChannel()) {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+                buffer.putInt(SNAPSHOT_MAGIC).putInt(SNAPSHOT_VERSION);
+                writeString(buffer, embedderId, encoded);
+                buffer.putInt(dimensions).putInt(snapshotEntries.size());
+                for (Map.Entry<Entry, float[]> entry : snapshotEntries) {
+                    buffer.putLong(entry.getKey().createdAt());
+                    writeString(buffer, entry.getKey().scope(), encoded);
+                    writeString(buffer, entry.getKey().question(), encoded);
+                    writeString(buffer, entry.getKey().answer(), encoded);
+                    for (float value : entry.getValue()) {
+                        buffer.putFloat(value);
+                    }
+                }
+                buffer.force();
+            }
+            Files.move(temp, snapshotPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            log.info("语义缓存快照已保存，条目数: {}, 大小: {} KB", snapshotEntries.size(), size / 1024);
+        } catch (IOException e) {
+            synchronized (this) {
+                dirty = true;
+            }
+            log.warn("语义缓存快照保存失败: {}", e.getMessage());
+        }
+    }
+
+    private static int stringSize(String value, Map<String, byte[]> encoded) {
+        return Integer.BYTES + encoded.computeIfAbsent(value, v -> v.getBytes(StandardCharsets.UTF_8)).length;
+    }
+
+    private static void writeString(MappedByteBuffer buffer, String value, Map<String, byte[]> encoded) {
+        byte[] bytes = encoded.get(value);
+        buffer.putInt(bytes.length).put(bytes);
+    }
+
+    private static String readString(MappedByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private void record(String result) {
+        Counter.builder("cookbook.semantic.cache")
+                .description("语义回答缓存访问次数")
+                .tag("result", result)
+                .register(meterRegistry)
+                .increment();
+    }
+
+    private record Entry(String scope, String question, String answer, long createdAt) {
+    }
+
+    /**
+     * 单个作用域的索引，重建后节点 ID 重新分配
+     */
+    private static final class ScopeIndex {
+
+        private HnswIndex index = new HnswIndex(HNSW_M, HNSW_EF_CONSTRUCTION);
+
+        /**
+         * 节点 ID -> 条目 Key
+         */
+        private final Map<Integer, Long> keys = new HashMap<>();
+
+        /**
+         * 条目 Key -> 节点 ID
+         */
+        private final Map<Long, Integer> nodes = new HashMap<>();
+    }
+}
@@ -0,0 +1,72 @@
+package com.ly.cookbook.cache;
+
+import org.springframework.ai.chat.model.ToolContext;
+import org.springframework.ai.tool.ToolCallback;
+import org.springframework.ai.tool.definition.ToolDefinition;
+import org.springframework.ai.tool.metadata.ToolMetadata;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * @author 刘燚
+ * @version v1.0.0
+ * @Description 记录工具是否被执行的工具回调：请求通过 ToolContext 传入标记，工具执行前置位。
+ * 回答缓存据此跳过执行过工具的回答，避免把写文件、执行命令等副作用的结果重放给其他请求
+ * @createDate：2026/10/19 10:20
+ * @email liuyia2022@163.com
+ */
+public class ToolExecutionTrackingCallback implements ToolCallback {
+
+    /**
+     * ToolContext 中标记的 key，值为 {@link AtomicBoolean}
+     */
+    public static final String TOOL_EXECUTED = "cookbook_tool_executed";
+
+    private final ToolCallback delegate;
+
+    public ToolExecutionTrackingCallback(ToolCallback delegate) {
+        this.delegate = delegate;
+    }
+
+    /**
+     * 为全部工具包装执行标记，顺序不变
+     */
+    public static ToolCallback[] wrap(ToolCallback[] toolCallbacks) {
+        ToolCallback[] wrapped = new ToolCallback[toolCallbacks.length];
+        for (int i = 0; i < toolCallbacks.length; i++) {
+            wrapped[i] = new ToolExecutionTrackingCallback(toolCallbacks[i]);
+        }
+        return wrapped;
+    }
+
+    /**
+     * 本次请求的 ToolContext，工具执行时把 toolExecuted 置为 true
+     */
+    public static Map<String, Object> toolContext(AtomicBoolean toolExecuted) {
+        return Map.of(TOOL_EXECUTED, toolExecuted);
+    }
+
+    @Override
+    public ToolDefinition getToolDefinition() {
+        return delegate.getToolDefinition();
+    }
+
+    @Override
+    public ToolMetadata getToolMetadata() {
+        return delegate.getToolMetadata();
+    }
+
+    @Override
+    public String call(String toolInput) {
+        return call(toolInput, null);
+    }
+
+    @Override
+    public String call(String toolInput, ToolContext toolContext) {
+        if (toolContext != null && toolContext.getContext().get(TOOL_EXECUTED) instanceof AtomicBoolean toolExecuted) {
+            toolExecuted.set(true);
+        }
+        return toolContext == null ? delegate.call(toolInput) : delegate.call(toolInput, toolContext);
+    }
+}
@@ -0,0 +1,222 @@
+package com.ly.cookbook.cache;
+
+import cn.hutool.cache.CacheUtil;
+import cn.hutool.cache.impl.LRUCache;
+import cn.hutool.crypto.digest.DigestUtil;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.ly.cookbook.common.constant.RedisConstant;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.ai.tool.ToolCallback;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author 刘燚
+ * @version v1.0.0
+ * @Description 工具调用结果缓存：按 工具名称 + 规范化 JSON 参数 缓存只读工具的结果，
+ * 本地堆内 LRU 为一级缓存，Redis 为二级缓存（所有节点共享命中），并按工具记录命中/未命中指标
+ * @createDate：2026/10/18 15:20
+ * @email liuyia2022@163.com
+ */
+@Slf4j
+@Component
+public class ToolResultCache {
+
+    /**
+     * 可缓存工具及其过期时间，未列出的工具一律不缓存
+     */
+    private static final Map<String, Duration> TOOL_TTLS = Map.of(
+            "webSearch", Duration.ofHours(6),
+            "searchSimple", Duration.ofHours(6),
+            "fetchWebPageText", Duration.ofHours(1),
+            "fetchWebPageHtml", Duration.ofHours(1),
+            "fetchWebPageElements", Duration.ofHours(1),
+            "fetchWebPageTitle", Duration.ofHours(12)
+    );
+
+    /**
+     * 有副作用或结果随环境变化的工具，即使误配置了过期时间也不缓存
+     */
+    private static final Set<String> NEVER_CACHE = Set.of(
+            "executeCommand", "executeCommandWithTimeout", "getCurrentDirectory", "listDirectory",
+            "writeText", "readText", "downloadFile", "downloadFileAuto", "doTerminate"
+    );
+
+    /**
+     * 参数规范化使用的 ObjectMapper，输出按 key 排序
+     */
+    private static final ObjectMapper CANONICAL_MAPPER = new ObjectMapper()
+            .configure(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS, true);
+
+    private final LRUCache<String, String> localCache;
+
+    private final Duration localTtl;
+
+    private final boolean enabled;
+
+    private final RedisTemplate<String, Object> redisTemplate;
+
+    private final MeterRegistry meterRegistry;
+
+    public ToolResultCache(@Value("${cookbook.tool-cache.enabled:true}") boolean enabled,
+                           @Value("${cookbook.tool-cache.local-max-size:1000}") int localMaxSize,
+                           @Value("${cookbook.tool-cache.local-ttl:10m}") Duration localTtl,
+                           RedisTemplate<String, Object> redisTemplate,
+                           MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        this.localTtl = localTtl;
+        this.localCache = CacheUtil.newLRUCache(localMaxSize, localTtl.toMillis());
+        this.redisTemplate = redisTemplate;
+        this.meterRegistry = meterRegistry;
+        log.info("工具结果缓存初始化完成，启用: {}, 本地容量: {}, 本地过期时间: {}", enabled, localMaxSize, localTtl);
+    }
+
+    /**
+     * 为可缓存的工具包装缓存层，其余工具原样返回
+     *
+     * @param toolCallbacks 原始工具回调
+     * @return 包装后的工具回调，顺序不变
+     */
+    public ToolCallback[] wrap(ToolCallback[] toolCallbacks) {
+        if (!enabled) {
+            return toolCallbacks;
+        }
+        ToolCallback[] wrapped = new ToolCallback[toolCallbacks.length];
+        for (int i = 0; i < toolCallbacks.length; i++) {
+            ToolCallback toolCallback = toolCallbacks[i];
+            wrapped[i] = isCacheable(toolCallback.getToolDefinition().name())
+                    ? new CachingToolCallback(toolCallback, this)
+                    : toolCallback;
+        }
+        return wrapped;
+    }
+
+    public boolean isCacheable(String toolName) {
+        return TOOL_TTLS.containsKey(toolName) && !NEVER_CACHE.contains(toolName);
+    }
+
+    /**
+     * 查询缓存，先查本地再查 Redis，Redis 命中后回填本地
+     *
+     * @return 缓存的结果，未命中返回 null
+     */
+    public String get(String toolName, String toolInput) {
+        String key = buildKey(toolName, toolInput);
+        String result = localCache.get(key);
+        if (result != null) {
+            record(toolName, "local_hit");
+            return result;
+        }
+        try {
+            Object cached = redisTemplate.opsForValue().get(key);
+            if (cached instanceof String redisResult) {
+                localCache.put(key, redisResult, localTtl.toMillis());
+                record(toolName, "redis_hit");
+                return redisResult;
+            }
+        } catch (Exception e) {
+            // Redis 不可用时退化为仅本地缓存，不影响工具调用
+            log.warn("读取工具结果缓存失败: {}, {}", toolName, e.getMessage());
+        }
+        record(toolName, "miss");
+        return null;
+    }
+
+    /**
+     * 写入缓存，失败结果不缓存
+     */
+    public void put(String toolName, String toolInput, String result) {
+        if (!isSuccessful(result)) {
+            record(toolName, "skip");
+            return;
+        }
+        String key = buildKey(toolName, toolInput);
+        Duration ttl = TOOL_TTLS.get(toolName);
+        localCache.put(key, result, Math.min(ttl.toMillis(), localTtl.toMillis()));
+        try {
+            redisTemplate.opsForValue().set(key, result, ttl.toSeconds(), TimeUnit.SECONDS);
+        } catch (Exception e) {
+            log.warn("写入工具结果缓存失败: {}, {}", toolName, e.getMessage());
+        }
+    }
+
+    /**
+     * 缓存 Key：工具名称 + 规范化参数的摘要
+     */
+    String buildKey(String toolName, String toolInput) {
+        return RedisConstant.AGENT_TOOL_RESULT + toolName + ":" + DigestUtil.sha256Hex(canonicalize(toolInput));
+    }
+
+    /**
+     * 参数规范化：key 排序、去除 null 字段、字符串首尾去空白，解析失败时按原始文本处理
+     */
+    public static String canonicalize(String toolInput) {
+        if (StringUtils.isBlank(toolInput)) {
+            return "{}";
+        }
+        try {
+            JsonNode jsonNode = CANONICAL_MAPPER.readTree(toolInput);
+            return CANONICAL_MAPPER.writeValueAsString(normalize(jsonNode));
+        } catch (Exception e) {
+            return toolInput.trim();
+        }
+    }
+
+    private static Object normalize(JsonNode jsonNode) {
+        if (jsonNode.isObject()) {
+            Map<String, Object> sorted = new TreeMap<>();
+            Iterator<Map.Entry<String, JsonNode>> fields = jsonNode.fields();
+            while (fields.hasNext()) {
+                Map.Entry<String, JsonNode> field = fields.next();
+                if (!field.getValue().isNull()) {
+                    sorted.put(field.getKey(), normalize(field.getValue()));
+                }
+            }
+            return sorted;
+        }
+        if (jsonNode.isArray()) {
+            List<Object> items = new ArrayList<>(jsonNode.size());
+            jsonNode.forEach(item -> items.add(normalize(item)));
+            return items;
+        }
+        if (jsonNode.isTextual()) {
+            return jsonNode.asText().trim();
+        }
+        return jsonNode;
+    }
+
+    /**
+     * 工具失败时返回的是“xxx失败”提示文本，这类结果不缓存
+     */
+    private boolean isSuccessful(String result) {
+        if (StringUtils.isBlank(result)) {
+            return false;
+        }
+        String firstLine = result.lines().findFirst().orElse("");
+        return !firstLine.contains("失败");
+    }
+
+    private void record(String toolName, String result) {
+        Counter.builder("cookbook.tool.cache")
+                .description("工具结果缓存访问次数")
+                .tag("tool", toolName)
+                .tag("result", result)
+                .register(meterRegistry)
+                .increment();
+    }
+}
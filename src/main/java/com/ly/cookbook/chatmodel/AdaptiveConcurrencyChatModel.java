@@ -0,0 +1,189 @@
+package com.ly.cookbook.chatmodel;
+
+import com.ly.cookbook.common.units.AssertUtil;
+import com.ly.cookbook.exception.emun.AgentErrorEnum;
+import com.ly.cookbook.limiter.AdaptiveConcurrencyLimiter;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.prompt.ChatOptions;
+import org.springframework.ai.chat.prompt.Prompt;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * @author 刘燚
+ * @version v1.0.0
+ * @Description 自适应并发限制的 ChatModel 装饰器：每次调用占用一个许可，按响应时间与错误调整并发上限。
+ * 同步调用以完整耗时作为样本，流式调用以首个分片的到达时间作为样本（输出长度不影响判断），
+ * 但许可一直占用到流终止，输出期间的调用同样计入并发。并发已满时最多等待 maxWait，仍无许可则拒绝本次调用
+ * @createDate：2026/10/18 21:10
+ * @email liuyia2022@163.com
+ */
+@Slf4j
+public class AdaptiveConcurrencyChatModel implements ChatModel {
+
+    private final ChatModel delegate;
+
+    private final AdaptiveConcurrencyLimiter limiter;
+
+    private final Duration maxWait;
+
+    private final Counter rejected;
+
+    private final Timer latency;
+
+    public AdaptiveConcurrencyChatModel(ChatModel delegate, AdaptiveConcurrencyLimiter limiter, Duration maxWait,
+                                        MeterRegistry meterRegistry) {
+        this.delegate = delegate;
+        this.limiter = limiter;
+        this.maxWait = maxWait;
+        Gauge.builder("cookbook.llm.adaptive.limit", limiter, AdaptiveConcurrencyLimiter::getLimit)
+                .description("模型调用的自适应并发上限")
+                .register(meterRegistry);
+        Gauge.builder("cookbook.llm.adaptive.in_flight", limiter, AdaptiveConcurrencyLimiter::getInFlight)
+                .description("占用自适应并发许可的模型调用数")
+                .register(meterRegistry);
+        this.rejected = Counter.builder("cookbook.llm.adaptive.rejected")
+                .description("等待自适应并发许可超时被拒绝的模型调用数")
+                .register(meterRegistry);
+        this.latency = Timer.builder("cookbook.llm.adaptive.sample")
+                .description("用于调整并发上限的模型响应时间样本")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public ChatResponse call(Prompt prompt) {
+        acquire();
+        int inFlightAtStart = limiter.getInFlight();
+        long start = System.nanoTime();
+        try {
+            ChatResponse chatResponse = delegate.call(prompt);
+            onSuccess(System.nanoTime() - start, inFlightAtStart);
+            return chatResponse;
+        } catch (RuntimeException e) {
+            onError(e);
+            throw e;
+        }
+    }
+
+    @Override
+    public Flux<ChatResponse> stream(Prompt prompt) {
+        return Flux.defer(() -> {
+            // 有空闲许可时直接调用，否则到弹性线程池上等待，避免阻塞订阅线程
+            if (limiter.tryAcquire()) {
+                return permittedStream(prompt, true);
+            }
+            return permittedStream(prompt, false).subscribeOn(Schedulers.boundedElastic());
+        });
+    }
+
+    /**
+     * 许可随订阅获取、随流终止（完成、出错或取消）归还，首个分片的到达时间只作为响应时间样本：
+     * 正常完成时用该样本调整上限；收到分片后出错按过载回退，收到分片前出错按错误类型处理；取消或空流只归还许可
+     */
+    private Flux<ChatResponse> permittedStream(Prompt prompt, boolean acquired) {
+        return Flux.using(() -> {
+                    if (!acquired) {
+                        acquire();
+                    }
+                    return new StreamSample(limiter.getInFlight(), System.nanoTime());
+                },
+                sample -> delegate.stream(prompt)
+                        .doOnNext(chatResponse -> sample.onChunk())
+                        .doOnComplete(() -> sample.completed = true)
+                        .doOnError(e -> sample.error = e),
+                this::release);
+    }
+
+    private void release(StreamSample sample) {
+        if (!sample.released.compareAndSet(false, true)) {
+            return;
+        }
+        if (sample.error != null) {
+            if (sample.firstChunkNanos > 0) {
+                limiter.onDropped();
+            } else {
+                onError(sample.error);
+            }
+        } else if (sample.completed && sample.firstChunkNanos > 0) {
+            onSuccess(sample.firstChunkNanos, sample.inFlightAtStart);
+        } else {
+            limiter.onIgnore();
+        }
+    }
+
+    private void acquire() {
+        boolean acquired;
+        try {
+            acquired = limiter.acquire(maxWait);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("等待模型调用许可被中断", e);
+        }
+        if (!acquired) {
+            rejected.increment();
+            log.warn("模型调用并发已满（上限 {}），等待 {} 后仍无许可，拒绝本次调用", limiter.getLimit(), maxWait);
+            AssertUtil.putMeg(AgentErrorEnum.AI_SERVICE_UNAVAILABLE);
+        }
+    }
+
+    private void onSuccess(long rttNanos, int inFlightAtStart) {
+        latency.record(rttNanos, TimeUnit.NANOSECONDS);
+        limiter.onSuccess(rttNanos, inFlightAtStart);
+    }
+
+    private void onError(Throwable e) {
+        // 被取消的调用（如对冲调用中落后的一次）被中断时产生的错误不说明下游过载
+        if (ChatModelErrors.isRetriable(e) && !Thread.currentThread().isInterrupted()) {
+            limiter.onDropped();
+        } else {
+            limiter.onIgnore();
+        }
+    }
+
+    @Override
+    public ChatOptions getDefaultOptions() {
+        return delegate.getDefaultOptions();
+    }
+
+    /**
+     * 一次流式调用的许可与响应时间样本
+     */
+    private static final class StreamSample {
+
+        private final int inFlightAtStart;
+
+        private final long start;
+
+        private final AtomicBoolean released = new AtomicBoolean(false);
+
+        /**
+         * 首个分片的到达时间（相对订阅），未收到分片时为 0
+         */
+        private volatile long firstChunkNanos;
+
+        private volatile boolean completed;
+
+        private volatile Throwable error;
+
+        StreamSample(int inFlightAtStart, long start) {
+            this.inFlightAtStart = inFlightAtStart;
+            this.start = start;
+        }
+
+        void onChunk() {
+            if (firstChunkNanos == 0) {
+                firstChunkNanos = Math.max(1, System.nanoTime() - start);
+            }
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package com.ly.cookbook.chatmodel;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+
+/**
+ * @author 刘燚
+ * @version v1.0.0
+ * @Description 模型调用熔断器（基于最近 N 次调用的失败率）：
+ * 1、关闭：正常放行，失败率达到阈值后打开
+ * 2、打开：拒绝主模型调用，持续 openDuration 后进入半开
+ * 3、半开：放行少量试探调用，全部成功后关闭，任一失败重新打开
+ * 只有可重试的错误（限流、超时、服务端错误）计为失败
+ * @createDate：2026/10/18 21:40
+ * @email liuyia2022@163.com
+ */
+@Slf4j
+public class ChatModelCircuitBreaker {
+
+    public enum State {
+        CLOSED, HALF_OPEN, OPEN
+    }
+
+    private final double failureRateThreshold;
+
+    private final int minCalls;
+
+    private final long openDurationNanos;
+
+    private final int halfOpenCalls;
+
+    /**
+     * 最近 N 次调用结果的环形窗口，true 表示失败
+     */
+    private final boolean[] window;
+
+    private int windowIndex;
+
+    private int windowCount;
+
+    private int windowFailures;
+
+    private State state = State.CLOSED;
+
+    private long openedAt;
+
+    private int halfOpenInFlight;
+
+    private int halfOpenSucceeded;
+
+    public ChatModelCircuitBreaker(double failureRateThreshold, int windowSize, int minCalls, Duration openDuration,
+                                   int halfOpenCalls) {
+        this.failureRateThreshold = failureRateThreshold;
+        this.window = new boolean[windowSize];
+        this.minCalls = Math.min(minCalls, windowSize);
+        this.openDurationNanos = openDuration.toNanos();
+        this.halfOpenCalls = halfOpenCalls;
+    }
+
+    /**
+     * 是否放行本次主模型调用，放行后必须调用 onSuccess/onFailure/onIgnore 之一
+     */
+    public synchronized boolean tryAcquire() {
+        if (state == State.OPEN) {
+            if (System.nanoTime() - openedAt < openDurationNanos) {
+                return false;
+            }
+            transitionTo(State.HALF_OPEN);
+        }
+        if (state == State.HALF_OPEN) {
+            if (halfOpenInFlight >= halfOpenCalls) {
+                return false;
+            }
+            halfOpenInFlight++;
+        }
+        return true;
+    }
+
+    public synchronized void onSuccess() {
+        if (state == State.HALF_OPEN) {
+            halfOpenInFlight = Math.max(0, halfOpenInFlight - 1);
+            if (++halfOpenSucceeded >= halfOpenCalls) {
+                transitionTo(State.CLOSED);
+            }
+            return;
+        }
+        record(false);
+    }
+
+    public synchronized void onFailure() {
+        if (state == State.HALF_OPEN) {
+            transitionTo(State.OPEN);
+            return;
+        }
+        record(true);
+        if (state == State.CLOSED && windowCount >= minCalls
+                && (double) windowFailures / windowCount >= failureRateThreshold) {
+            transitionTo(State.OPEN);
+        }
+    }
+
+    /**
+     * 调用被取消或因请求本身的问题失败：不计入失败率，只归还半开状态的试探名额
+     */
+    public synchronized void onIgnore() {
+        if (state == State.HALF_OPEN) {
+            halfOpenInFlight = Math.max(0, halfOpenInFlight - 1);
+        }
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    private void record(boolean failed) {
+        if (windowCount == window.length) {
+            if (window[windowIndex]) {
+                windowFailures--;
+            }
+        } else {
+            windowCount++;
+        }
+        window[windowIndex] = failed;
+        if (failed) {
+            windowFailures++;
+        }
+        windowIndex = (windowIndex + 1) % window.length;
+    }
+
+    private void transitionTo(State newState) {
+        log.warn("模型调用熔断器状态变化: {} -> {}, 窗口失败率: {}/{}", state, newState, windowFailures, windowCount);
+        state = newState;
+        if (newState == State.OPEN) {
+            openedAt = System.nanoTime();
+        }
+        if (newState == State.HALF_OPEN) {
+            halfOpenInFlight = 0;
+            halfOpenSucceeded = 0;
+        }
+        if (newState == State.CLOSED) {
+            windowIndex = 0;
+            windowCount = 0;
+            windowFailures = 0;
+        }
+    }
+}
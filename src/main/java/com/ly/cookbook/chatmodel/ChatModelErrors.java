@@ -0,0 +1,38 @@
+package com.ly.cookbook.chatmodel;
+
+import com.ly.cookbook.exception.BaseException;
+import org.springframework.ai.retry.TransientAiException;
+
+import java.io.IOException;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * @author 刘燚
+ * @version v1.0.0
+ * @Description 模型调用错误分类：限流、超时、网络与服务端错误说明下游过载或暂时不可用，可以重试并需要回退；
+ * 业务异常与请求本身的错误（参数、鉴权、内容审核等）重试也不会成功
+ * @createDate：2026/10/18 21:40
+ * @email liuyia2022@163.com
+ */
+public final class ChatModelErrors {
+
+    private ChatModelErrors() {
+    }
+
+    public static boolean isRetriable(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof BaseException) {
+                return false;
+            }
+            if (cause instanceof TransientAiException || cause instanceof TimeoutException || cause instanceof IOException) {
+                return true;
+            }
+            String message = cause.getMessage();
+            // 服务端错误已被转换为 TransientAiException，限流（429）只能从错误信息中识别
+            if (message != null && (message.contains("429") || message.contains("Throttling"))) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
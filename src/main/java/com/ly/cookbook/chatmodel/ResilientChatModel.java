@@ -0,0 +1,363 @@
+package com.ly.cookbook.chatmodel;
+
+import com.alibaba.cloud.ai.dashscope.chat.DashScopeChatOptions;
+import com.ly.cookbook.common.units.AssertUtil;
+import com.ly.cookbook.exception.AssertException;
+import com.ly.cookbook.exception.emun.AgentErrorEnum;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.prompt.ChatOptions;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.model.tool.ToolCallingChatOptions;
+import org.springframework.util.CollectionUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * @author 刘燚
+ * @version v1.0.0
+ * @Description 弹性 ChatModel 装饰器，位于 Advisor 链之下，对 ChatClient 与 Advisor 透明：
+ * 1、对冲：同步调用超过近期响应时间的指定分位数仍未返回时，再发起一次相同调用，取先成功的结果并取消另一次
+ * 2、重试：可重试的错误（限流、超时、服务端错误）按带随机抖动的指数退避重试，流式调用只在收到首个分片前重试
+ * 3、熔断：主模型失败率达到阈值后熔断，熔断期间改用备用模型，未配置备用模型时直接拒绝
+ * 流式调用在 firstChunkTimeout 内没有收到首个分片按超时处理，避免慢响应一直占用请求。
+ * 模型在调用内部执行工具的提示词只调用一次，不对冲也不重试，避免有副作用的工具被重复执行
+ * @createDate：2026/10/18 21:40
+ * @email liuyia2022@163.com
+ */
+@Slf4j
+public class ResilientChatModel implements ChatModel {
+
+    /**
+     * 计算对冲延迟使用的近期响应时间样本数
+     */
+    private static final int LATENCY_SAMPLES = 200;
+
+    /**
+     * 样本不足时不对冲，避免用少量样本得出过短的延迟
+     */
+    private static final int MIN_LATENCY_SAMPLES = 20;
+
+    private final ChatModel delegate;
+
+    private final ChatModelCircuitBreaker circuitBreaker;
+
+    private final String fallbackModel;
+
+    private final int maxAttempts;
+
+    private final Duration retryBaseDelay;
+
+    private final Duration retryMaxDelay;
+
+    private final double hedgePercentile;
+
+    private final Duration hedgeMinDelay;
+
+    private final Duration firstChunkTimeout;
+
+    private final long[] latencies = new long[LATENCY_SAMPLES];
+
+    private int latencyIndex;
+
+    private int latencyCount;
+
+    private final ExecutorService hedgeExecutor = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("llm-hedge-", 0).factory());
+
+    private final MeterRegistry meterRegistry;
+
+    private final Counter retries;
+
+    private final Counter fallbacks;
+
+    private final Counter rejected;
+
+    /**
+     * @param hedgePercentile 对冲延迟取近期响应时间的分位数，小于等于 0 时不对冲
+     * @param fallbackModel   熔断期间使用的备用模型名称，为空时熔断期间直接拒绝
+     */
+    public ResilientChatModel(ChatModel delegate, ChatModelCircuitBreaker circuitBreaker, String fallbackModel,
+                              int maxAttempts, Duration retryBaseDelay, Duration retryMaxDelay,
+                              double hedgePercentile, Duration hedgeMinDelay, Duration firstChunkTimeout,
+                              MeterRegistry meterRegistry) {
+        this.delegate = delegate;
+        this.circuitBreaker = circuitBreaker;
+        this.fallbackModel = fallbackModel;
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.retryBaseDelay = retryBaseDelay;
+        this.retryMaxDelay = retryMaxDelay;
+        this.hedgePercentile = hedgePercentile;
+        this.hedgeMinDelay = hedgeMinDelay;
+        this.firstChunkTimeout = firstChunkTimeout;
+        this.meterRegistry = meterRegistry;
+        Gauge.builder("cookbook.llm.resilience.circuit.state", circuitBreaker, breaker -> breaker.getState().ordinal())
+                .description("模型调用熔断器状态：0 关闭，1 半开，2 打开")
+                .register(meterRegistry);
+        this.retries = Counter.builder("cookbook.llm.resilience.retry")
+                .description("模型调用重试次数")
+                .register(meterRegistry);
+        this.fallbacks = Counter.builder("cookbook.llm.resilience.fallback")
+                .description("熔断期间改用备用模型的调用次数")
+                .register(meterRegistry);
+        this.rejected = Counter.builder("cookbook.llm.resilience.rejected")
+                .description("熔断期间没有备用模型被拒绝的调用次数")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public ChatResponse call(Prompt prompt) {
+        boolean singleAttempt = executesToolsInternally(prompt);
+        int attempts = singleAttempt ? 1 : maxAttempts;
+        for (int attempt = 1; ; attempt++) {
+            boolean primary = circuitBreaker.tryAcquire();
+            try {
+                ChatResponse chatResponse = !primary ? delegate.call(fallbackPrompt(prompt))
+                        : singleAttempt ? timedCall(prompt) : hedgedCall(prompt);
+                if (primary) {
+                    circuitBreaker.onSuccess();
+                }
+                return chatResponse;
+            } catch (RuntimeException e) {
+                boolean retriable = ChatModelErrors.isRetriable(e);
+                if (primary) {
+                    recordFailure(retriable);
+                }
+                if (!retriable || attempt >= attempts) {
+                    throw e;
+                }
+                Duration backoff = backoff(attempt);
+                log.warn("模型调用失败，{} ms 后进行第 {} 次重试: {}", backoff.toMillis(), attempt + 1, e.getMessage());
+                retries.increment();
+                sleep(backoff);
+            }
+        }
+    }
+
+    @Override
+    public Flux<ChatResponse> stream(Prompt prompt) {
+        return Flux.defer(() -> {
+            // 已向下游输出过分片的流不能重试，否则内容会重复
+            AtomicBoolean emitted = new AtomicBoolean(false);
+            int attempts = executesToolsInternally(prompt) ? 1 : maxAttempts;
+            return Flux.defer(() -> streamAttempt(prompt, emitted))
+                    .retryWhen(Retry.backoff(attempts - 1, retryBaseDelay)
+                            .maxBackoff(retryMaxDelay)
+                            .jitter(0.5)
+                            .filter(e -> !emitted.get() && ChatModelErrors.isRetriable(e))
+                            .doBeforeRetry(signal -> {
+                                log.warn("模型流式调用失败，进行第 {} 次重试: {}", signal.totalRetries() + 2,
+                                        signal.failure().getMessage());
+                                retries.increment();
+                            })
+                            .onRetryExhaustedThrow((spec, signal) -> signal.failure()));
+        });
+    }
+
+    private Flux<ChatResponse> streamAttempt(Prompt prompt, AtomicBoolean emitted) {
+        boolean primary = circuitBreaker.tryAcquire();
+        Prompt attemptPrompt;
+        try {
+            attemptPrompt = primary ? prompt : fallbackPrompt(prompt);
+        } catch (AssertException e) {
+            return Flux.error(e);
+        }
+        AtomicBoolean recorded = new AtomicBoolean(!primary);
+        return delegate.stream(attemptPrompt)
+                .timeout(Mono.delay(firstChunkTimeout), chatResponse -> Mono.never())
+                .doOnNext(chatResponse -> {
+                    emitted.set(true);
+                    if (recorded.compareAndSet(false, true)) {
+                        circuitBreaker.onSuccess();
+                    }
+                })
+                .doOnError(e -> {
+                    if (recorded.compareAndSet(false, true)) {
+                        recordFailure(ChatModelErrors.isRetriable(e));
+                    }
+                })
+                .doFinally(signal -> {
+                    if (recorded.compareAndSet(false, true)) {
+                        circuitBreaker.onIgnore();
+                    }
+                });
+    }
+
+    /**
+     * 对冲调用：首次调用在对冲延迟内没有返回时再发起一次，取先成功的结果，两次都失败时抛出后失败的错误
+     */
+    private ChatResponse hedgedCall(Prompt prompt) {
+        Duration hedgeDelay = hedgeDelay();
+        if (hedgeDelay == null) {
+            return timedCall(prompt);
+        }
+        CompletionService<ChatResponse> completionService = new ExecutorCompletionService<>(hedgeExecutor);
+        Future<ChatResponse> first = completionService.submit(() -> timedCall(prompt));
+        Future<ChatResponse> second = null;
+        try {
+            Future<ChatResponse> done = completionService.poll(hedgeDelay.toNanos(), TimeUnit.NANOSECONDS);
+            if (done == null) {
+                log.info("模型调用超过对冲延迟 {} ms 仍未返回，发起对冲调用", hedgeDelay.toMillis());
+                second = completionService.submit(() -> timedCall(prompt));
+                done = completionService.take();
+                if (isFailed(done)) {
+                    done = completionService.take();
+                }
+            }
+            recordHedge(second == null ? "none" : done == first ? "primary" : "hedge");
+            return done.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("模型调用被中断", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            first.cancel(true);
+            if (second != null) {
+                second.cancel(true);
+            }
+        }
+    }
+
+    private ChatResponse timedCall(Prompt prompt) {
+        long start = System.nanoTime();
+        ChatResponse chatResponse = delegate.call(prompt);
+        recordLatency(System.nanoTime() - start);
+        return chatResponse;
+    }
+
+    /**
+     * 提示词带有工具且由模型在调用内部执行工具：对冲或重试会把整轮工具调用再执行一遍
+     */
+    static boolean executesToolsInternally(Prompt prompt) {
+        return prompt.getOptions() instanceof ToolCallingChatOptions options
+                && (!CollectionUtils.isEmpty(options.getToolCallbacks()) || !CollectionUtils.isEmpty(options.getToolNames()))
+                && ToolCallingChatOptions.isInternalToolExecutionEnabled(options);
+    }
+
+    private static boolean isFailed(Future<ChatResponse> future) {
+        try {
+            future.get();
+            return false;
+        } catch (Exception e) {
+            return true;
+        }
+    }
+
+    /**
+     * 对冲延迟：近期响应时间的分位数，不低于 hedgeMinDelay；未开启或样本不足时返回 null
+     */
+    Duration hedgeDelay() {
+        if (hedgePercentile <= 0) {
+            return null;
+        }
+        long[] sorted;
+        synchronized (latencies) {
+            if (latencyCount < MIN_LATENCY_SAMPLES) {
+                return null;
+            }
+            sorted = Arrays.copyOf(latencies, latencyCount);
+        }
+        Arrays.sort(sorted);
+        int index = Math.min(sorted.length - 1, (int) Math.ceil(hedgePercentile * sorted.length) - 1);
+        Duration percentileDelay = Duration.ofNanos(sorted[Math.max(0, index)]);
+        return percentileDelay.compareTo(hedgeMinDelay) > 0 ? percentileDelay : hedgeMinDelay;
+    }
+
+    private void recordLatency(long nanos) {
+        synchronized (latencies) {
+            latencies[latencyIndex] = nanos;
+            latencyIndex = (latencyIndex + 1) % latencies.length;
+            latencyCount = Math.min(latencyCount + 1, latencies.length);
+        }
+    }
+
+    private void recordFailure(boolean retriable) {
+        if (retriable) {
+            circuitBreaker.onFailure();
+        } else {
+            circuitBreaker.onIgnore();
+        }
+    }
+
+    private void recordHedge(String result) {
+        Counter.builder("cookbook.llm.resilience.hedge")
+                .description("同步模型调用的对冲结果：none 未对冲，primary 首次调用先返回，hedge 对冲调用先返回")
+                .tag("result", result)
+                .register(meterRegistry)
+                .increment();
+    }
+
+    /**
+     * 熔断期间的调用改用备用模型，没有备用模型时拒绝
+     */
+    private Prompt fallbackPrompt(Prompt prompt) {
+        if (StringUtils.isBlank(fallbackModel)) {
+            rejected.increment();
+            AssertUtil.putMeg(AgentErrorEnum.AI_SERVICE_UNAVAILABLE);
+        }
+        fallbacks.increment();
+        ChatOptions options = prompt.getOptions();
+        DashScopeChatOptions fallbackOptions;
+        if (options instanceof DashScopeChatOptions dashScopeChatOptions) {
+            fallbackOptions = DashScopeChatOptions.fromOptions(dashScopeChatOptions);
+            fallbackOptions.setModel(fallbackModel);
+        } else if (options == null) {
+            fallbackOptions = DashScopeChatOptions.builder().withModel(fallbackModel).build();
+        } else {
+            log.warn("无法为 {} 类型的选项切换备用模型，仍使用原模型", options.getClass().getSimpleName());
+            return prompt;
+        }
+        return new Prompt(prompt.getInstructions(), fallbackOptions);
+    }
+
+    /**
+     * 指数退避加随机抖动：在 [退避时间 / 2, 退避时间] 之间随机取值，避免同时失败的请求同时重试
+     */
+    private Duration backoff(int attempt) {
+        long base = retryBaseDelay.toMillis() << Math.min(attempt - 1, 16);
+        long capped = Math.min(base, retryMaxDelay.toMillis());
+        return Duration.ofMillis(capped / 2 + ThreadLocalRandom.current().nextLong(capped / 2 + 1));
+    }
+
+    private static void sleep(Duration duration) {
+        try {
+            Thread.sleep(duration);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("模型调用重试等待被中断", e);
+        }
+    }
+
+    @Override
+    public ChatOptions getDefaultOptions() {
+        return delegate.getDefaultOptions();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        hedgeExecutor.shutdownNow();
+    }
+}
@@ -34,4 +34,59 @@ public class RedisConstant {
      * 说明: 注册码的有效期，过期后自动失效
      */
     public static final long REGISTER_CODE_EXPIRE_TIME = 86400L;
+
+    /**
+     * Agent 工具调用结果缓存 Key 前缀
+     * 完整格式: agent:tool:result:{工具名称}:{规范化参数的 SHA-256}
+     * 说明: 跨运行、跨节点共享只读工具（搜索、网页抓取）的调用结果，过期时间按工具配置
+     */
+    public static final String AGENT_TOOL_RESULT = "agent:tool:result:";
+
+    /**
+     * Agent 运行检查点 Key 前缀
+     * 完整格式: agent:checkpoint:{会话ID}
+     * 说明: 每完成一步覆盖写入，运行完成后删除，过期时间见 cookbook.agent.checkpoint.ttl
+     */
+    public static final String AGENT_CHECKPOINT = "agent:checkpoint:";
+
+    /**
+     * Agent 运行租约 Key 前缀
+     * 完整格式: agent:lease:{会话ID}
+     * 说明: 值为运行持有的令牌，运行期间定时续期，存活期间不允许恢复该会话的检查点，过期时间见 cookbook.agent.checkpoint.lease-ttl
+     */
+    public static final String AGENT_RUN_LEASE = "agent:lease:";
+
+    /**
+     * 无记忆对话回答缓存 Key 前缀
+     * 完整格式: chat:response:{作用域与规范化用户消息的 SHA-256}
+     * 说明: 作用域包含系统提示词摘要与模型选项，过期时间见 cookbook.chat-cache.ttl
+     */
+    public static final String CHAT_RESPONSE = "chat:response:";
+
+    /**
+     * 对话记忆窗口缓存 Key 前缀
+     * 完整格式: chat:memory:window:{会话ID}
+     * 说明: Redis List，首个元素为标记，其后为最近 cookbook.chat-memory.max-messages 条消息，过期时间见 cookbook.chat-memory.cache.ttl
+     */
+    public static final String CHAT_MEMORY_WINDOW = "chat:memory:window:";
+
+    /**
+     * 对话记忆窗口版本号 Key 前缀
+     * 完整格式: chat:memory:version:{会话ID}
+     * 说明: 每次写入或清空递增，读库回填窗口前后版本号不一致时放弃回填
+     */
+    public static final String CHAT_MEMORY_VERSION = "chat:memory:version:";
+
+    /**
+     * 对话记忆进行中写入数 Key 前缀
+     * 完整格式: chat:memory:pending:{会话ID}
+     * 说明: 落库前加一、落库后减一，大于 0 时不回填窗口
+     */
+    public static final String CHAT_MEMORY_PENDING = "chat:memory:pending:";
+
+    /**
+     * 对话记忆本地缓存失效通知频道
+     * 消息格式: {节点ID}\n{会话ID}
+     */
+    public static final String CHAT_MEMORY_INVALIDATE_CHANNEL = "chat:memory:invalidate";
 }
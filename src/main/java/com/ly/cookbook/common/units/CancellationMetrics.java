@@ -0,0 +1,44 @@
+package com.ly.cookbook.common.units;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Metrics;
+
+/**
+ * @author 刘燚
+ * @version v1.0.0
+ * @Description 客户端断开导致的取消指标：取消次数与（估算）节省的 token 数，按请求类型区分
+ * @createDate：2026/10/18 19:40
+ * @email liuyia2022@163.com
+ */
+public class CancellationMetrics {
+
+    public static final String TYPE_AGENT = "agent";
+
+    public static final String TYPE_CHAT = "chat";
+
+    private CancellationMetrics() {
+    }
+
+    /**
+     * 记录一次取消
+     *
+     * @param type        请求类型
+     * @param reason      取消原因：timeout / error / disconnect
+     * @param tokensSaved 估算节省的 token 数，无法估算时传 0
+     */
+    public static void record(String type, String reason, long tokensSaved) {
+        Counter.builder("cookbook.request.cancelled")
+                .description("客户端断开后被取消的请求数")
+                .tag("type", type)
+                .tag("reason", reason)
+                .register(Metrics.globalRegistry)
+                .increment();
+        if (tokensSaved > 0) {
+            Counter.builder("cookbook.request.cancelled.tokens.saved")
+                    .description("取消请求估算节省的 token 数")
+                    .tag("type", type)
+                    .register(Metrics.globalRegistry)
+                    .increment(tokensSaved);
+        }
+    }
+}
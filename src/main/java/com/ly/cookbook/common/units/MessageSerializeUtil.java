@@ -0,0 +1,120 @@
+package com.ly.cookbook.common.units;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.MessageType;
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @author 刘燚
+ * @version v1.0.0
+ * @Description 聊天消息 JSON 编解码工具：只保留消息类型、文本、工具调用与工具响应，
+ * 不依赖 Spring AI 消息类的内部结构，可在不同节点与版本之间安全地读写
+ * @createDate：2026/10/18 19:55
+ * @email liuyia2022@163.com
+ */
+public class MessageSerializeUtil {
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private MessageSerializeUtil() {
+    }
+
+    /**
+     * 消息列表序列化为 JSON 数组
+     */
+    public static String toJson(List<Message> messages) {
+        ArrayNode arrayNode = OBJECT_MAPPER.createArrayNode();
+        messages.forEach(message -> arrayNode.add(toNode(message)));
+        try {
+            return OBJECT_MAPPER.writeValueAsString(arrayNode);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("消息序列化失败", e);
+        }
+    }
+
+    /**
+     * JSON 数组反序列化为消息列表，未知类型的消息被忽略
+     */
+    public static List<Message> fromJson(String json) {
+        List<Message> messages = new ArrayList<>();
+        try {
+            for (JsonNode node : OBJECT_MAPPER.readTree(json)) {
+                Message message = fromNode(node);
+                if (message != null) {
+                    messages.add(message);
+                }
+            }
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("消息反序列化失败", e);
+        }
+        return messages;
+    }
+
+    public static ObjectNode toNode(Message message) {
+        ObjectNode node = OBJECT_MAPPER.createObjectNode();
+        node.put("type", message.getMessageType().name());
+        node.put("text", message.getText());
+        if (message instanceof AssistantMessage assistantMessage && assistantMessage.hasToolCalls()) {
+            ArrayNode toolCalls = node.putArray("toolCalls");
+            for (AssistantMessage.ToolCall toolCall : assistantMessage.getToolCalls()) {
+                toolCalls.addObject()
+                        .put("id", toolCall.id())
+                        .put("type", toolCall.type())
+                        .put("name", toolCall.name())
+                        .put("arguments", toolCall.arguments());
+            }
+        }
+        if (message instanceof ToolResponseMessage toolResponseMessage) {
+            ArrayNode responses = node.putArray("responses");
+            for (ToolResponseMessage.ToolResponse response : toolResponseMessage.getResponses()) {
+                responses.addObject()
+                        .put("id", response.id())
+                        .put("name", response.name())
+                        .put("responseData", response.responseData());
+            }
+        }
+        return node;
+    }
+
+    public static Message fromNode(JsonNode node) {
+        MessageType type;
+        try {
+            type = MessageType.valueOf(node.path("type").asText());
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        String text = node.path("text").isNull() ? null : node.path("text").asText();
+        return switch (type) {
+            case USER -> new UserMessage(text == null ? "" : text);
+            case SYSTEM -> new SystemMessage(text == null ? "" : text);
+            case ASSISTANT -> {
+                List<AssistantMessage.ToolCall> toolCalls = new ArrayList<>();
+                for (JsonNode toolCall : node.path("toolCalls")) {
+                    toolCalls.add(new AssistantMessage.ToolCall(toolCall.path("id").asText(), toolCall.path("type").asText(),
+                            toolCall.path("name").asText(), toolCall.path("arguments").asText()));
+                }
+                yield new AssistantMessage(text, Map.of(), toolCalls);
+            }
+            case TOOL -> {
+                List<ToolResponseMessage.ToolResponse> responses = new ArrayList<>();
+                for (JsonNode response : node.path("responses")) {
+                    responses.add(new ToolResponseMessage.ToolResponse(response.path("id").asText(),
+                            response.path("name").asText(), response.path("responseData").asText()));
+                }
+                yield new ToolResponseMessage(responses, Map.of());
+            }
+        };
+    }
+}
@@ -0,0 +1,45 @@
+package com.ly.cookbook.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ly.cookbook.limiter.AdmissionController;
+import com.ly.cookbook.limiter.AdmissionInterceptor;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+/**
+ * @author 刘燚
+ * @version v1.0.0
+ * @Description 准入控制配置：在聊天与 Agent 接口前注册准入拦截器
+ * @createDate：2026/10/18 20:30
+ * @email liuyia2022@163.com
+ */
+@Configuration
+public class AdmissionConfiguration implements WebMvcConfigurer {
+
+    private final AdmissionController admissionController;
+
+    private final ObjectMapper objectMapper;
+
+    public AdmissionConfiguration(AdmissionController admissionController, ObjectMapper objectMapper) {
+        this.admissionController = admissionController;
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(new AdmissionInterceptor(admissionController, objectMapper))
+                .addPathPatterns(
+                        "/chat/simple",
+                        "/chat/simple/stream/sse",
+                        "/chat/simple/stream/flux",
+                        "/chat/memory",
+                        "/chat/memory/stream/sse",
+                        "/chat/memory/stream/flux",
+                        "/agent/yicook",
+                        "/agent/yicook/stream/sse",
+                        "/agent/yicook/resume",
+                        "/router/chat"
+                );
+    }
+}
@@ -0,0 +1,117 @@
+package com.ly.cookbook.config;
+
+import com.ly.cookbook.agent.AgentCheckpointStore;
+import com.ly.cookbook.agent.AgentContextManager;
+import com.ly.cookbook.agent.AgentLoopDetector;
+import com.ly.cookbook.agent.CoordinatorAgent;
+import com.ly.cookbook.agent.ParallelToolCallingManager;
+import com.ly.cookbook.agent.ParallelToolExecutor;
+import com.ly.cookbook.agent.PlanExecuteAgent;
+import com.ly.cookbook.agent.YiCookAgent;
+import com.ly.cookbook.cache.SemanticAnswerCache;
+import com.ly.cookbook.sse.SseChunkWriter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.client.advisor.api.Advisor;
+import org.springframework.ai.chat.memory.ChatMemory;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.tool.ToolCallback;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+/**
+ * @author 刘燚
+ * @version v1.0.0
+ * @Description Agent 配置类，负责注册共享的 Agent 运行时
+ * @createDate：2026/10/18 11:20
+ * @email liuyia2022@163.com
+ */
+@Configuration
+@Slf4j
+public class AgentConfiguration {
+
+    /**
+     * 工具并行执行器，全局并发上限在所有 Agent 运行之间共享。
+     * 不直接注册 ToolCallingManager Bean，避免替换掉 ChatModel 自动配置使用的默认实现
+     */
+    @Bean
+    public ParallelToolExecutor parallelToolExecutor(@Value("${cookbook.agent.tool.max-concurrency:16}") int maxConcurrency,
+                                                     @Value("${cookbook.agent.tool.default-timeout:30s}") Duration defaultTimeout) {
+        log.info("注册工具并行执行器，全局并发上限: {}, 默认超时: {}", maxConcurrency, defaultTimeout);
+        return new ParallelToolExecutor(maxConcurrency, defaultTimeout);
+    }
+
+    /**
+     * Agent 工作上下文管理器：每次调用 LLM 的 token 预算与工具结果压缩策略
+     */
+    @Bean
+    public AgentContextManager agentContextManager(@Value("${cookbook.agent.context.token-budget:12000}") int tokenBudget,
+                                                   @Value("${cookbook.agent.context.keep-full-tool-responses:2}") int keepFullToolResponses,
+                                                   @Value("${cookbook.agent.context.compacted-chars:300}") int compactedChars) {
+        log.info("注册 Agent 上下文管理器，token 预算: {}, 保留完整工具结果数: {}", tokenBudget, keepFullToolResponses);
+        return new AgentContextManager(tokenBudget, keepFullToolResponses, compactedChars);
+    }
+
+    /**
+     * YiCookAgent 单例：ChatClient、工具、提示词与选项只构建一次，
+     * 每次运行的状态由 AgentRunContext 承载
+     */
+    @Bean
+    public YiCookAgent yiCookAgent(ToolCallback[] allTools, ParallelToolExecutor parallelToolExecutor, AgentContextManager agentContextManager,
+                                   AgentCheckpointStore agentCheckpointStore, ObjectProvider<SemanticAnswerCache> semanticAnswerCache,
+                                   SseChunkWriter sseChunkWriter, ChatModel cookbookChatModel, ChatMemory pgChatMemory,
+                                   Advisor chatLogAdvisor, Advisor ragCloudAdvisor, Advisor chatTokenHandlerAdvisor,
+                                   Advisor llmPriorityAdvisor, @Value("${cookbook.agent.loop.max-stalled-steps:2}") int maxStalledSteps) {
+        log.info("注册 YiCookAgent 共享运行时，工具数量: {}", allTools.length);
+        YiCookAgent yiCookAgent = new YiCookAgent(allTools, new ParallelToolCallingManager(allTools, parallelToolExecutor),
+                cookbookChatModel, pgChatMemory, chatLogAdvisor, ragCloudAdvisor, chatTokenHandlerAdvisor, llmPriorityAdvisor);
+        yiCookAgent.setContextManager(agentContextManager);
+        yiCookAgent.setLoopDetector(new AgentLoopDetector(maxStalledSteps));
+        yiCookAgent.setCheckpointStore(agentCheckpointStore);
+        yiCookAgent.setSemanticAnswerCache(semanticAnswerCache.getIfAvailable());
+        yiCookAgent.setSseWriter(sseChunkWriter);
+        return yiCookAgent;
+    }
+
+    /**
+     * 计划执行智能体单例，与 YiCookAgent 共享工具集与工具并行执行器
+     */
+    @Bean
+    public PlanExecuteAgent planExecuteAgent(ToolCallback[] allTools, ParallelToolExecutor parallelToolExecutor,
+                                             AgentCheckpointStore agentCheckpointStore, ObjectProvider<SemanticAnswerCache> semanticAnswerCache,
+                                             SseChunkWriter sseChunkWriter, ChatModel cookbookChatModel, ChatMemory pgChatMemory,
+                                             Advisor chatLogAdvisor, Advisor ragCloudAdvisor, Advisor chatTokenHandlerAdvisor,
+                                             Advisor llmPriorityAdvisor) {
+        log.info("注册 PlanExecuteAgent 共享运行时，工具数量: {}", allTools.length);
+        PlanExecuteAgent planExecuteAgent = new PlanExecuteAgent(allTools, parallelToolExecutor, cookbookChatModel, pgChatMemory,
+                chatLogAdvisor, ragCloudAdvisor, chatTokenHandlerAdvisor, llmPriorityAdvisor);
+        planExecuteAgent.setCheckpointStore(agentCheckpointStore);
+        planExecuteAgent.setSemanticAnswerCache(semanticAnswerCache.getIfAvailable());
+        planExecuteAgent.setSseWriter(sseChunkWriter);
+        return planExecuteAgent;
+    }
+
+    /**
+     * 协调智能体单例，子任务由共享的 YiCookAgent 执行，整棵运行树共享步骤与 token 预算
+     */
+    @Bean
+    public CoordinatorAgent coordinatorAgent(YiCookAgent yiCookAgent, AgentCheckpointStore agentCheckpointStore,
+                                             ObjectProvider<SemanticAnswerCache> semanticAnswerCache, SseChunkWriter sseChunkWriter,
+                                             ChatModel cookbookChatModel, ChatMemory pgChatMemory,
+                                             Advisor chatLogAdvisor, Advisor ragCloudAdvisor, Advisor chatTokenHandlerAdvisor,
+                                             Advisor llmPriorityAdvisor,
+                                             @Value("${cookbook.agent.coordinator.max-tree-steps:30}") int maxTreeSteps,
+                                             @Value("${cookbook.agent.coordinator.max-tree-tokens:300000}") long maxTreeTokens) {
+        log.info("注册 CoordinatorAgent 共享运行时，整体步骤上限: {}, 整体 token 上限: {}", maxTreeSteps, maxTreeTokens);
+        CoordinatorAgent coordinatorAgent = new CoordinatorAgent(yiCookAgent, maxTreeSteps, maxTreeTokens, cookbookChatModel, pgChatMemory,
+                chatLogAdvisor, ragCloudAdvisor, chatTokenHandlerAdvisor, llmPriorityAdvisor);
+        // 子 Agent 运行不单独保存检查点，协调运行在拆分执行完成后保存一次，恢复时直接进入合并总结
+        coordinatorAgent.setCheckpointStore(agentCheckpointStore);
+        coordinatorAgent.setSemanticAnswerCache(semanticAnswerCache.getIfAvailable());
+        coordinatorAgent.setSseWriter(sseChunkWriter);
+        return coordinatorAgent;
+    }
+}
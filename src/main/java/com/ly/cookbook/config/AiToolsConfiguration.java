@@ -1,6 +1,7 @@
 package com.ly.cookbook.config;
 
 import com.ly.cookbook.aitools.*;
+import com.ly.cookbook.cache.ToolResultCache;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.ai.support.ToolCallbacks;
 import org.springframework.ai.tool.ToolCallback;
@@ -25,16 +26,19 @@ public class AiToolsConfiguration {
     @Value("${serpapi.engine}")
     private String searchEngine;
 
+    /**
+     * 只读工具（搜索、网页抓取）外包一层结果缓存，命令执行、文件写入、终止等工具不缓存
+     */
     @Bean
-    public ToolCallback[] allTools() {
+    public ToolCallback[] allTools(ToolResultCache toolResultCache) {
         log.info("注册 AI 工具，SerpAPI Key: {}", serpApiKey != null && !serpApiKey.isEmpty() ? "已配置" : "未配置");
-        return ToolCallbacks.from(
+        return toolResultCache.wrap(ToolCallbacks.from(
                 new WebScriptTools(),
                 new WebSearchTools(serpApiKey, searchEngine),
                 new FileTools(),
                 new ResourceDownloadTools(),
                 new TerminalOperationTools(),
                 new TerminateTools()
-        );
+        ));
     }
 }
@@ -0,0 +1,26 @@
+package com.ly.cookbook.config;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.support.TaskExecutorAdapter;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.util.concurrent.Executors;
+
+/**
+ * @author 刘燚
+ * @version v1.0.0
+ * @Description 异步请求配置：接口返回 Flux 时，Spring MVC 在该执行器上把元素写出到响应。
+ * 写出是阻塞的，读取慢的客户端会占住执行线程，使用虚拟线程避免慢客户端耗尽有限的平台线程池
+ * @createDate：2026/10/18 23:20
+ * @email liuyia2022@163.com
+ */
+@Configuration
+public class AsyncWebConfiguration implements WebMvcConfigurer {
+
+    @Override
+    public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+        configurer.setTaskExecutor(new TaskExecutorAdapter(Executors.newThreadPerTaskExecutor(
+                Thread.ofVirtual().name("mvc-async-", 0).factory())));
+    }
+}
@@ -0,0 +1,63 @@
+package com.ly.cookbook.config;
+
+import com.alibaba.cloud.ai.dashscope.chat.DashScopeChatModel;
+import com.ly.cookbook.chatmodel.AdaptiveConcurrencyChatModel;
+import com.ly.cookbook.chatmodel.ChatModelCircuitBreaker;
+import com.ly.cookbook.chatmodel.ResilientChatModel;
+import com.ly.cookbook.limiter.AdaptiveConcurrencyLimiter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+/**
+ * @author 刘燚
+ * @version v1.0.0
+ * @Description 业务使用的 ChatModel：DashScope 模型外依次包装自适应并发限制与弹性层（对冲、重试、熔断），
+ * 对话与 Agent 统一注入 cookbookChatModel，DashScope 原始模型只作为被包装的下游。
+ * 重试与对冲发起的每次调用都会重新获取并发许可；DashScope 自身的重试由 spring.ai.retry.max-attempts=1 关闭，
+ * 避免内外两层重试叠加
+ * @createDate：2026/10/18 21:10
+ * @email liuyia2022@163.com
+ */
+@Configuration
+@Slf4j
+public class ChatModelConfiguration {
+
+    @Bean
+    public ChatModelCircuitBreaker chatModelCircuitBreaker(@Value("${cookbook.llm.resilience.circuit.failure-rate:0.5}") double failureRate,
+                                                           @Value("${cookbook.llm.resilience.circuit.window-size:20}") int windowSize,
+                                                           @Value("${cookbook.llm.resilience.circuit.min-calls:10}") int minCalls,
+                                                           @Value("${cookbook.llm.resilience.circuit.open-duration:30s}") Duration openDuration,
+                                                           @Value("${cookbook.llm.resilience.circuit.half-open-calls:3}") int halfOpenCalls) {
+        log.info("注册模型调用熔断器，失败率阈值: {}, 窗口: {}, 熔断时长: {}", failureRate, windowSize, openDuration);
+        return new ChatModelCircuitBreaker(failureRate, windowSize, minCalls, openDuration, halfOpenCalls);
+    }
+
+    @Bean
+    public ChatModel cookbookChatModel(DashScopeChatModel dashScopeChatModel, ChatModelCircuitBreaker chatModelCircuitBreaker,
+                                       MeterRegistry meterRegistry,
+                                       @Value("${cookbook.llm.adaptive.initial-limit:16}") int initialLimit,
+                                       @Value("${cookbook.llm.adaptive.min-limit:2}") int minLimit,
+                                       @Value("${cookbook.llm.adaptive.max-limit:32}") int maxLimit,
+                                       @Value("${cookbook.llm.adaptive.max-wait:5s}") Duration maxWait,
+                                       @Value("${cookbook.llm.resilience.fallback-model:}") String fallbackModel,
+                                       @Value("${cookbook.llm.resilience.retry.max-attempts:3}") int maxAttempts,
+                                       @Value("${cookbook.llm.resilience.retry.base-delay:200ms}") Duration retryBaseDelay,
+                                       @Value("${cookbook.llm.resilience.retry.max-delay:2s}") Duration retryMaxDelay,
+                                       @Value("${cookbook.llm.resilience.hedge.percentile:0.95}") double hedgePercentile,
+                                       @Value("${cookbook.llm.resilience.hedge.min-delay:1s}") Duration hedgeMinDelay,
+                                       @Value("${cookbook.llm.resilience.first-chunk-timeout:30s}") Duration firstChunkTimeout) {
+        log.info("注册自适应并发限制 ChatModel，初始上限: {}, 范围: [{}, {}], 最长等待: {}", initialLimit, minLimit, maxLimit, maxWait);
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(initialLimit, minLimit, maxLimit);
+        ChatModel adaptiveChatModel = new AdaptiveConcurrencyChatModel(dashScopeChatModel, limiter, maxWait, meterRegistry);
+        log.info("注册弹性 ChatModel，最多尝试: {} 次, 对冲分位数: {}, 首个分片超时: {}, 备用模型: {}",
+                maxAttempts, hedgePercentile, firstChunkTimeout, fallbackModel);
+        return new ResilientChatModel(adaptiveChatModel, chatModelCircuitBreaker, fallbackModel, maxAttempts,
+                retryBaseDelay, retryMaxDelay, hedgePercentile, hedgeMinDelay, firstChunkTimeout, meterRegistry);
+    }
+}
@@ -1,23 +1,54 @@
 package com.ly.cookbook.config;
 
-import com.alibaba.cloud.ai.dashscope.chat.DashScopeChatModel;
+import com.ly.cookbook.memory.AppendOnlyChatMemoryRepository;
+import com.ly.cookbook.memory.AppendOnlyWindowChatMemory;
+import com.ly.cookbook.memory.CachingChatMemory;
+import com.ly.cookbook.memory.ChatMemorySummarizer;
+import com.ly.cookbook.memory.ChatMemorySummaryRepository;
+import com.ly.cookbook.memory.ChatMemoryWal;
+import com.ly.cookbook.memory.ChatMemoryWriteBehind;
+import com.ly.cookbook.memory.MessageTokenCounter;
+import com.ly.cookbook.memory.SummarizingChatMemory;
+import com.ly.cookbook.memory.TokenWindowChatMemory;
+import com.ly.cookbook.mq.producer.MessageSender;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.client.advisor.api.Advisor;
 import org.springframework.ai.chat.memory.ChatMemory;
 import org.springframework.ai.chat.memory.ChatMemoryRepository;
 import org.springframework.ai.chat.memory.MessageWindowChatMemory;
 import org.springframework.ai.chat.memory.repository.jdbc.JdbcChatMemoryRepository;
-import org.springframework.ai.chat.memory.repository.jdbc.JdbcChatMemoryRepositoryDialect;
 import org.springframework.ai.chat.memory.repository.jdbc.PostgresChatMemoryRepositoryDialect;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.StringUtils;
+import org.springframework.util.unit.DataSize;
 
-import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.time.Duration;
 
 /**
  * @author 刘燚
  * @version v1.0.0
- * @Description TODO
+ * @Description 聊天记忆配置：默认使用追加写仓库，关闭 cookbook.chat-memory.append-only.enabled 后
+ * 退回 MessageWindowChatMemory + JdbcChatMemoryRepository（每次写入删除并重写整个窗口）；
+ * 开启 cookbook.chat-memory.cache.enabled 时在数据库前加本地 + Redis 两级窗口缓存；
+ * 追加写仓库默认经 cookbook.chat-memory.write-behind 异步批量落库；
+ * 开启 cookbook.chat-memory.token-window.enabled 时 max-messages 作为候选条数上限，实际窗口按 token 预算截取；
+ * 开启 cookbook.chat-memory.summary.enabled 时（需追加写仓库）在窗口之前带上后台任务生成的会话滚动摘要
  * @createDate：2025/10/2 17:28
  * @email liuyia2022@163.com
  */
@@ -26,14 +57,121 @@ import javax.sql.DataSource;
 public class PgChatMemoryConfiguration {
 
     @Bean
-    public ChatMemory pgChatMemory(JdbcTemplate jdbcTemplate) {
+    @ConditionalOnProperty(prefix = "cookbook.chat-memory.append-only", name = "enabled", havingValue = "true", matchIfMissing = true)
+    public AppendOnlyChatMemoryRepository appendOnlyChatMemoryRepository(JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate,
+                                                                         @Value("${cookbook.chat-memory.max-messages:10}") int maxMessages,
+                                                                         @Value("${cookbook.chat-memory.retain-messages:10}") int retainMessages) {
+        // 保留条数小于窗口时窗口读不满，按窗口大小保留
+        return new AppendOnlyChatMemoryRepository(jdbcTemplate, transactionTemplate, Math.max(retainMessages, maxMessages));
+    }
+
+    @Bean(destroyMethod = "shutdown")
+    @ConditionalOnExpression("${cookbook.chat-memory.append-only.enabled:true} and ${cookbook.chat-memory.write-behind.enabled:true}")
+    public ChatMemoryWriteBehind chatMemoryWriteBehind(AppendOnlyChatMemoryRepository appendOnlyChatMemoryRepository,
+                                                       @Value("${cookbook.chat-memory.write-behind.queue-capacity:10000}") int queueCapacity,
+                                                       @Value("${cookbook.chat-memory.write-behind.batch-size:500}") int batchSize,
+                                                       @Value("${cookbook.chat-memory.write-behind.flush-interval:200ms}") Duration flushInterval,
+                                                       @Value("${cookbook.chat-memory.write-behind.max-wait:100ms}") Duration maxWait,
+                                                       @Value("${cookbook.chat-memory.write-behind.wal.enabled:false}") boolean walEnabled,
+                                                       @Value("${cookbook.chat-memory.write-behind.wal.dir:data/chat-memory-wal}") String walDir,
+                                                       @Value("${cookbook.chat-memory.write-behind.wal.segment-size:16MB}") DataSize walSegmentSize,
+                                                       MeterRegistry meterRegistry) {
+        ChatMemoryWal wal = walEnabled ? new ChatMemoryWal(Path.of(walDir), walSegmentSize.toBytes()) : null;
+        return new ChatMemoryWriteBehind(appendOnlyChatMemoryRepository, wal, queueCapacity, batchSize, flushInterval, maxWait, meterRegistry);
+    }
+
+    @Bean
+    public ChatMemory pgChatMemory(JdbcTemplate jdbcTemplate,
+                                   ObjectProvider<AppendOnlyChatMemoryRepository> appendOnlyChatMemoryRepository,
+                                   ObjectProvider<ChatMemoryWriteBehind> chatMemoryWriteBehind,
+                                   @Value("${cookbook.chat-memory.max-messages:10}") int maxMessages,
+                                   @Value("${cookbook.chat-memory.cache.enabled:true}") boolean cacheEnabled,
+                                   @Value("${cookbook.chat-memory.cache.local-max-size:10000}") int cacheLocalMaxSize,
+                                   @Value("${cookbook.chat-memory.cache.local-ttl:1m}") Duration cacheLocalTtl,
+                                   @Value("${cookbook.chat-memory.cache.ttl:30m}") Duration cacheTtl,
+                                   ObjectProvider<MessageTokenCounter> messageTokenCounter,
+                                   @Value("${cookbook.chat-memory.token-window.max-tokens:3000}") int maxTokens,
+                                   ObjectProvider<ChatMemorySummaryRepository> chatMemorySummaryRepository,
+                                   MessageSender messageSender,
+                                   @Value("${cookbook.chat-memory.summary.trigger-messages:6}") int summaryTriggerMessages,
+                                   @Value("${cookbook.chat-memory.summary.keep-recent:10}") int summaryKeepRecent,
+                                   @Value("${cookbook.chat-memory.summary.cache-size:10000}") int summaryCacheSize,
+                                   @Value("${cookbook.chat-memory.summary.ttl:1m}") Duration summaryTtl,
+                                   StringRedisTemplate stringRedisTemplate,
+                                   RedisMessageListenerContainer redisMessageListenerContainer,
+                                   MeterRegistry meterRegistry) {
+        ChatMemory chatMemory = databaseChatMemory(jdbcTemplate, appendOnlyChatMemoryRepository.getIfAvailable(),
+                chatMemoryWriteBehind.getIfAvailable(), maxMessages);
+        if (cacheEnabled) {
+            chatMemory = new CachingChatMemory(chatMemory, maxMessages, cacheLocalMaxSize, cacheLocalTtl, cacheTtl,
+                    stringRedisTemplate, redisMessageListenerContainer, meterRegistry);
+        }
+        MessageTokenCounter tokenCounter = messageTokenCounter.getIfAvailable();
+        if (tokenCounter != null) {
+            // 在缓存之外截取：缓存保存候选窗口，预算调整后不用重建缓存
+            log.info("聊天记忆按 token 预算截取窗口，预算: {} tokens，候选上限: {} 条", maxTokens, maxMessages);
+            chatMemory = new TokenWindowChatMemory(chatMemory, maxTokens, tokenCounter, meterRegistry);
+        }
+        ChatMemorySummaryRepository summaryRepository = chatMemorySummaryRepository.getIfAvailable();
+        if (summaryRepository != null) {
+            // 摘要放在最外层：不计入窗口的 token 预算，也不会被预算截掉
+            log.info("聊天记忆开启滚动摘要，每 {} 条新消息触发一次摘要任务", summaryTriggerMessages);
+            chatMemory = new SummarizingChatMemory(chatMemory, summaryRepository, messageSender, summaryTriggerMessages,
+                    summaryKeepRecent, summaryCacheSize, summaryTtl);
+        }
+        return chatMemory;
+    }
+
+    @Bean
+    @ConditionalOnExpression("${cookbook.chat-memory.append-only.enabled:true} and ${cookbook.chat-memory.summary.enabled:true}")
+    public ChatMemorySummaryRepository chatMemorySummaryRepository(JdbcTemplate jdbcTemplate) {
+        return new ChatMemorySummaryRepository(jdbcTemplate);
+    }
+
+    @Bean
+    @ConditionalOnExpression("${cookbook.chat-memory.append-only.enabled:true} and ${cookbook.chat-memory.summary.enabled:true}")
+    public ChatMemorySummarizer chatMemorySummarizer(AppendOnlyChatMemoryRepository appendOnlyChatMemoryRepository,
+                                                     ChatMemorySummaryRepository chatMemorySummaryRepository,
+                                                     ChatModel cookbookChatModel, Advisor llmPriorityAdvisor,
+                                                     @Value("${cookbook.chat-memory.summary.keep-recent:10}") int keepRecent,
+                                                     @Value("${cookbook.chat-memory.summary.min-messages:4}") int minMessages,
+                                                     @Value("${cookbook.chat-memory.summary.max-chars:500}") int maxChars,
+                                                     MeterRegistry meterRegistry) {
+        // 不带记忆与工具；不传用户角色，按最低优先级排队，不与用户请求争抢模型调用槽位
+        ChatClient chatClient = ChatClient.builder(cookbookChatModel)
+                .defaultAdvisors(llmPriorityAdvisor)
+                .build();
+        return new ChatMemorySummarizer(appendOnlyChatMemoryRepository, chatMemorySummaryRepository, chatClient, keepRecent,
+                minMessages, maxChars, meterRegistry);
+    }
+
+    @Bean
+    @ConditionalOnProperty(prefix = "cookbook.chat-memory.token-window", name = "enabled", havingValue = "true", matchIfMissing = true)
+    public MessageTokenCounter messageTokenCounter(ResourceLoader resourceLoader,
+                                                   @Value("${cookbook.chat-memory.token-window.vocabulary:}") String vocabulary,
+                                                   @Value("${cookbook.chat-memory.token-window.cache-size:10000}") int cacheSize) throws IOException {
+        if (!StringUtils.hasText(vocabulary)) {
+            return MessageTokenCounter.cl100k(cacheSize);
+        }
+        try (InputStream input = resourceLoader.getResource(vocabulary).getInputStream()) {
+            log.info("聊天记忆 token 计数使用 Qwen 词表: {}", vocabulary);
+            return MessageTokenCounter.qwen(input, cacheSize);
+        }
+    }
+
+    private ChatMemory databaseChatMemory(JdbcTemplate jdbcTemplate, AppendOnlyChatMemoryRepository appendOnlyRepository,
+                                          ChatMemoryWriteBehind writeBehind, int maxMessages) {
+        if (appendOnlyRepository != null) {
+            log.info("聊天记忆使用追加写仓库，窗口: {} 条，异步写入: {}", maxMessages, writeBehind != null ? "开启" : "关闭");
+            return new AppendOnlyWindowChatMemory(appendOnlyRepository, maxMessages, writeBehind);
+        }
         ChatMemoryRepository chatMemoryRepository = JdbcChatMemoryRepository.builder()
                 .jdbcTemplate(jdbcTemplate)
                 .dialect(new PostgresChatMemoryRepositoryDialect())
                 .build();
         ChatMemory chatMemory = MessageWindowChatMemory.builder()
                 .chatMemoryRepository(chatMemoryRepository)
-                .maxMessages(10)
+                .maxMessages(maxMessages)
                 .build();
         return chatMemory;
     }
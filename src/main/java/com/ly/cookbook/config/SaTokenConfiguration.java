@@ -54,7 +54,10 @@ public class SaTokenConfiguration implements WebMvcConfigurer {
                         "/error",                               // 错误页面
                         "/chat/simple/stream/sse",              // 普通聊天 SSE 接口
                         "/chat/memory/stream/sse",              // 记忆对话 SSE 接口
+                        "/chat/simple/stream/flux",             // 普通聊天响应式 SSE 接口
+                        "/chat/memory/stream/flux",             // 记忆对话响应式 SSE 接口
                         "/agent/yicook/stream/sse",             // Agent 对话 SSE 接口
+                        "/agent/yicook/resume",                 // Agent 恢复运行 SSE 接口
                         "/actuator/**"                          // Actuator 监控端点（包括 Prometheus）
                 );
     }
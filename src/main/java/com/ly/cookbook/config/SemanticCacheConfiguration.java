@@ -0,0 +1,56 @@
+package com.ly.cookbook.config;
+
+import com.ly.cookbook.cache.HashingEmbeddingModel;
+import com.ly.cookbook.cache.SemanticAnswerCache;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+/**
+ * @author 刘燚
+ * @version v1.0.0
+ * @Description 语义回答缓存配置：嵌入模型可选 DashScope 嵌入服务或本地特征哈希嵌入，
+ * DashScope 嵌入模型不可用时退化为本地嵌入
+ * @createDate：2026/10/18 22:40
+ * @email liuyia2022@163.com
+ */
+@Configuration
+@Slf4j
+public class SemanticCacheConfiguration {
+
+    @Bean
+    @ConditionalOnProperty(prefix = "cookbook.semantic-cache", name = "enabled", havingValue = "true")
+    public SemanticAnswerCache semanticAnswerCache(ObjectProvider<EmbeddingModel> embeddingModels, MeterRegistry meterRegistry,
+                                                   @Value("${cookbook.semantic-cache.embedder:dashscope}") String embedder,
+                                                   @Value("${spring.ai.dashscope.embedding.options.model:text-embedding-v1}") String dashScopeEmbeddingModel,
+                                                   @Value("${cookbook.semantic-cache.local-dimensions:512}") int localDimensions,
+                                                   @Value("${cookbook.semantic-cache.threshold:0.92}") double threshold,
+                                                   @Value("${cookbook.semantic-cache.ttl:6h}") Duration ttl,
+                                                   @Value("${cookbook.semantic-cache.max-entries:10000}") int maxEntries,
+                                                   @Value("${cookbook.chat-cache.replay-chunk-chars:32}") int replayChunkChars,
+                                                   @Value("${cookbook.semantic-cache.snapshot-path:data/semantic-cache.snapshot}") String snapshotPath) {
+        EmbeddingModel embeddingModel = "dashscope".equals(embedder) ? embeddingModels.getIfUnique() : null;
+        String embedderId;
+        if (embeddingModel != null) {
+            embedderId = "dashscope:" + dashScopeEmbeddingModel;
+        } else {
+            if ("dashscope".equals(embedder)) {
+                log.warn("未找到可用的 DashScope 嵌入模型，语义缓存改用本地嵌入");
+            }
+            embeddingModel = new HashingEmbeddingModel(localDimensions);
+            embedderId = "local-hashing:" + localDimensions;
+        }
+        log.info("注册语义回答缓存，嵌入模型: {}, 相似度阈值: {}, 容量: {}, 过期时间: {}", embedderId, threshold, maxEntries, ttl);
+        return new SemanticAnswerCache(embeddingModel, embedderId, threshold, ttl, maxEntries, replayChunkChars,
+                StringUtils.isBlank(snapshotPath) ? null : Path.of(snapshotPath), meterRegistry);
+    }
+}
@@ -1,23 +1,28 @@
 package com.ly.cookbook.controller;
 
 import cn.dev33.satoken.stp.StpUtil;
+import com.ly.cookbook.agent.AgentCheckpoint;
+import com.ly.cookbook.agent.AgentCheckpointStore;
+import com.ly.cookbook.agent.AgentExecutionEngine;
+import com.ly.cookbook.agent.AgentRunContext;
+import com.ly.cookbook.agent.BaseAgent;
+import com.ly.cookbook.agent.CoordinatorAgent;
+import com.ly.cookbook.agent.PlanExecuteAgent;
 import com.ly.cookbook.agent.YiCookAgent;
 import com.ly.cookbook.common.units.AssertUtil;
+import com.ly.cookbook.enums.AgentModeEnum;
+import com.ly.cookbook.enums.SummaryModeEnum;
 import com.ly.cookbook.exception.emun.AgentErrorEnum;
-import com.ly.cookbook.service.UserService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.annotation.Resource;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.ai.chat.client.advisor.api.Advisor;
-import org.springframework.ai.chat.memory.ChatMemory;
-import org.springframework.ai.chat.model.ChatModel;
-import org.springframework.ai.tool.ToolCallback;
+import org.apache.commons.lang3.StringUtils;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
-import java.io.IOException;
+import java.util.stream.Stream;
 
 /**
  * @author 刘燚
@@ -32,36 +37,87 @@ import java.io.IOException;
 @Tag(name = "agent智能体接口", description = "AI聊天相关接口")
 public class AgentController{
     @Resource
-    private ToolCallback[] allTools;
+    private YiCookAgent yiCookAgent;
     @Resource
-    private ChatModel dashScopeChatModel;
+    private PlanExecuteAgent planExecuteAgent;
     @Resource
-    private ChatMemory pgChatMemory;
+    private CoordinatorAgent coordinatorAgent;
     @Resource
-    private Advisor chatLogAdvisor;
+    private AgentExecutionEngine agentExecutionEngine;
     @Resource
-    private Advisor ragCloudAdvisor;
-    @Resource
-    private Advisor chatTokenHandlerAdvisor;
-    @Resource
-    private UserService userService;
+    private AgentCheckpointStore agentCheckpointStore;
     @Operation(summary = "Agent对话", description = "Agent对话")
     @GetMapping(value = "/yicook")
     public String chatWithAgent(
             @RequestParam @Parameter(description = "会话ID") String conversationId,
-            @RequestParam @Parameter(description = "用户消息") String message) {
-        return new YiCookAgent(allTools, dashScopeChatModel, pgChatMemory,
-                chatLogAdvisor, ragCloudAdvisor, chatTokenHandlerAdvisor).runBySync(conversationId, message);
+            @RequestParam @Parameter(description = "用户消息") String message,
+            @RequestParam(required = false) @Parameter(description = "总结模式：FULL/DIGEST/DIRECT，默认 DIGEST") String summaryMode,
+            @RequestParam(required = false) @Parameter(description = "运行模式：REACT/PLAN/COORDINATOR，默认 REACT") String mode) {
+        return selectAgent(mode).runBySync(conversationId, message, parseSummaryMode(summaryMode));
     }
 
     @Operation(summary = "Agent对话(SSE)", description = "Agent对话(SSE)")
     @GetMapping(value = "/yicook/stream/sse", produces = "text/event-stream")
     public SseEmitter chatWithAgentBySSE(
             @RequestParam @Parameter(description = "会话ID") String conversationId,
-            @RequestParam @Parameter(description = "用户消息") String message
+            @RequestParam @Parameter(description = "用户消息") String message,
+            @RequestParam(required = false) @Parameter(description = "总结模式：FULL/DIGEST/DIRECT，默认 DIGEST") String summaryMode,
+            @RequestParam(required = false) @Parameter(description = "运行模式：REACT/PLAN/COORDINATOR，默认 REACT") String mode
     ){
         StpUtil.checkLogin();
-        return new YiCookAgent(allTools, dashScopeChatModel, pgChatMemory,
-                chatLogAdvisor, ragCloudAdvisor, chatTokenHandlerAdvisor).runByStream(conversationId, message);
+        BaseAgent agent = selectAgent(mode);
+        AgentRunContext context = agent.createStreamContext(conversationId, message);
+        context.setSummaryMode(parseSummaryMode(summaryMode));
+        return agentExecutionEngine.submit(agent, context);
+    }
+
+    @Operation(summary = "恢复Agent运行(SSE)", description = "从最后完成的步骤继续中断的Agent运行，已完成的工具调用不再重复执行(SSE)")
+    @GetMapping(value = "/yicook/resume", produces = "text/event-stream")
+    public SseEmitter resumeAgentBySSE(@RequestParam @Parameter(description = "会话ID") String conversationId) {
+        StpUtil.checkLogin();
+        AgentCheckpoint checkpoint = agentCheckpointStore.load(conversationId);
+        AssertUtil.isNotNull(checkpoint, AgentErrorEnum.CHECKPOINT_NOT_FOUND);
+        // 只允许发起运行的用户恢复
+        AssertUtil.isEquals(checkpoint.getUserId(), StpUtil.getLoginIdAsLong(), AgentErrorEnum.PERMISSION_DENIED);
+        BaseAgent agent = Stream.of(yiCookAgent, planExecuteAgent, coordinatorAgent)
+                .filter(candidate -> candidate.getName().equals(checkpoint.getAgentName()))
+                .findFirst()
+                .orElse(yiCookAgent);
+        // 原运行仍持有租约（仍在执行）或已被其他恢复请求抢占时不允许恢复，避免同一运行被并发执行、token 被重复结算
+        String leaseToken = agentCheckpointStore.claimLease(conversationId);
+        AssertUtil.isNotNull(leaseToken, AgentErrorEnum.CHECKPOINT_RUN_ACTIVE);
+        try {
+            // 抢占租约后重新读取：原运行在读取与抢占之间可能已保存最后一步、结算 token 或完成并删除检查点
+            AgentCheckpoint latest = agentCheckpointStore.load(conversationId);
+            AssertUtil.isNotNull(latest, AgentErrorEnum.CHECKPOINT_NOT_FOUND);
+            AgentRunContext context = agentCheckpointStore.restore(latest, leaseToken, agent.createSseEmitter());
+            return agentExecutionEngine.submit(agent, context);
+        } catch (RuntimeException e) {
+            // 未能开始执行，释放租约以便重新恢复
+            agentCheckpointStore.releaseLease(conversationId, leaseToken);
+            throw e;
+        }
+    }
+
+    private BaseAgent selectAgent(String mode) {
+        if (StringUtils.isBlank(mode)) {
+            return yiCookAgent;
+        }
+        AgentModeEnum agentMode = AgentModeEnum.getByCode(mode);
+        AssertUtil.isNotNull(agentMode, AgentErrorEnum.INVALID_PARAMETER);
+        return switch (agentMode) {
+            case PLAN -> planExecuteAgent;
+            case COORDINATOR -> coordinatorAgent;
+            default -> yiCookAgent;
+        };
+    }
+
+    private SummaryModeEnum parseSummaryMode(String summaryMode) {
+        if (StringUtils.isBlank(summaryMode)) {
+            return SummaryModeEnum.DIGEST;
+        }
+        SummaryModeEnum mode = SummaryModeEnum.getByCode(summaryMode);
+        AssertUtil.isNotNull(mode, AgentErrorEnum.INVALID_PARAMETER);
+        return mode;
     }
 }
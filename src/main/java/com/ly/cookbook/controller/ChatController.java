@@ -4,23 +4,30 @@ import cn.dev33.satoken.stp.StpUtil;
 import com.ly.cookbook.app.CookBookApp;
 import com.ly.cookbook.common.model.Result;
 import com.ly.cookbook.common.units.AssertUtil;
+import com.ly.cookbook.common.units.CancellationMetrics;
 import com.ly.cookbook.exception.emun.AgentErrorEnum;
 import com.ly.cookbook.model.SpringAiChatMemory;
 import com.ly.cookbook.service.SpringAiChatMemoryService;
 import com.ly.cookbook.service.TokenStatisticsService;
 import com.ly.cookbook.service.UserService;
+import com.ly.cookbook.sse.SseChunkStream;
+import com.ly.cookbook.sse.SseChunkWriter;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.annotation.Resource;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.ai.chat.metadata.Usage;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import reactor.core.Disposable;
 import reactor.core.publisher.Flux;
 
-import java.io.IOException;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
 
 /**
@@ -47,6 +54,9 @@ public class ChatController {
     @Resource
     private TokenStatisticsService tokenStatisticsService;
 
+    @Resource
+    private SseChunkWriter sseChunkWriter;
+
     @Operation(summary = "普通聊天", description = "无记忆的单次对话")
     @GetMapping("/simple")
     public Result<String> simpleChat(@RequestParam @Parameter(description = "用户消息") String message) {
@@ -68,38 +78,48 @@ public class ChatController {
         SseEmitter sseEmitter = new SseEmitter(180000L);
         // 使用带 ChatResponse 的方法，以便获取 Token 统计信息
         AtomicReference<Usage> usageRef = new AtomicReference<>();
-        
-        cookBookApp.chatByStreamWithResponse(message)
+
+        AtomicBoolean finished = new AtomicBoolean(false);
+        // 写出失败说明客户端已断开，由 SseEmitter 回调取消订阅
+        SseChunkStream sseStream = sseChunkWriter.open(sseEmitter, sseEmitter::completeWithError);
+        Disposable subscription = cookBookApp.chatByStreamWithResponse(message)
                 .subscribe(
                         chatResponse -> {
-                            try {
-                                // 发送内容到前端
-                                String content = chatResponse.getResult().getOutput().getText();
-                                if (content != null && !content.isEmpty()) {
-                                    sseEmitter.send(content);
-                                }
-                                
-                                // 保存最新的 Usage 信息
-                                if (chatResponse.getMetadata() != null && chatResponse.getMetadata().getUsage() != null) {
-                                    usageRef.set(chatResponse.getMetadata().getUsage());
-                                }
-                            } catch (IOException e) {
-                                sseEmitter.completeWithError(e);
+                            // 发送内容到前端，连续分片合并后写出
+                            sseStream.append(null, chatResponse.getResult().getOutput().getText());
+
+                            // 保存最新的 Usage 信息
+                            if (chatResponse.getMetadata() != null && chatResponse.getMetadata().getUsage() != null) {
+                                usageRef.set(chatResponse.getMetadata().getUsage());
                             }
                         },
-                        sseEmitter::completeWithError,
+                        e -> {
+                            finished.set(true);
+                            sseStream.completeWithError(e);
+                        },
                         () -> {
+                            finished.set(true);
                             // 流完成时统计 Token
                             Usage usage = usageRef.get();
                             if (usage != null) {
                                 tokenStatisticsService.updateUserToken(userId, usage);
                             }
-                            sseEmitter.complete();
+                            // 写出剩余分片后结束
+                            sseStream.complete();
                         }
                 );
+        cancelOnDisconnect(sseEmitter, sseStream, subscription, finished, userId, usageRef);
         return sseEmitter;
     }
 
+    @Operation(summary = "普通聊天(响应式SSE)", description = "无记忆的单次对话，直接返回事件流，客户端读取慢时反压到模型流")
+    @GetMapping(value = "/simple/stream/flux", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<String>> simpleChatByFlux(@RequestParam @Parameter(description = "用户消息") String message) {
+        StpUtil.checkLogin();
+        Long userId = StpUtil.getLoginIdAsLong();
+        return toServerSentEvents(cookBookApp.chatByStreamWithResponse(message), userId);
+    }
+
     @Operation(summary = "记忆对话", description = "带上下文记忆的对话，通过conversationId区分不同会话")
     @GetMapping("/memory")
     public Result<String> chatWithMemory(
@@ -125,38 +145,111 @@ public class ChatController {
         Long userId = StpUtil.getLoginIdAsLong();
         // 使用带 ChatResponse 的方法，以便获取 Token 统计信息
         AtomicReference<Usage> usageRef = new AtomicReference<>();
-        
-        cookBookApp.chatWithMemoryByStreamWithResponse(conversationId, message)
+
+        AtomicBoolean finished = new AtomicBoolean(false);
+        // 写出失败说明客户端已断开，由 SseEmitter 回调取消订阅
+        SseChunkStream sseStream = sseChunkWriter.open(sseEmitter, sseEmitter::completeWithError);
+        Disposable subscription = cookBookApp.chatWithMemoryByStreamWithResponse(conversationId, message)
                 .subscribe(
                         chatResponse -> {
-                            try {
-                                // 发送内容到前端
-                                String content = chatResponse.getResult().getOutput().getText();
-                                if (content != null && !content.isEmpty()) {
-                                    sseEmitter.send(content);
-                                }
-                                
-                                // 保存最新的 Usage 信息
-                                if (chatResponse.getMetadata() != null && chatResponse.getMetadata().getUsage() != null) {
-                                    usageRef.set(chatResponse.getMetadata().getUsage());
-                                }
-                            } catch (IOException e) {
-                                sseEmitter.completeWithError(e);
+                            // 发送内容到前端，连续分片合并后写出
+                            sseStream.append(null, chatResponse.getResult().getOutput().getText());
+
+                            // 保存最新的 Usage 信息
+                            if (chatResponse.getMetadata() != null && chatResponse.getMetadata().getUsage() != null) {
+                                usageRef.set(chatResponse.getMetadata().getUsage());
                             }
                         },
-                        sseEmitter::completeWithError,
+                        e -> {
+                            finished.set(true);
+                            sseStream.completeWithError(e);
+                        },
                         () -> {
+                            finished.set(true);
                             // 流完成时统计 Token
                             Usage usage = usageRef.get();
                             if (usage != null) {
                                 tokenStatisticsService.updateUserToken(userId, usage);
                             }
-                            sseEmitter.complete();
+                            // 写出剩余分片后结束
+                            sseStream.complete();
                         }
                 );
+        cancelOnDisconnect(sseEmitter, sseStream, subscription, finished, userId, usageRef);
         return sseEmitter;
     }
 
+    @Operation(summary = "记忆对话(响应式SSE)", description = "带上下文记忆的对话，直接返回事件流，客户端读取慢时反压到模型流")
+    @GetMapping(value = "/memory/stream/flux", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<String>> chatWithMemoryByFlux(
+            @RequestParam @Parameter(description = "会话ID") String conversationId,
+            @RequestParam @Parameter(description = "用户消息") String message) {
+        StpUtil.checkLogin();
+        Long userId = StpUtil.getLoginIdAsLong();
+        return toServerSentEvents(cookBookApp.chatWithMemoryByStreamWithResponse(conversationId, message), userId);
+    }
+
+    /**
+     * 模型流转换为 SSE 事件流：由 Spring MVC 订阅并逐个请求元素，上一个事件写出后才请求下一个，
+     * 写出阻塞时不再向模型流请求数据。用户 ID 在请求线程上取得，流结束或客户端断开时结算已收到的用量
+     */
+    private Flux<ServerSentEvent<String>> toServerSentEvents(Flux<ChatResponse> chatResponses, Long userId) {
+        AtomicReference<Usage> usageRef = new AtomicReference<>();
+        return chatResponses
+                .doOnNext(chatResponse -> {
+                    // 保存最新的 Usage 信息
+                    if (chatResponse.getMetadata() != null && chatResponse.getMetadata().getUsage() != null) {
+                        usageRef.set(chatResponse.getMetadata().getUsage());
+                    }
+                })
+                .mapNotNull(chatResponse -> {
+                    String content = chatResponse.getResult() != null ? chatResponse.getResult().getOutput().getText() : null;
+                    return content != null && !content.isEmpty() ? ServerSentEvent.builder(content).build() : null;
+                })
+                .doOnComplete(() -> {
+                    // 流完成时统计 Token
+                    Usage usage = usageRef.get();
+                    if (usage != null) {
+                        tokenStatisticsService.updateUserToken(userId, usage);
+                    }
+                })
+                .doOnCancel(() -> {
+                    Usage usage = usageRef.get();
+                    if (usage != null) {
+                        tokenStatisticsService.updateUserToken(userId, usage);
+                    }
+                    CancellationMetrics.record(CancellationMetrics.TYPE_CHAT, "disconnect", 0);
+                    log.info("客户端已断开，取消聊天流，用户: {}", userId);
+                });
+    }
+
+    /**
+     * 客户端断开、超时或连接异常时取消模型流订阅，停止继续消耗 token；已收到的用量照常结算
+     */
+    private void cancelOnDisconnect(SseEmitter sseEmitter, SseChunkStream sseStream, Disposable subscription,
+                                    AtomicBoolean finished, Long userId, AtomicReference<Usage> usageRef) {
+        sseEmitter.onTimeout(() -> cancelStream(sseStream, subscription, finished, userId, usageRef, "timeout"));
+        sseEmitter.onError(e -> cancelStream(sseStream, subscription, finished, userId, usageRef, "error"));
+        sseEmitter.onCompletion(() -> cancelStream(sseStream, subscription, finished, userId, usageRef, "disconnect"));
+    }
+
+    private void cancelStream(SseChunkStream sseStream, Disposable subscription, AtomicBoolean finished, Long userId,
+                              AtomicReference<Usage> usageRef, String reason) {
+        if (!finished.compareAndSet(false, true)) {
+            return;
+        }
+        // 丢弃尚未写出的分片并取消合并写出的定时任务
+        sseStream.close();
+        subscription.dispose();
+        Usage usage = usageRef.get();
+        if (usage != null) {
+            tokenStatisticsService.updateUserToken(userId, usage);
+        }
+        // 模型流中途取消无法得知剩余输出的规模，只记录取消次数
+        CancellationMetrics.record(CancellationMetrics.TYPE_CHAT, reason, 0);
+        log.info("客户端已断开（{}），取消聊天流，用户: {}", reason, userId);
+    }
+
     @Operation(summary = "清除会话记忆", description = "清除指定会话的所有历史记录")
     @DeleteMapping("/memory/{conversationId}")
     public Result<Flux<String>> clearMemory(
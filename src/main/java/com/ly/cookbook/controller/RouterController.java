@@ -0,0 +1,56 @@
+package com.ly.cookbook.controller;
+
+import cn.dev33.satoken.stp.StpUtil;
+import com.ly.cookbook.common.model.Result;
+import com.ly.cookbook.common.units.AssertUtil;
+import com.ly.cookbook.exception.emun.AgentErrorEnum;
+import com.ly.cookbook.model.vo.RoutedChatVO;
+import com.ly.cookbook.router.QueryRouter;
+import com.ly.cookbook.service.UserService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * @author 刘燚
+ * @version v1.0.0
+ * @Description 路由对话控制器：由服务端判断问题走直接对话、知识库问答还是 Agent
+ * @createDate：2026/10/19 10:05
+ * @email liuyia2022@163.com
+ */
+@Slf4j
+@RestController
+@RequestMapping("/router")
+@Tag(name = "路由对话接口", description = "按问题类型自动选择对话链路")
+public class RouterController {
+
+    @Resource
+    private UserService userService;
+
+    @Resource
+    private QueryRouter queryRouter;
+
+    @Operation(summary = "路由对话", description = "本地分类器判断问题类型后，交给直接对话、知识库问答或 Agent 中成本最低的链路回答")
+    @GetMapping("/chat")
+    public Result<RoutedChatVO> routedChat(@RequestParam @Parameter(description = "会话ID") String conversationId,
+                                           @RequestParam @Parameter(description = "用户消息") String message) {
+        AssertUtil.isNotBlank(conversationId, AgentErrorEnum.CONVERSATION_ID_EMPTY);
+        AssertUtil.isNotBlank(message, AgentErrorEnum.INPUT_EMPTY);
+        AssertUtil.isTrue(userService.checkUserToken(StpUtil.getLoginIdAsLong()), AgentErrorEnum.USER_TOKEN_EMPTY);
+        QueryRouter.RoutedAnswer routedAnswer = queryRouter.chat(conversationId, message);
+        QueryRouter.RouteDecision decision = routedAnswer.decision();
+        return Result.success(RoutedChatVO.builder()
+                .route(decision.route().getCode())
+                .classifiedRoute(decision.classified().getCode())
+                .confidence(decision.confidence())
+                .escalated(decision.escalated())
+                .answer(routedAnswer.answer())
+                .build());
+    }
+}
@@ -0,0 +1,45 @@
+package com.ly.cookbook.enums;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Agent 运行模式枚举
+ *
+ * @author 刘燚
+ * @date 2026-10-18
+ */
+@Getter
+@AllArgsConstructor
+public enum AgentModeEnum {
+
+    /**
+     * ReAct 模式：思考 -> 行动 循环，每轮一次模型调用
+     */
+    REACT("REACT", "ReAct 模式"),
+
+    /**
+     * 计划执行模式：一次规划生成工具调用依赖图，并行执行后一次总结
+     */
+    PLAN("PLAN", "计划执行模式"),
+
+    /**
+     * 协调模式：拆分为独立子任务，由子 Agent 并发执行后合并总结
+     */
+    COORDINATOR("COORDINATOR", "协调模式");
+
+    private final String code;
+    private final String desc;
+
+    /**
+     * 根据code获取枚举，忽略大小写，未匹配返回 null
+     */
+    public static AgentModeEnum getByCode(String code) {
+        for (AgentModeEnum mode : values()) {
+            if (mode.getCode().equalsIgnoreCase(code)) {
+                return mode;
+            }
+        }
+        return null;
+    }
+}
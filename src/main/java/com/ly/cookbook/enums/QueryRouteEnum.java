@@ -0,0 +1,52 @@
+package com.ly.cookbook.enums;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * 查询路由枚举，按调用成本从低到高排列
+ *
+ * @author 刘燚
+ * @date 2026-10-19
+ */
+@Getter
+@AllArgsConstructor
+public enum QueryRouteEnum {
+
+    /**
+     * 直接对话：问候、通用烹饪常识，直接调用模型，不检索知识库、不调用工具
+     */
+    DIRECT("direct", "直接对话"),
+
+    /**
+     * 知识库问答：具体菜品的做法、配料，经 RAG 检索后由模型回答
+     */
+    RAG("rag", "知识库问答"),
+
+    /**
+     * 智能体：需要联网搜索、抓取网页、下载资源、生成文件或多步规划的任务
+     */
+    AGENT("agent", "智能体");
+
+    private final String code;
+    private final String desc;
+
+    /**
+     * 根据code获取枚举，忽略大小写，未匹配返回 null
+     */
+    public static QueryRouteEnum getByCode(String code) {
+        for (QueryRouteEnum route : values()) {
+            if (route.getCode().equalsIgnoreCase(code)) {
+                return route;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 成本更高一级的路由，已是最高级时返回自身
+     */
+    public QueryRouteEnum escalate() {
+        return this == AGENT ? AGENT : values()[ordinal() + 1];
+    }
+}
@@ -0,0 +1,45 @@
+package com.ly.cookbook.enums;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Agent 最终总结模式枚举
+ *
+ * @author 刘燚
+ * @date 2026-10-18
+ */
+@Getter
+@AllArgsConstructor
+public enum SummaryModeEnum {
+
+    /**
+     * 完整模式：发送全部运行消息 + 执行过程总结（原有行为）
+     */
+    FULL("FULL", "完整模式"),
+
+    /**
+     * 摘要模式：只发送用户原始问题 + 压缩后的执行过程摘要
+     */
+    DIGEST("DIGEST", "摘要模式"),
+
+    /**
+     * 直出模式：模型最后一次思考已给出最终答案时直接输出，不再调用 LLM；没有最终答案时退化为摘要模式
+     */
+    DIRECT("DIRECT", "直出模式");
+
+    private final String code;
+    private final String desc;
+
+    /**
+     * 根据code获取枚举，忽略大小写，未匹配返回 null
+     */
+    public static SummaryModeEnum getByCode(String code) {
+        for (SummaryModeEnum mode : values()) {
+            if (mode.getCode().equalsIgnoreCase(code)) {
+                return mode;
+            }
+        }
+        return null;
+    }
+}
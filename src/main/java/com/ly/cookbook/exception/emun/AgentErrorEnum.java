@@ -40,6 +40,8 @@ public enum AgentErrorEnum implements ErrorType {
     CONVERSATION_ID_EMPTY(2204, "会话ID不能为空", "Conversation ID cannot be empty"),
     CONVERSATION_SAVE_FAILED(2205, "会话保存失败", "Failed to save conversation"),
     CONVERSATION_DELETE_FAILED(2206, "会话删除失败", "Failed to delete conversation"),
+    CHECKPOINT_NOT_FOUND(2207, "没有可恢复的运行或运行记录已过期", "No resumable run found or it has expired"),
+    CHECKPOINT_RUN_ACTIVE(2208, "运行仍在进行中，结束后才能恢复", "The run is still in progress and cannot be resumed yet"),
 
     // ========== 菜谱相关错误 (2300-2399) ==========
     RECIPE_NOT_FOUND(2300, "未找到相关菜谱", "Recipe not found"),
@@ -23,6 +23,8 @@ public enum ErrorCode implements ErrorType {
     PARAMS_ERROR(40000, "参数错误","sys.param.exception"),
     NOT_FOUND_ERROR(40400, "请求数据不存在","sys.mongo.empty"),
     FORBIDDEN_ERROR(40300, "禁止访问","sys.sec.forbind"),
+    TOO_MANY_REQUESTS(42900, "系统繁忙，请求排队超时，请稍后再试", "sys.admission.too_many_requests"),
+    USER_TOO_MANY_REQUESTS(42901, "同时进行的对话过多，请等待当前对话完成后再试", "sys.admission.user_limit"),
 
 
     SYSTEM_ERROR(50000, "系统内部异常","sys.unknown.exception"),
@@ -0,0 +1,188 @@
+package com.ly.cookbook.limiter;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * @author 刘燚
+ * @version v1.0.0
+ * @Description 自适应并发限制（梯度算法）：比较短期与长期的响应时间，
+ * 短期响应时间明显变长说明下游开始排队，按比例收缩并发上限；响应时间平稳且并发被用满时缓慢放大上限。
+ * 限流、超时或服务端错误按比例快速回退
+ * @createDate：2026/10/18 21:10
+ * @email liuyia2022@163.com
+ */
+@Slf4j
+public class AdaptiveConcurrencyLimiter {
+
+    /**
+     * 短期响应时间的平滑系数
+     */
+    private static final double SHORT_RTT_ALPHA = 0.5;
+
+    /**
+     * 长期响应时间的平滑系数（约 600 个样本），基线变化足够慢，持续变慢时上限才能保持收缩
+     */
+    private static final double LONG_RTT_ALPHA = 2.0 / 601;
+
+    /**
+     * 允许短期响应时间超出长期基线的倍数，超出才开始收缩
+     */
+    private static final double RTT_TOLERANCE = 1.5;
+
+    /**
+     * 上限调整的平滑系数
+     */
+    private static final double SMOOTHING = 0.2;
+
+    /**
+     * 出错时的回退比例
+     */
+    private static final double BACKOFF_RATIO = 0.9;
+
+    private final int minLimit;
+
+    private final int maxLimit;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final Condition permitAvailable = lock.newCondition();
+
+    private volatile double limit;
+
+    private int inFlight;
+
+    private double shortRtt;
+
+    private double longRtt;
+
+    public AdaptiveConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit) {
+        this.limit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+    }
+
+    /**
+     * 获取许可，当前并发达到上限时最多等待 maxWait
+     *
+     * @return 是否获得许可
+     */
+    public boolean acquire(Duration maxWait) throws InterruptedException {
+        long remaining = maxWait.toNanos();
+        lock.lock();
+        try {
+            while (inFlight >= getLimit()) {
+                if (remaining <= 0) {
+                    return false;
+                }
+                remaining = permitAvailable.awaitNanos(remaining);
+            }
+            inFlight++;
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 不等待地获取许可
+     */
+    public boolean tryAcquire() {
+        lock.lock();
+        try {
+            if (inFlight >= getLimit()) {
+                return false;
+            }
+            inFlight++;
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 调用成功：归还许可并用本次响应时间调整上限
+     *
+     * @param rttNanos       响应时间
+     * @param inFlightAtStart 调用开始时的并发数
+     */
+    public void onSuccess(long rttNanos, int inFlightAtStart) {
+        lock.lock();
+        try {
+            inFlight--;
+            if (shortRtt == 0) {
+                shortRtt = rttNanos;
+                longRtt = rttNanos;
+            } else {
+                shortRtt = shortRtt * (1 - SHORT_RTT_ALPHA) + rttNanos * SHORT_RTT_ALPHA;
+                longRtt = longRtt * (1 - LONG_RTT_ALPHA) + shortRtt * LONG_RTT_ALPHA;
+                // 下游长时间变慢后基线跟不上，适当拉高基线以便恢复
+                if (longRtt > shortRtt * 2) {
+                    longRtt *= 0.95;
+                }
+            }
+            // 并发没有用到上限的一半时，响应时间不能说明上限是否合适，不放大
+            if (inFlightAtStart >= limit / 2) {
+                double gradient = Math.max(0.5, Math.min(1.0, RTT_TOLERANCE * longRtt / shortRtt));
+                double newLimit = limit * gradient + Math.sqrt(limit);
+                updateLimit(limit * (1 - SMOOTHING) + newLimit * SMOOTHING);
+            }
+            permitAvailable.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 调用被限流、超时或服务端出错：归还许可并按比例回退上限
+     */
+    public void onDropped() {
+        lock.lock();
+        try {
+            inFlight--;
+            updateLimit(limit * BACKOFF_RATIO);
+            permitAvailable.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 调用被取消或因请求本身的问题失败：只归还许可，不调整上限
+     */
+    public void onIgnore() {
+        lock.lock();
+        try {
+            inFlight--;
+            permitAvailable.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void updateLimit(double newLimit) {
+        double previous = limit;
+        limit = Math.max(minLimit, Math.min(maxLimit, newLimit));
+        if ((int) previous != (int) limit) {
+            log.info("模型调用并发上限调整: {} -> {}, 短期响应时间: {} ms, 长期响应时间: {} ms", (int) previous, (int) limit,
+                    TimeUnit.NANOSECONDS.toMillis((long) shortRtt), TimeUnit.NANOSECONDS.toMillis((long) longRtt));
+        }
+    }
+
+    public int getLimit() {
+        return (int) limit;
+    }
+
+    public int getInFlight() {
+        lock.lock();
+        try {
+            return inFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package com.ly.cookbook.limiter;
+
+import com.ly.cookbook.common.units.AssertUtil;
+import com.ly.cookbook.exception.emun.ErrorCode;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @author 刘燚
+ * @version v1.0.0
+ * @Description 准入控制器：限制整个节点同时处理的聊天/Agent 请求数与单个用户同时进行的请求数。
+ * 节点容量已满时请求进入有界等待队列，队列已满或等待超时立即拒绝，避免突发流量耗尽 Tomcat 线程、数据库连接与模型调用配额
+ * @createDate：2026/10/18 20:30
+ * @email liuyia2022@163.com
+ */
+@Slf4j
+@Component
+public class AdmissionController {
+
+    private final boolean enabled;
+
+    private final int maxInFlight;
+
+    private final int maxPerUser;
+
+    private final int maxQueue;
+
+    private final Duration queueTimeout;
+
+    private final Semaphore globalPermits;
+
+    /**
+     * 正在等待准入的请求数
+     */
+    private final AtomicInteger waiting = new AtomicInteger();
+
+    /**
+     * 每个用户正在进行的请求数，归零后移除
+     */
+    private final Map<Long, AtomicInteger> userInFlight = new ConcurrentHashMap<>();
+
+    private final MeterRegistry meterRegistry;
+
+    private final Timer waitTimer;
+
+    public AdmissionController(@Value("${cookbook.admission.enabled:true}") boolean enabled,
+                               @Value("${cookbook.admission.max-in-flight:200}") int maxInFlight,
+                               @Value("${cookbook.admission.max-per-user:3}") int maxPerUser,
+                               @Value("${cookbook.admission.max-queue:100}") int maxQueue,
+                               @Value("${cookbook.admission.queue-timeout:2s}") Duration queueTimeout,
+                               MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        this.maxInFlight = maxInFlight;
+        this.maxPerUser = maxPerUser;
+        this.maxQueue = maxQueue;
+        this.queueTimeout = queueTimeout;
+        // 公平模式：排队的请求按到达顺序获得许可
+        this.globalPermits = new Semaphore(maxInFlight, true);
+        this.meterRegistry = meterRegistry;
+        Gauge.builder("cookbook.admission.in_flight", this, AdmissionController::getInFlight)
+                .description("已准入、正在处理的请求数")
+                .register(meterRegistry);
+        Gauge.builder("cookbook.admission.queue.depth", waiting, AtomicInteger::get)
+                .description("等待准入的请求数")
+                .register(meterRegistry);
+        Gauge.builder("cookbook.admission.active_users", userInFlight, Map::size)
+                .description("有请求正在处理的用户数")
+                .register(meterRegistry);
+        this.waitTimer = Timer.builder("cookbook.admission.wait")
+                .description("请求等待准入的时间")
+                .register(meterRegistry);
+        log.info("准入控制初始化完成，启用: {}, 节点并发上限: {}, 单用户并发上限: {}, 队列长度: {}, 排队超时: {}",
+                enabled, maxInFlight, maxPerUser, maxQueue, queueTimeout);
+    }
+
+    /**
+     * 申请准入，拒绝时抛出 AssertException（单用户超限 USER_TOO_MANY_REQUESTS，队列已满或排队超时 TOO_MANY_REQUESTS）
+     *
+     * @param userId 登录用户ID，未登录时为 null（不做单用户限制）
+     * @return 准入许可，请求处理完成后必须释放
+     */
+    public Permit admit(Long userId) {
+        if (!enabled) {
+            return new Permit(null, false);
+        }
+        if (userId != null) {
+            // 计数的增减都在 compute 中完成，与归零移除互不干扰
+            AtomicInteger userCount = userInFlight.compute(userId, (key, count) -> {
+                AtomicInteger current = count == null ? new AtomicInteger() : count;
+                current.incrementAndGet();
+                return current;
+            });
+            if (userCount.get() > maxPerUser) {
+                releaseUser(userId);
+                reject("user_limit", ErrorCode.USER_TOO_MANY_REQUESTS);
+            }
+        }
+        boolean acquired = false;
+        try {
+            acquired = acquireGlobal();
+        } finally {
+            if (!acquired && userId != null) {
+                releaseUser(userId);
+            }
+        }
+        return new Permit(userId, true);
+    }
+
+    /**
+     * 获取节点许可：有空闲直接获得，否则在有界队列中等待
+     */
+    private boolean acquireGlobal() {
+        if (globalPermits.tryAcquire()) {
+            return true;
+        }
+        if (waiting.incrementAndGet() > maxQueue) {
+            waiting.decrementAndGet();
+            reject("queue_full", ErrorCode.TOO_MANY_REQUESTS);
+        }
+        long start = System.nanoTime();
+        try {
+            if (!globalPermits.tryAcquire(queueTimeout.toMillis(), TimeUnit.MILLISECONDS)) {
+                reject("queue_timeout", ErrorCode.TOO_MANY_REQUESTS);
+            }
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            reject("interrupted", ErrorCode.TOO_MANY_REQUESTS);
+            return false;
+        } finally {
+            waiting.decrementAndGet();
+            waitTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private void releaseUser(Long userId) {
+        userInFlight.computeIfPresent(userId, (key, count) -> count.decrementAndGet() <= 0 ? null : count);
+    }
+
+    private void reject(String reason, ErrorCode errorCode) {
+        Counter.builder("cookbook.admission.rejected")
+                .description("被准入控制拒绝的请求数")
+                .tag("reason", reason)
+                .register(meterRegistry)
+                .increment();
+        log.warn("请求被准入控制拒绝: {}, 处理中: {}, 排队: {}", reason, getInFlight(), waiting.get());
+        AssertUtil.putMeg(errorCode);
+    }
+
+    public int getInFlight() {
+        return maxInFlight - globalPermits.availablePermits();
+    }
+
+    public int getQueueDepth() {
+        return waiting.get();
+    }
+
+    /**
+     * 准入许可，重复释放无副作用（同步结束与异步完成回调可能都会释放）
+     */
+    public class Permit {
+
+        private final Long userId;
+
+        private final AtomicBoolean held;
+
+        private Permit(Long userId, boolean held) {
+            this.userId = userId;
+            this.held = new AtomicBoolean(held);
+        }
+
+        public void release() {
+            if (held.compareAndSet(true, false)) {
+                globalPermits.release();
+                if (userId != null) {
+                    releaseUser(userId);
+                }
+            }
+        }
+    }
+}
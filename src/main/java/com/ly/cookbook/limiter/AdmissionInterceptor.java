@@ -0,0 +1,94 @@
+package com.ly.cookbook.limiter;
+
+import cn.dev33.satoken.stp.StpUtil;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ly.cookbook.common.model.Result;
+import com.ly.cookbook.exception.AssertException;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.DispatcherType;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * @author 刘燚
+ * @version v1.0.0
+ * @Description 准入拦截器：聊天与 Agent 接口进入 Controller 前申请准入，拒绝时直接返回 429。
+ * SSE 请求的许可在异步响应结束（完成、超时或出错）时释放，同步请求在请求结束时释放
+ * @createDate：2026/10/18 20:30
+ * @email liuyia2022@163.com
+ */
+@Slf4j
+public class AdmissionInterceptor implements AsyncHandlerInterceptor {
+
+    private static final String PERMIT_ATTRIBUTE = AdmissionInterceptor.class.getName() + ".permit";
+
+    private final AdmissionController admissionController;
+
+    private final ObjectMapper objectMapper;
+
+    public AdmissionInterceptor(AdmissionController admissionController, ObjectMapper objectMapper) {
+        this.admissionController = admissionController;
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) throws Exception {
+        // 异步结果回到容器时会再次分发，此时请求已经持有许可
+        if (request.getDispatcherType() != DispatcherType.REQUEST || "OPTIONS".equals(request.getMethod())) {
+            return true;
+        }
+        Object loginId = StpUtil.getLoginIdDefaultNull();
+        Long userId = loginId != null ? Long.valueOf(loginId.toString()) : null;
+        try {
+            request.setAttribute(PERMIT_ATTRIBUTE, admissionController.admit(userId));
+            return true;
+        } catch (AssertException e) {
+            response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+            response.setHeader("Retry-After", "1");
+            response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+            response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+            response.getWriter().write(objectMapper.writeValueAsString(Result.fail(e.getErrorType())));
+            return false;
+        }
+    }
+
+    @Override
+    public void afterConcurrentHandlingStarted(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        if (request.getAttribute(PERMIT_ATTRIBUTE) instanceof AdmissionController.Permit permit) {
+            request.getAsyncContext().addListener(new AsyncListener() {
+                @Override
+                public void onComplete(AsyncEvent event) {
+                    permit.release();
+                }
+
+                @Override
+                public void onTimeout(AsyncEvent event) {
+                    permit.release();
+                }
+
+                @Override
+                public void onError(AsyncEvent event) {
+                    permit.release();
+                }
+
+                @Override
+                public void onStartAsync(AsyncEvent event) {
+                }
+            });
+        }
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        if (!request.isAsyncStarted() && request.getAttribute(PERMIT_ATTRIBUTE) instanceof AdmissionController.Permit permit) {
+            permit.release();
+        }
+    }
+}
@@ -0,0 +1,218 @@
+package com.ly.cookbook.limiter;
+
+import com.ly.cookbook.enums.UserRoleEnum;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * @author 刘燚
+ * @version v1.0.0
+ * @Description 模型调用优先级调度器：限制同时进行的模型调用数，调用槽位已满时按角色优先级分配空出的槽位
+ * （管理员 > VIP 用户 > 免费用户）。等待中的请求按等待时间逐步提升优先级（老化），低优先级请求不会被饿死
+ * @createDate：2026/10/18 20:50
+ * @email liuyia2022@163.com
+ */
+@Slf4j
+@Component
+public class LlmPriorityScheduler {
+
+    private final int maxConcurrency;
+
+    /**
+     * 等待多久提升一个优先级
+     */
+    private final long agingNanos;
+
+    private final Duration maxWait;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final List<Waiter> waiters = new ArrayList<>();
+
+    private int inUse;
+
+    private final MeterRegistry meterRegistry;
+
+    private final Map<String, Timer> waitTimers = new ConcurrentHashMap<>();
+
+    public LlmPriorityScheduler(@Value("${cookbook.llm.scheduler.max-concurrency:32}") int maxConcurrency,
+                                @Value("${cookbook.llm.scheduler.aging-interval:2s}") Duration agingInterval,
+                                @Value("${cookbook.llm.scheduler.max-wait:60s}") Duration maxWait,
+                                MeterRegistry meterRegistry) {
+        this.maxConcurrency = maxConcurrency;
+        this.agingNanos = agingInterval.toNanos();
+        this.maxWait = maxWait;
+        this.meterRegistry = meterRegistry;
+        Gauge.builder("cookbook.llm.queue.depth", this, LlmPriorityScheduler::getQueueDepth)
+                .description("等待模型调用槽位的请求数")
+                .register(meterRegistry);
+        Gauge.builder("cookbook.llm.in_flight", this, LlmPriorityScheduler::getInUse)
+                .description("正在进行的模型调用数")
+                .register(meterRegistry);
+        log.info("模型调用优先级调度器初始化完成，并发上限: {}, 老化间隔: {}, 最长等待: {}", maxConcurrency, agingInterval, maxWait);
+    }
+
+    /**
+     * 申请调用槽位，槽位空闲且无人排队时立即获得
+     *
+     * @param role 用户角色编码
+     * @return 获得槽位后完成的 Future；超过最长等待时间以 TimeoutException 失败，取消后不再占用队列
+     */
+    public CompletableFuture<Slot> acquire(String role) {
+        Waiter waiter = new Waiter(role, priorityOf(role), System.nanoTime());
+        lock.lock();
+        try {
+            if (inUse < maxConcurrency && waiters.isEmpty()) {
+                inUse++;
+                recordWait(waiter);
+                waiter.future.complete(new Slot());
+                return waiter.future;
+            }
+            waiters.add(waiter);
+        } finally {
+            lock.unlock();
+        }
+        // 超时或取消时移出队列
+        waiter.future.orTimeout(maxWait.toMillis(), TimeUnit.MILLISECONDS)
+                .whenComplete((slot, e) -> {
+                    if (e != null) {
+                        remove(waiter);
+                    }
+                });
+        return waiter.future;
+    }
+
+    /**
+     * 归还槽位：有人排队时直接交给有效优先级最高的请求，否则空出槽位
+     */
+    private void release() {
+        while (true) {
+            Waiter next;
+            lock.lock();
+            try {
+                next = pollHighestPriority();
+                if (next == null) {
+                    inUse--;
+                    return;
+                }
+            } finally {
+                lock.unlock();
+            }
+            // 在锁外完成 Future，避免在锁内触发调用方的后续逻辑；请求已超时或取消时继续交给下一个
+            if (next.future.complete(new Slot())) {
+                recordWait(next);
+                return;
+            }
+        }
+    }
+
+    /**
+     * 有效优先级 = 角色优先级 + 已等待的老化间隔数，相同时先到先得
+     */
+    private Waiter pollHighestPriority() {
+        long now = System.nanoTime();
+        Waiter best = null;
+        double bestScore = Double.NEGATIVE_INFINITY;
+        for (Waiter waiter : waiters) {
+            double score = waiter.priority + (double) (now - waiter.enqueuedAt) / agingNanos;
+            if (score > bestScore) {
+                best = waiter;
+                bestScore = score;
+            }
+        }
+        if (best != null) {
+            waiters.remove(best);
+        }
+        return best;
+    }
+
+    private void remove(Waiter waiter) {
+        lock.lock();
+        try {
+            waiters.remove(waiter);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    static int priorityOf(String role) {
+        UserRoleEnum userRole = UserRoleEnum.getByCode(role);
+        if (userRole == null) {
+            return 0;
+        }
+        return switch (userRole) {
+            case ADMIN -> 2;
+            case VIP_USER -> 1;
+            case FREE_USER -> 0;
+        };
+    }
+
+    private void recordWait(Waiter waiter) {
+        String role = UserRoleEnum.getByCode(waiter.role) != null ? waiter.role : "UNKNOWN";
+        waitTimers.computeIfAbsent(role, key -> Timer.builder("cookbook.llm.queue.wait")
+                        .description("模型调用等待槽位的时间")
+                        .tag("role", key)
+                        .publishPercentiles(0.5, 0.95)
+                        .register(meterRegistry))
+                .record(System.nanoTime() - waiter.enqueuedAt, TimeUnit.NANOSECONDS);
+    }
+
+    public int getQueueDepth() {
+        lock.lock();
+        try {
+            return waiters.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getInUse() {
+        lock.lock();
+        try {
+            return inUse;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 调用槽位，调用结束后释放，重复释放无副作用
+     */
+    public class Slot {
+
+        private final AtomicBoolean held = new AtomicBoolean(true);
+
+        public void release() {
+            if (held.compareAndSet(true, false)) {
+                LlmPriorityScheduler.this.release();
+            }
+        }
+    }
+
+    private static class Waiter {
+        private final String role;
+        private final int priority;
+        private final long enqueuedAt;
+        private final CompletableFuture<Slot> future = new CompletableFuture<>();
+
+        private Waiter(String role, int priority, long enqueuedAt) {
+            this.role = role;
+            this.priority = priority;
+            this.enqueuedAt = enqueuedAt;
+        }
+    }
+}
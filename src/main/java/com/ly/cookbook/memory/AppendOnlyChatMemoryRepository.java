@@ -0,0 +1,314 @@
+package com.ly.cookbook.memory;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.memory.ChatMemoryRepository;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.MessageType;
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.Assert;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @author 刘燚
+ * @version v1.0.0
+ * @Description 追加写的聊天记忆仓库，表结构与 JdbcChatMemoryRepository 相同（spring_ai_chat_memory）。
+ * 新消息批量追加，不再每次删除并重写整个窗口；读取只取最近的若干条，由 (conversation_id, timestamp) 索引倒序扫描完成。
+ * 超出保留条数的旧消息由后台任务按会话清理，只处理上次清理后有写入的会话
+ * @createDate：2026/10/19 11:00
+ * @email liuyia2022@163.com
+ */
+@Slf4j
+public class AppendOnlyChatMemoryRepository implements ChatMemoryRepository {
+
+    private static final String INSERT_SQL = "INSERT INTO spring_ai_chat_memory (conversation_id, content, type, timestamp) VALUES ";
+
+    /**
+     * 从预写日志恢复时使用：同一会话、时间戳与类型的消息已存在（崩溃前已落库）则跳过
+     */
+    private static final String INSERT_IF_ABSENT_SQL = "INSERT INTO spring_ai_chat_memory (conversation_id, content, type, timestamp) "
+            + "SELECT ?, ?, ?, ? WHERE NOT EXISTS (SELECT 1 FROM spring_ai_chat_memory "
+            + "WHERE conversation_id = ? AND timestamp = ? AND type = ?)";
+
+    /**
+     * 单条多行 INSERT 的最大行数，每行 4 个参数，远低于 Postgres 单条语句 65535 个参数的上限
+     */
+    private static final int MAX_ROWS_PER_INSERT = 1000;
+
+    private static final String SELECT_ALL_SQL =
+            "SELECT content, type FROM spring_ai_chat_memory WHERE conversation_id = ? ORDER BY timestamp";
+
+    private static final String SELECT_LATEST_SQL =
+            "SELECT content, type, timestamp FROM (SELECT content, type, timestamp FROM spring_ai_chat_memory "
+                    + "WHERE conversation_id = ? ORDER BY timestamp DESC LIMIT ?) latest ORDER BY timestamp";
+
+    private static final String SELECT_AFTER_SQL =
+            "SELECT content, type, timestamp FROM spring_ai_chat_memory WHERE conversation_id = ? AND timestamp > ? ORDER BY timestamp";
+
+    private static final String SELECT_CONVERSATION_IDS_SQL = "SELECT DISTINCT conversation_id FROM spring_ai_chat_memory";
+
+    private static final String DELETE_SQL = "DELETE FROM spring_ai_chat_memory WHERE conversation_id = ?";
+
+    /**
+     * 删除比第 retain 新的消息更早的消息，消息不足 retain 条时子查询为空，不删除
+     */
+    private static final String TRIM_SQL = "DELETE FROM spring_ai_chat_memory WHERE conversation_id = ? AND timestamp < "
+            + "(SELECT timestamp FROM spring_ai_chat_memory WHERE conversation_id = ? ORDER BY timestamp DESC OFFSET ? LIMIT 1)";
+
+    private static final RowMapper<Message> MESSAGE_ROW_MAPPER = (rs, rowNum) -> toMessage(rs.getString("content"), rs.getString("type"));
+
+    private static final RowMapper<Row> ROW_MAPPER = (rs, rowNum) -> new Row(null, rs.getString("type"), rs.getString("content"),
+            rs.getTimestamp("timestamp").getTime());
+
+    /**
+     * 进程内单调递增的毫秒时间戳：消息顺序依赖 timestamp，同一毫秒内的多条消息依次加 1 毫秒
+     */
+    private static final AtomicLong LAST_TIMESTAMP = new AtomicLong();
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final TransactionTemplate transactionTemplate;
+
+    /**
+     * 每个会话保留的消息条数，不小于记忆窗口
+     */
+    private final int retainMessages;
+
+    /**
+     * 上次清理后有追加写入的会话
+     */
+    private final Set<String> pendingTrim = ConcurrentHashMap.newKeySet();
+
+    public AppendOnlyChatMemoryRepository(JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate, int retainMessages) {
+        Assert.isTrue(retainMessages > 0, "retainMessages must be greater than 0");
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.retainMessages = retainMessages;
+    }
+
+    /**
+     * 批量追加消息，不读取、不删除已有消息
+     */
+    public void append(String conversationId, List<Message> messages) {
+        Assert.hasText(conversationId, "conversationId cannot be null or empty");
+        if (messages == null || messages.isEmpty()) {
+            return;
+        }
+        insertRows(newRows(conversationId, messages));
+    }
+
+    /**
+     * 为待写入的消息分配时间戳，时间戳决定消息在会话中的顺序，与实际落库的先后无关
+     */
+    public List<Row> newRows(String conversationId, List<Message> messages) {
+        Assert.hasText(conversationId, "conversationId cannot be null or empty");
+        long first = nextTimestamps(messages.size());
+        List<Row> rows = new ArrayList<>(messages.size());
+        for (int i = 0; i < messages.size(); i++) {
+            Message message = messages.get(i);
+            rows.add(new Row(conversationId, message.getMessageType().name(), message.getText(), first + i));
+        }
+        return rows;
+    }
+
+    /**
+     * 以多行 INSERT 写入，可以包含多个会话的消息
+     */
+    public void insertRows(List<Row> rows) {
+        for (int from = 0; from < rows.size(); from += MAX_ROWS_PER_INSERT) {
+            List<Row> chunk = rows.subList(from, Math.min(rows.size(), from + MAX_ROWS_PER_INSERT));
+            StringBuilder sql = new StringBuilder(INSERT_SQL);
+            Object[] args = new Object[chunk.size() * 4];
+            for (int i = 0; i < chunk.size(); i++) {
+                Row row = chunk.get(i);
+                sql.append(i == 0 ? "(?, ?, ?, ?)" : ", (?, ?, ?, ?)");
+                args[i * 4] = row.conversationId();
+                args[i * 4 + 1] = row.content();
+                args[i * 4 + 2] = row.type();
+                args[i * 4 + 3] = new Timestamp(row.timestamp());
+            }
+            jdbcTemplate.update(sql.toString(), args);
+        }
+        rows.forEach(row -> pendingTrim.add(row.conversationId()));
+    }
+
+    /**
+     * 写入已存在则跳过的消息，用于崩溃后从预写日志恢复（日志中的消息可能已经落库）
+     *
+     * @return 实际写入的条数
+     */
+    public int insertRowsIfAbsent(List<Row> rows) {
+        int[] counts = jdbcTemplate.batchUpdate(INSERT_IF_ABSENT_SQL, new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement ps, int i) throws SQLException {
+                Row row = rows.get(i);
+                Timestamp timestamp = new Timestamp(row.timestamp());
+                ps.setString(1, row.conversationId());
+                ps.setString(2, row.content());
+                ps.setString(3, row.type());
+                ps.setTimestamp(4, timestamp);
+                ps.setString(5, row.conversationId());
+                ps.setTimestamp(6, timestamp);
+                ps.setString(7, row.type());
+            }
+
+            @Override
+            public int getBatchSize() {
+                return rows.size();
+            }
+        });
+        rows.forEach(row -> pendingTrim.add(row.conversationId()));
+        int inserted = 0;
+        for (int count : counts) {
+            inserted += Math.max(count, 0);
+        }
+        return inserted;
+    }
+
+    /**
+     * 按时间顺序返回会话最近的 limit 条消息
+     */
+    public List<Message> findLatest(String conversationId, int limit) {
+        Assert.hasText(conversationId, "conversationId cannot be null or empty");
+        return jdbcTemplate.query(SELECT_LATEST_SQL, MESSAGE_ROW_MAPPER, conversationId, limit);
+    }
+
+    /**
+     * 按时间顺序返回会话最近的 limit 条消息（带时间戳），返回的行不填充会话ID
+     */
+    public List<Row> findLatestRows(String conversationId, int limit) {
+        Assert.hasText(conversationId, "conversationId cannot be null or empty");
+        return jdbcTemplate.query(SELECT_LATEST_SQL, ROW_MAPPER, conversationId, limit);
+    }
+
+    /**
+     * 按时间顺序返回会话中时间戳晚于 after 且尚未被清理的消息，返回的行不填充会话ID
+     */
+    public List<Row> findRowsAfter(String conversationId, long after) {
+        Assert.hasText(conversationId, "conversationId cannot be null or empty");
+        return jdbcTemplate.query(SELECT_AFTER_SQL, ROW_MAPPER, conversationId, new Timestamp(after));
+    }
+
+    @Override
+    public List<String> findConversationIds() {
+        return jdbcTemplate.queryForList(SELECT_CONVERSATION_IDS_SQL, String.class);
+    }
+
+    @Override
+    public List<Message> findByConversationId(String conversationId) {
+        Assert.hasText(conversationId, "conversationId cannot be null or empty");
+        return jdbcTemplate.query(SELECT_ALL_SQL, MESSAGE_ROW_MAPPER, conversationId);
+    }
+
+    /**
+     * 按接口约定整体替换会话的消息，追加写场景应使用 {@link #append(String, List)}
+     */
+    @Override
+    public void saveAll(String conversationId, List<Message> messages) {
+        Assert.hasText(conversationId, "conversationId cannot be null or empty");
+        transactionTemplate.executeWithoutResult(status -> {
+            jdbcTemplate.update(DELETE_SQL, conversationId);
+            if (messages != null && !messages.isEmpty()) {
+                insertRows(newRows(conversationId, messages));
+            }
+        });
+    }
+
+    @Override
+    public void deleteByConversationId(String conversationId) {
+        Assert.hasText(conversationId, "conversationId cannot be null or empty");
+        jdbcTemplate.update(DELETE_SQL, conversationId);
+        pendingTrim.remove(conversationId);
+    }
+
+    /**
+     * 清理有写入的会话中超出保留条数的旧消息
+     *
+     * @param batchSize 每批清理的会话数
+     * @return 删除的消息条数
+     */
+    public int trim(int batchSize) {
+        int deleted = 0;
+        List<String> batch = new ArrayList<>(batchSize);
+        Iterator<String> iterator = pendingTrim.iterator();
+        while (iterator.hasNext()) {
+            batch.add(iterator.next());
+            // 先移除再删除：清理期间的新写入会重新登记
+            iterator.remove();
+            if (batch.size() >= batchSize) {
+                deleted += trimBatch(batch);
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            deleted += trimBatch(batch);
+        }
+        if (deleted > 0) {
+            log.info("聊天记忆清理完成，删除旧消息: {} 条", deleted);
+        }
+        return deleted;
+    }
+
+    private int trimBatch(List<String> conversationIds) {
+        int[][] counts = jdbcTemplate.batchUpdate(TRIM_SQL, conversationIds, conversationIds.size(), (ps, conversationId) -> {
+            ps.setString(1, conversationId);
+            ps.setString(2, conversationId);
+            ps.setInt(3, retainMessages - 1);
+        });
+        int deleted = 0;
+        for (int[] batchCounts : counts) {
+            for (int count : batchCounts) {
+                // 驱动未返回行数时为 SUCCESS_NO_INFO（负数）
+                deleted += Math.max(count, 0);
+            }
+        }
+        return deleted;
+    }
+
+    /**
+     * 为一批消息分配连续且单调递增的毫秒时间戳，返回第一条的时间戳
+     */
+    static long nextTimestamps(int count) {
+        long now = System.currentTimeMillis();
+        long last = LAST_TIMESTAMP.accumulateAndGet(now, (previous, current) -> Math.max(previous, current - 1) + count);
+        return last - count + 1;
+    }
+
+    static Message toMessage(String content, String type) {
+        return switch (MessageType.valueOf(type)) {
+            case ASSISTANT -> new AssistantMessage(content);
+            case USER -> new UserMessage(content);
+            case SYSTEM -> new SystemMessage(content);
+            // 工具调用结果只保存了文本，与 JdbcChatMemoryRepository 的读取方式一致
+            case TOOL -> new ToolResponseMessage(Collections.emptyList());
+        };
+    }
+
+    /**
+     * 一条待写入或已读出的消息
+     *
+     * @param timestamp 毫秒时间戳，决定消息在会话中的顺序
+     */
+    public record Row(String conversationId, String type, String content, long timestamp) {
+
+        public Message toMessage() {
+            return AppendOnlyChatMemoryRepository.toMessage(content, type);
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package com.ly.cookbook.memory;
+
+import org.springframework.ai.chat.memory.ChatMemory;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.util.Assert;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * @author 刘燚
+ * @version v1.0.0
+ * @Description 基于追加写仓库的滑动窗口聊天记忆：add 只追加新消息，get 只读取最近 maxMessages 条。
+ * 与 MessageWindowChatMemory 相比每次写入不再先读出整个会话再删除重写，
+ * 窗口内不单独保留更早的系统消息（本项目的系统提示词每次请求单独传入，不写入记忆）。
+ * 配置了异步写入时 add 只入队，get 把本节点尚未落库的消息与数据库中的最近消息合并
+ * @createDate：2026/10/19 11:00
+ * @email liuyia2022@163.com
+ */
+public class AppendOnlyWindowChatMemory implements ChatMemory {
+
+    private final AppendOnlyChatMemoryRepository repository;
+
+    private final int maxMessages;
+
+    /**
+     * 异步批量写入，未开启时为 null
+     */
+    private final ChatMemoryWriteBehind writeBehind;
+
+    public AppendOnlyWindowChatMemory(AppendOnlyChatMemoryRepository repository, int maxMessages) {
+        this(repository, maxMessages, null);
+    }
+
+    public AppendOnlyWindowChatMemory(AppendOnlyChatMemoryRepository repository, int maxMessages, ChatMemoryWriteBehind writeBehind) {
+        Assert.isTrue(maxMessages > 0, "maxMessages must be greater than 0");
+        this.repository = repository;
+        this.maxMessages = maxMessages;
+        this.writeBehind = writeBehind;
+    }
+
+    @Override
+    public void add(String conversationId, List<Message> messages) {
+        addAsync(conversationId, messages);
+    }
+
+    /**
+     * 写入消息，返回消息全部落库时完成的 future；未开启异步写入时同步落库并返回已完成的 future
+     */
+    public CompletableFuture<Void> addAsync(String conversationId, List<Message> messages) {
+        Assert.notNull(messages, "messages cannot be null");
+        Assert.noNullElements(messages, "messages cannot contain null elements");
+        if (writeBehind != null) {
+            return writeBehind.add(conversationId, messages);
+        }
+        repository.append(conversationId, messages);
+        return CompletableFuture.completedFuture(null);
+    }
+
+    @Override
+    public List<Message> get(String conversationId) {
+        if (writeBehind == null) {
+            return repository.findLatest(conversationId, maxMessages);
+        }
+        // 先取待写消息再读库：读库期间刚落库的消息两边都可能出现，按时间戳和内容去重，但不会两边都缺失
+        List<AppendOnlyChatMemoryRepository.Row> pendingRows = writeBehind.pendingRows(conversationId);
+        List<AppendOnlyChatMemoryRepository.Row> storedRows = repository.findLatestRows(conversationId, maxMessages);
+        if (pendingRows.isEmpty()) {
+            return storedRows.stream().map(AppendOnlyChatMemoryRepository.Row::toMessage).toList();
+        }
+        Set<WindowKey> merged = new LinkedHashSet<>();
+        storedRows.forEach(row -> merged.add(new WindowKey(row)));
+        pendingRows.forEach(row -> merged.add(new WindowKey(row)));
+        List<WindowKey> window = new ArrayList<>(merged);
+        window.sort(Comparator.comparingLong(key -> key.row().timestamp()));
+        return window.subList(Math.max(0, window.size() - maxMessages), window.size()).stream()
+                .map(key -> key.row().toMessage())
+                .toList();
+    }
+
+    @Override
+    public void clear(String conversationId) {
+        if (writeBehind != null) {
+            writeBehind.clear(conversationId);
+        } else {
+            repository.deleteByConversationId(conversationId);
+        }
+    }
+
+    /**
+     * 去重键：数据库中读出的消息不带会话ID，只比较时间戳、类型和内容
+     */
+    private record WindowKey(AppendOnlyChatMemoryRepository.Row row) {
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof WindowKey key && row.timestamp() == key.row.timestamp()
+                    && Objects.equals(row.type(), key.row.type()) && Objects.equals(row.content(), key.row.content());
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(row.timestamp(), row.type(), row.content());
+        }
+    }
+}
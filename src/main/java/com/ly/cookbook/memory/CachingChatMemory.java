@@ -0,0 +1,387 @@
+package com.ly.cookbook.memory;
+
+import cn.hutool.cache.CacheUtil;
+import cn.hutool.cache.impl.LRUCache;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ly.cookbook.common.constant.RedisConstant;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.memory.ChatMemory;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @author 刘燚
+ * @version v1.0.0
+ * @Description 两级缓存的聊天记忆：本地堆内 LRU 为一级缓存，Redis 列表为二级缓存（所有节点共享），都未命中才读数据库。
+ * 写入先落库再追加到 Redis 窗口（写穿），并通过 Redis 发布订阅通知其他节点丢弃本地窗口，clear 时两级缓存一并失效。
+ * Redis 窗口只在没有并发写入时由读请求回填：写入前后各登记一次（进行中的写入数与版本号），
+ * 回填时版本号变化或仍有进行中的写入则放弃回填，避免把写入前读出的旧窗口写进缓存。
+ * 被包装的记忆异步落库时，进行中写入的登记保留到落库完成为止
+ * @createDate：2026/10/19 14:00
+ * @email liuyia2022@163.com
+ */
+@Slf4j
+public class CachingChatMemory implements ChatMemory {
+
+    /**
+     * Redis 窗口列表的首个元素：区分空窗口与未缓存，消息序列化为 JSON 对象，不会与其相同
+     */
+    private static final String WINDOW_HEADER = "#";
+
+    /**
+     * 进行中写入登记的过期秒数，远大于一次落库的耗时
+     */
+    private static final long PENDING_TTL_SECONDS = 60;
+
+    /**
+     * 登记一次进行中的写入，过期时间防止写入节点宕机后该会话永远无法回填
+     */
+    private static final RedisScript<Long> BEGIN_WRITE_SCRIPT = new DefaultRedisScript<>("""
+            redis.call('INCR', KEYS[1])
+            redis.call('EXPIRE', KEYS[1], ARGV[1])
+            return 1
+            """, Long.class);
+
+    /**
+     * 结束写入：版本号加一，已缓存的窗口追加新消息并截断到窗口大小（保留首个标记元素），落库失败时不传消息。
+     * 异步落库时不撤销进行中写入的登记，等落库完成后再由 RELEASE_WRITE_SCRIPT 撤销
+     * KEYS: pending, version, window；ARGV: 窗口大小, 过期秒数, 是否撤销登记（1/0）, 消息...
+     */
+    private static final RedisScript<Long> END_WRITE_SCRIPT = new DefaultRedisScript<>("""
+            if ARGV[3] == '1' and redis.call('DECR', KEYS[1]) <= 0 then
+                redis.call('DEL', KEYS[1])
+            end
+            redis.call('INCR', KEYS[2])
+            redis.call('EXPIRE', KEYS[2], ARGV[2])
+            if #ARGV < 4 or redis.call('EXISTS', KEYS[3]) == 0 then
+                return 0
+            end
+            redis.call('RPUSH', KEYS[3], unpack(ARGV, 4))
+            local header = redis.call('LPOP', KEYS[3])
+            redis.call('LTRIM', KEYS[3], -tonumber(ARGV[1]), -1)
+            redis.call('LPUSH', KEYS[3], header)
+            redis.call('EXPIRE', KEYS[3], ARGV[2])
+            return 1
+            """, Long.class);
+
+    /**
+     * 异步落库完成：撤销进行中写入的登记并使版本号变化，落库期间开始的回填随之放弃
+     * KEYS: pending, version；ARGV: 过期秒数
+     */
+    private static final RedisScript<Long> RELEASE_WRITE_SCRIPT = new DefaultRedisScript<>("""
+            if redis.call('DECR', KEYS[1]) <= 0 then
+                redis.call('DEL', KEYS[1])
+            end
+            redis.call('INCR', KEYS[2])
+            redis.call('EXPIRE', KEYS[2], ARGV[1])
+            return 1
+            """, Long.class);
+
+    /**
+     * 回填窗口：版本号与读库前一致且没有进行中的写入时才写入
+     * KEYS: pending, version, window；ARGV: 读库前的版本号（不存在为空串）, 过期秒数, 标记元素, 消息...
+     */
+    private static final RedisScript<Long> POPULATE_SCRIPT = new DefaultRedisScript<>("""
+            local version = redis.call('GET', KEYS[2]) or ''
+            if version ~= ARGV[1] or redis.call('EXISTS', KEYS[1]) == 1 then
+                return 0
+            end
+            redis.call('DEL', KEYS[3])
+            redis.call('RPUSH', KEYS[3], unpack(ARGV, 3))
+            redis.call('EXPIRE', KEYS[3], ARGV[2])
+            return 1
+            """, Long.class);
+
+    /**
+     * 清空会话：删除窗口并使版本号变化，进行中的回填随之放弃
+     */
+    private static final RedisScript<Long> CLEAR_SCRIPT = new DefaultRedisScript<>("""
+            redis.call('DEL', KEYS[2])
+            redis.call('INCR', KEYS[1])
+            redis.call('EXPIRE', KEYS[1], ARGV[1])
+            return 1
+            """, Long.class);
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private final ChatMemory delegate;
+
+    private final int maxMessages;
+
+    private final Duration ttl;
+
+    private final StringRedisTemplate redisTemplate;
+
+    private final LRUCache<String, List<Message>> localCache;
+
+    /**
+     * 本节点标识，收到自己发出的失效通知时忽略
+     */
+    private final String nodeId = UUID.randomUUID().toString();
+
+    /**
+     * 本地缓存纪元：任何写入或失效都会递增，读取期间纪元变化则不回填本地缓存
+     */
+    private final AtomicLong localEpoch = new AtomicLong();
+
+    private final LongAdder localHits = new LongAdder();
+
+    private final LongAdder redisHits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    private final Counter invalidationsReceived;
+
+    public CachingChatMemory(ChatMemory delegate, int maxMessages, int localMaxSize, Duration localTtl, Duration ttl,
+                             StringRedisTemplate redisTemplate, RedisMessageListenerContainer listenerContainer,
+                             MeterRegistry meterRegistry) {
+        this.delegate = delegate;
+        this.maxMessages = maxMessages;
+        this.ttl = ttl;
+        this.redisTemplate = redisTemplate;
+        this.localCache = CacheUtil.newLRUCache(localMaxSize, localTtl.toMillis());
+        listenerContainer.addMessageListener((message, pattern) -> onInvalidation(new String(message.getBody(), StandardCharsets.UTF_8)),
+                new ChannelTopic(RedisConstant.CHAT_MEMORY_INVALIDATE_CHANNEL));
+
+        FunctionCounter.builder("cookbook.chat.memory.cache", localHits, LongAdder::sum)
+                .description("对话记忆缓存访问次数")
+                .tag("result", "local_hit")
+                .register(meterRegistry);
+        FunctionCounter.builder("cookbook.chat.memory.cache", redisHits, LongAdder::sum)
+                .description("对话记忆缓存访问次数")
+                .tag("result", "redis_hit")
+                .register(meterRegistry);
+        FunctionCounter.builder("cookbook.chat.memory.cache", misses, LongAdder::sum)
+                .description("对话记忆缓存访问次数")
+                .tag("result", "miss")
+                .register(meterRegistry);
+        FunctionCounter.builder("cookbook.chat.memory.db.reads.saved", this, memory -> memory.localHits.sum() + memory.redisHits.sum())
+                .description("由缓存命中省去的数据库读取次数")
+                .register(meterRegistry);
+        Gauge.builder("cookbook.chat.memory.cache.hit.ratio", this, CachingChatMemory::hitRatio)
+                .description("对话记忆缓存命中率（启动以来）")
+                .register(meterRegistry);
+        this.invalidationsReceived = Counter.builder("cookbook.chat.memory.cache.invalidations")
+                .description("收到其他节点的本地缓存失效通知次数")
+                .register(meterRegistry);
+        log.info("对话记忆两级缓存初始化完成，本地容量: {}, 本地过期时间: {}, Redis 过期时间: {}", localMaxSize, localTtl, ttl);
+    }
+
+    @Override
+    public void add(String conversationId, List<Message> messages) {
+        boolean begun = redisScript(BEGIN_WRITE_SCRIPT, List.of(pendingKey(conversationId)), String.valueOf(PENDING_TTL_SECONDS)) != null;
+        CompletableFuture<Void> persisted = null;
+        try {
+            persisted = delegate instanceof AppendOnlyWindowChatMemory appendOnly
+                    ? appendOnly.addAsync(conversationId, messages)
+                    : addSync(conversationId, messages);
+        } finally {
+            invalidateLocal(conversationId);
+            // 已落库时在此撤销登记；异步落库时登记保留到落库完成，其他节点在此之前不会用数据库中的旧窗口回填
+            boolean release = persisted == null || persisted.isDone();
+            List<String> args = new ArrayList<>(messages.size() + 3);
+            args.add(String.valueOf(maxMessages));
+            args.add(String.valueOf(ttl.toSeconds()));
+            args.add(release ? "1" : "0");
+            if (persisted != null) {
+                messages.forEach(message -> args.add(serialize(message)));
+            }
+            if (!begun || redisScript(END_WRITE_SCRIPT, keys(conversationId), args.toArray(String[]::new)) == null) {
+                // 写穿失败：删除 Redis 窗口，宁可多读一次数据库也不读到旧窗口
+                deleteRemote(conversationId);
+            } else if (!release) {
+                persisted.whenComplete((result, error) -> redisScript(RELEASE_WRITE_SCRIPT,
+                        List.of(pendingKey(conversationId), versionKey(conversationId)), String.valueOf(ttl.toSeconds())));
+            }
+            publishInvalidation(conversationId);
+        }
+    }
+
+    private CompletableFuture<Void> addSync(String conversationId, List<Message> messages) {
+        delegate.add(conversationId, messages);
+        return CompletableFuture.completedFuture(null);
+    }
+
+    @Override
+    public List<Message> get(String conversationId) {
+        List<Message> local = localCache.get(conversationId);
+        if (local != null) {
+            localHits.increment();
+            return new ArrayList<>(local);
+        }
+        long epoch = localEpoch.get();
+        List<Message> window = getRemote(conversationId);
+        if (window != null) {
+            redisHits.increment();
+        } else {
+            misses.increment();
+            String version = remoteVersion(conversationId);
+            window = delegate.get(conversationId);
+            if (version != null) {
+                List<String> args = new ArrayList<>(window.size() + 3);
+                args.add(version);
+                args.add(String.valueOf(ttl.toSeconds()));
+                args.add(WINDOW_HEADER);
+                window.forEach(message -> args.add(serialize(message)));
+                redisScript(POPULATE_SCRIPT, keys(conversationId), args.toArray(String[]::new));
+            }
+        }
+        putLocal(conversationId, window, epoch);
+        return new ArrayList<>(window);
+    }
+
+    @Override
+    public void clear(String conversationId) {
+        delegate.clear(conversationId);
+        invalidateLocal(conversationId);
+        if (redisScript(CLEAR_SCRIPT, List.of(versionKey(conversationId), windowKey(conversationId)),
+                String.valueOf(ttl.toSeconds())) == null) {
+            deleteRemote(conversationId);
+        }
+        publishInvalidation(conversationId);
+    }
+
+    double hitRatio() {
+        long hits = localHits.sum() + redisHits.sum();
+        long total = hits + misses.sum();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    /**
+     * 收到失效通知：丢弃本地窗口，自己发出的通知忽略（本节点写入时已经丢弃）
+     */
+    void onInvalidation(String payload) {
+        int separator = payload.indexOf('\n');
+        if (separator < 0 || nodeId.equals(payload.substring(0, separator))) {
+            return;
+        }
+        invalidationsReceived.increment();
+        invalidateLocal(payload.substring(separator + 1));
+    }
+
+    private void invalidateLocal(String conversationId) {
+        localEpoch.incrementAndGet();
+        localCache.remove(conversationId);
+    }
+
+    private void putLocal(String conversationId, List<Message> window, long epoch) {
+        // 读取期间有写入或失效通知时不回填，避免覆盖为旧窗口
+        if (localEpoch.get() == epoch) {
+            localCache.put(conversationId, Collections.unmodifiableList(new ArrayList<>(window)));
+        }
+    }
+
+    private List<Message> getRemote(String conversationId) {
+        try {
+            List<String> values = redisTemplate.opsForList().range(windowKey(conversationId), 0, -1);
+            if (values == null || values.isEmpty() || !WINDOW_HEADER.equals(values.get(0))) {
+                return null;
+            }
+            List<Message> window = new ArrayList<>(values.size() - 1);
+            for (int i = 1; i < values.size(); i++) {
+                window.add(deserialize(values.get(i)));
+            }
+            return window;
+        } catch (Exception e) {
+            // Redis 不可用或内容损坏时读数据库
+            log.warn("读取对话记忆缓存失败: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 读库前的版本号，不存在时为空串；Redis 不可用时返回 null，不回填
+     */
+    private String remoteVersion(String conversationId) {
+        try {
+            String version = redisTemplate.opsForValue().get(versionKey(conversationId));
+            return version != null ? version : "";
+        } catch (Exception e) {
+            log.warn("读取对话记忆缓存版本失败: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    private void deleteRemote(String conversationId) {
+        try {
+            redisTemplate.delete(windowKey(conversationId));
+        } catch (Exception e) {
+            log.warn("删除对话记忆缓存失败，会话: {}, 原因: {}", conversationId, e.getMessage());
+        }
+    }
+
+    private void publishInvalidation(String conversationId) {
+        try {
+            redisTemplate.convertAndSend(RedisConstant.CHAT_MEMORY_INVALIDATE_CHANNEL, nodeId + "\n" + conversationId);
+        } catch (Exception e) {
+            // 其他节点的本地窗口最迟在本地过期时间后失效
+            log.warn("发布对话记忆失效通知失败: {}", e.getMessage());
+        }
+    }
+
+    private Long redisScript(RedisScript<Long> script, List<String> keys, String... args) {
+        try {
+            return redisTemplate.execute(script, keys, (Object[]) args);
+        } catch (Exception e) {
+            log.warn("执行对话记忆缓存脚本失败: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    private static List<String> keys(String conversationId) {
+        return List.of(pendingKey(conversationId), versionKey(conversationId), windowKey(conversationId));
+    }
+
+    /**
+     * 同一会话的 Key 使用相同的 hash tag，集群模式下落在同一槽位，脚本可以同时操作
+     */
+    private static String windowKey(String conversationId) {
+        return RedisConstant.CHAT_MEMORY_WINDOW + "{" + conversationId + "}";
+    }
+
+    private static String versionKey(String conversationId) {
+        return RedisConstant.CHAT_MEMORY_VERSION + "{" + conversationId + "}";
+    }
+
+    private static String pendingKey(String conversationId) {
+        return RedisConstant.CHAT_MEMORY_PENDING + "{" + conversationId + "}";
+    }
+
+    /**
+     * 与数据库一致，只保存消息类型与文本
+     */
+    static String serialize(Message message) {
+        try {
+            return OBJECT_MAPPER.writeValueAsString(new StoredMessage(message.getMessageType().name(), message.getText()));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("序列化对话记忆失败", e);
+        }
+    }
+
+    static Message deserialize(String value) throws JsonProcessingException {
+        StoredMessage stored = OBJECT_MAPPER.readValue(value, StoredMessage.class);
+        return AppendOnlyChatMemoryRepository.toMessage(stored.text(), stored.type());
+    }
+
+    record StoredMessage(String type, String text) {
+    }
+}
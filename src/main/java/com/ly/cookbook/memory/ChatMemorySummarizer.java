@@ -0,0 +1,140 @@
+package com.ly.cookbook.memory;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.messages.MessageType;
+import org.springframework.util.StringUtils;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author 刘燚
+ * @version v1.0.0
+ * @Description 对话记忆滚动摘要任务：把已经滑出最近窗口、尚未压缩的消息与旧摘要一起交给模型，生成新的摘要。
+ * 每次只处理上次摘要之后的消息，摘要长度有上限，会话再长提示词也不会随之增长。
+ * 由 MQ 消息 {@link #SUMMARIZE_MESSAGE_TYPE} 触发，在消费线程中执行，不占用请求线程；失败只记录日志，下次触发时重试
+ * @createDate：2026/10/19 18:00
+ * @email liuyia2022@163.com
+ */
+@Slf4j
+public class ChatMemorySummarizer {
+
+    /**
+     * 触发摘要任务的 MQ 消息类型，消息数据为会话ID
+     */
+    public static final String SUMMARIZE_MESSAGE_TYPE = "chat.memory.summarize";
+
+    private static final String SYSTEM_PROMPT = """
+            你负责压缩一段烹饪助手与用户的对话历史。请把“已有摘要”和“新增对话”合并为一份新的摘要，要求：
+            1、保留用户的口味偏好、忌口与过敏、厨具条件、人数与份量、正在做的菜和进行到的步骤、已经确认的结论；
+            2、省略寒暄和重复内容，不要编造对话中没有的信息；
+            3、使用简洁的中文陈述句，不超过 %d 字，直接输出摘要正文。
+            """;
+
+    private final AppendOnlyChatMemoryRepository repository;
+
+    private final ChatMemorySummaryRepository summaryRepository;
+
+    private final ChatClient chatClient;
+
+    /**
+     * 保留在最近窗口中、不参与压缩的消息条数
+     */
+    private final int keepRecent;
+
+    /**
+     * 可压缩的消息少于该条数时跳过本次任务
+     */
+    private final int minMessages;
+
+    private final int maxChars;
+
+    private final MeterRegistry meterRegistry;
+
+    private final Timer latency;
+
+    public ChatMemorySummarizer(AppendOnlyChatMemoryRepository repository, ChatMemorySummaryRepository summaryRepository,
+                                ChatClient chatClient, int keepRecent, int minMessages, int maxChars, MeterRegistry meterRegistry) {
+        this.repository = repository;
+        this.summaryRepository = summaryRepository;
+        this.chatClient = chatClient;
+        this.keepRecent = keepRecent;
+        this.minMessages = Math.max(1, minMessages);
+        this.maxChars = maxChars;
+        this.meterRegistry = meterRegistry;
+        this.latency = Timer.builder("cookbook.chat.memory.summary.latency")
+                .description("生成一次对话记忆摘要的耗时")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 把滑出窗口的消息压缩进会话摘要
+     *
+     * @return 是否写入了新摘要
+     */
+    public boolean summarize(String conversationId) {
+        try {
+            Optional<ChatMemorySummaryRepository.Summary> previous = summaryRepository.find(conversationId);
+            List<AppendOnlyChatMemoryRepository.Row> rows = repository.findRowsAfter(conversationId,
+                    previous.map(ChatMemorySummaryRepository.Summary::coveredUntil).orElse(0L));
+            int foldCount = rows.size() - keepRecent;
+            if (foldCount < minMessages) {
+                record("skipped");
+                return false;
+            }
+            List<AppendOnlyChatMemoryRepository.Row> folded = rows.subList(0, foldCount);
+            long start = System.nanoTime();
+            String content = chatClient.prompt()
+                    .system(SYSTEM_PROMPT.formatted(maxChars))
+                    .user(buildInput(previous.map(ChatMemorySummaryRepository.Summary::content).orElse(null), folded))
+                    .call()
+                    .content();
+            latency.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            if (!StringUtils.hasText(content)) {
+                record("failed");
+                log.warn("对话记忆摘要为空，会话: {}", conversationId);
+                return false;
+            }
+            ChatMemorySummaryRepository.Summary summary = new ChatMemorySummaryRepository.Summary(
+                    truncate(content.strip()), folded.getLast().timestamp());
+            boolean saved = summaryRepository.save(conversationId, summary, previous.orElse(null));
+            record(saved ? "updated" : "conflict");
+            log.info("对话记忆摘要{}，会话: {}，压缩消息: {} 条，摘要长度: {}", saved ? "已更新" : "已被其他任务更新或会话已清空",
+                    conversationId, foldCount, summary.content().length());
+            return saved;
+        } catch (RuntimeException e) {
+            record("failed");
+            log.warn("对话记忆摘要失败，会话: {}，原因: {}", conversationId, e.getMessage());
+            return false;
+        }
+    }
+
+    private String buildInput(String previousSummary, List<AppendOnlyChatMemoryRepository.Row> folded) {
+        StringBuilder input = new StringBuilder("已有摘要：\n")
+                .append(StringUtils.hasText(previousSummary) ? previousSummary : "（无）")
+                .append("\n\n新增对话：\n");
+        for (AppendOnlyChatMemoryRepository.Row row : folded) {
+            input.append(MessageType.USER.name().equals(row.type()) ? "用户：" : "助手：")
+                    .append(row.content())
+                    .append('\n');
+        }
+        return input.toString();
+    }
+
+    private String truncate(String content) {
+        return content.length() <= maxChars ? content : content.substring(0, maxChars);
+    }
+
+    private void record(String result) {
+        Counter.builder("cookbook.chat.memory.summary")
+                .description("对话记忆摘要任务执行次数")
+                .tag("result", result)
+                .register(meterRegistry)
+                .increment();
+    }
+}
@@ -0,0 +1,71 @@
+package com.ly.cookbook.memory;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.util.Assert;
+
+import java.sql.Timestamp;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * @author 刘燚
+ * @version v1.0.0
+ * @Description 对话记忆滚动摘要仓库（chat_memory_summary，建表脚本 db/init-chat-memory-summary.sql）。
+ * 每个会话一条摘要，covered_until 记录已压缩进摘要的最后一条消息的时间戳；
+ * 更新以读取时的 covered_until 为条件（乐观并发），并要求被压缩的最后一条消息仍然存在，会话清空后不会被旧任务写回摘要
+ * @createDate：2026/10/19 18:00
+ * @email liuyia2022@163.com
+ */
+public class ChatMemorySummaryRepository {
+
+    private static final String SELECT_SQL = "SELECT content, covered_until FROM chat_memory_summary WHERE conversation_id = ?";
+
+    private static final String UPSERT_SQL = "INSERT INTO chat_memory_summary (conversation_id, content, covered_until, update_time) "
+            + "SELECT ?, ?, ?, CURRENT_TIMESTAMP WHERE EXISTS (SELECT 1 FROM spring_ai_chat_memory WHERE conversation_id = ? AND timestamp = ?) "
+            + "ON CONFLICT (conversation_id) DO UPDATE SET content = EXCLUDED.content, covered_until = EXCLUDED.covered_until, "
+            + "update_time = CURRENT_TIMESTAMP WHERE chat_memory_summary.covered_until = ?";
+
+    private static final String DELETE_SQL = "DELETE FROM chat_memory_summary WHERE conversation_id = ?";
+
+    private static final RowMapper<Summary> SUMMARY_ROW_MAPPER = (rs, rowNum) -> new Summary(rs.getString("content"),
+            rs.getTimestamp("covered_until").getTime());
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public ChatMemorySummaryRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    public Optional<Summary> find(String conversationId) {
+        Assert.hasText(conversationId, "conversationId cannot be null or empty");
+        List<Summary> summaries = jdbcTemplate.query(SELECT_SQL, SUMMARY_ROW_MAPPER, conversationId);
+        return summaries.stream().findFirst();
+    }
+
+    /**
+     * 写入新摘要
+     *
+     * @param previous 生成摘要时读到的旧摘要，没有时为 null
+     * @return 是否写入；旧摘要已被其他任务更新或被压缩的消息已删除时不写入
+     */
+    public boolean save(String conversationId, Summary summary, Summary previous) {
+        Assert.hasText(conversationId, "conversationId cannot be null or empty");
+        Timestamp coveredUntil = new Timestamp(summary.coveredUntil());
+        return jdbcTemplate.update(UPSERT_SQL, conversationId, summary.content(), coveredUntil, conversationId, coveredUntil,
+                new Timestamp(previous != null ? previous.coveredUntil() : 0)) > 0;
+    }
+
+    public void delete(String conversationId) {
+        Assert.hasText(conversationId, "conversationId cannot be null or empty");
+        jdbcTemplate.update(DELETE_SQL, conversationId);
+    }
+
+    /**
+     * 会话摘要
+     *
+     * @param coveredUntil 已压缩进摘要的最后一条消息的毫秒时间戳
+     */
+    public record Summary(String content, long coveredUntil) {
+    }
+}
@@ -0,0 +1,218 @@
+package com.ly.cookbook.memory;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * @author 刘燚
+ * @version v1.0.0
+ * @Description 对话记忆写入的本地预写日志：消息在进入写入队列前追加到当前日志段并 fsync，之后才向调用方确认。
+ * 每条记录为 长度 + 内容 + CRC32，崩溃时写了一半的尾部记录在恢复时校验失败被丢弃（该次写入没有被确认）。
+ * 日志段中的消息全部落库后删除该段；启动时把残留日志段中的消息补写入库（已存在的跳过）
+ * @createDate：2026/10/19 16:00
+ * @email liuyia2022@163.com
+ */
+@Slf4j
+public class ChatMemoryWal {
+
+    private static final String SEGMENT_PREFIX = "segment-";
+
+    private static final String SEGMENT_SUFFIX = ".wal";
+
+    private final Path directory;
+
+    private final long segmentBytes;
+
+    /**
+     * 日志段ID -> 尚未落库的消息条数
+     */
+    private final Map<Long, Integer> unflushed = new HashMap<>();
+
+    private FileChannel channel;
+
+    private long currentSegment;
+
+    private long currentBytes;
+
+    public ChatMemoryWal(Path directory, long segmentBytes) {
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        try {
+            Files.createDirectories(directory);
+        } catch (IOException e) {
+            throw new UncheckedIOException("创建对话记忆预写日志目录失败: " + directory, e);
+        }
+    }
+
+    /**
+     * 读出残留日志段中的全部消息，在打开新日志段之前调用
+     */
+    public synchronized List<AppendOnlyChatMemoryRepository.Row> recover() throws IOException {
+        List<AppendOnlyChatMemoryRepository.Row> rows = new ArrayList<>();
+        for (Path segment : segments()) {
+            ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(segment));
+            while (buffer.remaining() >= Integer.BYTES) {
+                int length = buffer.getInt();
+                if (length <= 0 || buffer.remaining() < length + Integer.BYTES) {
+                    log.warn("对话记忆预写日志尾部记录不完整，已丢弃: {}", segment.getFileName());
+                    break;
+                }
+                byte[] payload = new byte[length];
+                buffer.get(payload);
+                CRC32 crc = new CRC32();
+                crc.update(payload);
+                if ((int) crc.getValue() != buffer.getInt()) {
+                    log.warn("对话记忆预写日志记录校验失败，已丢弃后续记录: {}", segment.getFileName());
+                    break;
+                }
+                rows.add(decode(payload));
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * 恢复的消息落库后删除残留日志段
+     */
+    public synchronized void deleteRecovered() throws IOException {
+        for (Path segment : segments()) {
+            if (channel == null || !segment.equals(segmentPath(currentSegment))) {
+                Files.deleteIfExists(segment);
+            }
+        }
+    }
+
+    /**
+     * 追加一次写入的消息并 fsync，返回所在日志段ID
+     */
+    public synchronized long append(List<AppendOnlyChatMemoryRepository.Row> rows) throws IOException {
+        if (channel == null || currentBytes >= segmentBytes) {
+            rotate();
+        }
+        ByteArrayOutputStream records = new ByteArrayOutputStream();
+        DataOutputStream output = new DataOutputStream(records);
+        for (AppendOnlyChatMemoryRepository.Row row : rows) {
+            byte[] payload = encode(row);
+            CRC32 crc = new CRC32();
+            crc.update(payload);
+            output.writeInt(payload.length);
+            output.write(payload);
+            output.writeInt((int) crc.getValue());
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(records.toByteArray());
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        channel.force(false);
+        currentBytes += records.size();
+        unflushed.merge(currentSegment, rows.size(), Integer::sum);
+        return currentSegment;
+    }
+
+    /**
+     * 标记日志段中的消息已落库（或已随会话清空丢弃），全部落库的日志段被删除；
+     * 当前日志段全部落库时切换到新日志段，空闲时日志目录只剩一个空段
+     */
+    public synchronized void markFlushed(long segment, int count) {
+        int remaining = unflushed.merge(segment, -count, Integer::sum);
+        if (remaining > 0) {
+            return;
+        }
+        unflushed.remove(segment);
+        try {
+            if (segment == currentSegment) {
+                if (currentBytes > 0) {
+                    rotate();
+                }
+            } else {
+                Files.deleteIfExists(segmentPath(segment));
+            }
+        } catch (IOException e) {
+            log.warn("删除对话记忆预写日志段失败: {}", e.getMessage());
+        }
+    }
+
+    public synchronized void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+            channel = null;
+            if (!unflushed.containsKey(currentSegment)) {
+                Files.deleteIfExists(segmentPath(currentSegment));
+            }
+        }
+    }
+
+    private void rotate() throws IOException {
+        if (channel != null) {
+            channel.close();
+            if (!unflushed.containsKey(currentSegment)) {
+                Files.deleteIfExists(segmentPath(currentSegment));
+            }
+        }
+        currentSegment = Math.max(currentSegment + 1, System.currentTimeMillis());
+        channel = FileChannel.open(segmentPath(currentSegment), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        currentBytes = 0;
+    }
+
+    private List<Path> segments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> {
+                        String name = file.getFileName().toString();
+                        return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+                    })
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    private Path segmentPath(long segment) {
+        // 补零使文件名按字典序即为写入顺序
+        return directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, segment, SEGMENT_SUFFIX));
+    }
+
+    private static byte[] encode(AppendOnlyChatMemoryRepository.Row row) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream output = new DataOutputStream(bytes);
+        writeString(output, row.conversationId());
+        writeString(output, row.type());
+        writeString(output, row.content());
+        output.writeLong(row.timestamp());
+        return bytes.toByteArray();
+    }
+
+    private static AppendOnlyChatMemoryRepository.Row decode(byte[] payload) {
+        ByteBuffer buffer = ByteBuffer.wrap(payload);
+        String conversationId = readString(buffer);
+        String type = readString(buffer);
+        String content = readString(buffer);
+        return new AppendOnlyChatMemoryRepository.Row(conversationId, type, content, buffer.getLong());
+    }
+
+    private static void writeString(DataOutputStream output, String value) throws IOException {
+        byte[] bytes = (value != null ? value : "").getBytes(StandardCharsets.UTF_8);
+        output.writeInt(bytes.length);
+        output.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,439 @@
+package com.ly.cookbook.memory;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.RecoverableDataAccessException;
+import org.springframework.dao.TransientDataAccessException;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * @author 刘燚
+ * @version v1.0.0
+ * @Description 对话记忆的异步批量写入（write-behind）：add 只把消息放入有界队列，后台线程把多个会话的消息
+ * 按条数或时间窗口攒批，以多行 INSERT 落库。
+ * <ul>
+ *     <li>顺序：消息入队时分配时间戳，会话内顺序由时间戳决定，与落库先后无关</li>
+ *     <li>可见性：落库前的消息保存在待写表中，本节点读取时与数据库结果合并，写入后立即可读</li>
+ *     <li>背压：队列满时最多等待 max-wait，仍放不进去的消息由调用线程同步落库</li>
+ *     <li>持久性：开启预写日志时消息先写入本地日志段并 fsync 再入队，崩溃后启动时补写</li>
+ *     <li>失败：连接失败等暂时性错误退避重试；其他错误重试也不会成功，拆开逐条写入，丢弃无法写入的消息并计数</li>
+ * </ul>
+ * @createDate：2026/10/19 16:00
+ * @email liuyia2022@163.com
+ */
+@Slf4j
+public class ChatMemoryWriteBehind {
+
+    private static final Duration MAX_RETRY_BACKOFF = Duration.ofSeconds(5);
+
+    private final AppendOnlyChatMemoryRepository repository;
+
+    /**
+     * 预写日志，未开启时为 null
+     */
+    private final ChatMemoryWal wal;
+
+    private final BlockingQueue<Entry> queue;
+
+    /**
+     * 会话ID -> 已入队尚未落库的消息，按时间戳排序
+     */
+    private final Map<String, List<Entry>> pending = new ConcurrentHashMap<>();
+
+    /**
+     * 落库与清空会话互斥，清空时不会有该会话的消息正在写入
+     */
+    private final ReentrantLock flushLock = new ReentrantLock();
+
+    private final int batchSize;
+
+    private final long flushIntervalNanos;
+
+    private final long maxWaitNanos;
+
+    private final Thread writerThread;
+
+    private volatile boolean running = true;
+
+    private final Counter batchedMessages;
+
+    private final Counter directMessages;
+
+    private final Counter flushFailures;
+
+    private final Counter droppedMessages;
+
+    private final DistributionSummary batchSizes;
+
+    private final Timer flushLatency;
+
+    public ChatMemoryWriteBehind(AppendOnlyChatMemoryRepository repository, ChatMemoryWal wal, int queueCapacity, int batchSize,
+                                 Duration flushInterval, Duration maxWait, MeterRegistry meterRegistry) {
+        this.repository = repository;
+        this.wal = wal;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.batchSize = batchSize;
+        this.flushIntervalNanos = flushInterval.toNanos();
+        this.maxWaitNanos = maxWait.toNanos();
+        Gauge.builder("cookbook.chat.memory.write.queue", queue, BlockingQueue::size)
+                .description("对话记忆写入队列中等待落库的消息数")
+                .register(meterRegistry);
+        this.batchedMessages = Counter.builder("cookbook.chat.memory.write.messages")
+                .description("对话记忆写入的消息数")
+                .tag("mode", "batched")
+                .register(meterRegistry);
+        this.directMessages = Counter.builder("cookbook.chat.memory.write.messages")
+                .description("对话记忆写入的消息数")
+                .tag("mode", "direct")
+                .register(meterRegistry);
+        this.flushFailures = Counter.builder("cookbook.chat.memory.write.failures")
+                .description("对话记忆批量落库失败次数（暂时性错误重试，其他错误逐条写入）")
+                .register(meterRegistry);
+        this.droppedMessages = Counter.builder("cookbook.chat.memory.write.dropped")
+                .description("无法落库被丢弃的对话记忆消息数")
+                .register(meterRegistry);
+        this.batchSizes = DistributionSummary.builder("cookbook.chat.memory.write.batch.size")
+                .description("每次批量落库的消息数")
+                .register(meterRegistry);
+        this.flushLatency = Timer.builder("cookbook.chat.memory.write.flush.latency")
+                .description("每次批量落库的耗时")
+                .register(meterRegistry);
+        recover();
+        this.writerThread = Thread.ofPlatform().name("chat-memory-writer").daemon(true).start(this::runWriter);
+        log.info("对话记忆异步写入已开启，队列容量: {}, 批大小: {}, 时间窗口: {} ms, 预写日志: {}", queueCapacity, batchSize,
+                flushInterval.toMillis(), wal != null ? "开启" : "关闭");
+    }
+
+    /**
+     * 写入消息：开启预写日志时 fsync 后返回，否则入队后返回
+     *
+     * @return 消息全部落库（或随会话清空被丢弃）时完成
+     */
+    public CompletableFuture<Void> add(String conversationId, List<Message> messages) {
+        if (messages.isEmpty()) {
+            // 没有消息时不会有批次完成这个请求，直接返回，也不写入空的预写日志记录
+            return CompletableFuture.completedFuture(null);
+        }
+        List<AppendOnlyChatMemoryRepository.Row> rows = repository.newRows(conversationId, messages);
+        long segment = -1;
+        if (wal != null) {
+            try {
+                segment = wal.append(rows);
+            } catch (IOException e) {
+                throw new UncheckedIOException("写入对话记忆预写日志失败", e);
+            }
+        }
+        Request request = new Request(rows.size());
+        List<Entry> entries = new ArrayList<>(rows.size());
+        for (AppendOnlyChatMemoryRepository.Row row : rows) {
+            entries.add(new Entry(row, segment, request));
+        }
+        pending.compute(conversationId, (key, existing) -> {
+            List<Entry> merged = existing != null ? new ArrayList<>(existing) : new ArrayList<>(entries.size());
+            merged.addAll(entries);
+            return merged;
+        });
+        List<Entry> overflow = enqueue(entries);
+        if (!overflow.isEmpty()) {
+            // 背压：队列持续满载，由调用线程同步写入放不进队列的消息
+            writeDirect(overflow);
+        }
+        return request.future;
+    }
+
+    /**
+     * 本节点已入队尚未落库的消息，按时间戳排序
+     */
+    public List<AppendOnlyChatMemoryRepository.Row> pendingRows(String conversationId) {
+        List<Entry> entries = pending.get(conversationId);
+        if (entries == null) {
+            return List.of();
+        }
+        return entries.stream().map(Entry::row).toList();
+    }
+
+    /**
+     * 清空会话：丢弃尚未落库的消息并删除已落库的消息
+     */
+    public void clear(String conversationId) {
+        flushLock.lock();
+        try {
+            List<Entry> discarded = pending.remove(conversationId);
+            if (discarded != null) {
+                queue.removeAll(discarded);
+                completeAll(discarded);
+            }
+            repository.deleteByConversationId(conversationId);
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * 停止写入线程，队列中剩余的消息落库后返回
+     */
+    public void shutdown() {
+        running = false;
+        try {
+            writerThread.join(TimeUnit.SECONDS.toMillis(30));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (wal != null) {
+            try {
+                wal.close();
+            } catch (IOException e) {
+                log.warn("关闭对话记忆预写日志失败: {}", e.getMessage());
+            }
+        }
+    }
+
+    private List<Entry> enqueue(List<Entry> entries) {
+        long deadline = System.nanoTime() + maxWaitNanos;
+        for (int i = 0; i < entries.size(); i++) {
+            try {
+                if (!queue.offer(entries.get(i), Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS)) {
+                    return entries.subList(i, entries.size());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return entries.subList(i, entries.size());
+            }
+        }
+        return List.of();
+    }
+
+    private void writeDirect(List<Entry> entries) {
+        flushLock.lock();
+        try {
+            List<Entry> live = stillPending(entries);
+            try {
+                if (!live.isEmpty()) {
+                    repository.insertRows(live.stream().map(Entry::row).toList());
+                    directMessages.increment(live.size());
+                }
+            } catch (RuntimeException e) {
+                // 同步写入失败直接报错给调用方，消息不再保留，也不从预写日志恢复
+                removePending(live);
+                completeAll(live);
+                throw e;
+            }
+            removePending(live);
+            completeAll(live);
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    private void runWriter() {
+        List<Entry> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                Entry first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                long deadline = System.nanoTime() + flushIntervalNanos;
+                while (batch.size() < batchSize && running) {
+                    queue.drainTo(batch, batchSize - batch.size());
+                    long remaining = deadline - System.nanoTime();
+                    if (batch.size() >= batchSize || remaining <= 0) {
+                        break;
+                    }
+                    Entry next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                queue.drainTo(batch, batchSize - batch.size());
+                flushWithRetry(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * 落库遇到暂时性错误时退避重试直到成功，期间消息仍保留在待写表中可读；
+     * 其他错误（如某条消息违反约束）改为逐条写入，只丢弃无法写入的消息
+     */
+    private void flushWithRetry(List<Entry> batch) throws InterruptedException {
+        long backoff = 100;
+        boolean oneByOne = false;
+        while (true) {
+            flushLock.lock();
+            try {
+                List<Entry> live = stillPending(batch);
+                if (oneByOne) {
+                    writeOneByOne(live);
+                    return;
+                }
+                if (!live.isEmpty()) {
+                    long start = System.nanoTime();
+                    repository.insertRows(live.stream().map(Entry::row).toList());
+                    flushLatency.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                    batchSizes.record(live.size());
+                    batchedMessages.increment(live.size());
+                }
+                removePending(live);
+                completeAll(live);
+                return;
+            } catch (RuntimeException e) {
+                flushFailures.increment();
+                if (!isTransient(e)) {
+                    log.warn("对话记忆批量落库失败，改为逐条写入，消息数: {}, 原因: {}", batch.size(), e.getMessage());
+                    oneByOne = true;
+                    continue;
+                }
+                log.warn("对话记忆批量落库失败，{} ms 后重试，消息数: {}, 原因: {}", backoff, batch.size(), e.getMessage());
+            } finally {
+                flushLock.unlock();
+            }
+            TimeUnit.MILLISECONDS.sleep(backoff);
+            backoff = Math.min(backoff * 2, MAX_RETRY_BACKOFF.toMillis());
+        }
+    }
+
+    /**
+     * 逐条写入，调用方持有 flushLock。非暂时性错误的消息丢弃并计数（预写日志中一并标记，不再恢复），
+     * 暂时性错误抛出，由调用方退避后继续写入剩余的消息
+     */
+    private void writeOneByOne(List<Entry> entries) {
+        for (Entry entry : entries) {
+            try {
+                repository.insertRows(List.of(entry.row()));
+                batchedMessages.increment();
+            } catch (RuntimeException e) {
+                if (isTransient(e)) {
+                    throw e;
+                }
+                droppedMessages.increment();
+                log.error("对话记忆消息无法落库，已丢弃，会话: {}, 类型: {}, 时间戳: {}, 原因: {}", entry.row().conversationId(),
+                        entry.row().type(), entry.row().timestamp(), e.getMessage());
+            }
+            removePending(List.of(entry));
+            completeAll(List.of(entry));
+        }
+    }
+
+    /**
+     * 暂时性错误：连接失败、超时、死锁等，稍后重试可能成功
+     */
+    static boolean isTransient(RuntimeException e) {
+        return e instanceof TransientDataAccessException || e instanceof RecoverableDataAccessException
+                || e instanceof DataAccessResourceFailureException;
+    }
+
+    /**
+     * 过滤掉随会话清空已丢弃的消息，调用方持有 flushLock
+     */
+    private List<Entry> stillPending(List<Entry> entries) {
+        return entries.stream()
+                .filter(entry -> {
+                    List<Entry> conversationEntries = pending.get(entry.row().conversationId());
+                    return conversationEntries != null && conversationEntries.contains(entry);
+                })
+                .toList();
+    }
+
+    private void removePending(List<Entry> entries) {
+        for (Entry entry : entries) {
+            pending.computeIfPresent(entry.row().conversationId(), (key, existing) -> {
+                List<Entry> remaining = new ArrayList<>(existing);
+                remaining.remove(entry);
+                return remaining.isEmpty() ? null : remaining;
+            });
+        }
+    }
+
+    private void completeAll(List<Entry> entries) {
+        if (wal != null) {
+            Map<Long, Integer> segments = new HashMap<>();
+            entries.forEach(entry -> segments.merge(entry.segment(), 1, Integer::sum));
+            segments.forEach(wal::markFlushed);
+        }
+        entries.forEach(entry -> entry.request().complete());
+    }
+
+    /**
+     * 启动时把预写日志中残留的消息补写入库，已存在的跳过
+     */
+    private void recover() {
+        if (wal == null) {
+            return;
+        }
+        try {
+            List<AppendOnlyChatMemoryRepository.Row> rows = wal.recover();
+            if (!rows.isEmpty()) {
+                int inserted = repository.insertRowsIfAbsent(rows);
+                log.info("对话记忆预写日志恢复完成，日志中消息: {} 条，补写入库: {} 条", rows.size(), inserted);
+            }
+            wal.deleteRecovered();
+        } catch (IOException e) {
+            throw new UncheckedIOException("恢复对话记忆预写日志失败", e);
+        }
+    }
+
+    /**
+     * 队列中的一条消息；使用对象标识比较，同一会话内容相同的两条消息互不影响
+     *
+     * @param segment 所在预写日志段，未开启预写日志时为 -1
+     */
+    private record Entry(AppendOnlyChatMemoryRepository.Row row, long segment, Request request) {
+
+        @Override
+        public boolean equals(Object other) {
+            return this == other;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(this);
+        }
+    }
+
+    /**
+     * 一次 add 调用，全部消息落库后完成
+     */
+    private static class Request {
+
+        private final AtomicInteger remaining;
+
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        private Request(int count) {
+            this.remaining = new AtomicInteger(count);
+        }
+
+        private void complete() {
+            if (remaining.decrementAndGet() == 0) {
+                future.complete(null);
+            }
+        }
+    }
+}
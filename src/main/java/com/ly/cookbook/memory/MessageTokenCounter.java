@@ -0,0 +1,117 @@
+package com.ly.cookbook.memory;
+
+import cn.hutool.cache.CacheUtil;
+import cn.hutool.cache.impl.LRUCache;
+import com.knuddels.jtokkit.Encodings;
+import com.knuddels.jtokkit.api.Encoding;
+import com.knuddels.jtokkit.api.EncodingRegistry;
+import com.knuddels.jtokkit.api.EncodingType;
+import com.knuddels.jtokkit.api.GptBytePairEncodingParams;
+import org.springframework.ai.chat.messages.Message;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * @author 刘燚
+ * @version v1.0.0
+ * @Description 本地 BPE 分词计数，不调用远程接口。默认使用 cl100k_base 词表；
+ * 配置 tiktoken 格式的 Qwen 词表（qwen.tiktoken，每行 base64 token 与序号）后按 Qwen 的切分规则计数，与模型计费一致。
+ * Qwen 词表在 cl100k_base 基础上扩充了中文词，cl100k_base 对中文的计数偏多，用于预算时偏保守。
+ * 每条消息的计数按内容指纹缓存，同一窗口反复读取时不重复分词
+ * @createDate：2026/10/19 17:00
+ * @email liuyia2022@163.com
+ */
+public class MessageTokenCounter {
+
+    /**
+     * 每条消息的固定开销（角色、分隔符等）
+     */
+    public static final int MESSAGE_OVERHEAD_TOKENS = 4;
+
+    /**
+     * Qwen 分词器的预切分规则（数字逐位切分）
+     */
+    private static final Pattern QWEN_PATTERN = Pattern.compile(
+            "(?i:'s|'t|'re|'ve|'m|'ll|'d)|[^\\r\\n\\p{L}\\p{N}]?\\p{L}+|\\p{N}| ?[^\\s\\p{L}\\p{N}]+[\\r\\n]*|\\s*[\\r\\n]+|\\s+(?!\\S)|\\s+",
+            Pattern.UNICODE_CHARACTER_CLASS);
+
+    private final Encoding encoding;
+
+    /**
+     * 内容指纹 -> token 数；指纹碰撞只会让一条消息的估算不准，不影响消息内容
+     */
+    private final LRUCache<Fingerprint, Integer> cache;
+
+    public MessageTokenCounter(Encoding encoding, int cacheSize) {
+        this.encoding = encoding;
+        this.cache = CacheUtil.newLRUCache(cacheSize);
+    }
+
+    /**
+     * 使用 cl100k_base 词表
+     */
+    public static MessageTokenCounter cl100k(int cacheSize) {
+        return new MessageTokenCounter(Encodings.newLazyEncodingRegistry().getEncoding(EncodingType.CL100K_BASE), cacheSize);
+    }
+
+    /**
+     * 使用 tiktoken 格式的 Qwen 词表
+     */
+    public static MessageTokenCounter qwen(InputStream vocabulary, int cacheSize) throws IOException {
+        Map<byte[], Integer> ranks = new HashMap<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(vocabulary, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                int separator = line.indexOf(' ');
+                ranks.put(Base64.getDecoder().decode(line.substring(0, separator)), Integer.parseInt(line.substring(separator + 1).trim()));
+            }
+        }
+        EncodingRegistry registry = Encodings.newLazyEncodingRegistry();
+        registry.registerGptBytePairEncoding(new GptBytePairEncodingParams("qwen", QWEN_PATTERN, ranks, Map.of()));
+        return new MessageTokenCounter(registry.getEncoding("qwen").orElseThrow(), cacheSize);
+    }
+
+    /**
+     * 文本的 token 数，不缓存；文本中的特殊标记按普通文本计数
+     */
+    public int count(String text) {
+        if (text == null || text.isEmpty()) {
+            return 0;
+        }
+        return encoding.countTokensOrdinary(text);
+    }
+
+    /**
+     * 消息的 token 数（含固定开销），按内容缓存
+     */
+    public int count(Message message) {
+        String text = message.getText();
+        if (text == null || text.isEmpty()) {
+            return MESSAGE_OVERHEAD_TOKENS;
+        }
+        Fingerprint fingerprint = new Fingerprint(text.length(), text.hashCode());
+        Integer cached = cache.get(fingerprint);
+        if (cached == null) {
+            cached = count(text);
+            cache.put(fingerprint, cached);
+        }
+        return MESSAGE_OVERHEAD_TOKENS + cached;
+    }
+
+    /**
+     * 内容指纹：String 的哈希值缓存在实例上，缓存命中时同一条消息不再遍历内容
+     */
+    private record Fingerprint(int length, int hash) {
+    }
+}
@@ -0,0 +1,116 @@
+package com.ly.cookbook.memory;
+
+import cn.hutool.cache.CacheUtil;
+import cn.hutool.cache.impl.LRUCache;
+import com.ly.cookbook.mq.producer.MessageSender;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.memory.ChatMemory;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.UserMessage;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @author 刘燚
+ * @version v1.0.0
+ * @Description 带滚动摘要的聊天记忆：get 返回会话摘要 + 被包装记忆的最近窗口，add 每累计 trigger-messages 条新消息
+ * 通过 MessageSender 发出一次摘要任务（{@link ChatMemorySummarizer}），请求线程不调用模型。
+ * 摘要以一条用户消息放在窗口之前（模型接口要求系统消息位于开头，不能插在历史中间）；
+ * 摘要任务压缩除最近 keep-recent 条以外的消息，有摘要时窗口只保留最近 keep-recent 条，避免同一段对话既在摘要里又在窗口里；
+ * 两次摘要之间新滑出的至多 trigger-messages 条消息暂时不可见，下次摘要后并入摘要。
+ * 摘要在本地缓存 summary-ttl，摘要任务可能在任一节点执行，更新后最迟一个周期内可见
+ * @createDate：2026/10/19 18:00
+ * @email liuyia2022@163.com
+ */
+@Slf4j
+public class SummarizingChatMemory implements ChatMemory {
+
+    static final String SUMMARY_PREFIX = "【此前对话摘要】以下是本会话较早内容的摘要，供回答时参考：\n";
+
+    private final ChatMemory delegate;
+
+    private final ChatMemorySummaryRepository summaryRepository;
+
+    private final MessageSender messageSender;
+
+    private final int triggerMessages;
+
+    private final int keepRecent;
+
+    /**
+     * 会话ID -> 摘要内容，没有摘要时为空
+     */
+    private final LRUCache<String, Optional<String>> summaries;
+
+    /**
+     * 会话ID -> 本节点上次触发摘要任务后写入的消息条数
+     */
+    private final LRUCache<String, AtomicInteger> unsummarized;
+
+    public SummarizingChatMemory(ChatMemory delegate, ChatMemorySummaryRepository summaryRepository, MessageSender messageSender,
+                                 int triggerMessages, int keepRecent, int cacheSize, Duration summaryTtl) {
+        this.delegate = delegate;
+        this.summaryRepository = summaryRepository;
+        this.messageSender = messageSender;
+        this.triggerMessages = triggerMessages;
+        this.keepRecent = keepRecent;
+        this.summaries = CacheUtil.newLRUCache(cacheSize, summaryTtl.toMillis());
+        this.unsummarized = CacheUtil.newLRUCache(cacheSize);
+    }
+
+    @Override
+    public void add(String conversationId, List<Message> messages) {
+        delegate.add(conversationId, messages);
+        AtomicInteger counter = unsummarized.get(conversationId, AtomicInteger::new);
+        int count = counter.addAndGet(messages.size());
+        if (count >= triggerMessages && counter.compareAndSet(count, 0)) {
+            try {
+                messageSender.sendSimple(ChatMemorySummarizer.SUMMARIZE_MESSAGE_TYPE, conversationId);
+            } catch (RuntimeException e) {
+                // 摘要只影响较早的上下文，发送失败不影响本次对话，下次累计满后重新触发
+                log.warn("发送对话记忆摘要任务失败，会话: {}，原因: {}", conversationId, e.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public List<Message> get(String conversationId) {
+        List<Message> window = delegate.get(conversationId);
+        Optional<String> summary = summaries.get(conversationId, () -> findSummary(conversationId));
+        if (summary.isEmpty()) {
+            return window;
+        }
+        // 更早的消息已在摘要中
+        List<Message> recent = window.subList(Math.max(0, window.size() - keepRecent), window.size());
+        List<Message> messages = new ArrayList<>(recent.size() + 1);
+        messages.add(new UserMessage(SUMMARY_PREFIX + summary.get()));
+        messages.addAll(recent);
+        return messages;
+    }
+
+    @Override
+    public void clear(String conversationId) {
+        delegate.clear(conversationId);
+        try {
+            summaryRepository.delete(conversationId);
+        } catch (RuntimeException e) {
+            log.warn("删除对话记忆摘要失败，会话: {}，原因: {}", conversationId, e.getMessage());
+        }
+        summaries.remove(conversationId);
+        unsummarized.remove(conversationId);
+    }
+
+    private Optional<String> findSummary(String conversationId) {
+        try {
+            return summaryRepository.find(conversationId).map(ChatMemorySummaryRepository.Summary::content);
+        } catch (RuntimeException e) {
+            // 摘要表不可用时只返回最近窗口，本次结果同样缓存 summary-ttl，避免每次读取都重试
+            log.warn("读取对话记忆摘要失败，会话: {}，原因: {}", conversationId, e.getMessage());
+            return Optional.empty();
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.ly.cookbook.memory;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.ai.chat.memory.ChatMemory;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.util.Assert;
+
+import java.util.List;
+
+/**
+ * @author 刘燚
+ * @version v1.0.0
+ * @Description 按 token 预算截取的聊天记忆窗口：被包装的记忆按消息条数给出候选窗口（条数上限），
+ * 读取时从最新的消息往前累加 token 数，直到放不下下一条为止。
+ * 粘贴的长菜谱只占用预算内的位置，短对话则能带上更多轮次
+ * @createDate：2026/10/19 17:00
+ * @email liuyia2022@163.com
+ */
+public class TokenWindowChatMemory implements ChatMemory {
+
+    private final ChatMemory delegate;
+
+    private final int maxTokens;
+
+    private final MessageTokenCounter tokenCounter;
+
+    private final DistributionSummary windowTokens;
+
+    private final DistributionSummary droppedMessages;
+
+    public TokenWindowChatMemory(ChatMemory delegate, int maxTokens, MessageTokenCounter tokenCounter, MeterRegistry meterRegistry) {
+        Assert.isTrue(maxTokens > 0, "maxTokens must be greater than 0");
+        this.delegate = delegate;
+        this.maxTokens = maxTokens;
+        this.tokenCounter = tokenCounter;
+        this.windowTokens = DistributionSummary.builder("cookbook.chat.memory.window.tokens")
+                .description("每次读取的对话记忆窗口 token 数")
+                .register(meterRegistry);
+        this.droppedMessages = DistributionSummary.builder("cookbook.chat.memory.window.dropped")
+                .description("每次读取因超出 token 预算未带上的候选消息数")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public void add(String conversationId, List<Message> messages) {
+        delegate.add(conversationId, messages);
+    }
+
+    @Override
+    public List<Message> get(String conversationId) {
+        List<Message> candidates = delegate.get(conversationId);
+        int tokens = 0;
+        int start = candidates.size();
+        while (start > 0) {
+            int messageTokens = tokenCounter.count(candidates.get(start - 1));
+            if (tokens + messageTokens > maxTokens) {
+                break;
+            }
+            tokens += messageTokens;
+            start--;
+        }
+        windowTokens.record(tokens);
+        droppedMessages.record(start);
+        return start == 0 ? candidates : List.copyOf(candidates.subList(start, candidates.size()));
+    }
+
+    @Override
+    public void clear(String conversationId) {
+        delegate.clear(conversationId);
+    }
+}
@@ -0,0 +1,40 @@
+package com.ly.cookbook.model.vo;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+
+/**
+ * 路由对话响应VO
+ *
+ * @author 刘燚
+ * @date 2026-10-19
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Schema(description = "路由对话响应")
+public class RoutedChatVO implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    @Schema(description = "实际使用的路由：direct/rag/agent")
+    private String route;
+
+    @Schema(description = "分类器给出的路由")
+    private String classifiedRoute;
+
+    @Schema(description = "分类置信度")
+    private Double confidence;
+
+    @Schema(description = "是否因置信度不足升级到成本更高的路由")
+    private Boolean escalated;
+
+    @Schema(description = "回答内容")
+    private String answer;
+}
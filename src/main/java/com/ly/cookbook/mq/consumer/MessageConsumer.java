@@ -1,11 +1,14 @@
 package com.ly.cookbook.mq.consumer;
 
 import com.ly.cookbook.config.RabbitMQConfiguration;
+import com.ly.cookbook.memory.ChatMemorySummarizer;
 import com.ly.cookbook.mq.dto.CookbookMessage;
 import com.rabbitmq.client.Channel;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.amqp.core.Message;
 import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 import java.io.IOException;
@@ -20,6 +23,12 @@ import java.io.IOException;
 @Component
 public class MessageConsumer {
 
+    /**
+     * 对话记忆摘要任务，未开启滚动摘要时不存在
+     */
+    @Autowired
+    private ObjectProvider<ChatMemorySummarizer> chatMemorySummarizer;
+
     /**
      * 监听 cookbook 队列，消费消息
      *
@@ -85,6 +94,10 @@ public class MessageConsumer {
                 handleTestMessage(message);
                 break;
 
+            case ChatMemorySummarizer.SUMMARIZE_MESSAGE_TYPE:
+                handleChatMemorySummarize(message);
+                break;
+
             default:
                 log.warn("未知的消息类型: {}", messageType);
         }
@@ -118,6 +131,14 @@ public class MessageConsumer {
         // 例如：更新用户剩余 Token 数量
     }
 
+    /**
+     * 处理对话记忆摘要消息：失败只记录日志不重新入队，下次累计满后会再次触发
+     */
+    private void handleChatMemorySummarize(CookbookMessage message) {
+        String conversationId = String.valueOf(message.getData());
+        chatMemorySummarizer.ifAvailable(summarizer -> summarizer.summarize(conversationId));
+    }
+
     /**
      * 处理测试消息
      */
@@ -0,0 +1,247 @@
+package com.ly.cookbook.router;
+
+import com.ly.cookbook.enums.QueryRouteEnum;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * @author 刘燚
+ * @version v1.0.0
+ * @Description 查询路由分类器：多项式朴素贝叶斯，特征为中文字符 1~3 元组、英文单词、链接与长度分段。
+ * 模型由标注样本离线训练后以文本文件随应用发布，运行时只做查表与求和，不调用任何远程服务
+ * @createDate：2026/10/19 09:10
+ * @email liuyia2022@163.com
+ */
+public class QueryClassifier {
+
+    /**
+     * 分类结果的顺序与模型文件的列顺序一致
+     */
+    private final QueryRouteEnum[] routes;
+
+    private final double[] priors;
+
+    /**
+     * 特征 -> 各类别的对数条件概率，训练集中未出现的特征不参与计算
+     */
+    private final Map<String, double[]> weights;
+
+    private QueryClassifier(QueryRouteEnum[] routes, double[] priors, Map<String, double[]> weights) {
+        this.routes = routes;
+        this.priors = priors;
+        this.weights = weights;
+    }
+
+    /**
+     * 对查询分类
+     *
+     * @return 各类别的后验概率，按模型类别顺序排列
+     */
+    public Classification classify(String query) {
+        double[] scores = priors.clone();
+        for (String feature : features(query)) {
+            double[] featureWeights = weights.get(feature);
+            if (featureWeights != null) {
+                for (int i = 0; i < scores.length; i++) {
+                    scores[i] += featureWeights[i];
+                }
+            }
+        }
+        // softmax 转换为概率，先减去最大值避免溢出
+        double max = Double.NEGATIVE_INFINITY;
+        for (double score : scores) {
+            max = Math.max(max, score);
+        }
+        double sum = 0;
+        double[] probabilities = new double[scores.length];
+        for (int i = 0; i < scores.length; i++) {
+            probabilities[i] = Math.exp(scores[i] - max);
+            sum += probabilities[i];
+        }
+        int best = 0;
+        for (int i = 0; i < probabilities.length; i++) {
+            probabilities[i] /= sum;
+            if (probabilities[i] > probabilities[best]) {
+                best = i;
+            }
+        }
+        return new Classification(routes[best], probabilities[best], routes, probabilities);
+    }
+
+    /**
+     * 特征提取：NFKC 规范化并转小写后，连续中文取 1~3 元组，英文与数字取单词，另加链接与长度分段特征
+     */
+    public static List<String> features(String query) {
+        String text = Normalizer.normalize(query == null ? "" : query, Normalizer.Form.NFKC).toLowerCase(Locale.ROOT);
+        List<String> features = new ArrayList<>();
+        if (text.contains("http://") || text.contains("https://") || text.contains("www.")) {
+            features.add("has:url");
+        }
+        StringBuilder cjk = new StringBuilder();
+        StringBuilder word = new StringBuilder();
+        int length = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (Character.UnicodeScript.of(c) == Character.UnicodeScript.HAN) {
+                flushWord(word, features);
+                cjk.append(c);
+                length++;
+            } else if (Character.isLetterOrDigit(c)) {
+                flushCjk(cjk, features);
+                word.append(c);
+            } else {
+                flushCjk(cjk, features);
+                flushWord(word, features);
+                if (c == '，' || c == ',' || c == '；' || c == ';' || c == '、') {
+                    features.add("punct:clause");
+                }
+            }
+        }
+        flushCjk(cjk, features);
+        flushWord(word, features);
+        features.add(length <= 6 ? "len:short" : length <= 15 ? "len:medium" : length <= 30 ? "len:long" : "len:very-long");
+        return features;
+    }
+
+    private static void flushCjk(StringBuilder cjk, List<String> features) {
+        for (int n = 1; n <= 3; n++) {
+            for (int i = 0; i + n <= cjk.length(); i++) {
+                features.add(cjk.substring(i, i + n));
+            }
+        }
+        cjk.setLength(0);
+    }
+
+    private static void flushWord(StringBuilder word, List<String> features) {
+        if (!word.isEmpty()) {
+            features.add("w:" + word);
+            word.setLength(0);
+        }
+    }
+
+    /**
+     * 从模型文件加载：首行为类别，第二行为先验，其余每行为 特征 与各类别的对数条件概率，以制表符分隔
+     */
+    public static QueryClassifier load(InputStream input) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8));
+        QueryRouteEnum[] routes = null;
+        double[] priors = null;
+        Map<String, double[]> weights = new HashMap<>();
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.isBlank() || line.startsWith("#")) {
+                continue;
+            }
+            String[] columns = line.split("\t");
+            if ("classes".equals(columns[0])) {
+                routes = new QueryRouteEnum[columns.length - 1];
+                for (int i = 1; i < columns.length; i++) {
+                    routes[i - 1] = QueryRouteEnum.getByCode(columns[i]);
+                    if (routes[i - 1] == null) {
+                        throw new IOException("未知的路由类别: " + columns[i]);
+                    }
+                }
+            } else if ("prior".equals(columns[0])) {
+                priors = parseWeights(columns);
+            } else {
+                weights.put(columns[0], parseWeights(columns));
+            }
+        }
+        if (routes == null || priors == null || priors.length != routes.length) {
+            throw new IOException("路由分类器模型格式错误");
+        }
+        return new QueryClassifier(routes, priors, weights);
+    }
+
+    private static double[] parseWeights(String[] columns) {
+        double[] values = new double[columns.length - 1];
+        for (int i = 1; i < columns.length; i++) {
+            values[i - 1] = Double.parseDouble(columns[i]);
+        }
+        return values;
+    }
+
+    /**
+     * 离线训练：拉普拉斯平滑的多项式朴素贝叶斯，写出模型文件
+     *
+     * @param samples 标注样本
+     * @param minCount 特征在全部样本中出现的最少次数，低于该次数的特征不写入模型
+     */
+    public static void train(List<Sample> samples, int minCount, Writer output) throws IOException {
+        QueryRouteEnum[] routes = QueryRouteEnum.values();
+        int[] documentCounts = new int[routes.length];
+        long[] featureTotals = new long[routes.length];
+        Map<String, int[]> featureCounts = new TreeMap<>();
+        for (Sample sample : samples) {
+            int route = sample.route().ordinal();
+            documentCounts[route]++;
+            for (String feature : features(sample.query())) {
+                featureCounts.computeIfAbsent(feature, key -> new int[routes.length])[route]++;
+                featureTotals[route]++;
+            }
+        }
+        featureCounts.values().removeIf(counts -> sum(counts) < minCount);
+        int vocabulary = featureCounts.size();
+
+        output.write("# 查询路由分类器模型：多项式朴素贝叶斯，由标注样本离线训练生成，样本数 " + samples.size()
+                + "，特征数 " + vocabulary + "\n");
+        output.write("classes");
+        for (QueryRouteEnum route : routes) {
+            output.write("\t" + route.getCode());
+        }
+        output.write("\nprior");
+        for (int i = 0; i < routes.length; i++) {
+            output.write("\t" + format(Math.log((documentCounts[i] + 1.0) / (samples.size() + routes.length))));
+        }
+        output.write("\n");
+        for (Map.Entry<String, int[]> entry : featureCounts.entrySet()) {
+            output.write(entry.getKey());
+            for (int i = 0; i < routes.length; i++) {
+                output.write("\t" + format(Math.log((entry.getValue()[i] + 1.0) / (featureTotals[i] + vocabulary))));
+            }
+            output.write("\n");
+        }
+        output.flush();
+    }
+
+    private static int sum(int[] counts) {
+        int sum = 0;
+        for (int count : counts) {
+            sum += count;
+        }
+        return sum;
+    }
+
+    private static String format(double value) {
+        return String.format(Locale.ROOT, "%.4f", value);
+    }
+
+    /**
+     * 标注样本
+     */
+    public record Sample(QueryRouteEnum route, String query) {
+    }
+
+    /**
+     * 分类结果
+     *
+     * @param route         后验概率最高的路由
+     * @param confidence    该路由的后验概率
+     * @param routes        全部类别
+     * @param probabilities 各类别的后验概率
+     */
+    public record Classification(QueryRouteEnum route, double confidence, QueryRouteEnum[] routes, double[] probabilities) {
+    }
+}
@@ -0,0 +1,204 @@
+package com.ly.cookbook.router;
+
+import cn.dev33.satoken.stp.StpUtil;
+import com.ly.cookbook.agent.AgentExecutionEngine;
+import com.ly.cookbook.agent.AgentRunContext;
+import com.ly.cookbook.agent.YiCookAgent;
+import com.ly.cookbook.app.CookBookApp;
+import com.ly.cookbook.enums.QueryRouteEnum;
+import com.ly.cookbook.enums.SummaryModeEnum;
+import com.ly.cookbook.service.TokenStatisticsService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.metadata.Usage;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @author 刘燚
+ * @version v1.0.0
+ * @Description 查询路由：用本地分类器判断问题的类型，交给能回答它的最便宜的链路——
+ * 直接对话（不检索、不调用工具）、知识库问答（RAG）或 YiCookAgent。
+ * 分类置信度低于阈值时升级到成本更高一级的链路，宁可多花 token 也不让复杂问题落到回答不了的链路上
+ * @createDate：2026/10/19 09:40
+ * @email liuyia2022@163.com
+ */
+@Slf4j
+@Component
+public class QueryRouter {
+
+    /**
+     * Agent 平均 token 消耗的指数滑动平均系数
+     */
+    private static final double AGENT_TOKENS_ALPHA = 0.1;
+
+    private final QueryClassifier classifier;
+
+    private final CookBookApp cookBookApp;
+
+    private final YiCookAgent yiCookAgent;
+
+    private final AgentExecutionEngine agentExecutionEngine;
+
+    private final TokenStatisticsService tokenStatisticsService;
+
+    private final double minConfidence;
+
+    private final MeterRegistry meterRegistry;
+
+    private final Timer classifyLatency;
+
+    private final Counter tokensSaved;
+
+    /**
+     * Agent 链路每次运行的平均 token 消耗（double 的位表示），作为其他链路节省 token 的基准
+     */
+    private final AtomicLong agentTokensBits;
+
+    public QueryRouter(@Value("${cookbook.router.model:classpath:router/query-classifier.model}") Resource model,
+                       @Value("${cookbook.router.min-confidence:0.6}") double minConfidence,
+                       @Value("${cookbook.router.agent-baseline-tokens:6000}") long agentBaselineTokens,
+                       CookBookApp cookBookApp, YiCookAgent yiCookAgent, AgentExecutionEngine agentExecutionEngine,
+                       TokenStatisticsService tokenStatisticsService, MeterRegistry meterRegistry) throws IOException {
+        try (InputStream input = model.getInputStream()) {
+            this.classifier = QueryClassifier.load(input);
+        }
+        this.cookBookApp = cookBookApp;
+        this.yiCookAgent = yiCookAgent;
+        this.agentExecutionEngine = agentExecutionEngine;
+        this.tokenStatisticsService = tokenStatisticsService;
+        this.minConfidence = minConfidence;
+        this.meterRegistry = meterRegistry;
+        this.agentTokensBits = new AtomicLong(Double.doubleToLongBits(agentBaselineTokens));
+        this.classifyLatency = Timer.builder("cookbook.router.classify.latency")
+                .description("路由分类耗时")
+                .register(meterRegistry);
+        this.tokensSaved = Counter.builder("cookbook.router.tokens.saved")
+                .description("路由到直接对话或知识库问答相对 Agent 平均消耗节省的 token 数")
+                .register(meterRegistry);
+        Gauge.builder("cookbook.router.agent.tokens.average", agentTokensBits, bits -> Double.longBitsToDouble(bits.get()))
+                .description("Agent 链路每次运行的平均 token 消耗（指数滑动平均）")
+                .register(meterRegistry);
+        log.info("查询路由分类器加载完成，置信度阈值: {}", minConfidence);
+    }
+
+    /**
+     * 判定路由，不执行
+     */
+    public RouteDecision decide(String query) {
+        long start = System.nanoTime();
+        QueryClassifier.Classification classification = classifier.classify(query);
+        classifyLatency.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        boolean escalated = classification.confidence() < minConfidence && classification.route() != QueryRouteEnum.AGENT;
+        QueryRouteEnum route = escalated ? classification.route().escalate() : classification.route();
+        Counter.builder("cookbook.router.decision")
+                .description("路由判定次数")
+                .tag("route", route.getCode())
+                .tag("escalated", String.valueOf(escalated))
+                .register(meterRegistry)
+                .increment();
+        return new RouteDecision(route, classification.route(), classification.confidence(), escalated);
+    }
+
+    /**
+     * 判定路由并在对应链路上回答（同步），需在请求线程上调用，各链路消耗的 token 计入当前登录用户
+     */
+    public RoutedAnswer chat(String conversationId, String message) {
+        Long userId = StpUtil.getLoginIdAsLong();
+        RouteDecision decision = decide(message);
+        log.info("查询路由: {}（分类 {}，置信度 {}），会话: {}", decision.route().getCode(), decision.classified().getCode(),
+                String.format("%.2f", decision.confidence()), conversationId);
+        long start = System.nanoTime();
+        String answer;
+        long tokens;
+        switch (decision.route()) {
+            case DIRECT -> {
+                ChatResponse chatResponse = cookBookApp.chatDirect(conversationId, message);
+                answer = chatResponse.getResult().getOutput().getText();
+                tokens = totalTokens(chatResponse.getMetadata().getUsage());
+            }
+            case RAG -> {
+                ChatResponse chatResponse = cookBookApp.chatWithRag(conversationId, message);
+                answer = chatResponse.getResult().getOutput().getText();
+                tokens = totalTokens(chatResponse.getMetadata().getUsage());
+            }
+            default -> {
+                AgentRunContext context = new AgentRunContext(conversationId, message, null);
+                context.setSummaryMode(SummaryModeEnum.DIGEST);
+                // 经执行引擎运行，占用并发名额，请求线程只等待结果
+                try {
+                    answer = agentExecutionEngine.runBySync(yiCookAgent, context);
+                } finally {
+                    // 运行或总结抛出异常时同样结算已消耗的 token
+                    chargeTokens(userId, context.getUsedToken());
+                }
+                tokens = context.getUsedToken();
+            }
+        }
+        recordExecution(decision.route(), System.nanoTime() - start, tokens);
+        if (decision.route() != QueryRouteEnum.AGENT) {
+            chargeTokens(userId, tokens);
+        }
+        return new RoutedAnswer(decision, answer, tokens);
+    }
+
+    private void chargeTokens(Long userId, long tokens) {
+        if (tokens > 0) {
+            tokenStatisticsService.updateUserToken(userId, tokens);
+        }
+    }
+
+    private void recordExecution(QueryRouteEnum route, long elapsedNanos, long tokens) {
+        Timer.builder("cookbook.router.latency")
+                .description("路由后各链路的回答耗时")
+                .tag("route", route.getCode())
+                .register(meterRegistry)
+                .record(elapsedNanos, TimeUnit.NANOSECONDS);
+        DistributionSummary.builder("cookbook.router.tokens")
+                .description("路由后各链路消耗的 token 数")
+                .tag("route", route.getCode())
+                .register(meterRegistry)
+                .record(tokens);
+        if (route == QueryRouteEnum.AGENT) {
+            // 命中语义缓存的运行不消耗 token，不计入平均值
+            if (tokens > 0) {
+                agentTokensBits.updateAndGet(bits -> Double.doubleToLongBits(
+                        Double.longBitsToDouble(bits) * (1 - AGENT_TOKENS_ALPHA) + tokens * AGENT_TOKENS_ALPHA));
+            }
+        } else {
+            tokensSaved.increment(Math.max(0, Double.longBitsToDouble(agentTokensBits.get()) - tokens));
+        }
+    }
+
+    private static long totalTokens(Usage usage) {
+        return usage != null && usage.getTotalTokens() != null ? usage.getTotalTokens() : 0;
+    }
+
+    /**
+     * 路由判定
+     *
+     * @param route      实际使用的路由
+     * @param classified 分类器给出的路由
+     * @param confidence 分类置信度
+     * @param escalated  是否因置信度不足升级
+     */
+    public record RouteDecision(QueryRouteEnum route, QueryRouteEnum classified, double confidence, boolean escalated) {
+    }
+
+    /**
+     * 路由后的回答
+     */
+    public record RoutedAnswer(RouteDecision decision, String answer, long tokens) {
+    }
+}
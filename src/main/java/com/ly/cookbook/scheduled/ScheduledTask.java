@@ -1,9 +1,13 @@
 package com.ly.cookbook.scheduled;
 
 import com.ly.cookbook.common.constant.UserConstant;
+import com.ly.cookbook.memory.AppendOnlyChatMemoryRepository;
 import com.ly.cookbook.model.User;
 import com.ly.cookbook.service.UserService;
 import jakarta.annotation.Resource;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
@@ -18,6 +22,13 @@ import org.springframework.stereotype.Component;
 public class ScheduledTask {
     @Resource
     UserService userService;
+    /**
+     * 按类型注入：@Resource 会按字段名取到仓库本身，与 ObjectProvider 类型不符
+     */
+    @Autowired
+    ObjectProvider<AppendOnlyChatMemoryRepository> appendOnlyChatMemoryRepository;
+    @Value("${cookbook.chat-memory.trim-batch-size:500}")
+    int chatMemoryTrimBatchSize;
     /**
      * 每小时刷新用户token
      */
@@ -25,4 +36,12 @@ public class ScheduledTask {
     public void reflushTokenTaskByFree(){
         userService.lambdaUpdate().eq(User::getRole, UserConstant.USER_FREE).set(User::getUsedToken, 0L).update();
     }
+
+    /**
+     * 清理聊天记忆中超出保留条数的旧消息（追加写仓库未开启时跳过）
+     */
+    @Scheduled(fixedDelayString = "${cookbook.chat-memory.trim-interval:1m}")
+    public void trimChatMemory(){
+        appendOnlyChatMemoryRepository.ifAvailable(repository -> repository.trim(chatMemoryTrimBatchSize));
+    }
 }
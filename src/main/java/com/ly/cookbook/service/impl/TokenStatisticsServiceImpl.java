@@ -32,6 +32,11 @@ public class TokenStatisticsServiceImpl implements TokenStatisticsService {
             log.warn("userId 或 usage 为空，跳过 Token 统计");
             return;
         }
+        if (usage.getTotalTokens() == null || usage.getTotalTokens() <= 0) {
+            // 缓存重放等没有调用模型的响应不携带 token 用量，不计费
+            log.debug("未消耗 token，跳过 Token 统计, userId: {}", userId);
+            return;
+        }
 
         try {
             User user = userService.getById(userId);
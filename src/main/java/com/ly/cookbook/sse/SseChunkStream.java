@@ -0,0 +1,195 @@
+package com.ly.cookbook.sse;
+
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.Objects;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * @author 刘燚
+ * @version v1.0.0
+ * @Description 单个 SSE 连接的合并写出流：连续的同类型分片（thinking、content 或默认事件）拼接后作为一个事件写出，
+ * 事件类型变化、立即发送的消息以及流结束前都会先写出待发送的分片，客户端收到的内容与顺序不变。
+ * 写出失败说明客户端已断开，之后的写入全部丢弃
+ * @createDate：2026/10/18 23:40
+ * @email liuyia2022@163.com
+ */
+public class SseChunkStream {
+
+    private final SseChunkWriter writer;
+
+    private final SseEmitter sseEmitter;
+
+    private final Consumer<Exception> onFailure;
+
+    /**
+     * 保护待写分片与写出顺序，写出可能阻塞，使用对虚拟线程友好的锁
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final StringBuilder pending = new StringBuilder();
+
+    private String pendingEvent;
+
+    private int pendingBytes;
+
+    private ScheduledFuture<?> flushTask;
+
+    private boolean closed;
+
+    SseChunkStream(SseChunkWriter writer, SseEmitter sseEmitter, Consumer<Exception> onFailure) {
+        this.writer = writer;
+        this.sseEmitter = sseEmitter;
+        this.onFailure = onFailure;
+    }
+
+    /**
+     * 写入一个模型分片，达到字节上限时立即写出，否则等待时间窗口结束
+     *
+     * @param eventName 事件类型，为 null 时使用 SSE 默认事件
+     * @return 流是否仍可写（客户端断开后返回 false）
+     */
+    public boolean append(String eventName, String chunk) {
+        if (chunk == null || chunk.isEmpty()) {
+            return isOpen();
+        }
+        lock.lock();
+        try {
+            if (closed) {
+                return false;
+            }
+            writer.recordChunk(eventName);
+            if (!writer.isEnabled()) {
+                return write(eventName, chunk, SseChunkWriter.utf8Length(chunk));
+            }
+            if (pendingBytes > 0 && !Objects.equals(pendingEvent, eventName) && !flushLocked()) {
+                return false;
+            }
+            pendingEvent = eventName;
+            pending.append(chunk);
+            pendingBytes += SseChunkWriter.utf8Length(chunk);
+            if (pendingBytes >= writer.getMaxBytes()) {
+                return flushLocked();
+            }
+            if (flushTask == null) {
+                flushTask = writer.scheduleFlush(this);
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 立即发送一个完整事件（如进度提示），先写出待发送的分片，不与其他分片合并
+     *
+     * @return 流是否仍可写（客户端断开后返回 false）
+     */
+    public boolean send(String eventName, String data) {
+        lock.lock();
+        try {
+            if (closed || !flushLocked()) {
+                return false;
+            }
+            writer.recordChunk(eventName);
+            return write(eventName, data, SseChunkWriter.utf8Length(data));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 写出待发送的分片，时间窗口结束时由写出器调用
+     */
+    public boolean flush() {
+        lock.lock();
+        try {
+            return !closed && flushLocked();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 正常结束：写出剩余分片后完成 SseEmitter
+     */
+    public void complete() {
+        if (flush()) {
+            close();
+            sseEmitter.complete();
+        }
+    }
+
+    /**
+     * 异常结束：写出剩余分片后以异常完成 SseEmitter
+     */
+    public void completeWithError(Throwable e) {
+        flush();
+        close();
+        sseEmitter.completeWithError(e);
+    }
+
+    /**
+     * 关闭流并丢弃待发送的分片，客户端已断开时调用，不操作 SseEmitter
+     */
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+            discardPending();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public boolean isOpen() {
+        lock.lock();
+        try {
+            return !closed;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean flushLocked() {
+        if (flushTask != null) {
+            flushTask.cancel(false);
+            flushTask = null;
+        }
+        if (pendingBytes == 0) {
+            return true;
+        }
+        String data = pending.toString();
+        int bytes = pendingBytes;
+        String eventName = pendingEvent;
+        pending.setLength(0);
+        pendingBytes = 0;
+        return write(eventName, data, bytes);
+    }
+
+    private boolean write(String eventName, String data, int bytes) {
+        try {
+            sseEmitter.send(eventName != null ? SseEmitter.event().name(eventName).data(data) : SseEmitter.event().data(data));
+            writer.recordEvent(eventName, bytes);
+            return true;
+        } catch (IOException | IllegalStateException e) {
+            // IOException：客户端已断开；IllegalStateException：SseEmitter 已经完成
+            closed = true;
+            discardPending();
+            onFailure.accept(e);
+            return false;
+        }
+    }
+
+    private void discardPending() {
+        if (flushTask != null) {
+            flushTask.cancel(false);
+            flushTask = null;
+        }
+        pending.setLength(0);
+        pendingBytes = 0;
+    }
+}
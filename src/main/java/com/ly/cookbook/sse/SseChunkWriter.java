@@ -0,0 +1,171 @@
+package com.ly.cookbook.sse;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * @author 刘燚
+ * @version v1.0.0
+ * @Description 共享的 SSE 分片写出器：模型的 token 分片按流合并后再写出，
+ * 同一事件类型的分片累计达到字节上限或距第一个待写分片超过时间窗口时写出一次，减少小包写出、系统调用与事件对象分配。
+ * 所有流共用一个定时线程触发按时间窗口的写出，实际写出在虚拟线程上执行，慢客户端不会阻塞定时线程
+ * @createDate：2026/10/18 23:40
+ * @email liuyia2022@163.com
+ */
+@Slf4j
+@Component
+public class SseChunkWriter {
+
+    /**
+     * 不合并的写出器：每个分片立即写出，用于未配置共享写出器的场景
+     */
+    public static final SseChunkWriter DIRECT = new SseChunkWriter(false, Duration.ZERO, 0, new SimpleMeterRegistry());
+
+    /**
+     * 未指定事件名称时的指标标签（SSE 默认事件类型）
+     */
+    static final String DEFAULT_EVENT = "message";
+
+    private final boolean enabled;
+
+    private final long windowNanos;
+
+    private final int maxBytes;
+
+    private final MeterRegistry meterRegistry;
+
+    private final Map<String, EventMeters> eventMeters = new ConcurrentHashMap<>();
+
+    private volatile ScheduledExecutorService flushScheduler;
+
+    public SseChunkWriter(@Value("${cookbook.sse.coalesce.enabled:true}") boolean enabled,
+                          @Value("${cookbook.sse.coalesce.window:20ms}") Duration window,
+                          @Value("${cookbook.sse.coalesce.max-bytes:256}") int maxBytes,
+                          MeterRegistry meterRegistry) {
+        this.enabled = enabled && !window.isZero() && maxBytes > 0;
+        this.windowNanos = window.toNanos();
+        this.maxBytes = maxBytes;
+        this.meterRegistry = meterRegistry;
+        if (this.enabled) {
+            log.info("SSE 分片合并已开启，时间窗口: {} ms, 字节上限: {}", window.toMillis(), maxBytes);
+        }
+    }
+
+    /**
+     * 为一个 SseEmitter 打开合并写出的流，每个 SseEmitter 只应打开一次
+     *
+     * @param onFailure 写出失败（客户端已断开或 SseEmitter 已完成）时的回调，只调用一次
+     */
+    public SseChunkStream open(SseEmitter sseEmitter, Consumer<Exception> onFailure) {
+        return new SseChunkStream(this, sseEmitter, onFailure);
+    }
+
+    boolean isEnabled() {
+        return enabled;
+    }
+
+    int getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * 在时间窗口结束时触发写出
+     */
+    ScheduledFuture<?> scheduleFlush(SseChunkStream stream) {
+        return scheduler().schedule(() -> Thread.startVirtualThread(stream::flush), windowNanos, TimeUnit.NANOSECONDS);
+    }
+
+    void recordChunk(String eventName) {
+        meters(eventName).chunks().increment();
+    }
+
+    void recordEvent(String eventName, int bytes) {
+        EventMeters meters = meters(eventName);
+        meters.events().increment();
+        meters.bytes().increment(bytes);
+    }
+
+    private EventMeters meters(String eventName) {
+        String event = eventName != null ? eventName : DEFAULT_EVENT;
+        return eventMeters.computeIfAbsent(event, name -> new EventMeters(
+                Counter.builder("cookbook.sse.chunks")
+                        .description("写入 SSE 流的模型分片数")
+                        .tag("event", name)
+                        .register(meterRegistry),
+                Counter.builder("cookbook.sse.events")
+                        .description("实际写出的 SSE 事件数")
+                        .tag("event", name)
+                        .register(meterRegistry),
+                Counter.builder("cookbook.sse.bytes")
+                        .description("实际写出的 SSE 数据字节数（UTF-8）")
+                        .tag("event", name)
+                        .baseUnit("bytes")
+                        .register(meterRegistry)));
+    }
+
+    private ScheduledExecutorService scheduler() {
+        ScheduledExecutorService scheduler = flushScheduler;
+        if (scheduler == null) {
+            synchronized (this) {
+                scheduler = flushScheduler;
+                if (scheduler == null) {
+                    scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                        Thread thread = new Thread(runnable, "sse-flush");
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+                    flushScheduler = scheduler;
+                }
+            }
+        }
+        return scheduler;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        ScheduledExecutorService scheduler = flushScheduler;
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    /**
+     * UTF-8 编码后的字节数，不实际编码
+     */
+    static int utf8Length(CharSequence text) {
+        int bytes = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                bytes++;
+            } else if (c < 0x800) {
+                bytes += 2;
+            } else if (Character.isHighSurrogate(c)) {
+                // 代理对编码为 4 字节，低位代理不再单独计数
+                bytes += 4;
+                i++;
+            } else {
+                bytes += 3;
+            }
+        }
+        return bytes;
+    }
+
+    private record EventMeters(Counter chunks, Counter events, Counter bytes) {
+    }
+}
@@ -0,0 +1,16 @@
+-- PostgreSQL Chat Memory Summary Table
+-- 长会话的滚动摘要：较早的消息由后台任务压缩为一条摘要，读取记忆时放在最近窗口之前
+
+CREATE TABLE IF NOT EXISTS chat_memory_summary (
+    conversation_id VARCHAR(255) PRIMARY KEY,
+    content TEXT NOT NULL,
+    covered_until TIMESTAMP NOT NULL,
+    update_time TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP
+);
+
+-- 添加注释
+COMMENT ON TABLE chat_memory_summary IS '对话记忆滚动摘要表';
+COMMENT ON COLUMN chat_memory_summary.conversation_id IS '会话ID，与 spring_ai_chat_memory.conversation_id 对应';
+COMMENT ON COLUMN chat_memory_summary.content IS '摘要内容';
+COMMENT ON COLUMN chat_memory_summary.covered_until IS '已压缩进摘要的最后一条消息的时间戳（spring_ai_chat_memory.timestamp）';
+COMMENT ON COLUMN chat_memory_summary.update_time IS '更新时间';
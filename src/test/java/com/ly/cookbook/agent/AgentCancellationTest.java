@@ -0,0 +1,63 @@
+package com.ly.cookbook.agent;
+
+import com.ly.cookbook.aitools.TerminalOperationTools;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.DisabledOnOs;
+import org.junit.jupiter.api.condition.OS;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AgentCancellationTest {
+
+    @Test
+    void cancelInterruptsRunThreadOnlyOnce() throws Exception {
+        AgentRunContext context = new AgentRunContext("c1", "红烧肉怎么做", null);
+        CountDownLatch bound = new CountDownLatch(1);
+        CompletableFuture<Boolean> interrupted = new CompletableFuture<>();
+        Thread.ofVirtual().start(() -> {
+            context.bindRunThread(Thread.currentThread());
+            bound.countDown();
+            try {
+                Thread.sleep(10_000);
+                interrupted.complete(false);
+            } catch (InterruptedException e) {
+                interrupted.complete(true);
+            }
+        });
+        bound.await();
+
+        assertTrue(context.cancel());
+        assertFalse(context.cancel());
+        assertTrue(context.isCancelled());
+        assertTrue(interrupted.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void finishedRunIsNotCancelled() {
+        AgentRunContext context = new AgentRunContext("c1", "红烧肉怎么做", null);
+        context.markDone();
+
+        assertFalse(context.cancel());
+        assertFalse(context.isCancelled());
+    }
+
+    @Test
+    @DisabledOnOs(OS.WINDOWS)
+    void interruptedCommandIsDestroyed() throws Exception {
+        TerminalOperationTools tools = new TerminalOperationTools();
+        CompletableFuture<String> result = new CompletableFuture<>();
+        Thread worker = Thread.ofVirtual().start(() -> result.complete(tools.executeCommand("sleep 30")));
+        Thread.sleep(500);
+
+        long start = System.nanoTime();
+        worker.interrupt();
+        String output = result.get(5, TimeUnit.SECONDS);
+
+        assertTrue(output.startsWith("命令执行被中断"));
+        assertTrue(TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start) < 5);
+    }
+}
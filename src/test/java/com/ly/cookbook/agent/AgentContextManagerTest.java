@@ -0,0 +1,90 @@
+package com.ly.cookbook.agent;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AgentContextManagerTest {
+
+    private static final String PAGE = "红烧肉的做法步骤说明\n".repeat(500);
+
+    @Test
+    void compactOldToolResponsesAndAppendNextStepPromptOnce() {
+        AgentRunContext context = runWithSteps(4);
+        List<Message> history = List.copyOf(context.getChatMessage());
+        AgentContextManager contextManager = new AgentContextManager(100_000, 2, 300);
+
+        List<Message> messages = contextManager.buildPromptMessages(context, "下一步做什么？");
+
+        List<ToolResponseMessage> toolResponses = messages.stream()
+                .filter(ToolResponseMessage.class::isInstance)
+                .map(ToolResponseMessage.class::cast)
+                .toList();
+        assertEquals(4, toolResponses.size());
+        assertTrue(toolResponses.get(0).getResponses().get(0).responseData().length() < 400);
+        assertTrue(toolResponses.get(1).getResponses().get(0).responseData().length() < 400);
+        assertEquals(PAGE, toolResponses.get(3).getResponses().get(0).responseData());
+        assertEquals(1, messages.stream().filter(m -> "下一步做什么？".equals(m.getText())).count());
+        // 完整历史不被修改
+        assertEquals(history, context.getChatMessage());
+    }
+
+    @Test
+    void dropOldestStepsWhenOverBudget() {
+        AgentRunContext context = runWithSteps(6);
+        AgentContextManager contextManager = new AgentContextManager(8_000, 2, 300);
+
+        List<Message> messages = contextManager.buildPromptMessages(context, "下一步做什么？");
+
+        assertTrue(contextManager.estimateTokens(messages) <= 8_000);
+        assertInstanceOf(UserMessage.class, messages.get(0));
+        // 工具调用与工具响应始终成对出现
+        for (int i = 0; i < messages.size(); i++) {
+            if (messages.get(i) instanceof ToolResponseMessage) {
+                assertInstanceOf(AssistantMessage.class, messages.get(i - 1));
+            }
+        }
+        System.out.printf("原始估算 token: %d, 压缩后: %d%n",
+                contextManager.estimateTokens(context.getChatMessage()), contextManager.estimateTokens(messages));
+    }
+
+    @Test
+    void truncateLatestToolResponseWhenSingleStepExceedsBudget() {
+        AgentRunContext context = runWithSteps(1);
+        List<Message> history = List.copyOf(context.getChatMessage());
+        AgentContextManager contextManager = new AgentContextManager(2_000, 2, 300);
+
+        List<Message> messages = contextManager.buildPromptMessages(context, "下一步做什么？");
+
+        assertTrue(contextManager.estimateTokens(messages) <= 2_000);
+        String responseData = messages.stream()
+                .filter(ToolResponseMessage.class::isInstance)
+                .map(ToolResponseMessage.class::cast)
+                .findFirst()
+                .orElseThrow()
+                .getResponses().get(0).responseData();
+        assertTrue(responseData.startsWith("红烧肉的做法步骤说明"));
+        assertTrue(responseData.endsWith(String.format("(工具结果超出上下文预算已截断，原始长度 %d 字符)", PAGE.length())));
+        assertEquals(history, context.getChatMessage());
+    }
+
+    private AgentRunContext runWithSteps(int steps) {
+        AgentRunContext context = new AgentRunContext("c1", "红烧肉怎么做", null);
+        context.getChatMessage().add(new UserMessage("红烧肉怎么做"));
+        for (int i = 0; i < steps; i++) {
+            String id = "call-" + i;
+            context.getChatMessage().add(new AssistantMessage("", Map.of(),
+                    List.of(new AssistantMessage.ToolCall(id, "function", "fetchWebPageText", "{\"url\":\"https://a.com/" + i + "\"}"))));
+            context.getChatMessage().add(new ToolResponseMessage(
+                    List.of(new ToolResponseMessage.ToolResponse(id, "fetchWebPageText", PAGE)), Map.of()));
+        }
+        return context;
+    }
+}
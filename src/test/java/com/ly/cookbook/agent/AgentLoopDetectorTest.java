@@ -0,0 +1,85 @@
+package com.ly.cookbook.agent;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.tool.ToolCallback;
+import org.springframework.ai.tool.definition.ToolDefinition;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AgentLoopDetectorTest {
+
+    private final AgentLoopDetector loopDetector = new AgentLoopDetector(2);
+
+    @Test
+    void repeatedCallIsAnsweredFromMemo() {
+        AtomicInteger calls = new AtomicInteger();
+        AgentRunContext context = new AgentRunContext("c1", "红烧肉怎么做", null);
+        ToolCallback tool = loopDetector.memoize(new ToolCallback[]{countingTool("searchSimple", calls)}, context)[0];
+
+        String first = tool.call("{\"query\":\"红烧肉 做法\"}");
+        String second = tool.call("{ \"query\" : \"红烧肉 做法\" }");
+
+        assertEquals(1, calls.get());
+        assertEquals(MemoizingToolCallback.MEMO_HIT_NOTICE + first, second);
+    }
+
+    @Test
+    void sideEffectToolIsNotMemoizedAndClearsMemo() {
+        AtomicInteger calls = new AtomicInteger();
+        AgentRunContext context = new AgentRunContext("c1", "红烧肉怎么做", null);
+        ToolCallback[] tools = loopDetector.memoize(new ToolCallback[]{
+                countingTool("readText", calls), countingTool("writeText", calls)}, context);
+
+        tools[0].call("{\"fileName\":\"a.txt\"}");
+        tools[1].call("{\"fileName\":\"a.txt\",\"content\":\"x\"}");
+        tools[0].call("{\"fileName\":\"a.txt\"}");
+
+        assertEquals(3, calls.get());
+    }
+
+    @Test
+    void stopAfterRepeatedSteps() {
+        AgentRunContext context = new AgentRunContext("c1", "红烧肉怎么做", null);
+        List<AssistantMessage.ToolCall> search = List.of(toolCall("searchSimple", "{\"query\":\"红烧肉\"}"));
+
+        assertFalse(loopDetector.recordStep(context, search, 0));
+        assertFalse(loopDetector.recordStep(context, search, 1));
+        assertTrue(loopDetector.recordStep(context, search, 1));
+    }
+
+    @Test
+    void stopAfterAlternatingSteps() {
+        AgentRunContext context = new AgentRunContext("c1", "红烧肉怎么做", null);
+        List<AssistantMessage.ToolCall> a = List.of(toolCall("executeCommand", "{\"command\":\"ls\"}"));
+        List<AssistantMessage.ToolCall> b = List.of(toolCall("executeCommand", "{\"command\":\"pwd\"}"));
+
+        assertFalse(loopDetector.recordStep(context, a, 0));
+        assertFalse(loopDetector.recordStep(context, b, 0));
+        assertFalse(loopDetector.recordStep(context, a, 0));
+        assertFalse(loopDetector.recordStep(context, b, 0));
+        assertTrue(loopDetector.recordStep(context, a, 0));
+    }
+
+    private AssistantMessage.ToolCall toolCall(String name, String arguments) {
+        return new AssistantMessage.ToolCall("id", "function", name, arguments);
+    }
+
+    private ToolCallback countingTool(String name, AtomicInteger calls) {
+        ToolDefinition toolDefinition = ToolDefinition.builder().name(name).description(name).inputSchema("{}").build();
+        return new ToolCallback() {
+            @Override
+            public ToolDefinition getToolDefinition() {
+                return toolDefinition;
+            }
+
+            @Override
+            public String call(String toolInput) {
+                return name + "-result-" + calls.incrementAndGet();
+            }
+        };
+    }
+}
@@ -0,0 +1,68 @@
+package com.ly.cookbook.agent;
+
+import com.ly.cookbook.advisor.ChatLogAdvisor;
+import com.ly.cookbook.aitools.TerminateTools;
+import com.ly.cookbook.aitools.WebScriptTools;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.memory.ChatMemory;
+import org.springframework.ai.chat.memory.MessageWindowChatMemory;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.support.ToolCallbacks;
+import org.springframework.ai.tool.ToolCallback;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 每次请求构建 YiCookAgent 与共享 Agent 运行时的对比基准
+ * 只统计运行前的准备开销（ChatClient、工具管理器、选项、上下文），不调用模型
+ */
+class AgentRuntimeBenchmarkTest {
+
+    private static final int WARMUP = 2_000;
+    private static final int ITERATIONS = 20_000;
+
+    private final ToolCallback[] tools = ToolCallbacks.from(new WebScriptTools(), new TerminateTools());
+    private final ChatModel chatModel = prompt -> new ChatResponse(List.of(new Generation(new AssistantMessage("ok"))));
+    private final ChatMemory chatMemory = MessageWindowChatMemory.builder().maxMessages(10).build();
+
+    @Test
+    void perRequestVsSharedRuntime() {
+        YiCookAgent shared = new YiCookAgent(tools, chatModel, chatMemory, new ChatLogAdvisor());
+
+        Result perRequest = measure(() -> new YiCookAgent(tools, chatModel, chatMemory, new ChatLogAdvisor())
+                .createStreamContext("bench", "红烧肉怎么做"));
+        Result sharedRuntime = measure(() -> shared.createStreamContext("bench", "红烧肉怎么做"));
+
+        System.out.printf("每次请求构建 Agent: %,d ns/op, %,d B/op%n", perRequest.nanosPerOp, perRequest.bytesPerOp);
+        System.out.printf("共享 Agent 运行时:  %,d ns/op, %,d B/op%n", sharedRuntime.nanosPerOp, sharedRuntime.bytesPerOp);
+        assertTrue(sharedRuntime.bytesPerOp < perRequest.bytesPerOp);
+    }
+
+    private Result measure(Supplier<AgentRunContext> task) {
+        Object sink = null;
+        for (int i = 0; i < WARMUP; i++) {
+            sink = task.get();
+        }
+        com.sun.management.ThreadMXBean threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().threadId();
+        long bytesBefore = threadMXBean.getThreadAllocatedBytes(threadId);
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            sink = task.get();
+        }
+        long elapsed = System.nanoTime() - start;
+        long bytes = threadMXBean.getThreadAllocatedBytes(threadId) - bytesBefore;
+        assertTrue(sink != null);
+        return new Result(elapsed / ITERATIONS, bytes / ITERATIONS);
+    }
+
+    private record Result(long nanosPerOp, long bytesPerOp) {
+    }
+}
@@ -0,0 +1,61 @@
+package com.ly.cookbook.agent;
+
+import com.ly.cookbook.aitools.TerminateTools;
+import com.ly.cookbook.enums.SummaryModeEnum;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.memory.MessageWindowChatMemory;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.support.ToolCallbacks;
+import reactor.core.publisher.Flux;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AgentSummaryModeTest {
+
+    private final List<Prompt> prompts = new ArrayList<>();
+
+    /**
+     * 不调用工具、直接给出答案的模型
+     */
+    private final ChatModel chatModel = new ChatModel() {
+        @Override
+        public ChatResponse call(Prompt prompt) {
+            prompts.add(prompt);
+            return new ChatResponse(List.of(new Generation(new AssistantMessage("总结：红烧肉做法"))));
+        }
+
+        @Override
+        public Flux<ChatResponse> stream(Prompt prompt) {
+            prompts.add(prompt);
+            return Flux.just(new ChatResponse(List.of(new Generation(new AssistantMessage("红烧肉做法")))));
+        }
+    };
+
+    private final YiCookAgent agent = new YiCookAgent(ToolCallbacks.from(new TerminateTools()), chatModel,
+            MessageWindowChatMemory.builder().maxMessages(10).build());
+
+    @Test
+    void directModeSkipsSummaryCall() {
+        String answer = agent.runBySync("c1", "红烧肉怎么做", SummaryModeEnum.DIRECT);
+
+        assertEquals("红烧肉做法", answer);
+        assertEquals(1, prompts.size());
+    }
+
+    @Test
+    void digestModeSendsOnlyQuestionAndDigest() {
+        String answer = agent.runBySync("c2", "红烧肉怎么做", SummaryModeEnum.DIGEST);
+
+        assertEquals("总结：红烧肉做法", answer);
+        Prompt summaryPrompt = prompts.get(prompts.size() - 1);
+        assertEquals(1, summaryPrompt.getInstructions().size());
+        assertTrue(summaryPrompt.getInstructions().get(0).getText().contains("【用户原始问题】\n红烧肉怎么做"));
+    }
+}
@@ -0,0 +1,120 @@
+package com.ly.cookbook.agent;
+
+import com.ly.cookbook.aitools.TerminateTools;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.memory.ChatMemory;
+import org.springframework.ai.chat.memory.MessageWindowChatMemory;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.support.ToolCallbacks;
+import reactor.core.publisher.Flux;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CoordinatorAgentTest {
+
+    private static final String SUB_TASKS = """
+            {"subTasks": [{"title": "红烧肉", "prompt": "红烧肉怎么做"}, {"title": "清蒸鱼", "prompt": "清蒸鱼怎么做"}]}
+            """;
+
+    private final ChatModel chatModel = new ChatModel() {
+        @Override
+        public ChatResponse call(Prompt prompt) {
+            return response("晚宴菜单总结");
+        }
+
+        @Override
+        public Flux<ChatResponse> stream(Prompt prompt) {
+            String text = prompt.getInstructions().stream().map(Message::getText).reduce("", String::concat);
+            if (text.contains("任务拆分器")) {
+                return Flux.just(response(SUB_TASKS));
+            }
+            return Flux.just(response(text.contains("红烧肉怎么做") ? "红烧肉做法" : "清蒸鱼做法"));
+        }
+    };
+
+    private final ChatMemory chatMemory = MessageWindowChatMemory.builder().maxMessages(10).build();
+
+    @Test
+    void fanOutSubAgentsAndMergeResults() {
+        YiCookAgent subAgent = new YiCookAgent(ToolCallbacks.from(new TerminateTools()), chatModel, chatMemory);
+        CoordinatorAgent coordinator = new CoordinatorAgent(subAgent, 30, 100_000, chatModel, chatMemory);
+        AgentRunContext context = new AgentRunContext("c1", "两道菜的晚宴菜单", null);
+
+        coordinator.run(context);
+        String answer = coordinator.finalSummaryBySync(context);
+
+        assertEquals("晚宴菜单总结", answer);
+        List<String> subResults = context.getChatMessage().stream()
+                .filter(AssistantMessage.class::isInstance)
+                .map(Message::getText)
+                .toList();
+        assertEquals(2, subResults.size());
+        assertTrue(subResults.get(0).startsWith("【子任务 1：红烧肉】") && subResults.get(0).contains("红烧肉做法"));
+        assertTrue(subResults.get(1).startsWith("【子任务 2：清蒸鱼】") && subResults.get(1).contains("清蒸鱼做法"));
+        coordinator.shutdown();
+    }
+
+    @Test
+    void cancelDuringDecomposeDoesNotFallBackToSubAgent() throws Exception {
+        AtomicInteger subAgentCalls = new AtomicInteger();
+        ChatModel hangingModel = new ChatModel() {
+            @Override
+            public ChatResponse call(Prompt prompt) {
+                return response("总结");
+            }
+
+            @Override
+            public Flux<ChatResponse> stream(Prompt prompt) {
+                String text = prompt.getInstructions().stream().map(Message::getText).reduce("", String::concat);
+                if (text.contains("任务拆分器")) {
+                    return Flux.never();
+                }
+                subAgentCalls.incrementAndGet();
+                return Flux.just(response("红烧肉做法"));
+            }
+        };
+        YiCookAgent subAgent = new YiCookAgent(ToolCallbacks.from(new TerminateTools()), hangingModel, chatMemory);
+        CoordinatorAgent coordinator = new CoordinatorAgent(subAgent, 30, 100_000, hangingModel, chatMemory);
+        AgentRunContext context = new AgentRunContext("c2", "两道菜的晚宴菜单", null);
+        Thread canceller = Thread.ofVirtual().start(() -> {
+            try {
+                Thread.sleep(200);
+            } catch (InterruptedException e) {
+                return;
+            }
+            context.cancel();
+        });
+
+        coordinator.run(context);
+        Thread.interrupted();
+        canceller.join();
+
+        assertTrue(context.isCancelled());
+        assertEquals(0, subAgentCalls.get());
+        assertTrue(context.getChatMessage().stream().noneMatch(AssistantMessage.class::isInstance));
+        coordinator.shutdown();
+    }
+
+    @Test
+    void budgetIsSharedAcrossTree() {
+        AgentBudget budget = new AgentBudget(3, 1_000);
+
+        assertTrue(budget.tryAcquireStep());
+        assertTrue(budget.tryAcquireStep());
+        budget.addTokens(1_000);
+        assertFalse(budget.tryAcquireStep());
+        assertTrue(budget.isExhausted());
+    }
+
+    private static ChatResponse response(String text) {
+        return new ChatResponse(List.of(new Generation(new AssistantMessage(text))));
+    }
+}
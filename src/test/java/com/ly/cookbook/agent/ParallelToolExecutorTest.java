@@ -0,0 +1,73 @@
+package com.ly.cookbook.agent;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+import org.springframework.ai.tool.ToolCallback;
+import org.springframework.ai.tool.definition.ToolDefinition;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ParallelToolExecutorTest {
+
+    private final ParallelToolExecutor executor = new ParallelToolExecutor(4, Duration.ofMillis(1500));
+
+    @Test
+    void executeInParallelAndKeepOrder() {
+        List<AssistantMessage.ToolCall> toolCalls = List.of(
+                new AssistantMessage.ToolCall("1", "function", "slowA", "{}"),
+                new AssistantMessage.ToolCall("2", "function", "slowB", "{}"),
+                new AssistantMessage.ToolCall("3", "function", "slowC", "{}"));
+        List<ToolCallback> toolCallbacks = List.of(sleepingTool("slowA", 600), sleepingTool("slowB", 300), sleepingTool("slowC", 100));
+
+        long start = System.currentTimeMillis();
+        List<ToolResponseMessage.ToolResponse> responses = executor.execute(toolCalls, toolCallbacks);
+        long elapsed = System.currentTimeMillis() - start;
+
+        System.out.println("三个工具并行耗时: " + elapsed + " ms");
+        assertTrue(elapsed < 1000);
+        assertEquals(List.of("1", "2", "3"), responses.stream().map(ToolResponseMessage.ToolResponse::id).toList());
+        assertEquals("slowA-done", responses.get(0).responseData());
+    }
+
+    @Test
+    void timeoutDoesNotBlockOtherCalls() {
+        List<AssistantMessage.ToolCall> toolCalls = List.of(
+                new AssistantMessage.ToolCall("1", "function", "hang", "{}"),
+                new AssistantMessage.ToolCall("2", "function", "fast", "{}"));
+        List<ToolCallback> toolCallbacks = List.of(sleepingTool("hang", 10_000), sleepingTool("fast", 10));
+
+        List<ToolResponseMessage.ToolResponse> responses = executor.execute(toolCalls, toolCallbacks);
+
+        assertTrue(responses.get(0).responseData().startsWith("工具执行超时"));
+        assertEquals("fast-done", responses.get(1).responseData());
+    }
+
+    private ToolCallback sleepingTool(String name, long sleepMillis) {
+        ToolDefinition toolDefinition = ToolDefinition.builder()
+                .name(name)
+                .description(name)
+                .inputSchema("{}")
+                .build();
+        return new ToolCallback() {
+            @Override
+            public ToolDefinition getToolDefinition() {
+                return toolDefinition;
+            }
+
+            @Override
+            public String call(String toolInput) {
+                try {
+                    Thread.sleep(sleepMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return name + "-interrupted";
+                }
+                return name + "-done";
+            }
+        };
+    }
+}
@@ -0,0 +1,179 @@
+package com.ly.cookbook.agent;
+
+import com.ly.cookbook.enums.SummaryModeEnum;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.memory.MessageWindowChatMemory;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.tool.ToolCallback;
+import org.springframework.ai.tool.definition.ToolDefinition;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PlanExecuteAgentTest {
+
+    private static final String PLAN = """
+            ```json
+            {"tasks": [
+              {"id": "t1", "tool": "searchSimple", "arguments": {"query": "红烧肉 做法"}, "dependsOn": []},
+              {"id": "t2", "tool": "fetchWebPageText", "arguments": {"url": "https://a.com"}, "dependsOn": []},
+              {"id": "t3", "tool": "writeText", "arguments": {"fileName": "a.txt", "content": "{{t1}}"}, "dependsOn": ["t1"]}
+            ]}
+            ```
+            """;
+
+    private final AtomicInteger modelCalls = new AtomicInteger();
+
+    private String plan = PLAN;
+
+    private final ChatModel chatModel = new ChatModel() {
+        @Override
+        public ChatResponse call(Prompt prompt) {
+            modelCalls.incrementAndGet();
+            return new ChatResponse(List.of(new Generation(new AssistantMessage("红烧肉总结"))));
+        }
+
+        @Override
+        public Flux<ChatResponse> stream(Prompt prompt) {
+            modelCalls.incrementAndGet();
+            return Flux.just(new ChatResponse(List.of(new Generation(new AssistantMessage(plan)))));
+        }
+    };
+
+    @Test
+    void planExecuteAndSummarizeWithTwoModelCalls() {
+        AgentRunContext context = new AgentRunContext("c1", "红烧肉怎么做", null);
+        PlanExecuteAgent agent = new PlanExecuteAgent(
+                new ToolCallback[]{echoTool("searchSimple"), echoTool("fetchWebPageText"), echoTool("writeText")},
+                new ParallelToolExecutor(4, Duration.ofSeconds(5)), chatModel,
+                MessageWindowChatMemory.builder().maxMessages(10).build());
+
+        agent.run(context);
+        String answer = agent.finalSummaryBySync(context);
+
+        assertEquals("红烧肉总结", answer);
+        assertEquals(2, modelCalls.get());
+        List<ToolResponseMessage> toolResponses = context.getChatMessage().stream()
+                .filter(ToolResponseMessage.class::isInstance)
+                .map(ToolResponseMessage.class::cast)
+                .toList();
+        // 全部工具响应按计划顺序记录，依赖 t1 的任务参数中带有 t1 的结果
+        assertEquals(1, toolResponses.size());
+        assertEquals(List.of("t1", "t2", "t3"), toolResponses.get(0).getResponses().stream()
+                .map(ToolResponseMessage.ToolResponse::id).toList());
+        assertTrue(toolResponses.get(0).getResponses().get(2).responseData().contains("searchSimple:"));
+    }
+
+    @Test
+    void dependentTaskStartsWithoutWaitingForUnrelatedSlowTask() {
+        plan = """
+                {"tasks": [
+                  {"id": "t1", "tool": "searchSimple", "arguments": {"query": "红烧肉"}, "dependsOn": []},
+                  {"id": "t2", "tool": "readText", "arguments": {"fileName": "a.txt"}, "dependsOn": []},
+                  {"id": "t3", "tool": "writeText", "arguments": {"content": "{{t1}}"}, "dependsOn": ["t1"]}
+                ]}
+                """;
+        CountDownLatch dependentStarted = new CountDownLatch(1);
+        // 慢任务 t2 等到依赖 t1 的 t3 开始执行才结束，分批执行时 t3 要等 t2 结束，t2 只能等到超时
+        ToolCallback slowTool = tool("readText", input -> await(dependentStarted) ? "released" : "timeout");
+        ToolCallback dependentTool = tool("writeText", input -> {
+            dependentStarted.countDown();
+            return "written";
+        });
+        AgentRunContext context = new AgentRunContext("c1", "红烧肉怎么做", null);
+        PlanExecuteAgent agent = new PlanExecuteAgent(new ToolCallback[]{echoTool("searchSimple"), slowTool, dependentTool},
+                new ParallelToolExecutor(4, Duration.ofSeconds(5)), chatModel,
+                MessageWindowChatMemory.builder().maxMessages(10).build());
+
+        agent.run(context);
+
+        ToolResponseMessage toolResponses = context.getChatMessage().stream()
+                .filter(ToolResponseMessage.class::isInstance)
+                .map(ToolResponseMessage.class::cast)
+                .findFirst()
+                .orElseThrow();
+        assertEquals("released", toolResponses.getResponses().get(1).responseData());
+        assertEquals("written", toolResponses.getResponses().get(2).responseData());
+    }
+
+    @Test
+    void dependentTaskIsSkippedWhenDependencyHasNoResult() {
+        plan = """
+                {"tasks": [
+                  {"id": "t1", "tool": "searchSimple", "arguments": {"query": "红烧肉"}, "dependsOn": []},
+                  {"id": "t2", "tool": "writeText", "arguments": {"content": "{{t1}}"}, "dependsOn": ["t1"]},
+                  {"id": "t3", "tool": "readText", "arguments": {"fileName": "{{t2}}"}, "dependsOn": ["t2"]}
+                ]}
+                """;
+        AtomicInteger dependentCalls = new AtomicInteger();
+        ToolCallback dependentTool = tool("writeText", input -> "written:" + dependentCalls.incrementAndGet());
+        AgentRunContext context = new AgentRunContext("c1", "红烧肉怎么做", null);
+        PlanExecuteAgent agent = new PlanExecuteAgent(new ToolCallback[]{tool("searchSimple", input -> null),
+                dependentTool, echoTool("readText")},
+                new ParallelToolExecutor(4, Duration.ofSeconds(5)), chatModel,
+                MessageWindowChatMemory.builder().maxMessages(10).build());
+
+        agent.run(context);
+
+        ToolResponseMessage toolResponses = context.getChatMessage().stream()
+                .filter(ToolResponseMessage.class::isInstance)
+                .map(ToolResponseMessage.class::cast)
+                .findFirst()
+                .orElseThrow();
+        assertEquals(0, dependentCalls.get());
+        assertEquals("依赖任务 t1 没有结果，未执行", toolResponses.getResponses().get(1).responseData());
+        assertEquals("依赖任务 t2 没有结果，未执行", toolResponses.getResponses().get(2).responseData());
+    }
+
+    @Test
+    void dropUnknownDependenciesAndCycles() throws Exception {
+        PlanExecuteAgent agent = new PlanExecuteAgent(new ToolCallback[]{echoTool("searchSimple")},
+                new ParallelToolExecutor(), chatModel, MessageWindowChatMemory.builder().maxMessages(10).build());
+
+        AgentPlan plan = agent.parsePlan("""
+                {"tasks": [{"id": "t1", "tool": "searchSimple", "arguments": {}, "dependsOn": ["t1", "t9"]}]}
+                """);
+
+        assertTrue(plan.getTasks().get(0).getDependsOn().isEmpty());
+    }
+
+    private ToolCallback echoTool(String name) {
+        return tool(name, toolInput -> name + ":" + toolInput);
+    }
+
+    private ToolCallback tool(String name, Function<String, String> function) {
+        ToolDefinition toolDefinition = ToolDefinition.builder().name(name).description(name).inputSchema("{}").build();
+        return new ToolCallback() {
+            @Override
+            public ToolDefinition getToolDefinition() {
+                return toolDefinition;
+            }
+
+            @Override
+            public String call(String toolInput) {
+                return function.apply(toolInput);
+            }
+        };
+    }
+
+    private static boolean await(CountDownLatch latch) {
+        try {
+            return latch.await(2, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package com.ly.cookbook.cache;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChatResponseCacheTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    // 不连接 Redis，Redis 访问失败时退化为本地缓存
+    private final ChatResponseCache cache = new ChatResponseCache(true, 100, Duration.ofMinutes(1), Duration.ofHours(1),
+            8000, 4, null, meterRegistry);
+
+    @Test
+    void normalizeIgnoresWidthCaseWhitespaceAndTrailingPunctuation() {
+        assertEquals(ChatResponseCache.normalize("西红柿炒鸡蛋怎么做"), ChatResponseCache.normalize("  西红柿炒鸡蛋怎么做？ "));
+        assertEquals(ChatResponseCache.normalize("Pasta  recipe"), ChatResponseCache.normalize("ｐａｓｔａ recipe!"));
+        assertNotEquals(cache.buildKey("scope-a", "西红柿炒鸡蛋"), cache.buildKey("scope-b", "西红柿炒鸡蛋"));
+    }
+
+    @Test
+    void concurrentIdenticalRequestsCallModelOnce() throws Exception {
+        String key = cache.buildKey("scope", "西红柿炒鸡蛋怎么做");
+        AtomicInteger modelCalls = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+
+        CompletableFuture<String> leader = CompletableFuture.supplyAsync(() -> cache.getOrLoad(key, () -> {
+            modelCalls.incrementAndGet();
+            await(release);
+            return "先炒鸡蛋再炒西红柿";
+        }));
+        while (meterRegistry.find("cookbook.chat.cache").tag("result", "miss").counter() == null) {
+            Thread.sleep(5);
+        }
+        CompletableFuture<String> follower = CompletableFuture.supplyAsync(() -> cache.getOrLoad(key, () -> {
+            modelCalls.incrementAndGet();
+            return "不应调用";
+        }));
+        while (meterRegistry.find("cookbook.chat.cache").tag("result", "coalesced").counter() == null) {
+            Thread.sleep(5);
+        }
+        release.countDown();
+
+        assertEquals("先炒鸡蛋再炒西红柿", leader.get(5, TimeUnit.SECONDS));
+        assertEquals("先炒鸡蛋再炒西红柿", follower.get(5, TimeUnit.SECONDS));
+        assertEquals("先炒鸡蛋再炒西红柿", cache.getOrLoad(key, () -> "不应调用"));
+        assertEquals(1, modelCalls.get());
+    }
+
+    @Test
+    void streamHitIsReplayedAsChunksWithoutUsage() {
+        String key = cache.buildKey("scope", "红烧肉怎么做");
+        List<ChatResponse> first = cache.getOrStream(key, () -> Flux.just(response("红烧肉"), response("先焯水再炒糖色")))
+                .collectList().block();
+        assertEquals(2, first.size());
+
+        List<ChatResponse> replayed = cache.getOrStream(key, () -> Flux.error(new IllegalStateException("不应调用")))
+                .collectList().block();
+        assertEquals(List.of("红烧肉先", "焯水再炒", "糖色"), replayed.stream().map(r -> r.getResult().getOutput().getText()).toList());
+        assertEquals("hit", replayed.get(0).getMetadata().get(ChatResponseCache.CACHE_METADATA_KEY));
+        assertEquals(0, replayed.get(0).getMetadata().getUsage().getTotalTokens());
+    }
+
+    @Test
+    void answersThatExecutedToolsAreNotCached() {
+        String key = cache.buildKey("scope", "把菜谱写入文件");
+        AtomicInteger modelCalls = new AtomicInteger();
+
+        assertEquals("已写入", cache.getOrLoad(key, () -> {
+            modelCalls.incrementAndGet();
+            return "已写入";
+        }, () -> false));
+        List<ChatResponse> streamed = cache.getOrStream(key, () -> {
+            modelCalls.incrementAndGet();
+            return Flux.just(response("已写入"));
+        }, () -> false).collectList().block();
+
+        assertEquals(1, streamed.size());
+        assertNull(cache.get(key));
+        assertEquals(2, modelCalls.get());
+        assertEquals(2, meterRegistry.find("cookbook.chat.cache").tag("result", "uncacheable").counter().count());
+    }
+
+    @Test
+    void loaderThrowingSynchronouslyDoesNotLeaveLeaderInFlight() {
+        String key = cache.buildKey("scope", "鱼香肉丝怎么做");
+
+        assertThrows(IllegalStateException.class, () -> cache.getOrStream(key, () -> {
+            throw new IllegalStateException("模型不可用");
+        }).blockLast(Duration.ofSeconds(5)));
+
+        // 首个请求的占位已移除，再次请求直接调用模型而不是等待失败的首个请求
+        List<ChatResponse> streamed = cache.getOrStream(key, () -> Flux.just(response("先切丝再调鱼香汁")))
+                .collectList().block(Duration.ofSeconds(5));
+        assertEquals(1, streamed.size());
+        assertEquals("先切丝再调鱼香汁", cache.get(key));
+    }
+
+    private static ChatResponse response(String text) {
+        return new ChatResponse(List.of(new Generation(new AssistantMessage(text))));
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.ly.cookbook.cache;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HnswIndexTest {
+
+    @Test
+    void searchFindsNearestNeighbourForMostQueries() {
+        Random random = new Random(42);
+        HnswIndex index = new HnswIndex(16, 64);
+        float[][] vectors = new float[2000][];
+        for (int i = 0; i < vectors.length; i++) {
+            vectors[i] = HnswIndex.normalize(randomVector(random, 32));
+            assertEquals(i, index.add(vectors[i]));
+        }
+        int found = 0;
+        for (int q = 0; q < 200; q++) {
+            float[] query = HnswIndex.normalize(randomVector(random, 32));
+            int expected = 0;
+            double best = -2;
+            for (int i = 0; i < vectors.length; i++) {
+                double dot = dot(query, vectors[i]);
+                if (dot > best) {
+                    best = dot;
+                    expected = i;
+                }
+            }
+            if (index.search(query, 1, 64).get(0).id() == expected) {
+                found++;
+            }
+        }
+        assertTrue(found >= 180, "recall@1 过低: " + found + "/200");
+    }
+
+    @Test
+    void removedVectorsAreExcludedFromResults() {
+        HnswIndex index = new HnswIndex(4, 16);
+        int first = index.add(new float[]{1, 0});
+        int second = index.add(new float[]{0.9f, 0.1f});
+        index.add(new float[]{0, 1});
+
+        assertEquals(first, index.search(new float[]{1, 0}, 1, 16).get(0).id());
+        index.remove(first);
+        List<HnswIndex.Result> results = index.search(new float[]{1, 0}, 1, 16);
+        assertEquals(second, results.get(0).id());
+        assertEquals(1, index.deletedCount());
+        assertEquals(3, index.size());
+    }
+
+    private static float[] randomVector(Random random, int dimensions) {
+        float[] vector = new float[dimensions];
+        for (int i = 0; i < dimensions; i++) {
+            vector[i] = (float) random.nextGaussian();
+        }
+        return vector;
+    }
+
+    private static double dot(float[] a, float[] b) {
+        double dot = 0;
+        for (int i = 0; i < a.length; i++) {
+            dot += a[i] * b[i];
+        }
+        return dot;
+    }
+}
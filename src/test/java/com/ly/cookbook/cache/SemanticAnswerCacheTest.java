@@ -0,0 +1,141 @@
+package com.ly.cookbook.cache;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import reactor.core.publisher.Flux;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SemanticAnswerCacheTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final HashingEmbeddingModel embeddingModel = new HashingEmbeddingModel(256);
+
+    @Test
+    void paraphrasedQuestionHitsWithinSameScope() {
+        SemanticAnswerCache cache = newCache(Duration.ofHours(1), 100, null);
+        cache.put("scope", "红烧肉做法", "五花肉焯水后炒糖色再炖");
+
+        assertEquals("五花肉焯水后炒糖色再炖", cache.get("scope", "怎么做红烧肉？"));
+        assertNull(cache.get("scope", "红烧鱼做法"));
+        assertNull(cache.get("other-scope", "怎么做红烧肉"));
+        assertEquals(1.0, meterRegistry.get("cookbook.semantic.cache").tag("result", "hit").counter().count());
+    }
+
+    @Test
+    void otherScopesDoNotCrowdOutOwnEntry() {
+        SemanticAnswerCache cache = newCache(Duration.ofHours(1), 100, null);
+        cache.put("agent:YiCookAgent:1", "红烧肉怎么做", "用户 1 的回答");
+        // 其他用户的同一个问题，相似度相同甚至更高
+        for (int userId = 2; userId <= 20; userId++) {
+            cache.put("agent:YiCookAgent:" + userId, "红烧肉怎么做？", "用户 " + userId + " 的回答");
+        }
+
+        assertEquals("用户 1 的回答", cache.get("agent:YiCookAgent:1", "红烧肉怎么做？"));
+        assertNull(cache.get("agent:YiCookAgent:21", "红烧肉怎么做？"));
+    }
+
+    @Test
+    void getOrLoadCallsLoaderOnlyOnMiss() {
+        SemanticAnswerCache cache = newCache(Duration.ofHours(1), 100, null);
+        AtomicInteger loads = new AtomicInteger();
+
+        assertEquals("先炒鸡蛋", cache.getOrLoad("scope", "西红柿炒鸡蛋怎么做", () -> {
+            loads.incrementAndGet();
+            return "先炒鸡蛋";
+        }));
+        assertEquals("先炒鸡蛋", cache.getOrLoad("scope", "西红柿炒鸡蛋的做法", () -> "不应调用"));
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void streamMissIsStoredAndReplayedOnParaphrase() {
+        SemanticAnswerCache cache = newCache(Duration.ofHours(1), 100, null);
+        Flux<ChatResponse> model = Flux.just("糖醋", "排骨").map(SemanticAnswerCacheTest::response);
+
+        assertEquals("糖醋排骨", join(cache.getOrStream("scope", "糖醋排骨做法", () -> model)));
+        assertEquals("糖醋排骨", join(cache.getOrStream("scope", "糖醋排骨怎么做", Flux::empty)));
+    }
+
+    @Test
+    void expiredEntriesAreNotReturned() throws InterruptedException {
+        SemanticAnswerCache cache = newCache(Duration.ofMillis(50), 100, null);
+        cache.put("scope", "红烧肉做法", "炖");
+        Thread.sleep(100);
+
+        assertNull(cache.get("scope", "红烧肉做法"));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void manyExpiredEntriesAreRemovedInOneLookup() throws InterruptedException {
+        SemanticAnswerCache cache = newCache(Duration.ofMillis(200), 1000, null);
+        // 过期条目数超过重建阈值 max(size / 2, 64)，一次查询内全部删除，重建只发生在删除完成之后
+        for (int i = 0; i < 100; i++) {
+            cache.put("scope", "红烧肉做法" + i, "旧回答" + i);
+        }
+        Thread.sleep(300);
+        cache.put("scope", "宫保鸡丁做法", "新回答");
+
+        // 候选全部过期：删除全部过期条目后重新查询
+        assertNull(cache.get("scope", "红烧肉做法"));
+        assertEquals(1, cache.size());
+        assertEquals("新回答", cache.get("scope", "宫保鸡丁做法"));
+    }
+
+    @Test
+    void leastRecentlyUsedEntryIsEvicted() {
+        SemanticAnswerCache cache = newCache(Duration.ofHours(1), 2, null);
+        cache.put("scope", "红烧肉做法", "红烧肉");
+        cache.put("scope", "宫保鸡丁做法", "宫保鸡丁");
+        assertNotNull(cache.get("scope", "红烧肉做法"));
+        cache.put("scope", "麻婆豆腐做法", "麻婆豆腐");
+
+        assertEquals(2, cache.size());
+        assertEquals("红烧肉", cache.get("scope", "红烧肉做法"));
+        assertNull(cache.get("scope", "宫保鸡丁做法"));
+    }
+
+    @Test
+    void snapshotRestoresEntriesAndIgnoresOtherEmbedder(@TempDir Path dir) {
+        Path snapshot = dir.resolve("semantic-cache.snapshot");
+        SemanticAnswerCache cache = newCache(Duration.ofHours(1), 100, snapshot);
+        cache.put("scope", "红烧肉做法", "五花肉焯水后炒糖色再炖");
+        cache.snapshot();
+
+        SemanticAnswerCache restored = newCache(Duration.ofHours(1), 100, snapshot);
+        restored.loadSnapshot();
+        assertEquals(1, restored.size());
+        assertEquals("五花肉焯水后炒糖色再炖", restored.get("scope", "怎么做红烧肉"));
+
+        SemanticAnswerCache otherEmbedder = new SemanticAnswerCache(embeddingModel, "other", 0.8, Duration.ofHours(1),
+                100, 4, snapshot, meterRegistry);
+        otherEmbedder.loadSnapshot();
+        assertEquals(0, otherEmbedder.size());
+    }
+
+    private SemanticAnswerCache newCache(Duration ttl, int maxEntries, Path snapshot) {
+        return new SemanticAnswerCache(embeddingModel, "local-hashing:256", 0.8, ttl, maxEntries, 4, snapshot, meterRegistry);
+    }
+
+    private static ChatResponse response(String text) {
+        return new ChatResponse(List.of(new Generation(new AssistantMessage(text))));
+    }
+
+    private static String join(Flux<ChatResponse> responses) {
+        return responses.map(chatResponse -> chatResponse.getResult().getOutput().getText())
+                .collect(Collectors.joining())
+                .block();
+    }
+}
@@ -0,0 +1,36 @@
+package com.ly.cookbook.cache;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ToolResultCacheTest {
+
+    @Test
+    void canonicalizeIgnoresKeyOrderWhitespaceAndNulls() {
+        String a = ToolResultCache.canonicalize("{\"query\": \" 红烧肉 做法 \", \"numResults\": 10}");
+        String b = ToolResultCache.canonicalize("{\"numResults\":10,\"query\":\"红烧肉 做法\",\"extra\":null}");
+        assertEquals(a, b);
+    }
+
+    @Test
+    void cacheOnlyReadOnlyToolsAndSuccessfulResults() {
+        // 不连接 Redis，Redis 访问失败时退化为本地缓存
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        ToolResultCache cache = new ToolResultCache(true, 100, Duration.ofMinutes(1), null, meterRegistry);
+
+        assertTrue(cache.isCacheable("searchSimple"));
+        assertFalse(cache.isCacheable("executeCommand"));
+        assertFalse(cache.isCacheable("doTerminate"));
+
+        cache.put("fetchWebPageText", "{\"url\":\"https://a.com\"}", "抓取网页失败！URL: https://a.com");
+        assertNull(cache.get("fetchWebPageText", "{\"url\":\"https://a.com\"}"));
+
+        cache.put("searchSimple", "{\"query\":\"红烧肉 做法\"}", "搜索结果...");
+        assertEquals("搜索结果...", cache.get("searchSimple", "{ \"query\" : \"红烧肉 做法\" }"));
+        assertEquals(1.0, meterRegistry.counter("cookbook.tool.cache", "tool", "searchSimple", "result", "local_hit").count());
+    }
+}
@@ -0,0 +1,78 @@
+package com.ly.cookbook.chatmodel;
+
+import com.ly.cookbook.limiter.AdaptiveConcurrencyLimiter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.Prompt;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AdaptiveConcurrencyChatModelTest {
+
+    private final AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(10, 2, 32);
+
+    private final Sinks.Many<ChatResponse> sink = Sinks.many().unicast().onBackpressureBuffer();
+
+    private final AdaptiveConcurrencyChatModel chatModel = new AdaptiveConcurrencyChatModel(new ChatModel() {
+        @Override
+        public ChatResponse call(Prompt prompt) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Flux<ChatResponse> stream(Prompt prompt) {
+            return sink.asFlux();
+        }
+    }, limiter, Duration.ZERO, new SimpleMeterRegistry());
+
+    @Test
+    void streamHoldsPermitUntilCompletion() {
+        List<String> chunks = new ArrayList<>();
+        chatModel.stream(new Prompt("你好")).subscribe(response -> chunks.add(response.getResult().getOutput().getText()));
+
+        sink.tryEmitNext(response("红烧肉"));
+        assertEquals(List.of("红烧肉"), chunks);
+        assertEquals(1, limiter.getInFlight());
+
+        sink.tryEmitComplete();
+        assertEquals(0, limiter.getInFlight());
+        assertEquals(10, limiter.getLimit());
+    }
+
+    @Test
+    void errorAfterFirstChunkBacksOff() {
+        chatModel.stream(new Prompt("你好")).subscribe(response -> {
+        }, e -> {
+        });
+
+        sink.tryEmitNext(response("红烧肉"));
+        sink.tryEmitError(new IllegalArgumentException("连接中断"));
+
+        assertEquals(0, limiter.getInFlight());
+        assertEquals(9, limiter.getLimit());
+    }
+
+    @Test
+    void cancelReleasesPermitWithoutAdjustingLimit() {
+        chatModel.stream(new Prompt("你好")).take(1).subscribe();
+
+        sink.tryEmitNext(response("红烧肉"));
+
+        assertEquals(0, limiter.getInFlight());
+        assertEquals(10, limiter.getLimit());
+    }
+
+    private static ChatResponse response(String text) {
+        return new ChatResponse(List.of(new Generation(new AssistantMessage(text))));
+    }
+}
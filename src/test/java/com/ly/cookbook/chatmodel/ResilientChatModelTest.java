@@ -0,0 +1,211 @@
+package com.ly.cookbook.chatmodel;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.model.tool.ToolCallingChatOptions;
+import org.springframework.ai.retry.TransientAiException;
+import org.springframework.ai.tool.ToolCallback;
+import org.springframework.ai.tool.function.FunctionToolCallback;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ResilientChatModelTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    void retryTransientFailureThenSucceed() {
+        StubChatModel stub = new StubChatModel(i -> i < 2 ? Behavior.fail(new TransientAiException("503")) : Behavior.ok(0));
+        ResilientChatModel chatModel = resilient(stub, closedBreaker(), null, 3, 0);
+
+        assertEquals("response-2", text(chatModel.call(new Prompt("你好"))));
+        assertEquals(3, stub.calls.get());
+        assertEquals(2.0, meterRegistry.get("cookbook.llm.resilience.retry").counter().count());
+    }
+
+    @Test
+    void doNotRetryRequestError() {
+        StubChatModel stub = new StubChatModel(i -> Behavior.fail(new IllegalArgumentException("invalid parameter")));
+        ResilientChatModel chatModel = resilient(stub, closedBreaker(), null, 3, 0);
+
+        assertThrows(IllegalArgumentException.class, () -> chatModel.call(new Prompt("你好")));
+        assertEquals(1, stub.calls.get());
+    }
+
+    @Test
+    void hedgeSlowCall() {
+        // 前 20 次调用建立响应时间基线，第 21 次调用很慢，对冲调用先返回
+        StubChatModel stub = new StubChatModel(i -> Behavior.ok(i == 20 ? 5_000 : 5));
+        ResilientChatModel chatModel = resilient(stub, closedBreaker(), null, 1, 0.95);
+        for (int i = 0; i < 20; i++) {
+            chatModel.call(new Prompt("你好"));
+        }
+
+        long start = System.nanoTime();
+        assertEquals("response-21", text(chatModel.call(new Prompt("你好"))));
+        assertTrue(Duration.ofNanos(System.nanoTime() - start).compareTo(Duration.ofSeconds(2)) < 0);
+        assertEquals(1.0, meterRegistry.get("cookbook.llm.resilience.hedge").tag("result", "hedge").counter().count());
+    }
+
+    @Test
+    void openCircuitAndFallBackToSecondaryModel() {
+        StubChatModel stub = new StubChatModel(i -> Behavior.fail(new TransientAiException("503")));
+        stub.healthyModel = "qwen-plus";
+        ChatModelCircuitBreaker breaker = new ChatModelCircuitBreaker(0.5, 4, 4, Duration.ofMinutes(1), 1);
+        ResilientChatModel chatModel = resilient(stub, breaker, "qwen-plus", 1, 0);
+        for (int i = 0; i < 4; i++) {
+            assertThrows(TransientAiException.class, () -> chatModel.call(new Prompt("你好")));
+        }
+        assertEquals(ChatModelCircuitBreaker.State.OPEN, breaker.getState());
+
+        assertEquals("response-4", text(chatModel.call(new Prompt("你好"))));
+        assertEquals("qwen-plus", stub.models.stream().reduce((first, second) -> second).orElse(null));
+        assertEquals(1.0, meterRegistry.get("cookbook.llm.resilience.fallback").counter().count());
+    }
+
+    @Test
+    void retryStreamOnlyBeforeFirstChunk() {
+        StubChatModel stub = new StubChatModel(i -> i == 0 ? Behavior.fail(new TransientAiException("503")) : Behavior.ok(0));
+        ResilientChatModel chatModel = resilient(stub, closedBreaker(), null, 3, 0);
+        assertEquals(2, chatModel.stream(new Prompt("你好")).collectList().block().size());
+        assertEquals(2, stub.calls.get());
+
+        StubChatModel brokenMidway = new StubChatModel(i -> Behavior.ok(0));
+        brokenMidway.failAfterFirstChunk = true;
+        ResilientChatModel midwayChatModel = resilient(brokenMidway, closedBreaker(), null, 3, 0);
+        assertThrows(TransientAiException.class, () -> midwayChatModel.stream(new Prompt("你好")).collectList().block());
+        assertEquals(1, brokenMidway.calls.get());
+    }
+
+    @Test
+    void promptWithInternalToolExecutionIsNeitherHedgedNorRetried() {
+        AtomicInteger toolCalls = new AtomicInteger();
+        ToolCallback writeText = FunctionToolCallback.builder("writeText", (String input) -> {
+                    toolCalls.incrementAndGet();
+                    return "已写入";
+                })
+                .inputType(String.class)
+                .build();
+        // 前 20 次调用建立响应时间基线；带工具的调用先执行工具，之后很慢并以可重试的错误失败
+        StubChatModel stub = new StubChatModel(i -> i < 20 ? Behavior.ok(5) : new Behavior(300, new TransientAiException("503")));
+        ResilientChatModel chatModel = resilient(stub, closedBreaker(), null, 3, 0.95);
+        for (int i = 0; i < 20; i++) {
+            chatModel.call(new Prompt("你好"));
+        }
+
+        Prompt toolPrompt = new Prompt("把红烧肉菜谱写入文件", ToolCallingChatOptions.builder().toolCallbacks(writeText).build());
+        assertThrows(TransientAiException.class, () -> chatModel.call(toolPrompt));
+        assertThrows(TransientAiException.class, () -> chatModel.stream(toolPrompt).collectList().block());
+
+        assertEquals(2, toolCalls.get());
+        assertEquals(22, stub.calls.get());
+        assertEquals(0.0, meterRegistry.get("cookbook.llm.resilience.retry").counter().count());
+    }
+
+    private ResilientChatModel resilient(ChatModel delegate, ChatModelCircuitBreaker breaker, String fallbackModel,
+                                         int maxAttempts, double hedgePercentile) {
+        return new ResilientChatModel(delegate, breaker, fallbackModel, maxAttempts, Duration.ofMillis(1),
+                Duration.ofMillis(5), hedgePercentile, Duration.ofMillis(50), Duration.ofSeconds(5), meterRegistry);
+    }
+
+    private ChatModelCircuitBreaker closedBreaker() {
+        return new ChatModelCircuitBreaker(0.5, 100, 100, Duration.ofMinutes(1), 1);
+    }
+
+    private static String text(ChatResponse chatResponse) {
+        return chatResponse.getResult().getOutput().getText();
+    }
+
+    private record Behavior(long latencyMillis, RuntimeException failure) {
+
+        static Behavior ok(long latencyMillis) {
+            return new Behavior(latencyMillis, null);
+        }
+
+        static Behavior fail(RuntimeException failure) {
+            return new Behavior(0, failure);
+        }
+    }
+
+    /**
+     * 本地桩模型：按调用序号注入延迟与错误，healthyModel 指定的模型总是成功
+     */
+    private static class StubChatModel implements ChatModel {
+
+        private final IntFunction<Behavior> behaviors;
+
+        private final AtomicInteger calls = new AtomicInteger();
+
+        private final Queue<String> models = new ConcurrentLinkedQueue<>();
+
+        private String healthyModel;
+
+        private boolean failAfterFirstChunk;
+
+        StubChatModel(IntFunction<Behavior> behaviors) {
+            this.behaviors = behaviors;
+        }
+
+        @Override
+        public ChatResponse call(Prompt prompt) {
+            int index = calls.getAndIncrement();
+            callTools(prompt);
+            String model = prompt.getOptions() == null ? null : prompt.getOptions().getModel();
+            models.add(String.valueOf(model));
+            Behavior behavior = healthyModel != null && healthyModel.equals(model) ? Behavior.ok(0) : behaviors.apply(index);
+            if (behavior.latencyMillis() > 0) {
+                try {
+                    Thread.sleep(behavior.latencyMillis());
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException("cancelled", e);
+                }
+            }
+            if (behavior.failure() != null) {
+                throw behavior.failure();
+            }
+            return response("response-" + index);
+        }
+
+        @Override
+        public Flux<ChatResponse> stream(Prompt prompt) {
+            return Flux.defer(() -> {
+                int index = calls.getAndIncrement();
+                callTools(prompt);
+                Behavior behavior = behaviors.apply(index);
+                if (behavior.failure() != null) {
+                    return Flux.error(behavior.failure());
+                }
+                if (failAfterFirstChunk) {
+                    return Flux.concat(Flux.just(response("chunk-1")), Flux.error(new TransientAiException("503")));
+                }
+                return Flux.just(response("chunk-1"), response("chunk-2"));
+            });
+        }
+
+        /**
+         * 模拟模型在调用内部执行工具
+         */
+        private static void callTools(Prompt prompt) {
+            if (prompt.getOptions() instanceof ToolCallingChatOptions options) {
+                options.getToolCallbacks().forEach(toolCallback -> toolCallback.call("\"红烧肉\""));
+            }
+        }
+
+        private static ChatResponse response(String text) {
+            return new ChatResponse(List.of(new Generation(new AssistantMessage(text))));
+        }
+    }
+}
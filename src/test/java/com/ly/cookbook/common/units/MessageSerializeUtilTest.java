@@ -0,0 +1,40 @@
+package com.ly.cookbook.common.units;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.MessageType;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MessageSerializeUtilTest {
+
+    @Test
+    void roundTripKeepsToolCallsAndResponses() {
+        List<Message> messages = List.of(
+                new UserMessage("红烧肉怎么做"),
+                new AssistantMessage("先搜索做法", Map.of(), List.of(
+                        new AssistantMessage.ToolCall("call-1", "function", "searchSimple", "{\"query\":\"红烧肉\"}"))),
+                new ToolResponseMessage(List.of(
+                        new ToolResponseMessage.ToolResponse("call-1", "searchSimple", "五花肉切块，冰糖炒色"))),
+                new AssistantMessage("红烧肉的做法如下"));
+
+        List<Message> restored = MessageSerializeUtil.fromJson(MessageSerializeUtil.toJson(messages));
+
+        assertEquals(4, restored.size());
+        assertEquals(MessageType.USER, restored.get(0).getMessageType());
+        assertEquals("红烧肉怎么做", restored.get(0).getText());
+        AssistantMessage.ToolCall toolCall = ((AssistantMessage) restored.get(1)).getToolCalls().get(0);
+        assertEquals("call-1", toolCall.id());
+        assertEquals("searchSimple", toolCall.name());
+        assertEquals("{\"query\":\"红烧肉\"}", toolCall.arguments());
+        ToolResponseMessage.ToolResponse response = ((ToolResponseMessage) restored.get(2)).getResponses().get(0);
+        assertEquals("五花肉切块，冰糖炒色", response.responseData());
+        assertFalse(((AssistantMessage) restored.get(3)).hasToolCalls());
+    }
+}
@@ -0,0 +1,240 @@
+package com.ly.cookbook.controller;
+
+import com.ly.cookbook.config.AsyncWebConfiguration;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.boot.SpringBootConfiguration;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.http.HttpMessageConvertersAutoConfiguration;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.boot.autoconfigure.web.servlet.DispatcherServletAutoConfiguration;
+import org.springframework.boot.autoconfigure.web.servlet.ServletWebServerFactoryAutoConfiguration;
+import org.springframework.boot.autoconfigure.web.servlet.WebMvcAutoConfiguration;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.embedded.tomcat.TomcatServletWebServerFactory;
+import org.springframework.boot.web.server.WebServerFactoryCustomizer;
+import org.springframework.boot.web.servlet.context.ServletWebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * SseEmitter 订阅转发与响应式 Flux 返回两种 SSE 写法的连接容量压测。
+ * 模型流在少量共享线程上推送分片（模拟 Netty 事件循环），先建立一批不读取数据的慢连接，
+ * 再测量正常客户端能否按时收完整个流：SseEmitter 写法在推送线程上阻塞写出，慢连接会占满推送线程；
+ * 响应式写法由 Spring MVC 按需请求，写出阻塞只影响该连接自己。
+ * 需要监听本地端口且耗时较长，默认不运行：mvn test -Dtest=ChatStreamLoadTest -DloadTest=true
+ */
+@EnabledIfSystemProperty(named = "loadTest", matches = "true")
+class ChatStreamLoadTest {
+
+    private static final int CHUNKS = 2_000;
+    private static final String CHUNK = "红烧肉".repeat(100);
+    private static final int SLOW_CLIENTS = 200;
+    private static final int FAST_CLIENTS = 50;
+    private static final long DEADLINE_SECONDS = 10;
+
+    private static final Scheduler MODEL_IO = Schedulers.newParallel("model-io", 4);
+    private static final AtomicLong PRODUCED = new AtomicLong();
+
+    private static ConfigurableApplicationContext context;
+    private static int port;
+
+    @BeforeAll
+    static void startServer() {
+        context = new SpringApplicationBuilder(LoadTestApplication.class)
+                .web(WebApplicationType.SERVLET)
+                .properties("server.port=0")
+                .run();
+        port = ((ServletWebServerApplicationContext) context).getWebServer().getPort();
+    }
+
+    @AfterAll
+    static void stopServer() {
+        context.close();
+        MODEL_IO.dispose();
+    }
+
+    @Test
+    void fluxKeepsServingWhileSlowClientsAreConnected() throws Exception {
+        Result emitter = run("/load/emitter");
+        Result flux = run("/load/flux");
+
+        System.out.printf("SseEmitter: 慢连接 %d, 正常客户端按时完成 %d/%d, 最大耗时 %d ms, 慢连接期间模型已推送分片 %,d%n",
+                SLOW_CLIENTS, emitter.completed, FAST_CLIENTS, emitter.maxMillis, emitter.producedForSlowClients);
+        System.out.printf("Flux:       慢连接 %d, 正常客户端按时完成 %d/%d, 最大耗时 %d ms, 慢连接期间模型已推送分片 %,d%n",
+                SLOW_CLIENTS, flux.completed, FAST_CLIENTS, flux.maxMillis, flux.producedForSlowClients);
+        assertEquals(FAST_CLIENTS, flux.completed);
+        assertTrue(flux.completed >= emitter.completed);
+    }
+
+    private Result run(String path) throws Exception {
+        List<Socket> slowClients = new ArrayList<>(SLOW_CLIENTS);
+        try (ExecutorService clients = Executors.newVirtualThreadPerTaskExecutor()) {
+            PRODUCED.set(0);
+            for (int i = 0; i < SLOW_CLIENTS; i++) {
+                Socket socket = new Socket();
+                socket.setReceiveBufferSize(4096);
+                socket.connect(new InetSocketAddress("localhost", port));
+                sendRequest(socket, path);
+                slowClients.add(socket);
+            }
+            // 等待慢连接的缓冲区被写满
+            Thread.sleep(2_000);
+            long producedForSlowClients = PRODUCED.get();
+
+            List<Future<Long>> futures = new ArrayList<>(FAST_CLIENTS);
+            for (int i = 0; i < FAST_CLIENTS; i++) {
+                futures.add(clients.submit(() -> readFully(path)));
+            }
+            int completed = 0;
+            long maxMillis = 0;
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(DEADLINE_SECONDS);
+            for (Future<Long> future : futures) {
+                try {
+                    long millis = future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                    completed++;
+                    maxMillis = Math.max(maxMillis, millis);
+                } catch (Exception e) {
+                    future.cancel(true);
+                    maxMillis = TimeUnit.SECONDS.toMillis(DEADLINE_SECONDS);
+                }
+            }
+            return new Result(completed, maxMillis, producedForSlowClients);
+        } finally {
+            for (Socket socket : slowClients) {
+                socket.close();
+            }
+        }
+    }
+
+    /**
+     * 正常客户端：读取完整个事件流
+     *
+     * @return 耗时（毫秒）
+     */
+    private long readFully(String path) throws IOException {
+        long start = System.nanoTime();
+        try (Socket socket = new Socket()) {
+            socket.connect(new InetSocketAddress("localhost", port));
+            socket.setSoTimeout((int) TimeUnit.SECONDS.toMillis(DEADLINE_SECONDS));
+            sendRequest(socket, path);
+            BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            int events = 0;
+            String line;
+            while (events < CHUNKS && (line = reader.readLine()) != null) {
+                if (line.startsWith("data:")) {
+                    events++;
+                }
+            }
+            assertEquals(CHUNKS, events);
+        }
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+
+    /**
+     * 使用 HTTP/1.0 请求，响应不分块、以关闭连接结束，便于按行读取事件
+     */
+    private static void sendRequest(Socket socket, String path) throws IOException {
+        OutputStream output = socket.getOutputStream();
+        output.write(("GET " + path + " HTTP/1.0\r\nHost: localhost\r\nAccept: text/event-stream\r\n\r\n")
+                .getBytes(StandardCharsets.US_ASCII));
+        output.flush();
+    }
+
+    /**
+     * 模拟模型流：分片在共享的推送线程上发出，下游请求多少就推送多少
+     */
+    private static Flux<String> modelStream() {
+        return Flux.range(0, CHUNKS)
+                .map(i -> {
+                    PRODUCED.incrementAndGet();
+                    return CHUNK;
+                })
+                .publishOn(MODEL_IO, 32);
+    }
+
+    private record Result(int completed, long maxMillis, long producedForSlowClients) {
+    }
+
+    @SpringBootConfiguration
+    @ImportAutoConfiguration({ServletWebServerFactoryAutoConfiguration.class, DispatcherServletAutoConfiguration.class,
+            WebMvcAutoConfiguration.class, HttpMessageConvertersAutoConfiguration.class, JacksonAutoConfiguration.class})
+    @Import(AsyncWebConfiguration.class)
+    static class LoadTestApplication {
+
+        @Bean
+        LoadTestController loadTestController() {
+            return new LoadTestController();
+        }
+
+        /**
+         * 缩小服务端发送缓冲区，使慢连接尽快进入写阻塞
+         */
+        @Bean
+        WebServerFactoryCustomizer<TomcatServletWebServerFactory> smallSendBuffer() {
+            return factory -> factory.addConnectorCustomizers(connector -> connector.setProperty("socket.txBufSize", "8192"));
+        }
+    }
+
+    @RestController
+    static class LoadTestController {
+
+        /**
+         * 与 ChatController.simpleChatByStream 相同的写法：订阅模型流并在推送线程上调用 send
+         */
+        @GetMapping("/load/emitter")
+        SseEmitter emitter() {
+            SseEmitter sseEmitter = new SseEmitter(60_000L);
+            Disposable subscription = modelStream().subscribe(chunk -> {
+                try {
+                    sseEmitter.send(chunk);
+                } catch (IOException e) {
+                    sseEmitter.completeWithError(e);
+                }
+            }, sseEmitter::completeWithError, sseEmitter::complete);
+            sseEmitter.onCompletion(subscription::dispose);
+            sseEmitter.onTimeout(subscription::dispose);
+            sseEmitter.onError(e -> subscription.dispose());
+            return sseEmitter;
+        }
+
+        /**
+         * 与 ChatController.simpleChatByFlux 相同的写法：直接返回事件流
+         */
+        @GetMapping(value = "/load/flux", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+        Flux<ServerSentEvent<String>> flux() {
+            return modelStream().map(chunk -> ServerSentEvent.builder(chunk).build());
+        }
+    }
+}
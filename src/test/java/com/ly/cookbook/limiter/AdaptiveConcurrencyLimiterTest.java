@@ -0,0 +1,78 @@
+package com.ly.cookbook.limiter;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AdaptiveConcurrencyLimiterTest {
+
+    private static final long STABLE_RTT = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private static final long SLOW_RTT = TimeUnit.MILLISECONDS.toNanos(400);
+
+    @Test
+    void limitGrowsWhenLatencyIsStableAndLimitIsUsed() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(10, 2, 32);
+        sample(limiter, 30, STABLE_RTT);
+        assertTrue(limiter.getLimit() > 10, "limit: " + limiter.getLimit());
+        assertTrue(limiter.getLimit() <= 32);
+        assertEquals(0, limiter.getInFlight());
+    }
+
+    @Test
+    void limitShrinksWhenLatencyRises() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(20, 2, 32);
+        sample(limiter, 20, STABLE_RTT);
+        int stableLimit = limiter.getLimit();
+        sample(limiter, 5, SLOW_RTT);
+        assertTrue(limiter.getLimit() < stableLimit, "stable: " + stableLimit + ", slow: " + limiter.getLimit());
+    }
+
+    @Test
+    void limitBacksOffOnDropAndStaysWithinBounds() throws Exception {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(10, 2, 32);
+        for (int i = 0; i < 50; i++) {
+            assertTrue(limiter.acquire(Duration.ZERO));
+            limiter.onDropped();
+        }
+        assertEquals(2, limiter.getLimit());
+        assertEquals(0, limiter.getInFlight());
+    }
+
+    @Test
+    void acquireWaitsForReleasedPermit() throws Exception {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(1, 1, 1);
+        assertTrue(limiter.tryAcquire());
+        assertFalse(limiter.tryAcquire());
+        assertFalse(limiter.acquire(Duration.ofMillis(20)));
+
+        Thread.ofVirtual().start(() -> {
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException ignored) {
+            }
+            limiter.onIgnore();
+        });
+        assertTrue(limiter.acquire(Duration.ofSeconds(5)));
+        assertEquals(1, limiter.getInFlight());
+    }
+
+    /**
+     * 每轮把许可用满后逐个以相同响应时间完成
+     */
+    private void sample(AdaptiveConcurrencyLimiter limiter, int rounds, long rttNanos) {
+        for (int round = 0; round < rounds; round++) {
+            int acquired = 0;
+            while (limiter.tryAcquire()) {
+                acquired++;
+            }
+            int inFlightAtStart = limiter.getInFlight();
+            for (int i = 0; i < acquired; i++) {
+                limiter.onSuccess(rttNanos, inFlightAtStart);
+            }
+        }
+    }
+}
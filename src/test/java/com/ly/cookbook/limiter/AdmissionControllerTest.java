@@ -0,0 +1,66 @@
+package com.ly.cookbook.limiter;
+
+import com.ly.cookbook.exception.AssertException;
+import com.ly.cookbook.exception.emun.ErrorCode;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AdmissionControllerTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    void rejectUserOverPerUserLimit() {
+        AdmissionController admissionController = new AdmissionController(true, 10, 2, 10, Duration.ofMillis(100), meterRegistry);
+        AdmissionController.Permit first = admissionController.admit(1L);
+        admissionController.admit(1L);
+
+        AssertException e = assertThrows(AssertException.class, () -> admissionController.admit(1L));
+        assertEquals(ErrorCode.USER_TOO_MANY_REQUESTS, e.getErrorType());
+        // 其他用户不受影响
+        admissionController.admit(2L).release();
+
+        first.release();
+        first.release();
+        admissionController.admit(1L);
+        assertEquals(2, admissionController.getInFlight());
+        assertEquals(1.0, meterRegistry.get("cookbook.admission.rejected").tag("reason", "user_limit").counter().count());
+    }
+
+    @Test
+    void queuedRequestIsAdmittedWhenPermitReleased() throws Exception {
+        AdmissionController admissionController = new AdmissionController(true, 1, 5, 10, Duration.ofSeconds(5), meterRegistry);
+        AdmissionController.Permit held = admissionController.admit(1L);
+
+        CompletableFuture<AdmissionController.Permit> queued = CompletableFuture.supplyAsync(() -> admissionController.admit(2L));
+        while (admissionController.getQueueDepth() == 0) {
+            Thread.sleep(10);
+        }
+        held.release();
+
+        assertNotNull(queued.get(5, TimeUnit.SECONDS));
+        assertEquals(0, admissionController.getQueueDepth());
+    }
+
+    @Test
+    void rejectWhenQueueTimesOutOrIsFull() {
+        AdmissionController admissionController = new AdmissionController(true, 1, 5, 0, Duration.ofMillis(50), meterRegistry);
+        admissionController.admit(1L);
+
+        AssertException e = assertThrows(AssertException.class, () -> admissionController.admit(2L));
+        assertEquals(ErrorCode.TOO_MANY_REQUESTS, e.getErrorType());
+        assertEquals(1.0, meterRegistry.get("cookbook.admission.rejected").tag("reason", "queue_full").counter().count());
+
+        AdmissionController waiting = new AdmissionController(true, 1, 5, 1, Duration.ofMillis(50), new SimpleMeterRegistry());
+        waiting.admit(1L);
+        assertThrows(AssertException.class, () -> waiting.admit(2L));
+        // 被拒绝的请求不占用单用户名额
+        assertEquals(1, waiting.getInFlight());
+    }
+}
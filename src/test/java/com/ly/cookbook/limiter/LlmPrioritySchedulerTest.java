@@ -0,0 +1,69 @@
+package com.ly.cookbook.limiter;
+
+import com.ly.cookbook.common.constant.UserConstant;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LlmPrioritySchedulerTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    void higherRoleIsScheduledFirst() throws Exception {
+        LlmPriorityScheduler scheduler = new LlmPriorityScheduler(1, Duration.ofMinutes(1), Duration.ofSeconds(10), meterRegistry);
+        LlmPriorityScheduler.Slot running = scheduler.acquire(UserConstant.USER_FREE).get();
+
+        CompletableFuture<LlmPriorityScheduler.Slot> free = scheduler.acquire(UserConstant.USER_FREE);
+        CompletableFuture<LlmPriorityScheduler.Slot> vip = scheduler.acquire(UserConstant.USER_VIP);
+        CompletableFuture<LlmPriorityScheduler.Slot> admin = scheduler.acquire(UserConstant.USER_ADMIN);
+        assertEquals(3, scheduler.getQueueDepth());
+
+        running.release();
+        assertTrue(admin.isDone());
+        assertFalse(vip.isDone());
+        admin.get().release();
+        assertTrue(vip.isDone());
+        assertFalse(free.isDone());
+        vip.get().release();
+        free.get(1, TimeUnit.SECONDS).release();
+
+        assertEquals(0, scheduler.getInUse());
+        assertEquals(1, meterRegistry.get("cookbook.llm.queue.wait").tag("role", UserConstant.USER_VIP).timer().count());
+    }
+
+    @Test
+    void agingPreventsStarvation() throws Exception {
+        LlmPriorityScheduler scheduler = new LlmPriorityScheduler(1, Duration.ofMillis(50), Duration.ofSeconds(10), meterRegistry);
+        LlmPriorityScheduler.Slot running = scheduler.acquire(UserConstant.USER_VIP).get();
+
+        CompletableFuture<LlmPriorityScheduler.Slot> free = scheduler.acquire(UserConstant.USER_FREE);
+        // 免费用户已等待超过两个老化间隔，优先级超过刚到达的 VIP 用户
+        Thread.sleep(200);
+        CompletableFuture<LlmPriorityScheduler.Slot> vip = scheduler.acquire(UserConstant.USER_VIP);
+
+        running.release();
+        assertTrue(free.isDone());
+        assertFalse(vip.isDone());
+    }
+
+    @Test
+    void cancelledWaiterLeavesQueue() throws Exception {
+        LlmPriorityScheduler scheduler = new LlmPriorityScheduler(1, Duration.ofMinutes(1), Duration.ofSeconds(10), meterRegistry);
+        LlmPriorityScheduler.Slot running = scheduler.acquire(UserConstant.USER_FREE).get();
+        CompletableFuture<LlmPriorityScheduler.Slot> cancelled = scheduler.acquire(UserConstant.USER_ADMIN);
+        CompletableFuture<LlmPriorityScheduler.Slot> waiting = scheduler.acquire(UserConstant.USER_FREE);
+
+        cancelled.cancel(true);
+        assertEquals(1, scheduler.getQueueDepth());
+        running.release();
+
+        assertTrue(waiting.isDone());
+        assertEquals(1, scheduler.getInUse());
+    }
+}
@@ -0,0 +1,130 @@
+package com.ly.cookbook.memory;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.memory.ChatMemory;
+import org.springframework.ai.chat.memory.InMemoryChatMemoryRepository;
+import org.springframework.ai.chat.memory.MessageWindowChatMemory;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Redis 使用未配置的 mock（所有调用失败），验证本地缓存、失效与 Redis 不可用时的退化行为
+ */
+class CachingChatMemoryTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private CountingChatMemory database;
+
+    private CachingChatMemory chatMemory;
+
+    @BeforeEach
+    void setUp() {
+        database = new CountingChatMemory(MessageWindowChatMemory.builder()
+                .chatMemoryRepository(new InMemoryChatMemoryRepository())
+                .maxMessages(4)
+                .build());
+        chatMemory = new CachingChatMemory(database, 4, 100, Duration.ofMinutes(1), Duration.ofMinutes(30),
+                mock(StringRedisTemplate.class), new RedisMessageListenerContainer(), meterRegistry);
+    }
+
+    @Test
+    void repeatedReadsAreServedFromLocalCache() {
+        chatMemory.add("c1", List.of(new UserMessage("红烧肉怎么做"), new AssistantMessage("先焯水")));
+
+        assertEquals(2, chatMemory.get("c1").size());
+        assertEquals(2, chatMemory.get("c1").size());
+        assertEquals(2, chatMemory.get("c1").size());
+
+        assertEquals(1, database.reads.get());
+        assertEquals(2.0, meterRegistry.get("cookbook.chat.memory.db.reads.saved").functionCounter().count());
+        assertEquals(2.0 / 3, meterRegistry.get("cookbook.chat.memory.cache.hit.ratio").gauge().value(), 1e-9);
+    }
+
+    @Test
+    void writesAndClearInvalidateLocalWindow() {
+        chatMemory.add("c1", new UserMessage("红烧肉怎么做"));
+        chatMemory.get("c1");
+        chatMemory.add("c1", new AssistantMessage("先焯水"));
+
+        List<Message> window = chatMemory.get("c1");
+        assertEquals(List.of("红烧肉怎么做", "先焯水"), window.stream().map(Message::getText).toList());
+        assertEquals(2, database.reads.get());
+
+        chatMemory.clear("c1");
+        assertTrue(chatMemory.get("c1").isEmpty());
+        assertEquals(3, database.reads.get());
+    }
+
+    @Test
+    void invalidationFromOtherNodeDropsLocalWindow() {
+        chatMemory.add("c1", new UserMessage("红烧肉怎么做"));
+        chatMemory.get("c1");
+        chatMemory.get("c1");
+        assertEquals(1, database.reads.get());
+
+        chatMemory.onInvalidation("other-node\nc1");
+        chatMemory.get("c1");
+
+        assertEquals(2, database.reads.get());
+        assertEquals(1.0, meterRegistry.get("cookbook.chat.memory.cache.invalidations").counter().count());
+    }
+
+    @Test
+    void returnedWindowIsACopy() {
+        chatMemory.add("c1", new UserMessage("红烧肉怎么做"));
+        chatMemory.get("c1").add(new UserMessage("被调用方修改"));
+
+        assertEquals(1, chatMemory.get("c1").size());
+    }
+
+    @Test
+    void messagesRoundTripThroughRedisFormat() throws Exception {
+        Message message = CachingChatMemory.deserialize(CachingChatMemory.serialize(new AssistantMessage("先焯水\n再炖")));
+
+        assertInstanceOf(AssistantMessage.class, message);
+        assertEquals("先焯水\n再炖", message.getText());
+    }
+
+    /**
+     * 记录读库次数
+     */
+    private static class CountingChatMemory implements ChatMemory {
+
+        private final ChatMemory delegate;
+
+        private final AtomicInteger reads = new AtomicInteger();
+
+        private CountingChatMemory(ChatMemory delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void add(String conversationId, List<Message> messages) {
+            delegate.add(conversationId, messages);
+        }
+
+        @Override
+        public List<Message> get(String conversationId) {
+            reads.incrementAndGet();
+            return delegate.get(conversationId);
+        }
+
+        @Override
+        public void clear(String conversationId) {
+            delegate.clear(conversationId);
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.ly.cookbook.memory;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 预写日志的追加、崩溃恢复与日志段清理
+ */
+class ChatMemoryWalTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void unflushedRowsAreRecoveredAfterRestart() throws IOException {
+        ChatMemoryWal wal = new ChatMemoryWal(directory, 1024 * 1024);
+        List<AppendOnlyChatMemoryRepository.Row> rows = List.of(
+                new AppendOnlyChatMemoryRepository.Row("c1", "USER", "红烧肉怎么做", 1L),
+                new AppendOnlyChatMemoryRepository.Row("c1", "ASSISTANT", "先焯水", 2L));
+        wal.append(rows);
+        // 模拟崩溃：不关闭日志，直接由新实例恢复
+
+        ChatMemoryWal restarted = new ChatMemoryWal(directory, 1024 * 1024);
+        assertEquals(rows, restarted.recover());
+
+        restarted.deleteRecovered();
+        assertEquals(0, segmentCount());
+    }
+
+    @Test
+    void truncatedTailRecordIsDiscarded() throws IOException {
+        ChatMemoryWal wal = new ChatMemoryWal(directory, 1024 * 1024);
+        AppendOnlyChatMemoryRepository.Row row = new AppendOnlyChatMemoryRepository.Row("c1", "USER", "红烧肉怎么做", 1L);
+        wal.append(List.of(row));
+        Path segment = segments().getFirst();
+        // 写了一半的记录：长度字段声明的内容没有写完
+        Files.write(segment, new byte[]{0, 0, 0, 64, 1, 2, 3}, StandardOpenOption.APPEND);
+
+        assertEquals(List.of(row), new ChatMemoryWal(directory, 1024 * 1024).recover());
+    }
+
+    @Test
+    void segmentsAreDeletedOnceFlushed() throws IOException {
+        // 每次追加后日志段都超过上限，下一次追加切换到新段
+        ChatMemoryWal wal = new ChatMemoryWal(directory, 1);
+        long first = wal.append(List.of(new AppendOnlyChatMemoryRepository.Row("c1", "USER", "a", 1L)));
+        long second = wal.append(List.of(new AppendOnlyChatMemoryRepository.Row("c1", "USER", "b", 2L),
+                new AppendOnlyChatMemoryRepository.Row("c2", "USER", "c", 3L)));
+        assertNotEquals(first, second);
+        assertEquals(2, segmentCount());
+
+        wal.markFlushed(first, 1);
+        assertEquals(1, segmentCount());
+
+        wal.markFlushed(second, 1);
+        assertEquals(List.of("b", "c"), new ChatMemoryWal(directory, 1).recover().stream()
+                .map(AppendOnlyChatMemoryRepository.Row::content).toList());
+
+        wal.markFlushed(second, 1);
+        wal.close();
+        assertEquals(0, segmentCount());
+    }
+
+    private List<Path> segments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.sorted().toList();
+        }
+    }
+
+    private long segmentCount() throws IOException {
+        return segments().size();
+    }
+}
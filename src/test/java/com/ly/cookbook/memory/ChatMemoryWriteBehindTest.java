@@ -0,0 +1,80 @@
+package com.ly.cookbook.memory;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.QueryTimeoutException;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 异步批量写入的失败处理：暂时性错误重试，其他错误逐条写入并丢弃无法写入的消息
+ */
+class ChatMemoryWriteBehindTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final List<String> written = new CopyOnWriteArrayList<>();
+
+    private final AtomicInteger transientFailures = new AtomicInteger();
+
+    /**
+     * 不连接数据库：内容为 bad 的消息违反约束，transientFailures 大于 0 时先按连接超时失败
+     */
+    private final AppendOnlyChatMemoryRepository repository = new AppendOnlyChatMemoryRepository(null, null, 10) {
+        @Override
+        public void insertRows(List<Row> rows) {
+            if (transientFailures.getAndUpdate(n -> Math.max(0, n - 1)) > 0) {
+                throw new QueryTimeoutException("连接超时");
+            }
+            if (rows.stream().anyMatch(row -> "bad".equals(row.content()))) {
+                throw new DataIntegrityViolationException("违反约束");
+            }
+            rows.forEach(row -> written.add(row.content()));
+        }
+    };
+
+    private final ChatMemoryWriteBehind writeBehind = new ChatMemoryWriteBehind(repository, null, 100, 10,
+            Duration.ofMillis(50), Duration.ofMillis(100), meterRegistry);
+
+    @Test
+    void transientFailureIsRetried() throws Exception {
+        transientFailures.set(2);
+
+        writeBehind.add("c1", List.of(new UserMessage("红烧肉怎么做"), new AssistantMessage("先焯水")))
+                .get(5, TimeUnit.SECONDS);
+
+        assertEquals(List.of("红烧肉怎么做", "先焯水"), written);
+        assertEquals(0, meterRegistry.get("cookbook.chat.memory.write.dropped").counter().count());
+        writeBehind.shutdown();
+    }
+
+    @Test
+    void badRowIsDroppedAndOthersAreWritten() throws Exception {
+        writeBehind.add("c1", List.of(new UserMessage("红烧肉怎么做"), new UserMessage("bad"), new AssistantMessage("先焯水")))
+                .get(5, TimeUnit.SECONDS);
+
+        assertEquals(List.of("红烧肉怎么做", "先焯水"), written);
+        assertEquals(1, meterRegistry.get("cookbook.chat.memory.write.dropped").counter().count());
+        assertTrue(writeBehind.pendingRows("c1").isEmpty());
+        writeBehind.shutdown();
+    }
+
+    @Test
+    void emptyMessagesCompleteImmediately() throws Exception {
+        assertTrue(writeBehind.add("c1", List.of()).isDone());
+
+        writeBehind.add("c1", List.of(new UserMessage("红烧肉怎么做"))).get(5, TimeUnit.SECONDS);
+        assertEquals(List.of("红烧肉怎么做"), written);
+        assertTrue(writeBehind.pendingRows("c1").isEmpty());
+        writeBehind.shutdown();
+    }
+}
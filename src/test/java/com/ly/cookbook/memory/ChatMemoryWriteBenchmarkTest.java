@@ -0,0 +1,112 @@
+package com.ly.cookbook.memory;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.ai.chat.memory.ChatMemory;
+import org.springframework.ai.chat.memory.MessageWindowChatMemory;
+import org.springframework.ai.chat.memory.repository.jdbc.JdbcChatMemoryRepository;
+import org.springframework.ai.chat.memory.repository.jdbc.PostgresChatMemoryRepositoryDialect;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 聊天记忆写入吞吐对比：MessageWindowChatMemory + JdbcChatMemoryRepository（读出、删除、重写窗口）与追加写仓库。
+ * 需要本地 Postgres 且已建 spring_ai_chat_memory 表（见 database.sql），运行方式：
+ * mvn test -Dtest=ChatMemoryWriteBenchmarkTest -Dbenchmark.pg.url=jdbc:postgresql://127.0.0.1:5432/ai_agent
+ * -Dbenchmark.pg.username=postgres -Dbenchmark.pg.password=123456
+ */
+@EnabledIfSystemProperty(named = "benchmark.pg.url", matches = ".+")
+class ChatMemoryWriteBenchmarkTest {
+
+    private static final String CONVERSATION_PREFIX = "bench-";
+    private static final int CONVERSATIONS = 200;
+    /**
+     * 每个会话写入的轮数，每轮一条用户消息和一条助手消息，与 MessageChatMemoryAdvisor 的写入方式相同
+     */
+    private static final int ROUNDS = 20;
+    private static final int WINDOW = 10;
+
+    private SingleConnectionDataSource dataSource;
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void connect() {
+        dataSource = new SingleConnectionDataSource(System.getProperty("benchmark.pg.url"),
+                System.getProperty("benchmark.pg.username", "postgres"), System.getProperty("benchmark.pg.password", ""), true);
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        cleanUp();
+    }
+
+    @AfterEach
+    void cleanUp() {
+        jdbcTemplate.update("DELETE FROM spring_ai_chat_memory WHERE conversation_id LIKE ?", CONVERSATION_PREFIX + "%");
+    }
+
+    @Test
+    void appendOnlyVsDeleteAndReinsert() {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+        ChatMemory jdbcMemory = MessageWindowChatMemory.builder()
+                .chatMemoryRepository(JdbcChatMemoryRepository.builder()
+                        .jdbcTemplate(jdbcTemplate)
+                        .dialect(new PostgresChatMemoryRepositoryDialect())
+                        .transactionManager(new DataSourceTransactionManager(dataSource))
+                        .build())
+                .maxMessages(WINDOW)
+                .build();
+        AppendOnlyChatMemoryRepository appendOnlyRepository = new AppendOnlyChatMemoryRepository(jdbcTemplate, transactionTemplate, WINDOW);
+        ChatMemory appendOnlyMemory = new AppendOnlyWindowChatMemory(appendOnlyRepository, WINDOW);
+
+        // 预热
+        measure(jdbcMemory, "warmup-jdbc");
+        measure(appendOnlyMemory, "warmup-append");
+        cleanUp();
+
+        double jdbcRate = measure(jdbcMemory, "jdbc");
+        double appendRate = measure(appendOnlyMemory, "append");
+        long trimStart = System.nanoTime();
+        int trimmed = appendOnlyRepository.trim(500);
+        long trimMillis = (System.nanoTime() - trimStart) / 1_000_000;
+
+        System.out.printf("MessageWindowChatMemory + JdbcChatMemoryRepository: %,.0f 条消息/秒%n", jdbcRate);
+        System.out.printf("AppendOnlyWindowChatMemory:                       %,.0f 条消息/秒%n", appendRate);
+        System.out.printf("后台清理 %d 个会话，删除 %,d 条，耗时 %d ms%n", CONVERSATIONS, trimmed, trimMillis);
+
+        // 清理后两种实现读到的窗口一致
+        String conversationId = CONVERSATION_PREFIX + "append-0";
+        List<Message> window = appendOnlyMemory.get(conversationId);
+        assertEquals(WINDOW, window.size());
+        assertEquals(jdbcMemory.get(CONVERSATION_PREFIX + "jdbc-0").stream().map(Message::getText).toList(),
+                window.stream().map(Message::getText).toList());
+        assertEquals(WINDOW, jdbcTemplate.queryForObject(
+                "SELECT count(*) FROM spring_ai_chat_memory WHERE conversation_id = ?", Integer.class, conversationId));
+        assertTrue(appendRate > jdbcRate);
+    }
+
+    /**
+     * 按轮次依次写入所有会话（单连接），返回每秒写入的消息条数
+     */
+    private double measure(ChatMemory chatMemory, String name) {
+        long start = System.nanoTime();
+        for (int round = 0; round < ROUNDS; round++) {
+            for (int i = 0; i < CONVERSATIONS; i++) {
+                String conversationId = CONVERSATION_PREFIX + name + "-" + i;
+                chatMemory.add(conversationId, new UserMessage("第 " + round + " 轮：红烧肉怎么做"));
+                chatMemory.add(conversationId, new AssistantMessage("第 " + round + " 轮：五花肉焯水后炒糖色，加酱油小火慢炖"));
+            }
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        return CONVERSATIONS * ROUNDS * 2 / seconds;
+    }
+}
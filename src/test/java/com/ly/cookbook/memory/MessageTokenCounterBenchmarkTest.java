@@ -0,0 +1,87 @@
+package com.ly.cookbook.memory;
+
+import com.ly.cookbook.agent.AgentContextManager;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.UserMessage;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.ToLongFunction;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 本地分词计数在中文菜谱文本上的吞吐基准：逐条分词、按内容缓存后的重复读取，以及原有按字符估算的对照。
+ * 同时输出分词结果与按字符估算的偏差
+ */
+class MessageTokenCounterBenchmarkTest {
+
+    private static final int WARMUP_ROUNDS = 20;
+    private static final int ROUNDS = 100;
+
+    private static final String[] RECIPES = {
+            "红烧肉：五花肉切成三厘米见方的块，冷水下锅加姜片料酒焯水，撇去浮沫后捞出。锅中少油，放入冰糖小火炒至枣红色，下肉块翻炒上色，"
+                    + "加生抽、老抽、八角、桂皮和香叶，倒入没过肉的开水，小火炖一小时，最后大火收汁。",
+            "清蒸鲈鱼（2人份）：鲈鱼一条约600g，处理干净后在鱼身两侧各划三刀，抹少许盐和料酒腌10分钟。盘底垫葱段姜片，水开后上锅蒸8分钟，"
+                    + "关火焖2分钟，倒掉盘中汤汁，铺上葱丝，淋蒸鱼豉油，再浇一勺烧至冒烟的热油。",
+            "番茄炒蛋的关键是先炒蛋再炒番茄：鸡蛋3个加盐打散，热锅宽油炒至凝固盛出；番茄2个切块，下锅炒出汁水，加1勺糖中和酸味，"
+                    + "倒回鸡蛋翻匀即可。喜欢汤汁多的可以加半碗水淀粉勾芡。",
+            "减脂期晚餐推荐：鸡胸肉150g用黑胡椒和少量生抽腌制，空气炸锅180℃烤12分钟；西兰花焯水1分钟后过凉；糙米饭半碗。"
+                    + "总热量约450kcal，蛋白质约45g。",
+    };
+
+    @Test
+    void tokenizerThroughputOnChineseRecipes() {
+        List<Message> messages = new ArrayList<>();
+        for (int i = 0; i < 1_000; i++) {
+            // 每条消息是不同的字符串实例，与从数据库或 Redis 读出的消息一致
+            messages.add(new UserMessage(new String(RECIPES[i % RECIPES.length].toCharArray()) + "（第" + i + "条）"));
+        }
+        long chars = messages.stream().mapToLong(message -> message.getText().length()).sum();
+        MessageTokenCounter tokenCounter = MessageTokenCounter.cl100k(10_000);
+
+        Result uncached = measure(messages, message -> tokenCounter.count(message.getText()));
+        Result cached = measure(messages, tokenCounter::count);
+        Result estimated = measure(messages, message -> AgentContextManager.estimateTokens(message.getText()));
+
+        System.out.printf("文本: %,d 条消息, %,d 字符, 每轮分词 %,d tokens, 按字符估算 %,d tokens%n",
+                messages.size(), chars, uncached.tokens, estimated.tokens);
+        System.out.printf("逐条分词:   %,.1f 万字符/秒, %,.0f 条/秒%n", uncached.charsPerSecond(chars), uncached.messagesPerSecond(messages.size()));
+        System.out.printf("缓存命中:   %,.1f 万字符/秒, %,.0f 条/秒%n", cached.charsPerSecond(chars), cached.messagesPerSecond(messages.size()));
+        System.out.printf("按字符估算: %,.1f 万字符/秒, %,.0f 条/秒%n", estimated.charsPerSecond(chars), estimated.messagesPerSecond(messages.size()));
+        assertTrue(cached.nanos < uncached.nanos);
+    }
+
+    private Result measure(List<Message> messages, ToLongFunction<Message> counter) {
+        long tokens = 0;
+        for (int round = 0; round < WARMUP_ROUNDS; round++) {
+            tokens += countAll(messages, counter);
+        }
+        long start = System.nanoTime();
+        for (int round = 0; round < ROUNDS; round++) {
+            tokens += countAll(messages, counter);
+        }
+        long nanos = System.nanoTime() - start;
+        return new Result(nanos, tokens / (WARMUP_ROUNDS + ROUNDS));
+    }
+
+    private static long countAll(List<Message> messages, ToLongFunction<Message> counter) {
+        long tokens = 0;
+        for (Message message : messages) {
+            tokens += counter.applyAsLong(message);
+        }
+        return tokens;
+    }
+
+    private record Result(long nanos, long tokens) {
+
+        double charsPerSecond(long charsPerRound) {
+            return charsPerRound * ROUNDS / (nanos / 1e9) / 10_000;
+        }
+
+        double messagesPerSecond(int messagesPerRound) {
+            return (double) messagesPerRound * ROUNDS / (nanos / 1e9);
+        }
+    }
+}
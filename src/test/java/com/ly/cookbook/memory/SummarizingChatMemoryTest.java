@@ -0,0 +1,148 @@
+package com.ly.cookbook.memory;
+
+import com.ly.cookbook.mq.producer.MessageSender;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.memory.InMemoryChatMemoryRepository;
+import org.springframework.ai.chat.memory.MessageWindowChatMemory;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * 滚动摘要：窗口前带上摘要、按写入条数触发摘要任务、任务只压缩滑出窗口的消息
+ */
+class SummarizingChatMemoryTest {
+
+    private final InMemorySummaryRepository summaryRepository = new InMemorySummaryRepository();
+
+    private final MessageSender messageSender = mock(MessageSender.class);
+
+    @Test
+    void summaryIsReturnedBeforeRecentWindow() {
+        SummarizingChatMemory chatMemory = newMemory(6);
+        chatMemory.add("c1", List.of(new UserMessage("要放八角吗"), new AssistantMessage("放两颗即可")));
+        summaryRepository.summaries.put("c1", new ChatMemorySummaryRepository.Summary("用户在做红烧肉，不吃辣", 1L));
+
+        List<Message> messages = chatMemory.get("c1");
+
+        assertEquals(3, messages.size());
+        assertEquals(SummarizingChatMemory.SUMMARY_PREFIX + "用户在做红烧肉，不吃辣", messages.getFirst().getText());
+        assertEquals("放两颗即可", messages.getLast().getText());
+
+        chatMemory.clear("c1");
+        assertTrue(chatMemory.get("c1").isEmpty());
+        assertFalse(summaryRepository.summaries.containsKey("c1"));
+    }
+
+    @Test
+    void windowIsCappedAtKeepRecentWhenSummaryExists() {
+        SummarizingChatMemory chatMemory = newMemory(6);
+        for (int i = 1; i <= 8; i++) {
+            chatMemory.add("c1", List.of(new UserMessage("消息" + i)));
+        }
+        summaryRepository.summaries.put("c1", new ChatMemorySummaryRepository.Summary("消息1~4的摘要", 4L));
+        List<Message> messages = chatMemory.get("c1");
+
+        // 摘要 + 最近 4 条，已压缩的消息不再重复出现
+        assertEquals(5, messages.size());
+        assertEquals("消息5", messages.get(1).getText());
+        assertEquals("消息8", messages.getLast().getText());
+    }
+
+    @Test
+    void summarizeTaskIsSentEveryTriggerMessages() {
+        SummarizingChatMemory chatMemory = newMemory(6);
+        for (int turn = 0; turn < 7; turn++) {
+            chatMemory.add("c1", List.of(new UserMessage("第" + turn + "步呢"), new AssistantMessage("继续翻炒")));
+        }
+
+        // 14 条消息，每累计 6 条触发一次
+        verify(messageSender, times(2)).sendSimple(ChatMemorySummarizer.SUMMARIZE_MESSAGE_TYPE, "c1");
+    }
+
+    @Test
+    void summarizerFoldsOnlyMessagesOutsideRecentWindow() {
+        List<AppendOnlyChatMemoryRepository.Row> rows = new ArrayList<>();
+        for (int i = 1; i <= 8; i++) {
+            rows.add(new AppendOnlyChatMemoryRepository.Row(null, i % 2 == 1 ? "USER" : "ASSISTANT", "消息" + i, i));
+        }
+        List<String> prompts = new ArrayList<>();
+        ChatModel chatModel = prompt -> {
+            prompts.add(prompt.getContents());
+            return new ChatResponse(List.of(new Generation(new AssistantMessage("新的摘要"))));
+        };
+        AppendOnlyChatMemoryRepository repository = new AppendOnlyChatMemoryRepository(null, null, 10) {
+            @Override
+            public List<Row> findRowsAfter(String conversationId, long after) {
+                return rows.stream().filter(row -> row.timestamp() > after).toList();
+            }
+        };
+        ChatMemorySummarizer summarizer = new ChatMemorySummarizer(repository, summaryRepository,
+                ChatClient.builder(chatModel).build(), 4, 2, 500, new SimpleMeterRegistry());
+        summaryRepository.summaries.put("c1", new ChatMemorySummaryRepository.Summary("旧摘要", 2L));
+
+        assertTrue(summarizer.summarize("c1"));
+
+        // 消息 3~4 被压缩，最近 4 条（5~8）保留在窗口中
+        assertEquals(new ChatMemorySummaryRepository.Summary("新的摘要", 4L), summaryRepository.summaries.get("c1"));
+        String prompt = prompts.getFirst();
+        assertTrue(prompt.contains("旧摘要") && prompt.contains("用户：消息3") && prompt.contains("助手：消息4"));
+        assertFalse(prompt.contains("消息5"));
+
+        // 剩余可压缩的消息不足 min-messages，跳过
+        assertFalse(summarizer.summarize("c1"));
+        assertEquals(1, prompts.size());
+    }
+
+    private SummarizingChatMemory newMemory(int triggerMessages) {
+        MessageWindowChatMemory window = MessageWindowChatMemory.builder()
+                .chatMemoryRepository(new InMemoryChatMemoryRepository())
+                .maxMessages(10)
+                .build();
+        return new SummarizingChatMemory(window, summaryRepository, messageSender, triggerMessages, 4, 100, Duration.ZERO);
+    }
+
+    private static class InMemorySummaryRepository extends ChatMemorySummaryRepository {
+
+        private final Map<String, Summary> summaries = new HashMap<>();
+
+        private InMemorySummaryRepository() {
+            super(null);
+        }
+
+        @Override
+        public Optional<Summary> find(String conversationId) {
+            return Optional.ofNullable(summaries.get(conversationId));
+        }
+
+        @Override
+        public boolean save(String conversationId, Summary summary, Summary previous) {
+            if (!Objects.equals(summaries.get(conversationId), previous)) {
+                return false;
+            }
+            summaries.put(conversationId, summary);
+            return true;
+        }
+
+        @Override
+        public void delete(String conversationId) {
+            summaries.remove(conversationId);
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.ly.cookbook.memory;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.memory.InMemoryChatMemoryRepository;
+import org.springframework.ai.chat.memory.MessageWindowChatMemory;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.UserMessage;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 按 token 预算截取窗口：长消息只占预算内的位置，短消息可以带上更多轮次
+ */
+class TokenWindowChatMemoryTest {
+
+    private final MessageTokenCounter tokenCounter = MessageTokenCounter.cl100k(100);
+
+    @Test
+    void longMessageOnlyTakesItsShareOfTheBudget() {
+        TokenWindowChatMemory chatMemory = newMemory(200);
+        String recipePage = "红烧肉：五花肉切块焯水，冰糖炒糖色，加生抽老抽料酒，小火炖一小时。".repeat(20);
+        chatMemory.add("c1", List.of(new UserMessage(recipePage), new AssistantMessage("收到菜谱")));
+        chatMemory.add("c1", List.of(new UserMessage("要放八角吗"), new AssistantMessage("放两颗即可")));
+
+        List<Message> window = chatMemory.get("c1");
+
+        assertEquals(List.of("收到菜谱", "要放八角吗", "放两颗即可"), window.stream().map(Message::getText).toList());
+        assertTrue(window.stream().mapToInt(tokenCounter::count).sum() <= 200);
+    }
+
+    @Test
+    void shortTurnsFillTheBudget() {
+        TokenWindowChatMemory chatMemory = newMemory(10_000);
+        for (int i = 0; i < 15; i++) {
+            chatMemory.add("c1", List.of(new UserMessage("第" + i + "步呢"), new AssistantMessage("继续翻炒")));
+        }
+
+        assertEquals(30, chatMemory.get("c1").size());
+    }
+
+    @Test
+    void tokenCountsAreCachedPerMessageContent() {
+        String text = "清蒸鲈鱼：鱼身划刀，铺姜丝葱段，水开后蒸八分钟，淋热油和蒸鱼豉油。";
+        int expected = MessageTokenCounter.MESSAGE_OVERHEAD_TOKENS + tokenCounter.count(text);
+
+        assertEquals(expected, tokenCounter.count(new UserMessage(text)));
+        assertEquals(expected, tokenCounter.count(new AssistantMessage(new String(text.toCharArray()))));
+        assertTrue(tokenCounter.count(text) > 0);
+    }
+
+    private TokenWindowChatMemory newMemory(int maxTokens) {
+        MessageWindowChatMemory candidates = MessageWindowChatMemory.builder()
+                .chatMemoryRepository(new InMemoryChatMemoryRepository())
+                .maxMessages(30)
+                .build();
+        return new TokenWindowChatMemory(candidates, maxTokens, tokenCounter, new SimpleMeterRegistry());
+    }
+}
@@ -0,0 +1,68 @@
+package com.ly.cookbook.router;
+
+import com.ly.cookbook.enums.QueryRouteEnum;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class QueryClassifierTest {
+
+    private static QueryClassifier classifier;
+
+    @BeforeAll
+    static void loadModel() throws IOException {
+        try (InputStream input = QueryClassifierTest.class.getResourceAsStream("/router/query-classifier.model")) {
+            assertNotNull(input);
+            classifier = QueryClassifier.load(input);
+        }
+    }
+
+    @Test
+    void obviousQueriesAreRoutedToCheapestPath() {
+        assertEquals(QueryRouteEnum.DIRECT, classifier.classify("你好").route());
+        assertEquals(QueryRouteEnum.RAG, classifier.classify("红烧肉怎么做").route());
+        assertEquals(QueryRouteEnum.RAG, classifier.classify("老乡鸡的农家小炒肉做法").route());
+        assertEquals(QueryRouteEnum.AGENT, classifier.classify("帮我搜索一下最新的网红菜并生成PDF").route());
+        assertEquals(QueryRouteEnum.AGENT, classifier.classify("帮我规划一周的减脂餐并下载图片").route());
+    }
+
+    @Test
+    void shippedModelFitsTrainingSamples() throws IOException {
+        List<QueryClassifier.Sample> samples = QueryClassifierTrainer.readSamples(QueryClassifierTrainer.SAMPLES);
+        long correct = samples.stream()
+                .filter(sample -> classifier.classify(sample.query()).route() == sample.route())
+                .count();
+        assertTrue(correct >= samples.size() * 0.95, "训练集准确率过低，样本修改后需要重新运行 QueryClassifierTrainer");
+    }
+
+    @Test
+    void trainedModelRoundTrips() throws IOException {
+        List<QueryClassifier.Sample> samples = List.of(
+                new QueryClassifier.Sample(QueryRouteEnum.DIRECT, "你好"),
+                new QueryClassifier.Sample(QueryRouteEnum.RAG, "红烧肉做法"),
+                new QueryClassifier.Sample(QueryRouteEnum.AGENT, "搜索网页"));
+        StringWriter model = new StringWriter();
+        QueryClassifier.train(samples, 1, model);
+        QueryClassifier trained = QueryClassifier.load(new ByteArrayInputStream(model.toString().getBytes(StandardCharsets.UTF_8)));
+
+        QueryClassifier.Classification classification = trained.classify("红烧肉的做法");
+        assertEquals(QueryRouteEnum.RAG, classification.route());
+        assertEquals(1.0, classification.probabilities()[0] + classification.probabilities()[1]
+                + classification.probabilities()[2], 1e-9);
+    }
+
+    @Test
+    void featuresAreNormalized() {
+        // 全角字母与大小写规范化后特征相同
+        assertEquals(QueryClassifier.features("ＰＤＦ"), QueryClassifier.features("pdf"));
+        assertTrue(QueryClassifier.features("看看 https://example.com").contains("has:url"));
+    }
+}
@@ -0,0 +1,66 @@
+package com.ly.cookbook.router;
+
+import com.ly.cookbook.enums.QueryRouteEnum;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 路由分类器离线训练工具：读取标注样本，训练后写出随应用发布的模型文件。
+ * 修改样本后在项目根目录运行 main 方法重新生成模型，参数可依次指定样本文件、模型文件与特征最少出现次数
+ */
+public class QueryClassifierTrainer {
+
+    static final Path SAMPLES = Path.of("src/test/resources/router/query-samples.tsv");
+    static final Path MODEL = Path.of("src/main/resources/router/query-classifier.model");
+    static final int MIN_COUNT = 2;
+
+    public static void main(String[] args) throws IOException {
+        Path samplesPath = args.length > 0 ? Path.of(args[0]) : SAMPLES;
+        Path modelPath = args.length > 1 ? Path.of(args[1]) : MODEL;
+        int minCount = args.length > 2 ? Integer.parseInt(args[2]) : MIN_COUNT;
+
+        List<QueryClassifier.Sample> samples = readSamples(samplesPath);
+        Files.createDirectories(modelPath.toAbsolutePath().getParent());
+        try (Writer writer = Files.newBufferedWriter(modelPath, StandardCharsets.UTF_8)) {
+            QueryClassifier.train(samples, minCount, writer);
+        }
+        QueryClassifier classifier;
+        try (var input = Files.newInputStream(modelPath)) {
+            classifier = QueryClassifier.load(input);
+        }
+        int correct = 0;
+        for (QueryClassifier.Sample sample : samples) {
+            QueryClassifier.Classification classification = classifier.classify(sample.query());
+            if (classification.route() == sample.route()) {
+                correct++;
+            } else {
+                System.out.printf("误判 [%s -> %s %.2f] %s%n", sample.route().getCode(),
+                        classification.route().getCode(), classification.confidence(), sample.query());
+            }
+        }
+        System.out.printf("样本 %d 条，训练集准确率 %.1f%%，模型已写出到 %s%n",
+                samples.size(), correct * 100.0 / samples.size(), modelPath);
+    }
+
+    static List<QueryClassifier.Sample> readSamples(Path path) throws IOException {
+        List<QueryClassifier.Sample> samples = new ArrayList<>();
+        for (String line : Files.readAllLines(path, StandardCharsets.UTF_8)) {
+            if (line.isBlank() || line.startsWith("#")) {
+                continue;
+            }
+            String[] columns = line.split("\t", 2);
+            QueryRouteEnum route = QueryRouteEnum.getByCode(columns[0]);
+            if (route == null || columns.length < 2) {
+                throw new IOException("样本格式错误: " + line);
+            }
+            samples.add(new QueryClassifier.Sample(route, columns[1].trim()));
+        }
+        return samples;
+    }
+}
@@ -0,0 +1,100 @@
+package com.ly.cookbook.sse;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 逐分片写出与合并写出的 CPU 对比基准：1000 个流并发推送模型分片，统计进程 CPU 时间与实际写出的事件数。
+ * 写出端把事件序列化为字节但不经过网络，系统调用的节省不计入结果
+ */
+class SseChunkWriterBenchmarkTest {
+
+    private static final int STREAMS = 1_000;
+    private static final int CHUNKS_PER_STREAM = 200;
+    private static final String CHUNK = "红烧";
+
+    @Test
+    void coalescedVsPerChunkWrites() throws Exception {
+        // 预热
+        measure(new SseChunkWriter(false, Duration.ZERO, 0, new SimpleMeterRegistry()));
+        measure(new SseChunkWriter(true, Duration.ofMillis(20), 256, new SimpleMeterRegistry()));
+
+        Result perChunk = measure(new SseChunkWriter(false, Duration.ZERO, 0, new SimpleMeterRegistry()));
+        SseChunkWriter coalescingWriter = new SseChunkWriter(true, Duration.ofMillis(20), 256, new SimpleMeterRegistry());
+        Result coalesced = measure(coalescingWriter);
+        coalescingWriter.shutdown();
+
+        System.out.printf("逐分片写出: 每 1k 流 CPU %,d ms, 事件 %,d, 字节 %,d%n", perChunk.cpuMillis, perChunk.events, perChunk.bytes);
+        System.out.printf("合并写出:   每 1k 流 CPU %,d ms, 事件 %,d, 字节 %,d%n", coalesced.cpuMillis, coalesced.events, coalesced.bytes);
+        assertTrue(coalesced.events * 2 < perChunk.events);
+    }
+
+    private Result measure(SseChunkWriter writer) throws Exception {
+        AtomicLong events = new AtomicLong();
+        AtomicLong bytes = new AtomicLong();
+        com.sun.management.OperatingSystemMXBean os =
+                (com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean();
+        long cpuBefore = os.getProcessCpuTime();
+        try (ExecutorService producers = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<?>> futures = new ArrayList<>(STREAMS);
+            for (int i = 0; i < STREAMS; i++) {
+                futures.add(producers.submit(() -> {
+                    SseChunkStream stream = writer.open(new SerializingSseEmitter(events, bytes), e -> {
+                    });
+                    for (int chunk = 0; chunk < CHUNKS_PER_STREAM; chunk++) {
+                        stream.append("content", CHUNK);
+                        // 模型约每毫秒输出一个分片
+                        Thread.sleep(1);
+                    }
+                    stream.complete();
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        }
+        long cpuNanos = os.getProcessCpuTime() - cpuBefore;
+        return new Result(cpuNanos / 1_000_000 * 1_000 / STREAMS, events.get(), bytes.get());
+    }
+
+    /**
+     * 把事件序列化为 UTF-8 字节，模拟写出时的编码开销
+     */
+    private static class SerializingSseEmitter extends SseEmitter {
+
+        private final AtomicLong events;
+        private final AtomicLong bytes;
+
+        private SerializingSseEmitter(AtomicLong events, AtomicLong bytes) {
+            this.events = events;
+            this.bytes = bytes;
+        }
+
+        @Override
+        public void send(SseEventBuilder builder) {
+            long size = 0;
+            for (DataWithMediaType data : builder.build()) {
+                size += String.valueOf(data.getData()).getBytes(StandardCharsets.UTF_8).length;
+            }
+            events.incrementAndGet();
+            bytes.addAndGet(size);
+        }
+    }
+
+    private record Result(long cpuMillis, long events, long bytes) {
+    }
+}
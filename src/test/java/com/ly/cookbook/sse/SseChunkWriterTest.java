@@ -0,0 +1,111 @@
+package com.ly.cookbook.sse;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SseChunkWriterTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private SseChunkWriter writer;
+
+    @AfterEach
+    void shutdown() {
+        writer.shutdown();
+    }
+
+    @Test
+    void chunksAreCoalescedUntilByteLimit() {
+        writer = new SseChunkWriter(true, Duration.ofHours(1), 6, meterRegistry);
+        RecordingSseEmitter sseEmitter = new RecordingSseEmitter();
+        SseChunkStream stream = writer.open(sseEmitter, e -> fail(e));
+
+        assertTrue(stream.append(null, "ab"));
+        assertTrue(stream.append(null, "cd"));
+        assertTrue(sseEmitter.events.isEmpty());
+        assertTrue(stream.append(null, "ef"));
+
+        assertEquals(List.of("data:abcdef\n\n"), sseEmitter.events);
+        assertEquals(3.0, meterRegistry.get("cookbook.sse.chunks").tag("event", "message").counter().count());
+        assertEquals(1.0, meterRegistry.get("cookbook.sse.events").tag("event", "message").counter().count());
+        assertEquals(6.0, meterRegistry.get("cookbook.sse.bytes").tag("event", "message").counter().count());
+    }
+
+    @Test
+    void eventTypesAndOrderArePreserved() {
+        writer = new SseChunkWriter(true, Duration.ofHours(1), 256, meterRegistry);
+        RecordingSseEmitter sseEmitter = new RecordingSseEmitter();
+        SseChunkStream stream = writer.open(sseEmitter, e -> fail(e));
+
+        stream.append("thinking", "先");
+        stream.append("thinking", "焯水");
+        stream.send("thinking", "思考完成");
+        stream.append("content", "红烧");
+        stream.append("content", "肉");
+        stream.complete();
+
+        assertEquals(List.of("event:thinking\ndata:先焯水\n\n", "event:thinking\ndata:思考完成\n\n",
+                "event:content\ndata:红烧肉\n\n"), sseEmitter.events);
+        assertFalse(stream.isOpen());
+    }
+
+    @Test
+    void pendingChunksAreFlushedAfterWindow() throws InterruptedException {
+        writer = new SseChunkWriter(true, Duration.ofMillis(20), 256, meterRegistry);
+        RecordingSseEmitter sseEmitter = new RecordingSseEmitter();
+        SseChunkStream stream = writer.open(sseEmitter, e -> fail(e));
+
+        stream.append("content", "红烧");
+        stream.append("content", "肉");
+        long deadline = System.currentTimeMillis() + 2_000;
+        while (sseEmitter.events.isEmpty() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+
+        assertEquals(List.of("event:content\ndata:红烧肉\n\n"), sseEmitter.events);
+    }
+
+    @Test
+    void writeFailureClosesStreamAndNotifiesOnce() {
+        writer = new SseChunkWriter(false, Duration.ZERO, 0, meterRegistry);
+        AtomicInteger failures = new AtomicInteger();
+        SseEmitter brokenEmitter = new SseEmitter() {
+            @Override
+            public void send(SseEventBuilder builder) throws IOException {
+                throw new IOException("Broken pipe");
+            }
+        };
+        SseChunkStream stream = writer.open(brokenEmitter, e -> failures.incrementAndGet());
+
+        assertFalse(stream.append("content", "红烧肉"));
+        assertFalse(stream.append("content", "红烧肉"));
+        assertFalse(stream.send("thinking", "思考完成"));
+        assertEquals(1, failures.get());
+    }
+
+    /**
+     * 记录每个写出事件的原始 SSE 文本
+     */
+    static class RecordingSseEmitter extends SseEmitter {
+
+        final List<String> events = new CopyOnWriteArrayList<>();
+
+        @Override
+        public void send(SseEventBuilder builder) {
+            events.add(builder.build().stream()
+                    .map(data -> String.valueOf(data.getData()))
+                    .collect(Collectors.joining()));
+        }
+    }
+}